@@ -37,6 +37,7 @@ import java.awt.image.ColorModel;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Vector;
 
@@ -51,10 +52,12 @@ import loci.formats.FormatException;
 import loci.formats.FormatTools;
 import loci.formats.IFormatReader;
 import loci.formats.Modulo;
+import loci.formats.cache.CacheException;
 import loci.formats.meta.DummyMetadata;
 import loci.formats.meta.IMetadata;
 import loci.formats.meta.MetadataRetrieve;
 import loci.formats.meta.MetadataStore;
+import loci.plugins.BF;
 import loci.plugins.Slicer;
 import loci.plugins.util.BFVirtualStack;
 import loci.plugins.util.ImageProcessorReader;
@@ -79,6 +82,9 @@ public class ImagePlusReader implements StatusReporter {
   /** Special property prefix for storing planar LUTs. */
   public static final String PROP_LUT = "LUT-";
 
+  /** Maximum number of threads reading ahead in each virtual stack. */
+  private static final int MAX_PREFETCH_THREADS = 4;
+
   // -- Fields --
 
   /**
@@ -88,6 +94,9 @@ public class ImagePlusReader implements StatusReporter {
 
   protected List<StatusListener> listeners = new Vector<StatusListener>();
 
+  /** Reader copies for parallel reads, shared by all series of an import. */
+  private ReaderPool readerPool;
+
   // -- Constructors --
 
   /**
@@ -238,10 +247,17 @@ public class ImagePlusReader implements StatusReporter {
     startTiming();
 
     // read in each image series
-    for (int s=0; s<reader.getSeriesCount(); s++) {
-      if (!options.isSeriesOn(s)) continue;
-      final ImagePlus imp = readImage(s, thumbnail);
-      imps.add(imp);
+    readerPool = new ReaderPool(process);
+    try {
+      for (int s=0; s<reader.getSeriesCount(); s++) {
+        if (!options.isSeriesOn(s)) continue;
+        final ImagePlus imp = readImage(s, thumbnail);
+        imps.add(imp);
+      }
+    }
+    finally {
+      readerPool.close();
+      readerPool = null;
     }
 
     // concatenate compatible images
@@ -258,6 +274,7 @@ public class ImagePlusReader implements StatusReporter {
     // when all image windows are closed, the Bio-Formats reader is closed
     if (options.isVirtual()) {
       process.getVirtualReader().setRefCount(imps.size());
+      if (!thumbnail && options.isPrefetch()) startPrefetching(imps);
     }
 
     // end timing
@@ -356,10 +373,65 @@ public class ImagePlusReader implements StatusReporter {
     return virtualStack;
   }
 
+  /**
+   * Starts reading planes ahead of the displayed one in the background, for
+   * each of the given images that has a Bio-Formats virtual stack.
+   */
+  private void startPrefetching(List<ImagePlus> imps) {
+    final int threads = Math.max(1, Math.min(MAX_PREFETCH_THREADS,
+      Runtime.getRuntime().availableProcessors() / 2));
+    for (ImagePlus imp : imps) {
+      if (!(imp.getStack() instanceof BFVirtualStack)) continue;
+      final BFVirtualStack stack = (BFVirtualStack) imp.getStack();
+      try {
+        stack.setCacheSize(BFVirtualStack.DEFAULT_CACHE_SIZE);
+      }
+      catch (CacheException exc) {
+        BF.debug("Could not start prefetching: " + exc.getMessage());
+        continue;
+      }
+
+      // initializing the readers can take a while, so do not delay display
+      Thread setup = new Thread("BioFormats-Prefetch-" + imp.getTitle()) {
+        @Override
+        public void run() {
+          final IFormatReader[] readers = new IFormatReader[threads];
+          try {
+            for (int i=0; i<readers.length; i++) {
+              readers[i] = process.createReaderCopy();
+            }
+            stack.startPrefetching(readers);
+          }
+          catch (FormatException exc) {
+            BF.debug("Could not start prefetching: " + exc.getMessage());
+            closeReaders(readers);
+          }
+          catch (IOException exc) {
+            BF.debug("Could not start prefetching: " + exc.getMessage());
+            closeReaders(readers);
+          }
+        }
+      };
+      setup.setDaemon(true);
+      setup.start();
+    }
+  }
+
+  private static void closeReaders(IFormatReader[] readers) {
+    for (IFormatReader r : readers) {
+      if (r == null) continue;
+      try {
+        r.close();
+      }
+      catch (IOException exc) { }
+    }
+  }
+
   private ImageStack readPlanes(ImportProcess process, int s, List<LUT> luts,
     boolean thumbnail)
     throws FormatException, IOException
   {
+    final ImporterOptions options = process.getOptions();
     final ImageProcessorReader reader = process.getReader();
     reader.setSeries(s);
     final int zCount = process.getZCount(s);
@@ -377,25 +449,42 @@ public class ImagePlusReader implements StatusReporter {
 
     // read applicable image planes
     final Region region = process.getCropRegion(s);
-    for (int i=0; i<load.length; i++) {
-      if (!load[i]) continue;
-
-      // limit message update rate
-      updateTiming(s, current, current++, total);
+    final int threads = options.isParallelRead() ?
+      Math.min(total - 1, Runtime.getRuntime().availableProcessors()) : 1;
+    ParallelPlaneReader parallelReader = null;
+    try {
+      for (int i=0; i<load.length; i++) {
+        if (!load[i]) continue;
+
+        // limit message update rate
+        updateTiming(s, current, current++, total);
+
+        // get image processor for ith plane
+        final ImageProcessor[] p = parallelReader == null ?
+          readProcessors(process, i, region, thumbnail) :
+          parallelReader.getProcessors(i);
+        if (p == null || p.length == 0) {
+          throw new FormatException("Cannot read plane #" + i);
+        }
+        // generate a label for ith plane
+        String label = constructSliceLabel(i, reader, meta, s, zCount, cCount, tCount);
 
-      // get image processor for ith plane
-      final ImageProcessor[] p = readProcessors(process, i, region, thumbnail);
-      if (p == null || p.length == 0) {
-        throw new FormatException("Cannot read plane #" + i);
-      }
-      // generate a label for ith plane
-      String label = constructSliceLabel(i, reader, meta, s, zCount, cCount, tCount);
+        for (ImageProcessor ip : p) {
+          procs.add(ip);
+          labels.add(label);
+        }
 
-      for (ImageProcessor ip : p) {
-        procs.add(ip);
-        labels.add(label);
+        // NB: The first plane is always read on this thread, so that any
+        // LuraWave license prompt happens before the workers start.
+        if (parallelReader == null && threads > 1 && options.isLocal()) {
+          parallelReader = new ParallelPlaneReader(readerPool, s, load,
+            i + 1, region, thumbnail, threads);
+        }
       }
     }
+    finally {
+      if (parallelReader != null) parallelReader.stop();
+    }
 
     return createStack(procs, labels, luts);
   }
@@ -716,4 +805,173 @@ public class ImagePlusReader implements StatusReporter {
     }
   }
 
+  // -- Helper classes --
+
+  /**
+   * Reads planes of one series on several threads, each with its own copy of
+   * the import reader, and hands them back in plane order.
+   */
+  private static class ParallelPlaneReader {
+
+    private final ReaderPool readers;
+    private final int series;
+    private final Region region;
+    private final boolean thumbnail;
+
+    /** Indices of the planes to read, in stack order. */
+    private final int[] planes;
+
+    /** Processors read for each plane, until claimed by the caller. */
+    private final ImageProcessor[][] results;
+
+    /** Index into {@link #planes} of the next plane for a worker to read. */
+    private int next;
+
+    /** First error thrown by a worker. */
+    private Exception error;
+
+    private boolean stopped;
+
+    public ParallelPlaneReader(ReaderPool readers, int series,
+      boolean[] load, int first, Region region, boolean thumbnail,
+      int threads)
+    {
+      this.readers = readers;
+      this.series = series;
+      this.region = region;
+      this.thumbnail = thumbnail;
+
+      int count = 0;
+      for (int i=first; i<load.length; i++) if (load[i]) count++;
+      planes = new int[count];
+      count = 0;
+      for (int i=first; i<load.length; i++) if (load[i]) planes[count++] = i;
+      results = new ImageProcessor[load.length][];
+
+      for (int t=0; t<Math.min(threads, planes.length); t++) {
+        Thread worker = new Thread("BioFormats-PlaneReader-" + t) {
+          @Override
+          public void run() {
+            readPlanes();
+          }
+        };
+        worker.setDaemon(true);
+        worker.start();
+      }
+    }
+
+    /** Waits for the given plane to be read, and returns its processors. */
+    public synchronized ImageProcessor[] getProcessors(int no)
+      throws FormatException, IOException
+    {
+      try {
+        while (results[no] == null && error == null) wait();
+      }
+      catch (InterruptedException exc) {
+        stopped = true;
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while reading plane #" + no, exc);
+      }
+      if (error instanceof FormatException) throw (FormatException) error;
+      if (error instanceof IOException) throw (IOException) error;
+      if (error != null) throw new FormatException(error);
+      final ImageProcessor[] p = results[no];
+      results[no] = null;
+      return p;
+    }
+
+    /** Tells the workers to stop once their current plane is read. */
+    public synchronized void stop() {
+      stopped = true;
+    }
+
+    private synchronized int nextPlane() {
+      if (stopped || error != null || next == planes.length) return -1;
+      return planes[next++];
+    }
+
+    private synchronized void finishPlane(int no, ImageProcessor[] p) {
+      // NB: Store an empty result rather than null, to wake the caller.
+      results[no] = p == null ? new ImageProcessor[0] : p;
+      notifyAll();
+    }
+
+    private synchronized void fail(Exception exc) {
+      if (error == null) error = exc;
+      notifyAll();
+    }
+
+    private void readPlanes() {
+      ImageProcessorReader reader = null;
+      try {
+        int no = nextPlane();
+        if (no < 0) return;
+        reader = readers.take();
+        reader.setSeries(series);
+        while (no >= 0) {
+          finishPlane(no, thumbnail ? reader.openThumbProcessors(no) :
+            reader.openProcessors(no,
+              region.x, region.y, region.width, region.height));
+          no = nextPlane();
+        }
+        readers.giveBack(reader);
+      }
+      catch (Exception exc) {
+        fail(exc);
+        if (reader != null) closeReaders(new IFormatReader[] {reader});
+      }
+    }
+
+  }
+
+  /**
+   * Copies of the import reader, kept open from one series to the next so
+   * that each is only created once per import.
+   */
+  private static class ReaderPool {
+
+    private final ImportProcess process;
+
+    /** Copies that are not currently in use. */
+    private final LinkedList<ImageProcessorReader> idle =
+      new LinkedList<ImageProcessorReader>();
+
+    private boolean closed;
+
+    public ReaderPool(ImportProcess process) {
+      this.process = process;
+    }
+
+    /** Takes an idle copy, or creates a new one. */
+    public ImageProcessorReader take() throws FormatException, IOException {
+      synchronized (this) {
+        if (!idle.isEmpty()) return idle.removeFirst();
+      }
+      return process.createReaderCopy();
+    }
+
+    /** Returns a copy for reuse, or closes it if the pool is closed. */
+    public void giveBack(ImageProcessorReader reader) {
+      synchronized (this) {
+        if (!closed) {
+          idle.addFirst(reader);
+          return;
+        }
+      }
+      closeReaders(new IFormatReader[] {reader});
+    }
+
+    /** Closes the idle copies, and any copy given back later. */
+    public void close() {
+      final IFormatReader[] readers;
+      synchronized (this) {
+        closed = true;
+        readers = idle.toArray(new IFormatReader[idle.size()]);
+        idle.clear();
+      }
+      closeReaders(readers);
+    }
+
+  }
+
 }
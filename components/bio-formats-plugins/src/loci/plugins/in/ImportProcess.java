@@ -55,6 +55,7 @@ import loci.formats.FormatTools;
 import loci.formats.IFormatReader;
 import loci.formats.ImageReader;
 import loci.formats.MinMaxCalculator;
+import loci.formats.PooledReader;
 import loci.formats.TileStitcher;
 import loci.formats.in.MetadataLevel;
 import loci.formats.meta.IMetadata;
@@ -100,6 +101,21 @@ public class ImportProcess implements StatusReporter {
   private VirtualReader virtualReader;
   private ImageProcessorReader reader;
 
+  /** Dimension orders of each series, as configured at DIM_ORDER. */
+  private String[] inputOrders, outputOrders;
+
+  /** File on which the base reader was initialized. */
+  private String baseId;
+
+  /**
+   * Initialized copy of the base reader, whose state is restored by each
+   * reader copy instead of initializing the file again.
+   */
+  private PooledReader baseReaderSource;
+
+  /** Whether the base reader's state could not be captured. */
+  private boolean baseReaderUncloneable;
+
   /** Whether the process has been canceled. */
   private boolean cancel;
 
@@ -307,6 +323,59 @@ public class ImportProcess implements StatusReporter {
     return reader;
   }
 
+  /**
+   * Creates and initializes a new reader stack matching {@link #getReader()},
+   * for reading planes on another thread. Planes read through the copy also
+   * update the min/max values of {@link #getMinMaxCalculator()}.
+   * The caller is responsible for closing the returned reader.
+   *
+   * The file is initialized only once for all copies; each copy's base
+   * reader is then restored from that state by a {@link PooledReader}.
+   *
+   * Valid only after {@link ImportStep#DIM_ORDER}.
+   */
+  public ImageProcessorReader createReaderCopy()
+    throws FormatException, IOException
+  {
+    assertStep(ImportStep.DIM_ORDER);
+    IFormatReader r = createBaseReaderCopy();
+
+    if (fileStitcher != null) {
+      FileStitcher stitcher = new FileStitcher(r);
+      stitcher.setUsingPatternIds(true);
+      stitcher.setCanChangePattern(false);
+      r = stitcher;
+    }
+    r = new ChannelFiller(r);
+    r = new ChannelSeparator(r);
+    final DimensionSwapper swapper = new DimensionSwapper(r);
+    r = swapper;
+    if (minMaxCalculator != null) {
+      r = new SharedMinMaxCalculator(r,
+        (SharedMinMaxCalculator) minMaxCalculator);
+    }
+    if (tileStitcher != null) r = new TileStitcher(r);
+    final ImageProcessorReader copy = new ImageProcessorReader(r);
+    try {
+      copy.setId(options.getId());
+      for (int s=0; s<inputOrders.length; s++) {
+        copy.setSeries(s);
+        swapper.swapDimensions(inputOrders[s]);
+        swapper.setOutputOrder(outputOrders[s]);
+      }
+      copy.setSeries(0);
+    }
+    catch (FormatException exc) {
+      copy.close();
+      throw exc;
+    }
+    catch (IOException exc) {
+      copy.close();
+      throw exc;
+    }
+    return copy;
+  }
+
   /** Valid only after {@link ImportStep#STACK}. */
   public String getCurrentFile() {
     assertStep(ImportStep.STACK);
@@ -496,8 +565,9 @@ public class ImportProcess implements StatusReporter {
       baseReader.getMetadataOptions().setMetadataLevel(
           MetadataLevel.NO_OVERLAYS);
     }
-    baseReader.setId(options.isUsingPatternIds() ?
-      new FilePattern(options.getId()).getFiles()[0] : options.getId());
+    baseId = options.isUsingPatternIds() ?
+      new FilePattern(options.getId()).getFiles()[0] : options.getId();
+    baseReader.setId(baseId);
     
     boolean mustGroup = baseReader.fileGroupOption(options.getId()) == FormatTools.MUST_GROUP;
     options.setMustGroup(mustGroup);
@@ -533,7 +603,7 @@ public class ImportProcess implements StatusReporter {
     r = dimensionSwapper = new DimensionSwapper(r);
 
     if (options.isAutoscale() || FormatTools.isFloatingPoint(r)) {
-      r = minMaxCalculator = new MinMaxCalculator(r);
+      r = minMaxCalculator = new SharedMinMaxCalculator(r, null);
     }
     if (options.doStitchTiles()) {
       r = tileStitcher = new TileStitcher(r);
@@ -557,6 +627,8 @@ public class ImportProcess implements StatusReporter {
     final int seriesCount = getSeriesCount();
     final String stackOrder = getStackOrder();
 
+    inputOrders = new String[seriesCount];
+    outputOrders = new String[seriesCount];
     for (int s=0; s<seriesCount; s++) {
       reader.setSeries(s);
 
@@ -566,6 +638,8 @@ public class ImportProcess implements StatusReporter {
 
       // set output order
       getDimensionSwapper().setOutputOrder(stackOrder);
+      inputOrders[s] = dimensionSwapper.getInputOrder();
+      outputOrders[s] = dimensionSwapper.getDimensionOrder();
       try {
         DimensionOrder order = DimensionOrder.fromString(stackOrder);
         getOMEMetadata().setPixelsDimensionOrder(order, s);
@@ -773,4 +847,99 @@ public class ImportProcess implements StatusReporter {
     }
   }
 
+  /**
+   * Gets a base reader for {@link #createReaderCopy()}, already initialized
+   * on the base reader's file when possible.
+   */
+  private IFormatReader createBaseReaderCopy()
+    throws FormatException, IOException
+  {
+    final PooledReader source = getBaseReaderSource();
+    if (source == null) return createUninitializedBaseReader();
+    return source.openCopy();
+  }
+
+  /**
+   * Initializes the base reader's file once for all reader copies, or
+   * returns null if the initialized reader's state cannot be captured.
+   */
+  private synchronized PooledReader getBaseReaderSource()
+    throws FormatException, IOException
+  {
+    if (baseReaderSource != null || baseReaderUncloneable) {
+      return baseReaderSource;
+    }
+    final IFormatReader r = createUninitializedBaseReader();
+    final PooledReader source = new PooledReader(r, 1);
+    try {
+      source.setId(baseId);
+    }
+    catch (FormatException exc) {
+      BF.debug("Cannot clone " + r.getClass().getSimpleName() + ": " +
+        exc.getMessage());
+      baseReaderUncloneable = true;
+      source.close();
+      return null;
+    }
+    catch (IOException exc) {
+      source.close();
+      throw exc;
+    }
+    // NB: Copies reopen the file themselves.
+    r.close(true);
+    baseReaderSource = source;
+    return baseReaderSource;
+  }
+
+  /** Creates a new base reader configured like the import's base reader. */
+  private IFormatReader createUninitializedBaseReader()
+    throws FormatException
+  {
+    IFormatReader r;
+    try {
+      r = baseReader.getClass().newInstance();
+    }
+    catch (InstantiationException exc) { throw new FormatException(exc); }
+    catch (IllegalAccessException exc) { throw new FormatException(exc); }
+    r.setMetadataFiltered(true);
+    r.setGroupFiles(baseReader.isGroupFiles());
+    r.setFlattenedResolutions(baseReader.hasFlattenedResolutions());
+    r.setMetadataOptions(baseReader.getMetadataOptions());
+    return r;
+  }
+
+  // -- Helper classes --
+
+  /**
+   * A {@link MinMaxCalculator} that can accumulate the planes read through
+   * the copies made by {@link #createReaderCopy()}, so that autoscaling
+   * sees every plane however it was read.
+   */
+  private static class SharedMinMaxCalculator extends MinMaxCalculator {
+
+    /** The calculator owning the min/max values, or null for this one. */
+    private final SharedMinMaxCalculator target;
+
+    public SharedMinMaxCalculator(IFormatReader r,
+      SharedMinMaxCalculator target)
+    {
+      super(r);
+      this.target = target;
+    }
+
+    /* @see MinMaxCalculator#updateMinMax(int, byte[], int) */
+    @Override
+    protected void updateMinMax(int no, byte[] buf, int len)
+      throws FormatException, IOException
+    {
+      if (target == null) {
+        synchronized (this) {
+          super.updateMinMax(no, buf, len);
+        }
+      }
+      else target.updateMinMax(no, buf, len);
+    }
+
+  }
+
 }
@@ -61,6 +61,8 @@ public class ImporterOptions extends OptionsList {
   public static final String KEY_ID              = "id";
   public static final String KEY_LOCATION        = "location";
   public static final String KEY_OPEN_ALL_SERIES = "openAllSeries";
+  public static final String KEY_PARALLEL_READ   = "parallelRead";
+  public static final String KEY_PREFETCH        = "prefetch";
   public static final String KEY_QUIET           = "quiet";
   //public static final String KEY_RECORD          = "record";
   public static final String KEY_SHOW_METADATA   = "showMetadata";
@@ -307,6 +309,16 @@ public class ImporterOptions extends OptionsList {
   public boolean openAllSeries() { return isSet(KEY_OPEN_ALL_SERIES); }
   public void setOpenAllSeries(boolean b) { setValue(KEY_OPEN_ALL_SERIES, b); }
 
+  // parallelRead
+  public String getParallelReadInfo() { return getInfo(KEY_PARALLEL_READ); }
+  public boolean isParallelRead() { return isSet(KEY_PARALLEL_READ); }
+  public void setParallelRead(boolean b) { setValue(KEY_PARALLEL_READ, b); }
+
+  // prefetch
+  public String getPrefetchInfo() { return getInfo(KEY_PREFETCH); }
+  public boolean isPrefetch() { return isSet(KEY_PREFETCH); }
+  public void setPrefetch(boolean b) { setValue(KEY_PREFETCH, b); }
+
   // quiet
   public String getQuietInfo() { return getInfo(KEY_QUIET); }
   public boolean isQuiet() { return isSet(KEY_QUIET); }
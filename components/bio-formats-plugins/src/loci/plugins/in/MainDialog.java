@@ -78,6 +78,8 @@ public class MainDialog extends ImporterDialog
   protected Checkbox groupFilesBox;
   protected Checkbox ungroupFilesBox;
   protected Checkbox openAllSeriesBox;
+  protected Checkbox parallelReadBox;
+  protected Checkbox prefetchBox;
   //protected Checkbox recordBox;
   protected Checkbox showMetadataBox;
   protected Checkbox showOMEXMLBox;
@@ -135,6 +137,8 @@ public class MainDialog extends ImporterDialog
     addCheckbox(gd, ImporterOptions.KEY_SWAP_DIMS);
     addCheckbox(gd, ImporterOptions.KEY_VIRTUAL);
     addCheckbox(gd, ImporterOptions.KEY_STITCH_TILES);
+    addCheckbox(gd, ImporterOptions.KEY_PARALLEL_READ);
+    addCheckbox(gd, ImporterOptions.KEY_PREFETCH);
     rebuildDialog(gd);
     return gd;
   }
@@ -163,6 +167,8 @@ public class MainDialog extends ImporterDialog
     options.setSwapDimensions(gd.getNextBoolean());
     options.setVirtual(gd.getNextBoolean());
     options.setStitchTiles(gd.getNextBoolean());
+    options.setParallelRead(gd.getNextBoolean());
+    options.setPrefetch(gd.getNextBoolean());
     return true;
   }
 
@@ -279,6 +285,8 @@ public class MainDialog extends ImporterDialog
       swapDimsBox       = boxes.get(boxIndex++);
       virtualBox        = boxes.get(boxIndex++);
       stitchTilesBox    = boxes.get(boxIndex++);
+      parallelReadBox   = boxes.get(boxIndex++);
+      prefetchBox       = boxes.get(boxIndex++);
     }
     verifyOptions(null);
 
@@ -312,6 +320,8 @@ public class MainDialog extends ImporterDialog
     infoTable.put(swapDimsBox, options.getSwapDimensionsInfo());
     infoTable.put(virtualBox, options.getVirtualInfo());
     infoTable.put(stitchTilesBox, options.getStitchTilesInfo());
+    infoTable.put(parallelReadBox, options.getParallelReadInfo());
+    infoTable.put(prefetchBox, options.getPrefetchInfo());
 
     // rebuild dialog using FormLayout to organize things more nicely
 
@@ -388,12 +398,16 @@ public class MainDialog extends ImporterDialog
     row += 2;
     builder.add(virtualBox, xyw(cc, 5, row, 3));
     row += 2;
+    builder.add(prefetchBox, xyw(cc, 5, row, 3));
+    row += 2;
     //builder.add(recordBox, xyw(cc, 5, row, 3));
     //row += 2;
     builder.add(specifyRangesBox, xyw(cc, 5, row, 3));
     row += 2;
     builder.add(cropBox, xyw(cc, 5, row, 3));
-    row += 4;
+    row += 2;
+    builder.add(parallelReadBox, xyw(cc, 5, row, 3));
+    row += 2;
     builder.addSeparator("Split into separate windows", cc.xyw(5, row, 3));
     row += 2;
     builder.add(splitCBox, xyw(cc, 5, row, 3));
@@ -439,6 +453,8 @@ public class MainDialog extends ImporterDialog
     boolean groupFilesEnabled = groupFilesBox.isEnabled();
     boolean ungroupFilesEnabled = ungroupFilesBox.isEnabled();
     boolean openAllSeriesEnabled = openAllSeriesBox.isEnabled();
+    boolean parallelReadEnabled = parallelReadBox.isEnabled();
+    boolean prefetchEnabled = prefetchBox.isEnabled();
     //boolean recordEnabled = recordBox.isEnabled();
     boolean showMetadataEnabled = showMetadataBox.isEnabled();
     boolean showOMEXMLEnabled = showOMEXMLBox.isEnabled();
@@ -459,6 +475,8 @@ public class MainDialog extends ImporterDialog
     boolean isGroupFiles = groupFilesBox.getState();
     boolean isUngroupFiles = ungroupFilesBox.getState();
     boolean isOpenAllSeries = openAllSeriesBox.getState();
+    boolean isParallelRead = parallelReadBox.getState();
+    boolean isPrefetch = prefetchBox.getState();
     //boolean isRecord = recordBox.getState();
     boolean isShowMetadata = showMetadataBox.getState();
     boolean isShowOMEXML = showOMEXMLBox.getState();
@@ -557,6 +575,10 @@ public class MainDialog extends ImporterDialog
     if (!virtualEnabled) isVirtual = false;
     else if (src == stackFormatChoice && isStackBrowser) isVirtual = true;
 
+    // prefetchBox
+    prefetchEnabled = isVirtual;
+    if (!prefetchEnabled) isPrefetch = false;
+
     // recordBox
     //recordEnabled = isVirtual;
     //if (!recordEnabled) isRecord = false;
@@ -569,6 +591,10 @@ public class MainDialog extends ImporterDialog
     cropEnabled = !isStackNone && !isVirtual;
     if (!cropEnabled) isCrop = false;
 
+    // parallelReadBox
+    parallelReadEnabled = !isStackNone && !isVirtual;
+    if (!parallelReadEnabled) isParallelRead = false;
+
     // == Color options ==
 
     // colorModeChoice
@@ -606,6 +632,8 @@ public class MainDialog extends ImporterDialog
     groupFilesBox.setEnabled(groupFilesEnabled);
     ungroupFilesBox.setEnabled(ungroupFilesEnabled);
     openAllSeriesBox.setEnabled(openAllSeriesEnabled);
+    parallelReadBox.setEnabled(parallelReadEnabled);
+    prefetchBox.setEnabled(prefetchEnabled);
     //recordBox.setEnabled(recordEnabled);
     showMetadataBox.setEnabled(showMetadataEnabled);
     showOMEXMLBox.setEnabled(showOMEXMLEnabled);
@@ -626,6 +654,8 @@ public class MainDialog extends ImporterDialog
     groupFilesBox.setState(isGroupFiles);
     ungroupFilesBox.setState(isUngroupFiles);
     openAllSeriesBox.setState(isOpenAllSeries);
+    parallelReadBox.setState(isParallelRead);
+    prefetchBox.setState(isPrefetch);
     //recordBox.setState(isRecord);
     showMetadataBox.setState(isShowMetadata);
     showOMEXMLBox.setState(isShowOMEXML);
@@ -651,6 +681,8 @@ public class MainDialog extends ImporterDialog
         groupFilesBox,
         ungroupFilesBox,
         openAllSeriesBox,
+        parallelReadBox,
+        prefetchBox,
         //recordBox,
         showMetadataBox,
         showOMEXMLBox,
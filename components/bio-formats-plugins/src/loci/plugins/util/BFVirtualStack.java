@@ -30,10 +30,15 @@ package loci.plugins.util;
 import ij.VirtualStack;
 import ij.process.ImageProcessor;
 
+import java.awt.EventQueue;
 import java.awt.image.IndexColorModel;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import loci.formats.ChannelMerger;
 import loci.formats.FormatException;
@@ -41,18 +46,41 @@ import loci.formats.FormatTools;
 import loci.formats.IFormatReader;
 import loci.formats.Modulo;
 import loci.formats.cache.Cache;
+import loci.formats.cache.CacheEvent;
 import loci.formats.cache.CacheException;
+import loci.formats.cache.CacheListener;
+import loci.formats.cache.CachePrefetcher;
 import loci.formats.cache.CacheStrategy;
 import loci.formats.cache.CrosshairStrategy;
+import loci.formats.cache.ICacheSource;
+import loci.formats.cache.ICacheStrategy;
+import loci.formats.cache.RectangleStrategy;
 import loci.plugins.util.RecordedImageProcessor.MethodEntry;
 
 /**
  * Subclass of VirtualStack that uses Bio-Formats to read planes on demand.
  *
+ * Planes are kept in a {@link Cache} bounded by {@link #getCacheSize()},
+ * which by default only holds the current plane (or all channels of it, for
+ * a merged view).  Once {@link #startPrefetching(IFormatReader[])} has been
+ * called, the planes ahead of the current one in the scrolling direction
+ * are read in the background, the missing channels of a merged view are
+ * read in parallel, and a {@link VirtualImagePlus} showing this stack is
+ * given a scaled-up preview of the nearest plane read so far (for each
+ * channel, in a merged view) while a missing plane is read in full.
+ *
  * @author Melissa Linkert melissa at glencoesoftware.com
  */
 public class BFVirtualStack extends VirtualStack {
 
+  // -- Constants --
+
+  /** Suggested upper bound on the memory used by prefetched planes. */
+  public static final long DEFAULT_CACHE_SIZE = 256L * 1024 * 1024;
+
+  /** Longest side of the previews kept for each plane read. */
+  private static final int PREVIEW_SIZE = 128;
+
   // -- Fields --
 
   protected ImageProcessorReader reader;
@@ -75,6 +103,39 @@ public class BFVirtualStack extends VirtualStack {
 
   private float[] calibrationTable;
 
+  /** Upper bound on the memory used by cached planes, in bytes. */
+  private long cacheSize;
+
+  /** Axis along which the planes are being scrolled, or -1. */
+  private int scrollAxis = -1;
+
+  /** Whether the planes are being scrolled towards higher indices. */
+  private boolean scrollForward = true;
+
+  /** Cache position of the plane read most recently. */
+  private int[] lastPos;
+
+  private volatile CachePrefetcher prefetcher;
+  private IFormatReader[] prefetchReaders;
+  private boolean disposed;
+
+  /** Previews of recently read planes, keyed by cache index. */
+  private Map<Integer, ImageProcessor> previews;
+  private int maxPreviews;
+
+  /** Image to refresh once the plane it shows as a preview is read. */
+  private VirtualImagePlus imp;
+
+  /** Cache indices of the planes currently shown as previews. */
+  private final Set<Integer> previewIndices = new HashSet<Integer>();
+
+  /** Whether {@link #getProcessor(int)} may return a preview. */
+  private final ThreadLocal<Boolean> previewAllowed =
+    new ThreadLocal<Boolean>();
+
+  /** Lock notified whenever the cache stores a plane. */
+  private final Object loadLock = new Object();
+
   // -- Static utility methods --
 
   protected static int getWidth(IFormatReader r, String path, int series)
@@ -109,6 +170,7 @@ public class BFVirtualStack extends VirtualStack {
     this.series = r.getSeries();
 
     // set up cache
+    // NB: each channel of a merged view is cached on its own
     int[] subC;
     Modulo moduloC = r.getModuloC();
     if (moduloC.length() > 1) {
@@ -116,19 +178,30 @@ public class BFVirtualStack extends VirtualStack {
     } else {
       subC = new int[] {r.getSizeC()};
     }
-    if (merge) subC = new int[] {new ChannelMerger(r).getEffectiveSizeC()};
     len = new int[subC.length + 2];
     System.arraycopy(subC, 0, len, 0, subC.length);
     len[len.length - 2] = r.getSizeZ();
     len[len.length - 1] = r.getSizeT();
-    CacheStrategy strategy = new CrosshairStrategy(len);
-
-    cache = new Cache(strategy, new ImageProcessorSource(r), true);
+    // merged views need every channel at the positions ahead
+    CacheStrategy strategy = this.merge ?
+      new RectangleStrategy(len) : new CrosshairStrategy(len);
+
+    cache = new Cache(strategy, new PlaneSource(r, len), false);
+    cache.addCacheListener(new CacheListener() {
+      @Override
+      public void cacheUpdated(CacheEvent e) {
+        if (e.getType() == CacheEvent.OBJECT_LOADED) {
+          planeLoaded(e.getIndex());
+        }
+      }
+    });
 
     methodStacks = new ArrayList<List<MethodEntry>>();
     for (int i=0; i<r.getImageCount(); i++) {
       methodStacks.add(new ArrayList<MethodEntry>());
     }
+
+    setCacheSize(0);
   }
 
   // -- BFVirtualStack API methods --
@@ -152,38 +225,167 @@ public class BFVirtualStack extends VirtualStack {
     this.planeIndexes = planeIndexes;
   }
 
+  /** Gets the upper bound on the memory used by cached planes, in bytes. */
+  public long getCacheSize() { return cacheSize; }
+
+  /**
+   * Sets the upper bound on the memory used by cached planes, in bytes.
+   * At least the current plane (or all channels of it, for a merged view)
+   * is always cached.
+   */
+  public synchronized void setCacheSize(long bytes) throws CacheException {
+    cacheSize = bytes;
+    reader.setSeries(series);
+    long planeSize = (long) reader.getSizeX() * reader.getSizeY() *
+      reader.getRGBChannelCount() *
+      FormatTools.getBytesPerPixel(reader.getPixelType());
+    long previewSize = planeSize / Math.max(1, getPreviewScale() *
+      getPreviewScale());
+
+    // previews may take up to a quarter of the cache
+    maxPreviews = getPreviewScale() > 1 ?
+      (int) Math.min(Integer.MAX_VALUE, bytes / 4 / previewSize) : 0;
+    if (previews == null) {
+      previews = new LinkedHashMap<Integer, ImageProcessor>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(
+          Map.Entry<Integer, ImageProcessor> eldest)
+        {
+          return size() > maxPreviews;
+        }
+      };
+    }
+    updateStrategy();
+  }
+
+  /**
+   * Starts reading planes ahead of the current one in the background, with
+   * one thread per given reader. The readers must be initialized on the same
+   * dataset as this stack's reader; they are closed by {@link #dispose()}.
+   */
+  public synchronized void startPrefetching(IFormatReader[] readers)
+    throws CacheException
+  {
+    if (disposed) {
+      closeReaders(readers);
+      return;
+    }
+    stopPrefetching();
+    ICacheSource[] sources = new ICacheSource[readers.length];
+    for (int i=0; i<readers.length; i++) {
+      readers[i].setSeries(series);
+      sources[i] = new PlaneSource(readers[i], len);
+    }
+    prefetchReaders = readers;
+    prefetcher = new CachePrefetcher(cache, sources);
+  }
+
+  /** Stops reading planes in the background, and closes its readers. */
+  public synchronized void stopPrefetching() {
+    if (prefetcher != null) {
+      prefetcher.quit();
+      prefetcher = null;
+    }
+    if (prefetchReaders != null) {
+      closeReaders(prefetchReaders);
+      prefetchReaders = null;
+    }
+  }
+
+  /**
+   * Stops reading planes in the background, and discards cached planes.
+   * Any later {@link #startPrefetching(IFormatReader[])} closes its readers
+   * without using them.
+   */
+  public synchronized void dispose() {
+    disposed = true;
+    imp = null;
+    stopPrefetching();
+    cache.retain(new int[0]);
+    synchronized (previews) {
+      previews.clear();
+    }
+  }
+
+  /**
+   * Sets the image to refresh once a plane it shows as a preview has been
+   * read in full.
+   */
+  public void setImagePlus(VirtualImagePlus imp) {
+    this.imp = imp;
+  }
+
+  /**
+   * Sets whether {@link #getProcessor(int)} may return a preview, rather than
+   * wait for a missing plane, when called from the current thread.
+   */
+  public void setPreviewAllowed(boolean allowed) {
+    if (allowed) previewAllowed.set(Boolean.TRUE);
+    else previewAllowed.remove();
+  }
+
   // -- VirtualStack API methods --
 
   @Override
-  public synchronized ImageProcessor getProcessor(int n) {
-    reader.setSeries(series);
+  public ImageProcessor getProcessor(int n) {
+    // NB: planes are read without holding the lock on this stack, so that
+    // a slow read does not block the other threads using it
+    int[] pos;
+    int[] cachePos;
+    synchronized (this) {
+      reader.setSeries(series);
+
+      // check cache first
+      if (currentSlice >= 0 && currentProcessor != null) {
+        List<MethodEntry> currentStack = currentProcessor.getMethodStack();
+        if (currentStack.size() > 1) {
+          methodStacks.get(currentSlice).addAll(currentStack);
+        }
+      }
+      int sliceIndex = planeIndexes == null ? n - 1 : planeIndexes[n - 1];
+      pos = reader.getZCTCoords(sliceIndex);
+      if (merge) pos = new ChannelMerger(reader).getZCTCoords(sliceIndex);
+      cachePos = getCachePosition(len, pos[0], pos[1], pos[2]);
+      synchronized (previewIndices) {
+        previewIndices.clear();
+      }
 
-    // check cache first
-    if (currentSlice >= 0 && currentProcessor != null) {
-      List<MethodEntry> currentStack = currentProcessor.getMethodStack();
-      if (currentStack.size() > 1) {
-        methodStacks.get(currentSlice).addAll(currentStack);
+      try {
+        setCurrentPos(cachePos);
+      }
+      catch (CacheException exc) {
+        exc.printStackTrace();
       }
     }
-    int sliceIndex = planeIndexes == null ? n - 1 : planeIndexes[n - 1];
-    int[] pos = reader.getZCTCoords(sliceIndex);
-    if (merge) pos = new ChannelMerger(reader).getZCTCoords(sliceIndex);
-    int[] cachePos = FormatTools.rasterToPosition(len, sliceIndex);
-    ImageProcessor ip = null;
+    boolean preview = Boolean.TRUE.equals(previewAllowed.get());
 
-    try {
-      ip = (ImageProcessor) cache.getObject(cachePos);
-      cache.setCurrentPos(cachePos);
+    if (merge && !colorize) {
+      int[] indices = new int[reader.getSizeC()];
+      for (int c=0; c<indices.length; c++) {
+        indices[c] = FormatTools.positionToRaster(len,
+          getCachePosition(len, pos[0], c, pos[2]));
+      }
+      ImageProcessor[] planes = preview ? getPreviews(indices) : null;
+      if (planes == null) planes = readPlanes(indices);
+      if (planes[pos[1]] == null) return null;
+      ImageProcessor[] otherChannels = new ImageProcessor[planes.length - 1];
+      for (int i=0; i<otherChannels.length; i++) {
+        otherChannels[i] = planes[i >= pos[1] ? i + 1 : i];
+      }
+      return setCurrentProcessor(n,
+        new RecordedImageProcessor(planes[pos[1]], pos[1], otherChannels));
     }
-    catch (CacheException exc) {
-      exc.printStackTrace();
+
+    int index = FormatTools.positionToRaster(len, cachePos);
+    ImageProcessor ip = (ImageProcessor) cache.getObject(index);
+    if (ip == null && preview) {
+      ip = getPreview(cachePos);
+      if (ip != null) setPreviewIndices(new int[] {index});
     }
 
     // cache missed
     try {
-      if (ip == null) {
-        ip = reader.openProcessors(reader.getIndex(pos[0], pos[1], pos[2]))[0];
-      }
+      if (ip == null) ip = readPlane(index);
     }
     catch (FormatException exc) {
       exc.printStackTrace();
@@ -191,6 +393,7 @@ public class BFVirtualStack extends VirtualStack {
     catch (IOException exc) {
       exc.printStackTrace();
     }
+    if (ip == null) return null;
 
     if (colorize) {
       // apply color table, if necessary
@@ -208,59 +411,9 @@ public class BFVirtualStack extends VirtualStack {
       }
       else model = new IndexColorModel(8, 256, lut, lut, lut);
 
-      if (ip != null) ip.setColorModel(model);
+      ip.setColorModel(model);
     }
-    else if (merge) {
-      currentSlice = n - 1;
-      ImageProcessor[] otherChannels =
-        new ImageProcessor[reader.getSizeC() - 1];
-      for (int i=0; i<otherChannels.length; i++) {
-        int channel = i >= pos[1] ? i + 1 : i;
-        try {
-          cachePos[0] = channel;
-          otherChannels[i] = (ImageProcessor) cache.getObject(cachePos);
-        }
-        catch (CacheException exc) {
-          exc.printStackTrace();
-        }
-        if (otherChannels[i] == null) {
-          try {
-            int index = reader.getIndex(pos[0], channel, pos[2]);
-            otherChannels[i] = reader.openProcessors(index)[0];
-          }
-          catch (FormatException exc) {
-            exc.printStackTrace();
-          }
-          catch (IOException exc) {
-            exc.printStackTrace();
-          }
-        }
-      }
-      currentProcessor = new RecordedImageProcessor(ip, pos[1], otherChannels);
-      currentProcessor.setDoRecording(record);
-      if (calibrationTable == null) {
-        calibrationTable = currentProcessor.getChild().getCalibrationTable();
-      }
-      else {
-        currentProcessor.setCalibrationTable(calibrationTable);
-      }
-      return currentProcessor.getChild();
-    }
-
-    if (ip != null) {
-      currentSlice = n - 1;
-      currentProcessor = new RecordedImageProcessor(ip);
-      currentProcessor.setDoRecording(record);
-      if (calibrationTable == null) {
-        calibrationTable = currentProcessor.getChild().getCalibrationTable();
-      }
-      else {
-        currentProcessor.setCalibrationTable(calibrationTable);
-      }
-      return currentProcessor.getChild();
-    }
-
-    return null;
+    return setCurrentProcessor(n, new RecordedImageProcessor(ip));
   }
 
   @Override
@@ -283,4 +436,318 @@ public class BFVirtualStack extends VirtualStack {
     return planeIndexes == null ? reader.getImageCount() : planeIndexes.length;
   }
 
+  // -- Helper methods --
+
+  /**
+   * Moves the cache to the given position, pointing the prefetched range
+   * in the direction of travel.
+   */
+  private void setCurrentPos(int[] cachePos) throws CacheException {
+    if (lastPos != null) {
+      int channels = merge ? len.length - 2 : 0;
+      for (int i=channels; i<len.length; i++) {
+        if (cachePos[i] != lastPos[i]) {
+          boolean forward = cachePos[i] > lastPos[i];
+          if (i != scrollAxis || forward != scrollForward) {
+            scrollAxis = i;
+            scrollForward = forward;
+            updateStrategy();
+          }
+          break;
+        }
+      }
+    }
+    lastPos = cachePos.clone();
+
+    cache.setCurrentPos(cachePos);
+    if (prefetcher == null) {
+      // nothing is loaded in the background, but still drop stale planes
+      ICacheStrategy strategy = cache.getStrategy();
+      int[][] positions = strategy.getLoadList(cachePos);
+      int[] indices = new int[positions.length];
+      for (int i=0; i<positions.length; i++) {
+        indices[i] = FormatTools.positionToRaster(len, positions[i]);
+      }
+      cache.retain(indices);
+    }
+  }
+
+  /**
+   * Sets the cache strategy's ranges so that the planes it keeps fit within
+   * the cache size, favoring the scrolling axis and direction.
+   */
+  private void updateStrategy() throws CacheException {
+    ICacheStrategy strategy = cache.getStrategy();
+    int channels = merge ? len.length - 2 : 0;
+    long planeSize = (long) getWidth() * getHeight() *
+      reader.getRGBChannelCount() *
+      FormatTools.getBytesPerPixel(reader.getPixelType());
+    long planesPerPos = 1;
+    for (int i=0; i<channels; i++) planesPerPos *= len[i];
+    long ahead = Math.max(0, cacheSize / planeSize / planesPerPos - 1);
+
+    int axis = scrollAxis;
+    if (axis < 0) {
+      // until the user scrolls, assume Z, or T for a single focal plane
+      axis = len[len.length - 2] > 1 ? len.length - 2 : len.length - 1;
+    }
+    for (int i=0; i<len.length; i++) {
+      if (i < channels) {
+        strategy.setOrder(ICacheStrategy.CENTERED_ORDER, i);
+        strategy.setPriority(ICacheStrategy.NORMAL_PRIORITY, i);
+        strategy.setRange(len[i], i);
+      }
+      else if (i == axis) {
+        int range = (int) Math.min(ahead, len[i] - 1);
+        if (scrollAxis < 0) {
+          strategy.setOrder(ICacheStrategy.CENTERED_ORDER, i);
+          range /= 2;
+        }
+        else {
+          strategy.setOrder(scrollForward ?
+            ICacheStrategy.FORWARD_ORDER : ICacheStrategy.BACKWARD_ORDER, i);
+        }
+        strategy.setPriority(ICacheStrategy.HIGH_PRIORITY, i);
+        strategy.setRange(range, i);
+      }
+      else {
+        strategy.setOrder(ICacheStrategy.CENTERED_ORDER, i);
+        strategy.setPriority(ICacheStrategy.NORMAL_PRIORITY, i);
+        strategy.setRange(0, i);
+      }
+    }
+  }
+
+  /** Makes the given plane the current one, recording its operations. */
+  private synchronized ImageProcessor setCurrentProcessor(int n,
+    RecordedImageProcessor processor)
+  {
+    currentSlice = n - 1;
+    currentProcessor = processor;
+    currentProcessor.setDoRecording(record);
+    if (calibrationTable == null) {
+      calibrationTable = currentProcessor.getChild().getCalibrationTable();
+    }
+    else {
+      currentProcessor.setCalibrationTable(calibrationTable);
+    }
+    return currentProcessor.getChild();
+  }
+
+  /** Reads the given plane with this stack's reader, and caches it. */
+  private ImageProcessor readPlane(int index)
+    throws FormatException, IOException
+  {
+    ImageProcessor ip;
+    synchronized (reader) {
+      reader.setSeries(series);
+      int no = getPlaneIndex(reader, len, index);
+      ip = reader.openProcessors(no)[0];
+    }
+    if (!cache.setObject(index, ip)) addPreview(index, ip);
+    return ip;
+  }
+
+  /**
+   * Gets the given planes, having the prefetcher's readers read any missing
+   * ones in parallel and reading the rest with this stack's reader.
+   */
+  private ImageProcessor[] readPlanes(int[] indices) {
+    ImageProcessor[] planes = new ImageProcessor[indices.length];
+    CachePrefetcher loader = prefetcher;
+    if (loader != null) loader.request(indices);
+    synchronized (loadLock) {
+      while (true) {
+        boolean loading = false;
+        for (int i=0; i<indices.length; i++) {
+          if (planes[i] == null) {
+            planes[i] = (ImageProcessor) cache.getObject(indices[i]);
+            if (planes[i] == null && loader != null) {
+              loading |= loader.isLoading(indices[i]);
+            }
+          }
+        }
+        if (!loading) break;
+        try {
+          loadLock.wait(50);
+        }
+        catch (InterruptedException exc) {
+          break;
+        }
+      }
+    }
+    for (int i=0; i<indices.length; i++) {
+      if (planes[i] != null) continue;
+      try {
+        planes[i] = readPlane(indices[i]);
+      }
+      catch (FormatException exc) {
+        exc.printStackTrace();
+      }
+      catch (IOException exc) {
+        exc.printStackTrace();
+      }
+    }
+    return planes;
+  }
+
+  /** Handles a plane having been stored in the cache. */
+  private void planeLoaded(int index) {
+    addPreview(index, (ImageProcessor) cache.getObject(index));
+    synchronized (loadLock) {
+      loadLock.notifyAll();
+    }
+    boolean refresh;
+    synchronized (previewIndices) {
+      refresh = previewIndices.remove(index) && previewIndices.isEmpty();
+    }
+    if (refresh) refreshImage();
+  }
+
+  /**
+   * Records the planes shown as previews, so that the image is refreshed
+   * once all of them have been read.
+   */
+  private void setPreviewIndices(int[] indices) {
+    if (indices.length == 0) return;
+    boolean refresh;
+    synchronized (previewIndices) {
+      for (int index : indices) previewIndices.add(index);
+      // planes read in the meantime do not need to be waited for
+      for (int index : indices) {
+        if (cache.getObject(index) != null) previewIndices.remove(index);
+      }
+      refresh = previewIndices.isEmpty();
+    }
+    if (refresh) refreshImage();
+  }
+
+  /** Redisplays the current plane of the image showing this stack. */
+  private void refreshImage() {
+    final VirtualImagePlus display = imp;
+    if (display == null) return;
+    EventQueue.invokeLater(new Runnable() {
+      @Override
+      public void run() {
+        display.refreshSlice();
+      }
+    });
+  }
+
+  /**
+   * Gets the given planes of a merged view, with a preview in place of each
+   * plane that has not been read yet, or null if some plane has neither.
+   */
+  private ImageProcessor[] getPreviews(int[] indices) {
+    ImageProcessor[] planes = new ImageProcessor[indices.length];
+    List<Integer> missing = new ArrayList<Integer>();
+    for (int i=0; i<indices.length; i++) {
+      planes[i] = (ImageProcessor) cache.getObject(indices[i]);
+      if (planes[i] != null) continue;
+      planes[i] = getPreview(FormatTools.rasterToPosition(len, indices[i]));
+      if (planes[i] == null) return null;
+      missing.add(indices[i]);
+    }
+    int[] previewed = new int[missing.size()];
+    for (int i=0; i<previewed.length; i++) previewed[i] = missing.get(i);
+    setPreviewIndices(previewed);
+    return planes;
+  }
+
+  /** Gets the factor by which previews are smaller than the planes. */
+  private int getPreviewScale() {
+    int size = Math.max(getWidth(), getHeight());
+    return Math.max(1, size / PREVIEW_SIZE);
+  }
+
+  private void addPreview(int index, ImageProcessor ip) {
+    int scale = getPreviewScale();
+    if (ip == null || scale <= 1) return;
+    synchronized (previews) {
+      if (previews.containsKey(index)) return;
+    }
+    ImageProcessor preview = ip.resize(Math.max(1, ip.getWidth() / scale),
+      Math.max(1, ip.getHeight() / scale), true);
+    synchronized (previews) {
+      previews.put(index, preview);
+    }
+  }
+
+  /**
+   * Gets a full-size copy of the preview nearest to the given position along
+   * the scrolling axis, or null if there is none.
+   */
+  ImageProcessor getPreview(int[] cachePos) {
+    int axis = scrollAxis < 0 ? len.length - 2 : scrollAxis;
+    int[] pos = cachePos.clone();
+    ImageProcessor preview = null;
+    synchronized (previews) {
+      if (previews.isEmpty()) return null;
+      for (int d=0; d<len[axis] && preview == null; d++) {
+        for (int sign=-1; sign<=1 && preview == null; sign+=2) {
+          pos[axis] = cachePos[axis] + sign * d;
+          if (pos[axis] < 0 || pos[axis] >= len[axis]) continue;
+          preview = previews.get(FormatTools.positionToRaster(len, pos));
+        }
+      }
+    }
+    if (preview == null) return null;
+    preview.setInterpolationMethod(ImageProcessor.BILINEAR);
+    return preview.resize(getWidth(), getHeight());
+  }
+
+  /** Gets the cache position of the given plane. */
+  static int[] getCachePosition(int[] lengths, int z, int c, int t) {
+    int[] cachePos = new int[lengths.length];
+    if (lengths.length > 3) {
+      cachePos[0] = c / lengths[1];
+      cachePos[1] = c % lengths[1];
+    }
+    else cachePos[0] = c;
+    cachePos[lengths.length - 2] = z;
+    cachePos[lengths.length - 1] = t;
+    return cachePos;
+  }
+
+  /** Gets the reader's plane index for the given cache index. */
+  static int getPlaneIndex(IFormatReader r, int[] lengths, int index) {
+    int[] cachePos = FormatTools.rasterToPosition(lengths, index);
+    int c = cachePos[0];
+    if (lengths.length > 3) c = c * lengths[1] + cachePos[1];
+    return r.getIndex(cachePos[lengths.length - 2], c,
+      cachePos[lengths.length - 1]);
+  }
+
+  private static void closeReaders(IFormatReader[] readers) {
+    for (IFormatReader r : readers) {
+      try {
+        r.close();
+      }
+      catch (IOException exc) { }
+    }
+  }
+
+  // -- Helper classes --
+
+  /**
+   * Retrieves planes by cache index, i.e. with the channel axes varying
+   * fastest regardless of the reader's dimension order.
+   */
+  private static class PlaneSource extends ImageProcessorSource {
+
+    private int[] lengths;
+
+    public PlaneSource(IFormatReader reader, int[] lengths) {
+      super(reader);
+      this.lengths = lengths;
+    }
+
+    /* @see loci.formats.cache.ICacheSource#getObject(int) */
+    @Override
+    public Object getObject(int index) throws CacheException {
+      return super.getObject(getPlaneIndex(reader, lengths, index));
+    }
+
+  }
+
 }
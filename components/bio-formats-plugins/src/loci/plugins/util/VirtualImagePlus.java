@@ -55,6 +55,9 @@ public class VirtualImagePlus extends ImagePlus {
 
   public VirtualImagePlus(String title, ImageStack stack) {
     super(title, stack);
+    if (stack instanceof BFVirtualStack) {
+      ((BFVirtualStack) stack).setImagePlus(this);
+    }
     // call getStatistics() to ensure that single-slice stacks have the
     // correct pixel type
     getStatistics();
@@ -70,33 +73,44 @@ public class VirtualImagePlus extends ImagePlus {
     this.luts = luts;
   }
 
+  /**
+   * Redisplays the current slice, e.g. once the plane shown as a preview
+   * has been read in full.
+   */
+  public synchronized void refreshSlice() {
+    if (!(getStack() instanceof BFVirtualStack)) return;
+    BFVirtualStack stack = (BFVirtualStack) getStack();
+    if (stack.getProcessor(getCurrentSlice()) == null) return;
+    updateProcessor(stack);
+    updateAndDraw();
+  }
+
   // -- ImagePlus API methods --
 
   @Override
   public synchronized void setSlice(int index) {
-    super.setSlice(index);
+    if (!(getStack() instanceof BFVirtualStack)) {
+      super.setSlice(index);
+      return;
+    }
 
-    BFVirtualStack stack = null;
-    if (getStack() instanceof BFVirtualStack) {
-      stack = (BFVirtualStack) getStack();
-      RecordedImageProcessor proc = stack.getRecordedProcessor();
-      List<MethodEntry> methods = stack.getMethodStack();
-      if (methods != null) {
-        proc.applyMethodStack(methods);
-      }
-      // if we call setProcessor(getTitle(), proc), the type will be set
-      // to GRAY32 (regardless of the actual processor type)
-      setProcessor(getTitle(), proc.getChild());
-      int channel = getChannel() - 1;
-      if (channel >= 0 && luts != null && channel < luts.length) {
-        getProcessor().setColorModel(luts[channel]);
-      }
-      this.ip = proc;
+    // a preview may be shown while the plane is read in the background
+    BFVirtualStack stack = (BFVirtualStack) getStack();
+    stack.setPreviewAllowed(true);
+    try {
+      super.setSlice(index);
+    }
+    finally {
+      stack.setPreviewAllowed(false);
     }
+    updateProcessor(stack);
   }
 
   @Override
   public void close() {
+    if (getStack() instanceof BFVirtualStack) {
+      ((BFVirtualStack) getStack()).dispose();
+    }
     super.close();
     try {
       r.close();
@@ -120,4 +134,23 @@ public class VirtualImagePlus extends ImagePlus {
     return super.getStatistics(mOptions, nBins, histMin, histMax);
   }
 
+  // -- Helper methods --
+
+  /** Replaces this image's processor with the stack's current processor. */
+  private void updateProcessor(BFVirtualStack stack) {
+    RecordedImageProcessor proc = stack.getRecordedProcessor();
+    List<MethodEntry> methods = stack.getMethodStack();
+    if (methods != null) {
+      proc.applyMethodStack(methods);
+    }
+    // if we call setProcessor(getTitle(), proc), the type will be set
+    // to GRAY32 (regardless of the actual processor type)
+    setProcessor(getTitle(), proc.getChild());
+    int channel = getChannel() - 1;
+    if (channel >= 0 && luts != null && channel < luts.length) {
+      getProcessor().setColorModel(luts[channel]);
+    }
+    this.ip = proc;
+  }
+
 }
@@ -1740,6 +1740,61 @@ public class ImporterTest {
     croppedPixelsTest(imp,ox,cropSize);
   }
 
+  /** tests BF's options.setParallelRead() */
+  private void memoryParallelReadTester(int pixType, int x, int y, int z, int c, int t, int numSeries)
+  {
+    String path = constructFakeFilename("parallel", pixType, x, y, z, c, t, numSeries, false, -1, false, -1);
+
+    // open image serially and in parallel
+    ImagePlus[] serial = null, parallel = null;
+
+    try {
+      ImporterOptions options = new ImporterOptions();
+      options.setAutoscale(true);
+      options.setId(path);
+      options.setOpenAllSeries(true);
+      serial = BF.openImagePlus(options);
+
+      options = new ImporterOptions();
+      options.setAutoscale(true);
+      options.setId(path);
+      options.setOpenAllSeries(true);
+      options.setParallelRead(true);
+      parallel = BF.openImagePlus(options);
+    }
+    catch (IOException e) {
+      fail(e.getMessage());
+    }
+    catch (FormatException e) {
+      fail(e.getMessage());
+    }
+
+    // test results
+    impsCountTest(parallel,numSeries);
+
+    for (int s = 0; s < numSeries; s++)
+    {
+      ImagePlus imp = parallel[s];
+
+      xyzctTest(imp,x,y,z,c,t);
+
+      // test planes were added to the stack in order
+      if (s == 0)
+        stackInZctOrderTest(imp,z,c,t,false,false);
+      ImageStack expected = serial[s].getStack();
+      ImageStack actual = imp.getStack();
+      for (int i = 1; i <= actual.getSize(); i++)
+      {
+        assertEquals(s, sIndex(actual.getProcessor(i)));
+        assertEquals(iIndex(expected.getProcessor(i)), iIndex(actual.getProcessor(i)));
+      }
+
+      // test autoscaling saw every plane
+      assertEquals(serial[s].getDisplayRangeMin(), imp.getDisplayRangeMin(), 0);
+      assertEquals(serial[s].getDisplayRangeMax(), imp.getDisplayRangeMax(), 0);
+    }
+  }
+
   /** tests BF's options.setSplitChannels() */
   private void splitChannelsTester()
   {
@@ -2386,6 +2441,15 @@ public class ImporterTest {
     memoryCropTester(100, 122, 0, 15, 3);
   }
 
+  @Test
+  public void testMemoryParallelRead()
+  {
+    memoryParallelReadTester(FormatTools.UINT8, 50, 20, 7, 3, 5, 1);
+    memoryParallelReadTester(FormatTools.UINT16, 67, 41, 11, 1, 4, 1);
+    // the workers' readers are reused for every series
+    memoryParallelReadTester(FormatTools.UINT8, 50, 20, 4, 2, 3, 3);
+  }
+
   @Test
   public void testSplitChannels()
   {
@@ -0,0 +1,342 @@
+/*
+ * #%L
+ * Bio-Formats Plugins for ImageJ: a collection of ImageJ plugins including the
+ * Bio-Formats Importer, Bio-Formats Exporter, Bio-Formats Macro Extensions,
+ * Data Browser and Stack Slicer.
+ * %%
+ * Copyright (C) 2006 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package loci.plugins.util;
+
+import ij.process.ImageProcessor;
+
+import java.io.IOException;
+
+import loci.formats.FormatException;
+import loci.formats.FormatTools;
+import loci.formats.IFormatReader;
+import loci.formats.ReaderWrapper;
+import loci.formats.cache.CacheException;
+import loci.formats.cache.ICacheStrategy;
+import loci.formats.in.FakeReader;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+/**
+ * Tests the plane lookup, cache strategy and previews of
+ * {@link BFVirtualStack}.
+ */
+public class BFVirtualStackTest {
+
+  // -- Constants --
+
+  /** Column of the FakeReader box holding the plane number. */
+  private static final int PLANE_NUMBER_X = FakeReader.BOX_SIZE * 3 / 2;
+  private static final int PLANE_NUMBER_Y = FakeReader.BOX_SIZE / 2;
+
+  /** Cache axes of a stack with a single channel axis. */
+  private static final int C_AXIS = 0, Z_AXIS = 1, T_AXIS = 2;
+
+  // -- Fields --
+
+  private CountingReader reader;
+
+  // -- Setup/teardown methods --
+
+  @AfterMethod
+  public void tearDown() throws IOException {
+    if (reader != null) reader.close();
+    reader = null;
+  }
+
+  // -- Data providers --
+
+  @DataProvider(name = "dimensionOrders")
+  public Object[][] createDimensionOrders() {
+    return new Object[][] {
+      {"XYCZT"}, {"XYZTC"}, {"XYTCZ"}, {"XYCTZ"}, {"XYZCT"}, {"XYTZC"}
+    };
+  }
+
+  // -- Tests --
+
+  @Test(dataProvider = "dimensionOrders")
+  public void testPlaneIndex(String order) throws Exception {
+    initReader("dimOrder=" + order + "&sizeZ=3&sizeC=6&sizeT=4");
+    int[] lengths = {6, 3, 4};
+    int[] subLengths = {2, 3, 3, 4};
+    for (int no=0; no<reader.getImageCount(); no++) {
+      int[] zct = reader.getZCTCoords(no);
+
+      int[] pos = BFVirtualStack.getCachePosition(lengths,
+        zct[0], zct[1], zct[2]);
+      assertEquals(pos, new int[] {zct[1], zct[0], zct[2]});
+      int index = FormatTools.positionToRaster(lengths, pos);
+      assertEquals(BFVirtualStack.getPlaneIndex(reader, lengths, index), no);
+
+      // channels split into two axes, e.g. for modulo C
+      pos = BFVirtualStack.getCachePosition(subLengths,
+        zct[0], zct[1], zct[2]);
+      assertEquals(pos, new int[] {zct[1] / 3, zct[1] % 3, zct[0], zct[2]});
+      index = FormatTools.positionToRaster(subLengths, pos);
+      assertEquals(BFVirtualStack.getPlaneIndex(reader, subLengths, index),
+        no);
+    }
+  }
+
+  @Test(dataProvider = "dimensionOrders")
+  public void testGetProcessor(String order) throws Exception {
+    initReader("dimOrder=" + order + "&sizeZ=3&sizeC=2&sizeT=4");
+    BFVirtualStack stack = createStack(false);
+    stack.setCacheSize(BFVirtualStack.DEFAULT_CACHE_SIZE);
+    assertEquals(stack.getSize(), reader.getImageCount());
+    for (int n=1; n<=stack.getSize(); n++) {
+      assertEquals(getPlaneNumber(stack.getProcessor(n)), n - 1);
+    }
+    // backwards, so that cached planes are returned too
+    for (int n=stack.getSize(); n>=1; n--) {
+      assertEquals(getPlaneNumber(stack.getProcessor(n)), n - 1);
+    }
+    stack.dispose();
+  }
+
+  @Test
+  public void testUpdateStrategy() throws Exception {
+    initReader("dimOrder=XYCTZ&sizeZ=6&sizeC=2&sizeT=4");
+    BFVirtualStack stack = createStack(false);
+    ICacheStrategy strategy = stack.getCache().getStrategy();
+
+    // only the current plane is cached by default
+    assertEquals(strategy.getRange(), new int[] {0, 0, 0});
+
+    stack.setCacheSize(getPlaneSize() * 5);
+    assertEquals(strategy.getOrder()[Z_AXIS], ICacheStrategy.CENTERED_ORDER);
+    assertEquals(strategy.getRange(), new int[] {0, 2, 0});
+
+    getProcessor(stack, 2, 0, 1);
+    getProcessor(stack, 3, 0, 1);
+    assertEquals(strategy.getOrder()[Z_AXIS], ICacheStrategy.FORWARD_ORDER);
+    assertEquals(strategy.getPriorities()[Z_AXIS],
+      ICacheStrategy.HIGH_PRIORITY);
+    assertEquals(strategy.getRange(), new int[] {0, 4, 0});
+
+    getProcessor(stack, 1, 0, 1);
+    assertEquals(strategy.getOrder()[Z_AXIS], ICacheStrategy.BACKWARD_ORDER);
+    assertEquals(strategy.getRange(), new int[] {0, 4, 0});
+
+    getProcessor(stack, 1, 1, 1);
+    assertEquals(strategy.getOrder()[C_AXIS], ICacheStrategy.FORWARD_ORDER);
+    assertEquals(strategy.getOrder()[Z_AXIS], ICacheStrategy.CENTERED_ORDER);
+    assertEquals(strategy.getRange(), new int[] {1, 0, 0});
+
+    getProcessor(stack, 1, 1, 3);
+    assertEquals(strategy.getOrder()[T_AXIS], ICacheStrategy.FORWARD_ORDER);
+    assertEquals(strategy.getOrder()[C_AXIS], ICacheStrategy.CENTERED_ORDER);
+    assertEquals(strategy.getRange(), new int[] {0, 0, 3});
+
+    getProcessor(stack, 1, 1, 0);
+    assertEquals(strategy.getOrder()[T_AXIS], ICacheStrategy.BACKWARD_ORDER);
+
+    // a smaller cache shortens the range, but keeps the direction
+    stack.setCacheSize(getPlaneSize() * 2);
+    assertEquals(strategy.getOrder()[T_AXIS], ICacheStrategy.BACKWARD_ORDER);
+    assertEquals(strategy.getRange(), new int[] {0, 0, 1});
+    stack.dispose();
+  }
+
+  @Test
+  public void testUpdateStrategyMerged() throws Exception {
+    initReader("sizeZ=6&sizeC=3&sizeT=2");
+    BFVirtualStack stack = createStack(true);
+    ICacheStrategy strategy = stack.getCache().getStrategy();
+
+    // every channel of a position is kept, and counts against the cache
+    stack.setCacheSize(getPlaneSize() * 3 * 3);
+    assertEquals(strategy.getRange(), new int[] {3, 1, 0});
+    assertEquals(strategy.getOrder()[C_AXIS], ICacheStrategy.CENTERED_ORDER);
+
+    stack.getProcessor(1);
+    stack.getProcessor(2);
+    assertEquals(strategy.getOrder()[Z_AXIS], ICacheStrategy.FORWARD_ORDER);
+    assertEquals(strategy.getRange(), new int[] {3, 2, 0});
+    stack.dispose();
+  }
+
+  @Test
+  public void testGetPreview() throws Exception {
+    initReader("sizeX=512&sizeY=512&sizeZ=8");
+    BFVirtualStack stack = createStack(false);
+    int[] first = {0, 0, 0};
+    int[] last = {0, 7, 0};
+
+    // previews are kept only when the cache has room for them
+    stack.getProcessor(1);
+    assertNull(stack.getPreview(last));
+
+    stack.setCacheSize(getPlaneSize() * 4);
+    stack.getProcessor(3);
+    ImageProcessor preview = stack.getPreview(last);
+    assertNotNull(preview);
+    assertEquals(preview.getWidth(), reader.getSizeX());
+    assertEquals(preview.getHeight(), reader.getSizeY());
+    assertNotNull(stack.getPreview(first));
+
+    // a missing plane is previewed from the nearest plane read so far
+    int opened = reader.opened;
+    stack.setPreviewAllowed(true);
+    ImageProcessor ip = stack.getProcessor(8);
+    assertEquals(reader.opened, opened);
+    assertEquals(ip.getWidth(), reader.getSizeX());
+    assertEquals(ip.getHeight(), reader.getSizeY());
+    assertEquals(ip.getPixel(reader.getSizeX() / 2, reader.getSizeY() / 2),
+      preview.getPixel(reader.getSizeX() / 2, reader.getSizeY() / 2));
+
+    // unless previews are not allowed on this thread
+    stack.setPreviewAllowed(false);
+    ip = stack.getProcessor(8);
+    assertEquals(reader.opened, opened + 1);
+    assertEquals(getPlaneNumber(ip), 7);
+
+    stack.dispose();
+    assertNull(stack.getPreview(last));
+  }
+
+  @Test
+  public void testGetPreviewSmallPlanes() throws Exception {
+    initReader("sizeX=128&sizeY=128&sizeZ=4");
+    BFVirtualStack stack = createStack(false);
+    stack.setCacheSize(BFVirtualStack.DEFAULT_CACHE_SIZE);
+    stack.getProcessor(1);
+    stack.getProcessor(4);
+
+    // planes no bigger than a preview are not previewed
+    assertNull(stack.getPreview(new int[] {0, 2, 0}));
+    stack.dispose();
+  }
+
+  @Test
+  public void testGetProcessorMerged() throws Exception {
+    initReader("sizeZ=4&sizeC=3");
+    BFVirtualStack stack = createStack(true);
+    stack.setCacheSize(getPlaneSize() * 3);
+    CountingReader[] readers = new CountingReader[3];
+    for (int i=0; i<readers.length; i++) {
+      readers[i] = new CountingReader(new FakeReader());
+      readers[i].setId(reader.getCurrentFile());
+    }
+    stack.startPrefetching(readers);
+
+    // the missing channels are all read by the prefetching readers
+    assertEquals(getPlaneNumber(stack.getProcessor(2)),
+      reader.getIndex(1, 0, 0));
+    assertEquals(reader.opened, 0);
+    for (int c=0; c<reader.getSizeC(); c++) {
+      int index = FormatTools.positionToRaster(new int[] {3, 4, 1},
+        new int[] {c, 1, 0});
+      assertNotNull(stack.getCache().getObject(index));
+    }
+    stack.dispose();
+  }
+
+  @Test
+  public void testGetPreviewMerged() throws Exception {
+    initReader("sizeX=512&sizeY=512&sizeZ=8&sizeC=2");
+    BFVirtualStack stack = createStack(true);
+    stack.setCacheSize(getPlaneSize() * 2 * 4);
+    stack.getProcessor(3);
+    int opened = reader.opened;
+    assertEquals(opened, 2);
+
+    // every channel is previewed from the nearest position read so far
+    stack.setPreviewAllowed(true);
+    ImageProcessor ip = stack.getProcessor(8);
+    assertEquals(reader.opened, opened);
+    assertEquals(ip.getWidth(), reader.getSizeX());
+    assertEquals(ip.getHeight(), reader.getSizeY());
+
+    stack.setPreviewAllowed(false);
+    ip = stack.getProcessor(8);
+    assertEquals(reader.opened, opened + 2);
+    assertEquals(getPlaneNumber(ip), reader.getIndex(7, 0, 0));
+    stack.dispose();
+  }
+
+  // -- Helper methods --
+
+  private void initReader(String options) throws FormatException, IOException
+  {
+    reader = new CountingReader(new FakeReader());
+    reader.setId("test&" + options + ".fake");
+  }
+
+  private BFVirtualStack createStack(boolean merge)
+    throws FormatException, IOException, CacheException
+  {
+    return new BFVirtualStack(reader.getCurrentFile(), reader, false, merge,
+      false);
+  }
+
+  private long getPlaneSize() {
+    return (long) reader.getSizeX() * reader.getSizeY() *
+      FormatTools.getBytesPerPixel(reader.getPixelType());
+  }
+
+  private ImageProcessor getProcessor(BFVirtualStack stack, int z, int c,
+    int t)
+  {
+    ImageProcessor ip = stack.getProcessor(reader.getIndex(z, c, t) + 1);
+    assertEquals(getPlaneNumber(ip), reader.getIndex(z, c, t));
+    return ip;
+  }
+
+  private static int getPlaneNumber(ImageProcessor ip) {
+    return ip.getPixel(PLANE_NUMBER_X, PLANE_NUMBER_Y);
+  }
+
+  // -- Helper classes --
+
+  /** Counts the planes read from the wrapped reader. */
+  private static class CountingReader extends ReaderWrapper {
+
+    private int opened;
+
+    public CountingReader(IFormatReader r) {
+      super(r);
+    }
+
+    /* @see loci.formats.IFormatReader#openBytes(int, int, int, int, int) */
+    @Override
+    public byte[] openBytes(int no, int x, int y, int w, int h)
+      throws FormatException, IOException
+    {
+      opened++;
+      return super.openBytes(no, x, y, w, h);
+    }
+
+  }
+
+}
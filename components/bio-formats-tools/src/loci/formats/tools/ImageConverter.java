@@ -40,8 +40,16 @@ import java.io.InputStreamReader;
 import java.io.IOException;
 import java.util.Iterator;
 import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.TreeMap;
 import java.util.SortedMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import loci.common.Constants;
 import loci.common.DataTools;
@@ -67,6 +75,8 @@ import loci.formats.ImageWriter;
 import loci.formats.MetadataTools;
 import loci.formats.MinMaxCalculator;
 import loci.formats.MissingLibraryException;
+import loci.formats.PooledReader;
+import loci.formats.codec.ZstdCodecOptions;
 import loci.formats.gui.Index16ColorModel;
 import loci.formats.in.DynamicMetadataOptions;
 import loci.formats.meta.IMetadata;
@@ -118,10 +128,15 @@ public final class ImageConverter {
   private boolean zeroPadding = false;
   private boolean flat = true;
   private int pyramidScale = 1, pyramidResolutions = 1;
+  private int threads = 1;
 
   private IFormatReader reader;
   private MinMaxCalculator minMax;
 
+  /** Reader clones used when converting with more than one thread. */
+  private PooledReader pooledReader;
+  private ExecutorService readPool;
+
   private HashMap<String, Integer> nextOutputIndex = new HashMap<String, Integer>();
   private boolean firstTile = true;
   private DynamicMetadataOptions options = new DynamicMetadataOptions();
@@ -231,6 +246,16 @@ public final class ImageConverter {
           }
           catch (NumberFormatException e) { }
         }
+        else if (args[i].equals("-threads")) {
+          try {
+            threads = Integer.parseInt(args[++i]);
+            if (threads <= 0) {
+              LOGGER.error("Invalid thread count: {}", threads);
+              return false;
+            }
+          }
+          catch (NumberFormatException e) { }
+        }
         else if (!args[i].equals(CommandLineTools.NO_UPGRADE_CHECK)) {
           LOGGER.error("Found unknown command flag: {}; exiting.", args[i]);
           return false;
@@ -298,7 +323,7 @@ public final class ImageConverter {
       "    [-map id] [-range start end] [-crop x,y,w,h]",
       "    [-channel channel] [-z Z] [-timepoint timepoint] [-nogroup]",
       "    [-nolookup] [-autoscale] [-version] [-no-upgrade] [-padded]",
-      "    [-option key value] in_file out_file",
+      "    [-option key value] [-threads count] in_file out_file",
       "",
       "    -version: print the library version and exit",
       " -no-upgrade: do not perform the upgrade check",
@@ -327,6 +352,8 @@ public final class ImageConverter {
       "  -timepoint: only convert the specified timepoint (indexed from 0)",
       "     -padded: filename indexes for series, z, c and t will be zero padded",
       "     -option: add the specified key/value pair to the options list",
+      "    -threads: number of threads used to read tiles ahead of the",
+      "              writer; not compatible with -autoscale",
       "",
       "The extension of the output file specifies the file format to use",
       "for the conversion. The list of available formats and extensions is:",
@@ -336,6 +363,13 @@ public final class ImageConverter {
       "using the -compression option. The list of available compressions is:",
       "",
       printList(getCompressions()),
+      "TIFF-based formats also accept the following -option keys:",
+      "",
+      "  " + TiffWriter.ZSTD_LEVEL_KEY + "\tZstandard level (default " +
+      ZstdCodecOptions.DEFAULT_LEVEL + ")",
+      "  " + TiffWriter.PREDICTOR_KEY + "\thorizontal differencing before " +
+      "LZW, zlib or zstd (true/false)",
+      "",
       "If any of the following patterns are present in out_file, they will",
       "be replaced with the indicated metadata value from the input file.",
       "",
@@ -441,6 +475,16 @@ public final class ImageConverter {
       reader = new MinMaxCalculator(reader);
       minMax = (MinMaxCalculator) reader;
     }
+    pooledReader = null;
+    if (threads > 1) {
+      if (autoscale) {
+        LOGGER.warn("-autoscale requires a single thread; ignoring -threads");
+      }
+      else {
+        pooledReader = new PooledReader(reader, threads);
+        reader = pooledReader;
+      }
+    }
 
     reader.setMetadataOptions(options);
     reader.setGroupFiles(group);
@@ -493,9 +537,11 @@ public final class ImageConverter {
 
     if (store instanceof MetadataRetrieve) {
       try {
-        String xml = service.getOMEXML(service.asRetrieve(store));
         OMEXMLMetadataRoot root = (OMEXMLMetadataRoot) store.getRoot();
-        IMetadata meta = service.createOMEXMLMetadata(xml);
+        // copy the metadata directly instead of writing and parsing OME-XML,
+        // which is slow for datasets with many planes
+        IMetadata meta = service.createOMEXMLMetadata();
+        service.convertMetadata(service.asRetrieve(store), meta);
         if (series >= 0) {
           Image exportImage = new Image(root.getImage(series));
           Pixels exportPixels = new Pixels(root.getImage(series).getPixels());
@@ -580,6 +626,16 @@ public final class ImageConverter {
     int first = series == -1 ? 0 : series;
     int last = series == -1 ? num : series + 1;
     long timeLastLogged = System.currentTimeMillis();
+    if (pooledReader != null) {
+      readPool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+          Thread t = new Thread(r, "bfconvert-reader");
+          t.setDaemon(true);
+          return t;
+        }
+      });
+    }
     for (int q=first; q<last; q++) {
       reader.setSeries(q);
       boolean generatePyramid = pyramidResolutions > reader.getResolutionCount();
@@ -624,13 +680,22 @@ public final class ImageConverter {
 
         total += numImages;
 
+        // whole planes are read ahead of the writer unless they will be
+        // converted tile by tile, in which case the tiles are read ahead
+        RegionReader planes = null;
+        if (readPool != null && !isTiledConversion(writer)) {
+          List<int[]> regions = new LinkedList<int[]>();
+          for (int i=startPlane; i<endPlane; i++) {
+            if (isPlaneSelected(i)) {
+              regions.add(new int[] {i, xCoordinate, yCoordinate, width, height});
+            }
+          }
+          planes = new RegionReader(writer.getResolution(), regions);
+        }
+
         int count = 0;
         for (int i=startPlane; i<endPlane; i++) {
-          int[] coords = reader.getZCTCoords(i);
-
-          if ((zSection >= 0 && coords[0] != zSection) || (channel >= 0 &&
-            coords[1] != channel) || (timepoint >= 0 && coords[2] != timepoint))
-          {
+          if (!isPlaneSelected(i)) {
             continue;
           }
 
@@ -656,7 +721,7 @@ public final class ImageConverter {
           }
 
           long s = System.currentTimeMillis();
-          long m = convertPlane(writer, i, outputIndex, outputName);
+          long m = convertPlane(writer, i, outputIndex, outputName, planes);
           long e = System.currentTimeMillis();
           read += m - s;
           write += e - m;
@@ -687,6 +752,10 @@ public final class ImageConverter {
         }
       }
     }
+    if (readPool != null) {
+      readPool.shutdown();
+      readPool = null;
+    }
     writer.close();
     long end = System.currentTimeMillis();
     LOGGER.info("[done]");
@@ -710,29 +779,21 @@ public final class ImageConverter {
    * @param index the index of the plane to convert in the input file
    * @param outputIndex the index of the plane to convert in the output file
    * @param currentFile the file name or pattern being written to
+   * @param planes the planes being read ahead of the writer, or null
    * @return the time at which conversion started, in milliseconds
    * @throws FormatException
    * @throws IOException
    */
   private long convertPlane(IFormatWriter writer, int index, int outputIndex,
-    String currentFile)
+    String currentFile, RegionReader planes)
     throws FormatException, IOException
   {
-    if (DataTools.safeMultiply64(width, height) >=
-      DataTools.safeMultiply64(4096, 4096) ||
-      saveTileWidth > 0 || saveTileHeight > 0)
-    {
-      // this is a "big image" or an output tile size was set, so we will attempt
-      // to convert it one tile at a time
-
-      if ((writer instanceof TiffWriter) || ((writer instanceof ImageWriter) &&
-        (((ImageWriter) writer).getWriter(out) instanceof TiffWriter)))
-      {
-        return convertTilePlane(writer, index, outputIndex, currentFile);
-      }
+    if (isTiledConversion(writer)) {
+      return convertTilePlane(writer, index, outputIndex, currentFile);
     }
 
-    byte[] buf = getTile(reader, writer.getResolution(), index,
+    byte[] buf = planes != null ? planes.next() :
+      getTile(reader, writer.getResolution(), index,
       xCoordinate, yCoordinate, width, height);
 
     autoscalePlane(buf, index);
@@ -784,6 +845,34 @@ public final class ImageConverter {
     ifd.put(IFD.TILE_WIDTH, w);
     ifd.put(IFD.TILE_LENGTH, h);
 
+    // tiles are also compressed on the read pool, unless they need to be
+    // autoscaled first or are written to separate files
+    TiffWriter tiffWriter = getTiffWriter(writer);
+    boolean compressTiles = readPool != null && tiffWriter != null &&
+      !autoscale && xCoordinate % w == 0 && yCoordinate % h == 0 &&
+      currentFile.equals(FormatTools.getTileFilename(0, 0, 0, currentFile));
+
+    RegionReader tiles = null;
+    if (readPool != null) {
+      List<int[]> regions = new LinkedList<int[]>();
+      for (int y=0; y<nYTiles; y++) {
+        for (int x=0; x<nXTiles; x++) {
+          regions.add(new int[] {index, xCoordinate + x * w,
+            yCoordinate + y * h, x < nXTiles - 1 ? w : width - (w * x),
+            y < nYTiles - 1 ? h : height - (h * y)});
+        }
+      }
+      if (compressTiles) {
+        // the workers only read the tile layout from their own copy, as
+        // the writer's IFD is updated as each tile is written
+        tiles = new RegionReader(writer.getResolution(), regions,
+          tiffWriter, new IFD(ifd), outputIndex);
+      }
+      else {
+        tiles = new RegionReader(writer.getResolution(), regions);
+      }
+    }
+
     Long m = null;
     for (int y=0; y<nYTiles; y++) {
       for (int x=0; x<nXTiles; x++) {
@@ -791,7 +880,18 @@ public final class ImageConverter {
         int tileY = yCoordinate + y * h;
         int tileWidth = x < nXTiles - 1 ? w : width - (w * x);
         int tileHeight = y < nYTiles - 1 ? h : height - (h * y);
-        byte[] buf = getTile(reader, writer.getResolution(),
+        if (compressTiles) {
+          byte[][] strips = tiles.nextCompressed();
+          applyLUT(writer);
+          if (m == null) {
+            m = System.currentTimeMillis();
+          }
+          tiffWriter.saveCompressedBytes(outputIndex, strips, ifd,
+            tileX, tileY, tileWidth, tileHeight);
+          continue;
+        }
+        byte[] buf = tiles != null ? tiles.next() :
+          getTile(reader, writer.getResolution(),
           index, tileX, tileY, tileWidth, tileHeight);
 
         String tileName =
@@ -852,6 +952,61 @@ public final class ImageConverter {
     return m;
   }
 
+  /**
+   * Determine whether planes will be converted one tile at a time.
+   * @param writer the {@link loci.formats.IFormatWriter} used for writing
+   * @return true if {@link #convertTilePlane} will be used
+   * @throws FormatException
+   */
+  private boolean isTiledConversion(IFormatWriter writer)
+    throws FormatException
+  {
+    if (DataTools.safeMultiply64(width, height) >=
+      DataTools.safeMultiply64(4096, 4096) ||
+      saveTileWidth > 0 || saveTileHeight > 0)
+    {
+      // this is a "big image" or an output tile size was set, so we will attempt
+      // to convert it one tile at a time
+
+      return getTiffWriter(writer) != null;
+    }
+    return false;
+  }
+
+  /**
+   * Find the TIFF writer that will write the current file.
+   * @param writer the {@link loci.formats.IFormatWriter} used for writing
+   * @return the writer itself or its delegate, or null if the output
+   *         is not written by a {@link TiffWriter}
+   * @throws FormatException
+   */
+  private TiffWriter getTiffWriter(IFormatWriter writer)
+    throws FormatException
+  {
+    if (writer instanceof TiffWriter) {
+      return (TiffWriter) writer;
+    }
+    if (writer instanceof ImageWriter) {
+      IFormatWriter baseWriter = ((ImageWriter) writer).getWriter(out);
+      if (baseWriter instanceof TiffWriter) {
+        return (TiffWriter) baseWriter;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Determine whether the given plane matches the -channel, -z and
+   * -timepoint options.
+   * @param index the index of the plane in the input file
+   * @return true if the plane should be converted
+   */
+  private boolean isPlaneSelected(int index) {
+    int[] coords = reader.getZCTCoords(index);
+    return !((zSection >= 0 && coords[0] != zSection) || (channel >= 0 &&
+      coords[1] != channel) || (timepoint >= 0 && coords[2] != timepoint));
+  }
+
   /**
    * Calculate the number of vertical tiles represented by the given file name pattern.
    * @param outputName the output file name pattern
@@ -1011,6 +1166,120 @@ public final class ImageConverter {
       reader.isInterleaved());
   }
 
+  // -- Helper classes --
+
+  /**
+   * Reads a list of regions from the current series, in order, on the
+   * read pool.  At most two regions per thread are read ahead of the
+   * caller, which bounds the memory used by tiles waiting to be written.
+   * Each region is {plane index, x, y, width, height}.  If a TIFF writer
+   * is given, each region is a single output tile and is also compressed
+   * on the read pool, so that the writer only places the compressed bytes.
+   */
+  private class RegionReader {
+    private final LinkedList<int[]> regions;
+    // each result is either the compressed strips of a region, or the
+    // region's pixels as the only element
+    private final LinkedList<Future<byte[][]>> pending =
+      new LinkedList<Future<byte[][]>>();
+    private final int series;
+    private final int resolution;
+    private final boolean downsample;
+    private final int pixelType;
+    private final boolean littleEndian;
+    private final int rgbChannelCount;
+    private final boolean interleaved;
+    private final TiffWriter compressor;
+    private final IFD layout;
+    private final int outputIndex;
+
+    RegionReader(int resolution, List<int[]> regions) {
+      this(resolution, regions, null, null, 0);
+    }
+
+    RegionReader(int resolution, List<int[]> regions,
+      TiffWriter compressor, IFD layout, int outputIndex)
+    {
+      this.regions = new LinkedList<int[]>(regions);
+      this.resolution = resolution;
+      this.compressor = compressor;
+      this.layout = layout;
+      this.outputIndex = outputIndex;
+      // capture the current series' state, as the reader must not be
+      // queried from the read pool
+      series = reader.getSeries();
+      downsample = resolution >= reader.getResolutionCount();
+      pixelType = reader.getPixelType();
+      littleEndian = reader.isLittleEndian();
+      rgbChannelCount = reader.getRGBChannelCount();
+      interleaved = reader.isInterleaved();
+      fill();
+    }
+
+    /** Returns the next region's pixels, waiting for them if necessary. */
+    byte[] next() throws FormatException, IOException {
+      return nextResult()[0];
+    }
+
+    /**
+     * Returns the next region's compressed strips, waiting for them if
+     * necessary.
+     */
+    byte[][] nextCompressed() throws FormatException, IOException {
+      return nextResult();
+    }
+
+    private byte[][] nextResult() throws FormatException, IOException {
+      Future<byte[][]> f = pending.removeFirst();
+      fill();
+      try {
+        return f.get();
+      }
+      catch (InterruptedException e) {
+        throw new FormatException(e);
+      }
+      catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof FormatException) throw (FormatException) cause;
+        if (cause instanceof IOException) throw (IOException) cause;
+        throw new FormatException(cause);
+      }
+    }
+
+    private void fill() {
+      while (pending.size() < threads * 2 && !regions.isEmpty()) {
+        final int[] r = regions.removeFirst();
+        pending.add(readPool.submit(new Callable<byte[][]>() {
+          @Override
+          public byte[][] call() throws FormatException, IOException {
+            byte[] buf = read(r[0], r[1], r[2], r[3], r[4]);
+            if (compressor == null) {
+              return new byte[][] {buf};
+            }
+            return compressor.compressBytes(outputIndex, buf, layout,
+              r[1], r[2], r[3], r[4]);
+          }
+        }));
+      }
+    }
+
+    private byte[] read(int no, int x, int y, int w, int h)
+      throws FormatException, IOException
+    {
+      if (!downsample) {
+        return pooledReader.openBytes(series, resolution, no, x, y, w, h);
+      }
+      IImageScaler scaler = new SimpleImageScaler();
+      int scale = (int) Math.pow(pyramidScale, resolution);
+      byte[] tile = pooledReader.openBytes(series, 0, no,
+        x * scale, y * scale, w * scale, h * scale);
+      return scaler.downsample(tile, w * scale, h * scale, scale,
+        FormatTools.getBytesPerPixel(pixelType), littleEndian,
+        FormatTools.isFloatingPoint(pixelType), rgbChannelCount,
+        interleaved);
+    }
+  }
+
   // -- Main method --
 
   public static void main(String[] args) throws FormatException, IOException {
@@ -63,6 +63,7 @@ import loci.formats.MetadataTools;
 import loci.formats.MinMaxCalculator;
 import loci.formats.MissingLibraryException;
 import loci.formats.Modulo;
+import loci.formats.PooledReader;
 import loci.formats.gui.AWTImageTools;
 import loci.formats.gui.BufferedImageReader;
 import loci.formats.gui.ImageViewer;
@@ -132,6 +133,9 @@ public class ImageInfo {
   private String format = null;
   private String cachedir = null;
   private int xmlSpaces = 3;
+  private String benchmark = null;
+  private int benchmarkThreads = 1;
+  private boolean benchmarkResolutions = false;
   private DynamicMetadataOptions options = new DynamicMetadataOptions();
 
   private IFormatReader reader;
@@ -139,6 +143,7 @@ public class ImageInfo {
   private MinMaxCalculator minMaxCalc;
   private DimensionSwapper dimSwapper;
   private BufferedImageReader biReader;
+  private PooledReader pooledReader;
 
   private Double[] preGlobalMin = null, preGlobalMax = null;
   private Double[] preKnownMin = null, preKnownMax = null;
@@ -186,6 +191,9 @@ public class ImageInfo {
     shuffleOrder = null;
     map = null;
     cachedir = null;
+    benchmark = null;
+    benchmarkThreads = 1;
+    benchmarkResolutions = false;
     if (args == null) return false;
     for (int i=0; i<args.length; i++) {
       if (args[i].startsWith("-")) {
@@ -275,6 +283,24 @@ public class ImageInfo {
         else if (args[i].equals("-option")) {
           options.set(args[++i], args[++i]);
         }
+        else if (args[i].equals("-benchmark")) {
+          benchmark = args[++i].toLowerCase();
+          if (!ReaderBenchmark.isValidPattern(benchmark)) {
+            LOGGER.error("Found unknown benchmark pattern: {}; exiting.",
+              benchmark);
+            return false;
+          }
+        }
+        else if (args[i].equals("-benchmark-threads")) {
+          try {
+            benchmarkThreads = Integer.parseInt(args[++i]);
+          }
+          catch (NumberFormatException exc) { }
+        }
+        else if (args[i].equals("-benchmark-resolutions")) {
+          benchmarkResolutions = true;
+          flat = false;
+        }
         else if (!args[i].equals(CommandLineTools.NO_UPGRADE_CHECK)) {
           LOGGER.error("Found unknown command flag: {}; exiting.", args[i]);
           return false;
@@ -302,6 +328,8 @@ public class ImageInfo {
       "    [-map id] [-preload] [-crop x,y,w,h] [-autoscale] [-novalid]",
       "    [-omexml-only] [-no-sas] [-no-upgrade] [-noflat] [-format Format]",
       "    [-cache] [-cache-dir dir] [-option key value]",
+      "    [-benchmark planes|tiles|random] [-benchmark-threads count]",
+      "    [-benchmark-resolutions]",
       "",
       "    -version: print the library version and exit",
       "        file: the image file to read",
@@ -343,6 +371,13 @@ public class ImageInfo {
       "              initialized reader. If unspecified, the cached reader",
       "              will be stored under the same folder as the image file",
       "     -option: add the specified key/value pair to the reader's options list",
+      "  -benchmark: instead of displaying pixels, measure read throughput and",
+      "              latency; 'planes' reads whole planes, 'tiles' reads the",
+      "              optimal tile grid and 'random' reads optimal sized tiles",
+      "              at random positions (use -range to limit the planes)",
+      "-benchmark-threads: number of threads used by -benchmark",
+      "-benchmark-resolutions: benchmark every resolution of the series",
+      "              (implies -noflat)",
       "",
       "* = may result in loss of precision",
       ""
@@ -469,6 +504,16 @@ public class ImageInfo {
     if (swapOrder != null || shuffleOrder != null) {
       reader = dimSwapper = new DimensionSwapper(reader);
     }
+    pooledReader = null;
+    if (benchmark != null && benchmarkThreads > 1) {
+      if (dimSwapper != null) {
+        LOGGER.warn("-swap and -shuffle require a single thread; " +
+          "ignoring -benchmark-threads");
+      }
+      else {
+        reader = pooledReader = new PooledReader(reader, benchmarkThreads);
+      }
+    }
     reader = biReader = new BufferedImageReader(reader);
 
     reader.close();
@@ -928,6 +973,15 @@ public class ImageInfo {
     }
   }
 
+  public void benchmarkPixels() throws FormatException, IOException {
+    ReaderBenchmark b = new ReaderBenchmark(reader, pooledReader);
+    b.setPattern(benchmark);
+    b.setThreads(benchmarkThreads);
+    b.setAllResolutions(benchmarkResolutions);
+    b.setRange(start, end);
+    b.run();
+  }
+
   public void printGlobalMetadata() {
     LOGGER.info("");
     LOGGER.info("Reading global metadata");
@@ -1052,7 +1106,8 @@ public class ImageInfo {
     initPreMinMaxValues();
 
     // read pixels
-    if (pixels) readPixels();
+    if (benchmark != null) benchmarkPixels();
+    else if (pixels) readPixels();
 
     // read format-specific metadata table
     if (doMeta) {
@@ -1063,7 +1118,7 @@ public class ImageInfo {
     // output OME-XML
     if (omexml) printOMEXML();
 
-    if (!pixels) {
+    if (!pixels || benchmark != null) {
       reader.close();
     }
 
@@ -0,0 +1,380 @@
+/*
+ * #%L
+ * Bio-Formats command line tools for reading and converting files
+ * %%
+ * Copyright (C) 2005 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.formats.tools;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import loci.formats.FormatException;
+import loci.formats.FormatTools;
+import loci.formats.IFormatReader;
+import loci.formats.PooledReader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * ReaderBenchmark measures how quickly pixels can be read from an
+ * initialized reader (see showinf -benchmark).
+ *
+ * A list of requests is built from an access pattern, and read with one or
+ * more threads.  The latency of each request, the overall throughput and
+ * the rate at which the reading threads allocate memory are then logged.
+ */
+public class ReaderBenchmark {
+
+  // -- Constants --
+
+  private static final Logger LOGGER =
+    LoggerFactory.getLogger(ReaderBenchmark.class);
+
+  /** Access pattern that reads whole planes. */
+  public static final String PLANES = "planes";
+
+  /** Access pattern that reads the optimal tile grid, in order. */
+  public static final String TILES = "tiles";
+
+  /**
+   * Access pattern that reads tiles of the optimal size at random
+   * positions, in random order.
+   */
+  public static final String RANDOM = "random";
+
+  /** Seed for the random access pattern, so that runs can be compared. */
+  private static final long SEED = 0xb10f0415L;
+
+  private static final double MB = 1024 * 1024;
+
+  // -- Fields --
+
+  private final IFormatReader reader;
+  private final PooledReader pool;
+
+  private String pattern = TILES;
+  private int threads = 1;
+  private boolean allResolutions = false;
+  private int start = 0;
+  private int end = Integer.MAX_VALUE;
+
+  /** Latency of each request in nanoseconds, sorted. */
+  private long[] latencies;
+  private long bytesRead;
+  private long elapsed;
+  private long allocated = -1;
+
+  // -- Constructor --
+
+  /**
+   * Constructs a benchmark for the given reader.
+   *
+   * @param reader the initialized reader, used for metadata and for
+   *   single threaded reads
+   * @param pool pooled reader for the same file, used when more than one
+   *   thread is requested; may be null
+   */
+  public ReaderBenchmark(IFormatReader reader, PooledReader pool) {
+    this.reader = reader;
+    this.pool = pool;
+  }
+
+  // -- ReaderBenchmark API methods --
+
+  /** Returns true if the given access pattern is supported. */
+  public static boolean isValidPattern(String pattern) {
+    return PLANES.equals(pattern) || TILES.equals(pattern) ||
+      RANDOM.equals(pattern);
+  }
+
+  /** Sets the access pattern; one of PLANES, TILES or RANDOM. */
+  public void setPattern(String pattern) {
+    if (!isValidPattern(pattern)) {
+      throw new IllegalArgumentException("Unknown pattern: " + pattern);
+    }
+    this.pattern = pattern;
+  }
+
+  /** Sets the number of threads; only used if a pooled reader was given. */
+  public void setThreads(int threads) {
+    this.threads = Math.max(1, threads);
+  }
+
+  /** Sets whether every resolution, not just the current one, is read. */
+  public void setAllResolutions(boolean allResolutions) {
+    this.allResolutions = allResolutions;
+  }
+
+  /** Sets the (inclusive) range of planes to read. */
+  public void setRange(int start, int end) {
+    this.start = start;
+    this.end = end;
+  }
+
+  /** Reads all of the requests, then logs the results. */
+  public void run() throws FormatException, IOException {
+    List<int[]> requests = createRequests();
+    boolean parallel = threads > 1 && pool != null;
+    LOGGER.info("");
+    LOGGER.info("Benchmarking {} {} request(s) with {} thread(s)",
+      new Object[] {requests.size(), pattern, parallel ? threads : 1});
+
+    latencies = new long[requests.size()];
+    if (parallel) readParallel(requests);
+    else readSerial(requests);
+    Arrays.sort(latencies);
+
+    double seconds = elapsed / 1e9;
+    LOGGER.info("\t{} MB read in {}s", format(bytesRead / MB),
+      format(seconds));
+    LOGGER.info("\tThroughput: {} MB/s", format(getThroughput()));
+    LOGGER.info("\tLatency per request: p50={}ms p95={}ms p99={}ms max={}ms",
+      new Object[] {format(getLatency(0.5) / 1e6),
+      format(getLatency(0.95) / 1e6), format(getLatency(0.99) / 1e6),
+      format(getLatency(1) / 1e6)});
+    if (allocated >= 0) {
+      LOGGER.info("\tAllocation rate: {} MB/s ({} MB allocated)",
+        format(getAllocationRate()), format(allocated / MB));
+    }
+    else {
+      LOGGER.info("\tAllocation rate: not available on this JVM");
+    }
+  }
+
+  /** Gets the number of requests read by the last run. */
+  public int getRequestCount() {
+    return latencies == null ? 0 : latencies.length;
+  }
+
+  /** Gets the number of pixel bytes read by the last run. */
+  public long getBytesRead() {
+    return bytesRead;
+  }
+
+  /**
+   * Gets the latency in nanoseconds below which the given fraction of
+   * requests completed, e.g. 0.95 for the 95th percentile.
+   */
+  public long getLatency(double fraction) {
+    if (latencies == null || latencies.length == 0) return 0;
+    int index = (int) Math.ceil(fraction * latencies.length) - 1;
+    return latencies[Math.max(0, Math.min(index, latencies.length - 1))];
+  }
+
+  /** Gets the throughput of the last run, in MB per second. */
+  public double getThroughput() {
+    return elapsed == 0 ? 0 : bytesRead / MB / (elapsed / 1e9);
+  }
+
+  /**
+   * Gets the rate at which the reading threads allocated memory during the
+   * last run, in MB per second, or -1 if the JVM cannot report it.
+   */
+  public double getAllocationRate() {
+    if (allocated < 0) return -1;
+    return elapsed == 0 ? 0 : allocated / MB / (elapsed / 1e9);
+  }
+
+  // -- Helper methods --
+
+  /**
+   * Builds the list of requests for the current series, as
+   * {resolution, plane, x, y, width, height}.
+   */
+  private List<int[]> createRequests() {
+    List<int[]> requests = new ArrayList<int[]>();
+    Random random = new Random(SEED);
+    int current = reader.getResolution();
+    int first = allResolutions ? 0 : current;
+    int last = allResolutions ? reader.getResolutionCount() - 1 : current;
+    for (int r=first; r<=last; r++) {
+      reader.setResolution(r);
+      int sizeX = reader.getSizeX();
+      int sizeY = reader.getSizeY();
+      int tileWidth = Math.max(1, Math.min(reader.getOptimalTileWidth(), sizeX));
+      int tileHeight =
+        Math.max(1, Math.min(reader.getOptimalTileHeight(), sizeY));
+      long planeSize = (long) sizeX * sizeY * reader.getRGBChannelCount() *
+        FormatTools.getBytesPerPixel(reader.getPixelType());
+      boolean planes = PLANES.equals(pattern);
+      if (planes && planeSize > Integer.MAX_VALUE) {
+        LOGGER.warn("Planes in resolution {} are too large to read at once; " +
+          "reading tiles instead", r);
+        planes = false;
+      }
+      int lastPlane = Math.min(end, reader.getImageCount() - 1);
+      for (int no=Math.max(start, 0); no<=lastPlane; no++) {
+        if (planes) {
+          requests.add(new int[] {r, no, 0, 0, sizeX, sizeY});
+          continue;
+        }
+        for (int y=0; y<sizeY; y+=tileHeight) {
+          for (int x=0; x<sizeX; x+=tileWidth) {
+            if (RANDOM.equals(pattern)) {
+              requests.add(new int[] {r, no,
+                random.nextInt(sizeX - tileWidth + 1),
+                random.nextInt(sizeY - tileHeight + 1),
+                tileWidth, tileHeight});
+            }
+            else {
+              requests.add(new int[] {r, no, x, y,
+                Math.min(tileWidth, sizeX - x),
+                Math.min(tileHeight, sizeY - y)});
+            }
+          }
+        }
+      }
+    }
+    reader.setResolution(current);
+    if (RANDOM.equals(pattern)) {
+      Collections.shuffle(requests, random);
+    }
+    return requests;
+  }
+
+  private void readSerial(List<int[]> requests)
+    throws FormatException, IOException
+  {
+    int current = reader.getResolution();
+    long startAllocated = getAllocatedBytes();
+    long startTime = System.nanoTime();
+    try {
+      for (int i=0; i<requests.size(); i++) {
+        int[] q = requests.get(i);
+        if (reader.getResolution() != q[0]) {
+          reader.setResolution(q[0]);
+        }
+        long t = System.nanoTime();
+        byte[] b = reader.openBytes(q[1], q[2], q[3], q[4], q[5]);
+        latencies[i] = System.nanoTime() - t;
+        bytesRead += b.length;
+      }
+    }
+    finally {
+      elapsed = System.nanoTime() - startTime;
+      long endAllocated = getAllocatedBytes();
+      allocated = startAllocated < 0 || endAllocated < 0 ? -1 :
+        endAllocated - startAllocated;
+      reader.setResolution(current);
+    }
+  }
+
+  private void readParallel(List<int[]> requests)
+    throws FormatException, IOException
+  {
+    final int series = reader.getSeries();
+    final AtomicLong bytes = new AtomicLong();
+    final AtomicLong allocatedBytes = new AtomicLong();
+    ExecutorService executor = Executors.newFixedThreadPool(threads,
+      new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+          Thread t = new Thread(r, "showinf-benchmark");
+          t.setDaemon(true);
+          return t;
+        }
+      });
+    List<Future<Long>> results = new ArrayList<Future<Long>>();
+    long startTime = System.nanoTime();
+    try {
+      for (final int[] q : requests) {
+        results.add(executor.submit(new Callable<Long>() {
+          @Override
+          public Long call() throws FormatException, IOException {
+            long a = getAllocatedBytes();
+            long t = System.nanoTime();
+            byte[] b = pool.openBytes(series, q[0], q[1], q[2], q[3], q[4],
+              q[5]);
+            long latency = System.nanoTime() - t;
+            long after = getAllocatedBytes();
+            if (a < 0 || after < 0) allocatedBytes.set(Long.MIN_VALUE);
+            else allocatedBytes.addAndGet(after - a);
+            bytes.addAndGet(b.length);
+            return latency;
+          }
+        }));
+      }
+      for (int i=0; i<results.size(); i++) {
+        latencies[i] = results.get(i).get();
+      }
+    }
+    catch (InterruptedException e) {
+      throw new IOException(e);
+    }
+    catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof FormatException) throw (FormatException) cause;
+      if (cause instanceof IOException) throw (IOException) cause;
+      throw new FormatException(cause);
+    }
+    finally {
+      elapsed = System.nanoTime() - startTime;
+      executor.shutdownNow();
+    }
+    bytesRead = bytes.get();
+    allocated = allocatedBytes.get() < 0 ? -1 : allocatedBytes.get();
+  }
+
+  /**
+   * Gets the number of bytes allocated so far by the current thread, or -1
+   * if the JVM does not support it.
+   */
+  private static long getAllocatedBytes() {
+    ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (bean instanceof com.sun.management.ThreadMXBean) {
+      com.sun.management.ThreadMXBean b = (com.sun.management.ThreadMXBean) bean;
+      if (b.isThreadAllocatedMemorySupported() &&
+        b.isThreadAllocatedMemoryEnabled())
+      {
+        return b.getThreadAllocatedBytes(Thread.currentThread().getId());
+      }
+    }
+    return -1;
+  }
+
+  private static String format(double value) {
+    return String.format("%.2f", value);
+  }
+
+}
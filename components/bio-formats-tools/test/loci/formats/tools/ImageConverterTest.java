@@ -117,7 +117,9 @@ public class ImageConverterTest {
   @DataProvider(name = "options")
   public Object[][] createOptions() {
     return new Object[][] {{"-z 2"}, {"-series 0 -z 2"}, {"-channel 1"}, 
-      {"-series 0 -channel 1"}, {"-series 0 -timepoint 3"}, {"-timepoint 3"}};
+      {"-series 0 -channel 1"}, {"-series 0 -timepoint 3"}, {"-timepoint 3"},
+      {"-threads 3"}, {"-threads 2 -tilex 128 -tiley 128"},
+      {"-threads 2 -tilex 128 -tiley 128 -pyramid-resolutions 2"}};
   }
 
   public void checkImage() throws FormatException, IOException {
@@ -198,6 +200,51 @@ public class ImageConverterTest {
     }
   }
 
+  @Test
+  public void testPyramidThreads() throws FormatException, IOException {
+    String input = "test&sizeZ=2&sizeC=2.fake";
+    File serialFile = tempDir.resolve("serial.ome.tiff").toFile();
+    outFile = tempDir.resolve("threads.ome.tiff").toFile();
+    String[][] args = {
+      {"-tilex", "128", "-tiley", "128", "-pyramid-resolutions", "2",
+        "-pyramid-scale", "2", input, serialFile.getAbsolutePath()},
+      {"-threads", "2", "-tilex", "128", "-tiley", "128",
+        "-pyramid-resolutions", "2", "-pyramid-scale", "2", input,
+        outFile.getAbsolutePath()}
+    };
+    for (String[] a : args) {
+      try {
+        ImageConverter.main(a);
+      } catch (ExitException e) {
+        assertEquals(e.status, 0);
+      }
+    }
+    serialFile.deleteOnExit();
+    outFile.deleteOnExit();
+
+    IFormatReader serial = new ImageReader();
+    IFormatReader threaded = new ImageReader();
+    try {
+      serial.setFlattenedResolutions(false);
+      threaded.setFlattenedResolutions(false);
+      serial.setId(serialFile.getAbsolutePath());
+      threaded.setId(outFile.getAbsolutePath());
+      assertEquals(threaded.getResolutionCount(), 2);
+      for (int r=0; r<threaded.getResolutionCount(); r++) {
+        serial.setResolution(r);
+        threaded.setResolution(r);
+        assertEquals(threaded.getSizeX(), 512 >> r);
+        for (int i=0; i<threaded.getImageCount(); i++) {
+          assertTrue(Arrays.equals(serial.openBytes(i), threaded.openBytes(i)));
+        }
+      }
+    }
+    finally {
+      serial.close();
+      threaded.close();
+    }
+  }
+
   @Test
   public void testSPWSeries() throws FormatException, IOException {
     outFile = tempDir.resolve("plate.ome.tiff").toFile();
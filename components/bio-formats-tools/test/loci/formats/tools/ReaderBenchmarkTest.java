@@ -0,0 +1,115 @@
+/*
+ * #%L
+ * Bio-Formats command line tools for reading and converting files
+ * %%
+ * Copyright (C) 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.formats.tools;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import loci.formats.FormatException;
+import loci.formats.IFormatReader;
+import loci.formats.ImageReader;
+import loci.formats.PooledReader;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+/**
+ * Tests the functionality of ReaderBenchmark
+ */
+public class ReaderBenchmarkTest {
+
+  private static final String TEST_FILE =
+    "test&sizeX=300&sizeY=200&sizeZ=3&resolutions=2.fake";
+
+  private PooledReader reader;
+
+  @BeforeMethod
+  public void setUp() throws Exception {
+    reader = new PooledReader(new ImageReader(), 2);
+    reader.setFlattenedResolutions(false);
+    reader.setId(TEST_FILE);
+  }
+
+  @AfterMethod
+  public void tearDown() throws Exception {
+    reader.close();
+  }
+
+  @DataProvider(name = "patterns")
+  public Object[][] createPatterns() {
+    return new Object[][] {
+      {ReaderBenchmark.PLANES, 1}, {ReaderBenchmark.TILES, 1},
+      {ReaderBenchmark.RANDOM, 1}, {ReaderBenchmark.TILES, 3}
+    };
+  }
+
+  private int getTileCount(IFormatReader r) {
+    int w = Math.min(r.getOptimalTileWidth(), r.getSizeX());
+    int h = Math.min(r.getOptimalTileHeight(), r.getSizeY());
+    return ((r.getSizeX() + w - 1) / w) * ((r.getSizeY() + h - 1) / h);
+  }
+
+  @Test(dataProvider = "patterns")
+  public void testPattern(String pattern, int threads) throws Exception {
+    ReaderBenchmark b = new ReaderBenchmark(reader, reader);
+    b.setPattern(pattern);
+    b.setThreads(threads);
+    b.setRange(1, 2);
+    b.run();
+    int expected = ReaderBenchmark.PLANES.equals(pattern) ? 2 :
+      2 * getTileCount(reader);
+    assertEquals(b.getRequestCount(), expected);
+    assertEquals(b.getBytesRead(), 2L * 300 * 200);
+    assertTrue(b.getLatency(0.5) <= b.getLatency(0.99));
+    assertTrue(b.getThroughput() > 0);
+    assertEquals(reader.getResolution(), 0);
+  }
+
+  @Test
+  public void testAllResolutions() throws Exception {
+    ReaderBenchmark b = new ReaderBenchmark(reader, null);
+    b.setPattern(ReaderBenchmark.PLANES);
+    b.setAllResolutions(true);
+    b.run();
+    assertEquals(b.getRequestCount(), 6);
+    assertEquals(b.getBytesRead(), 3L * (300 * 200 + 150 * 100));
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testInvalidPattern() {
+    new ReaderBenchmark(reader, reader).setPattern("diagonal");
+  }
+
+}
@@ -33,7 +33,9 @@
 package loci.formats;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
 
 import loci.common.RandomAccessInputStream;
@@ -227,6 +229,36 @@ public abstract class DelegateReader extends FormatReader {
     return nativeReader.openBytes(no, buf, x, y, w, h);
   }
 
+  /* @see IFormatReader#openBytes(int, ByteBuffer, int, int, int, int) */
+  @Override
+  public ByteBuffer openBytes(int no, ByteBuffer buf, int x, int y,
+    int w, int h) throws FormatException, IOException
+  {
+    if (FormatTools.overridesOpenBytes(this, DelegateReader.class)) {
+      return super.openBytes(no, buf, x, y, w, h);
+    }
+    if (callLegacyReader()) {
+      return legacyReader.openBytes(no, buf, x, y, w, h);
+    }
+    return nativeReader.openBytes(no, buf, x, y, w, h);
+  }
+
+  /* @see IFormatReader#openTiles(List) */
+  @Override
+  public void openTiles(List<TileRequest> tiles)
+    throws FormatException, IOException
+  {
+    if (FormatTools.overridesOpenBytes(this, DelegateReader.class)) {
+      super.openTiles(tiles);
+    }
+    else if (callLegacyReader()) {
+      legacyReader.openTiles(tiles);
+    }
+    else {
+      nativeReader.openTiles(tiles);
+    }
+  }
+
   /* @see IFormatReader#close(boolean) */
   @Override
   public void close(boolean fileOnly) throws IOException {
@@ -267,6 +299,17 @@ public abstract class DelegateReader extends FormatReader {
     }
   }
 
+  /* @see FormatReader#reopenFile(String) */
+  @Override
+  public void reopenFile(String id) throws IOException {
+    IFormatReader r = callLegacyReader() ? legacyReader : nativeReader;
+    if (!(r instanceof FormatReader)) {
+      throw new IOException("Cannot reopen " + id + " with " + r);
+    }
+    ((FormatReader) r).reopenFile(id);
+    currentId = r.getCurrentFile();
+  }
+
   // -- IFormatHandler API methods --
 
   /* @see IFormatHandler#setId(String) */
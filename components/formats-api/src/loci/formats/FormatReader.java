@@ -33,6 +33,8 @@
 package loci.formats;
 
 import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.LinkedHashSet;
 import java.util.Hashtable;
@@ -121,6 +123,12 @@ public abstract class FormatReader extends FormatHandler
   /** Default thumbnail width and height. */
   protected static final int THUMBNAIL_DIMENSION = 128;
 
+  /**
+   * Maximum number of bytes staged on the heap when reading into a buffer
+   * that is not backed by an array.
+   */
+  private static final int READ_CHUNK_SIZE = 1024 * 1024;
+
   // -- Fields --
 
   /** Current file. */
@@ -211,6 +219,27 @@ public abstract class FormatReader extends FormatHandler
     in.order(isLittleEndian());
   }
 
+  /**
+   * Points this initialized reader at a different file, reusing all of the
+   * metadata parsed from the current file.  No parsing of the new file is
+   * performed; any open files are closed and {@link #reopenFile()} is used
+   * to open the new one.
+   *
+   * This is only safe if the new file has exactly the same layout as the
+   * current file (e.g. uncompressed single-file datasets with identical
+   * dimensions, written by the same software); checking that is the
+   * responsibility of the caller.
+   *
+   * @param id the file to read from
+   */
+  public void reopenFile(String id) throws IOException {
+    FormatTools.assertId(currentId, true, 1);
+    close(true);
+    in = null;
+    currentId = id;
+    reopenFile();
+  }
+
   /**
    * Initializes the given file (parsing header information, etc.).
    * Most subclasses should override this method to perform
@@ -570,9 +599,118 @@ public abstract class FormatReader extends FormatHandler
         }
       }
     }
+    recordRead(x, y, w, h, scanlinePad);
     return buf;
   }
 
+  /**
+   * Reads a raw plane from disk into the given buffer, starting at its
+   * current position.
+   */
+  protected ByteBuffer readPlane(RandomAccessInputStream s, int x, int y,
+    int w, int h, ByteBuffer buf) throws IOException
+  {
+    return readPlane(s, x, y, w, h, 0, buf);
+  }
+
+  /**
+   * Reads a raw plane from disk into the given buffer, starting at its
+   * current position.  The layout is the same as
+   * {@link #readPlane(RandomAccessInputStream, int, int, int, int, int, byte[])}.
+   */
+  protected ByteBuffer readPlane(RandomAccessInputStream s, int x, int y,
+    int w, int h, int scanlinePad, ByteBuffer buf) throws IOException
+  {
+    int c = getRGBChannelCount();
+    int bpp = FormatTools.getBytesPerPixel(getPixelType());
+    // every layout below fills the buffer sequentially
+    byte[] chunk = buf.hasArray() ? null :
+      new byte[Math.min(READ_CHUNK_SIZE, w * h * bpp * c)];
+    if (x == 0 && w == getSizeX() && scanlinePad == 0) {
+      if (isInterleaved()) {
+        s.skipBytes(y * w * bpp * c);
+        read(s, buf, h * w * bpp * c, chunk);
+      }
+      else {
+        int rowLen = w * bpp;
+        for (int channel=0; channel<c; channel++) {
+          s.skipBytes(y * rowLen);
+          read(s, buf, h * rowLen, chunk);
+          if (channel < c - 1) {
+            s.skipBytes((getSizeY() - y - h) * rowLen);
+          }
+        }
+      }
+    }
+    else {
+      int scanlineWidth = getSizeX() + scanlinePad;
+      if (isInterleaved()) {
+        s.skipBytes(y * scanlineWidth * bpp * c);
+        for (int row=0; row<h; row++) {
+          s.skipBytes(x * bpp * c);
+          read(s, buf, w * bpp * c, chunk);
+          if (row < h - 1) {
+            s.skipBytes(bpp * c * (scanlineWidth - w - x));
+          }
+        }
+      }
+      else {
+        for (int channel=0; channel<c; channel++) {
+          s.skipBytes(y * scanlineWidth * bpp);
+          for (int row=0; row<h; row++) {
+            s.skipBytes(x * bpp);
+            read(s, buf, w * bpp, chunk);
+            if (row < h - 1 || channel < c - 1) {
+              s.skipBytes(bpp * (scanlineWidth - w - x));
+            }
+          }
+          if (channel < c - 1) {
+            s.skipBytes(scanlineWidth * bpp * (getSizeY() - y - h));
+          }
+        }
+      }
+    }
+    recordRead(x, y, w, h, scanlinePad);
+    return buf;
+  }
+
+  /**
+   * Reads len bytes into the buffer at its current position, either
+   * directly into the backing array or through the given chunk.
+   */
+  private static void read(RandomAccessInputStream s, ByteBuffer buf,
+    int len, byte[] chunk) throws IOException
+  {
+    if (chunk == null) {
+      s.read(buf.array(), buf.arrayOffset() + buf.position(), len);
+      ((Buffer) buf).position(buf.position() + len);
+      return;
+    }
+    while (len > 0) {
+      int n = Math.min(len, chunk.length);
+      s.read(chunk, 0, n);
+      buf.put(chunk, 0, n);
+      len -= n;
+    }
+  }
+
+  /**
+   * Records the bytes read by readPlane, and the number of separate reads
+   * needed, with the metrics for the current call.
+   */
+  private void recordRead(int x, int y, int w, int h, int scanlinePad) {
+    if (ReaderMetrics.current() == null) return;
+    int c = getRGBChannelCount();
+    int bpp = FormatTools.getBytesPerPixel(getPixelType());
+    long reads = x == 0 && w == getSizeX() && scanlinePad == 0 ? 1 : h;
+    if (!isInterleaved() &&
+      (y != 0 || h != getSizeY() || reads != 1))
+    {
+      reads *= c;
+    }
+    ReaderMetrics.recordRead((long) w * h * bpp * c, reads);
+  }
+
   /** Return a properly configured loci.formats.meta.FilterMetadata. */
   protected MetadataStore makeFilterMetadata() {
     return new FilterMetadata(getMetadataStore(), isMetadataFiltered());
@@ -889,6 +1027,46 @@ public abstract class FormatReader extends FormatHandler
   public abstract byte[] openBytes(int no, byte[] buf, int x, int y,
     int w, int h) throws FormatException, IOException;
 
+  /* @see IFormatReader#openBytes(int, ByteBuffer) */
+  @Override
+  public ByteBuffer openBytes(int no, ByteBuffer buf)
+    throws FormatException, IOException
+  {
+    return openBytes(no, buf, 0, 0, getSizeX(), getSizeY());
+  }
+
+  /**
+   * The default implementation reads the sub-image into a temporary byte
+   * array with {@link #openBytes(int, byte[], int, int, int, int)}, and
+   * copies it into the buffer.
+   *
+   * @see IFormatReader#openBytes(int, ByteBuffer, int, int, int, int)
+   */
+  @Override
+  public ByteBuffer openBytes(int no, ByteBuffer buf, int x, int y,
+    int w, int h) throws FormatException, IOException
+  {
+    FormatTools.checkPlaneParameters(this, no, buf.remaining(), x, y, w, h);
+    byte[] b = openBytes(no, x, y, w, h);
+    buf.put(b, 0, FormatTools.getPlaneSize(this, w, h));
+    return buf;
+  }
+
+  /**
+   * The default implementation reads each request in turn.
+   *
+   * @see IFormatReader#openTiles(List)
+   */
+  @Override
+  public void openTiles(List<TileRequest> tiles)
+    throws FormatException, IOException
+  {
+    for (TileRequest t : tiles) {
+      if (t.buf == null) t.buf = openBytes(t.no, t.x, t.y, t.w, t.h);
+      else openBytes(t.no, t.buf, t.x, t.y, t.w, t.h);
+    }
+  }
+
   /* @see IFormatReader#openPlane(int, int, int, int, int int) */
   @Override
   public Object openPlane(int no, int x, int y, int w, int h)
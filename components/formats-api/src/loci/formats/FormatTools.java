@@ -34,10 +34,13 @@ package loci.formats;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.reflect.Method;
 import java.net.URL;
 import java.net.MalformedURLException;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.jar.Attributes;
 import java.util.jar.Manifest;
 
@@ -121,6 +124,10 @@ public final class FormatTools {
   /** Human readable pixel type. */
   private static final String[] pixelTypes = makePixelTypes();
 
+  /** Cached results of {@link #overridesOpenBytes(IFormatReader, Class)}. */
+  private static final Map<String, Boolean> OPEN_BYTES_OVERRIDES =
+    new ConcurrentHashMap<String, Boolean>();
+
   static String[] makePixelTypes() {
     String[] pixelTypes = new String[9];
     pixelTypes[INT8] = "int8";
@@ -1045,6 +1052,36 @@ public final class FormatTools {
     }
   }
 
+  /**
+   * Returns true if a class between the given reader's class and the given
+   * base class (exclusive) overrides one of the byte array openBytes
+   * methods.  Readers and wrappers use this to decide whether a
+   * {@link java.nio.ByteBuffer} fast path defined in the base class still
+   * produces the same pixels as the byte array path.
+   */
+  public static boolean overridesOpenBytes(IFormatReader r, Class<?> base) {
+    Class<?> c = r.getClass();
+    String key = c.getName() + "/" + base.getName();
+    Boolean overrides = OPEN_BYTES_OVERRIDES.get(key);
+    if (overrides == null) {
+      overrides = Boolean.FALSE;
+      for (; c != null && c != base && overrides == Boolean.FALSE;
+        c = c.getSuperclass())
+      {
+        for (Method m : c.getDeclaredMethods()) {
+          if (m.getName().equals("openBytes") && !m.isBridge() &&
+            m.getReturnType() == byte[].class)
+          {
+            overrides = Boolean.TRUE;
+            break;
+          }
+        }
+      }
+      OPEN_BYTES_OVERRIDES.put(key, overrides);
+    }
+    return overrides;
+  }
+
   /**
    * Returns true if the given RandomAccessInputStream conatins at least
    * 'len' bytes.
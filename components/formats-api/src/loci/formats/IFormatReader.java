@@ -33,6 +33,7 @@
 package loci.formats;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Hashtable;
 import java.util.List;
 
@@ -284,6 +285,57 @@ public interface IFormatReader extends IFormatHandler, IPyramidHandler {
   byte[] openBytes(int no, byte[] buf, int x, int y, int w, int h)
     throws FormatException, IOException;
 
+  /**
+   * Obtains the specified image plane from the current file into a
+   * pre-allocated buffer, which may be a direct buffer.
+   *
+   * @see #openBytes(int, ByteBuffer, int, int, int, int)
+   */
+  ByteBuffer openBytes(int no, ByteBuffer buf)
+    throws FormatException, IOException;
+
+  /**
+   * Obtains a sub-image of the specified image plane into a pre-allocated
+   * buffer, which may be a direct buffer.  The sub-image is stored in the
+   * same layout as {@link #openBytes(int, byte[], int, int, int, int)},
+   * starting at the buffer's current position; the position is advanced
+   * past the sub-image and the limit is not changed.
+   *
+   * Readers that cannot decode directly into the buffer read into a
+   * temporary byte array and copy it.
+   *
+   * @param no the image index within the file.
+   * @param buf a pre-allocated buffer with at least
+   *   (w * h * bytesPerPixel * RGB channel count) bytes remaining.
+   * @param x X coordinate of the upper-left corner of the sub-image
+   * @param y Y coordinate of the upper-left corner of the sub-image
+   * @param w width of the sub-image
+   * @param h height of the sub-image
+   * @return the pre-allocated buffer <code>buf</code> for convenience.
+   * @throws FormatException if there was a problem parsing the metadata of the
+   *   file.
+   * @throws IOException if there was a problem reading the file.
+   */
+  ByteBuffer openBytes(int no, ByteBuffer buf, int x, int y, int w, int h)
+    throws FormatException, IOException;
+
+  /**
+   * Obtains several sub-images from the current series and resolution.
+   * Each request's buffer is filled exactly as by
+   * {@link #openBytes(int, byte[], int, int, int, int)}; requests without a
+   * buffer are given a newly allocated one.
+   *
+   * Readers may process the requests in any order, and may share reads and
+   * decoding between them, so this is typically faster than calling openBytes
+   * once per request.
+   *
+   * @param tiles the sub-images to read.
+   * @throws FormatException if there was a problem parsing the metadata of the
+   *   file, or if any request is invalid.
+   * @throws IOException if there was a problem reading the file.
+   */
+  void openTiles(List<TileRequest> tiles) throws FormatException, IOException;
+
   /**
    * Obtains the specified image plane (or sub-image thereof) in the reader's
    * native data structure. For most readers this is a byte array; however,
@@ -34,6 +34,7 @@ package loci.formats;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
@@ -460,6 +461,30 @@ public class ImageReader implements IFormatReader {
     return getReader().openBytes(no, buf, x, y, w, h);
   }
 
+  /* @see IFormatReader#openBytes(int, ByteBuffer) */
+  @Override
+  public ByteBuffer openBytes(int no, ByteBuffer buf)
+    throws FormatException, IOException
+  {
+    return getReader().openBytes(no, buf);
+  }
+
+  /* @see IFormatReader#openBytes(int, ByteBuffer, int, int, int, int) */
+  @Override
+  public ByteBuffer openBytes(int no, ByteBuffer buf, int x, int y,
+    int w, int h) throws FormatException, IOException
+  {
+    return getReader().openBytes(no, buf, x, y, w, h);
+  }
+
+  /* @see IFormatReader#openTiles(List) */
+  @Override
+  public void openTiles(List<TileRequest> tiles)
+    throws FormatException, IOException
+  {
+    getReader().openTiles(tiles);
+  }
+
   /* @see IFormatReader#openPlane(int, int, int, int, int) */
   @Override
   public Object openPlane(int no, int x, int y, int w, int h)
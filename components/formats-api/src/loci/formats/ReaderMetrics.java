@@ -0,0 +1,456 @@
+/*
+ * #%L
+ * Top-level reader and writer APIs
+ * %%
+ * Copyright (C) 2005 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.formats;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Counters describing the work done by a reader: time spent in setId and
+ * in reading pixels, bytes read from disk and the number of separate reads,
+ * decoding time and volume for each codec, and cache hits and misses.
+ *
+ * Counters are only collected on a thread while it is inside a call that
+ * is being instrumented (see {@link #attach(ReaderMetrics)}); the static
+ * record methods are called from the reading and decoding code, and do
+ * nothing otherwise.  Totals are kept per reader class, and can be
+ * retrieved with {@link #get(String)}, exported as MXBeans with
+ * {@link #setJMXEnabled(boolean)}, or observed call by call with a
+ * {@link ReaderMetricsListener}.
+ */
+public class ReaderMetrics implements ReaderMetricsMXBean {
+
+  // -- Constants --
+
+  private static final Logger LOGGER =
+    LoggerFactory.getLogger(ReaderMetrics.class);
+
+  /** Domain of the object names under which counters are exported. */
+  public static final String JMX_DOMAIN = "loci.formats";
+
+  /** Counters for the call being instrumented on each thread. */
+  private static final ThreadLocal<ReaderMetrics> CURRENT =
+    new ThreadLocal<ReaderMetrics>();
+
+  /** Totals for each reader class. */
+  private static final ConcurrentMap<String, ReaderMetrics> TOTALS =
+    new ConcurrentHashMap<String, ReaderMetrics>();
+
+  private static final List<ReaderMetricsListener> LISTENERS =
+    new CopyOnWriteArrayList<ReaderMetricsListener>();
+
+  private static volatile boolean jmxEnabled = false;
+
+  // -- Fields --
+
+  private final String name;
+
+  private final AtomicLong setIdCalls = new AtomicLong();
+  private final AtomicLong setIdNanos = new AtomicLong();
+  private final AtomicLong openBytesCalls = new AtomicLong();
+  private final AtomicLong openBytesNanos = new AtomicLong();
+  private final AtomicLong bytesReturned = new AtomicLong();
+  private final AtomicLong bytesRead = new AtomicLong();
+  private final AtomicLong seeks = new AtomicLong();
+  private final AtomicLong cacheHits = new AtomicLong();
+  private final AtomicLong cacheMisses = new AtomicLong();
+
+  /** Decode counters for each codec: calls, nanos, bytes in, bytes out. */
+  private final ConcurrentMap<String, AtomicLong[]> codecs =
+    new ConcurrentHashMap<String, AtomicLong[]>();
+
+  // -- Constructor --
+
+  /**
+   * Constructs an empty set of counters.
+   * @param name the name of the reader class, or a description of the call,
+   *   that the counters describe
+   */
+  public ReaderMetrics(String name) {
+    this.name = name;
+  }
+
+  // -- ReaderMetrics API methods - recording hooks --
+
+  /**
+   * Makes the given counters current on this thread, so that subsequent
+   * calls to the record methods are added to them.
+   *
+   * @param metrics the counters to update, or null to stop recording
+   * @return the counters that were previously current, which should be
+   *   restored once the instrumented call has finished
+   */
+  public static ReaderMetrics attach(ReaderMetrics metrics) {
+    ReaderMetrics previous = CURRENT.get();
+    if (metrics == null) CURRENT.remove();
+    else CURRENT.set(metrics);
+    return previous;
+  }
+
+  /** Gets the counters that are current on this thread, or null. */
+  public static ReaderMetrics current() {
+    return CURRENT.get();
+  }
+
+  /**
+   * Records that the given number of bytes were read from disk
+   * in the given number of separate reads.
+   */
+  public static void recordRead(long bytes, long reads) {
+    ReaderMetrics m = CURRENT.get();
+    if (m != null) {
+      m.bytesRead.addAndGet(bytes);
+      m.seeks.addAndGet(reads);
+    }
+  }
+
+  /**
+   * Records the decoding of a block of data.
+   *
+   * @param codec name of the codec or compression scheme
+   * @param bytesIn number of compressed bytes
+   * @param bytesOut number of decompressed bytes
+   * @param nanos time spent decoding
+   */
+  public static void recordDecode(String codec, long bytesIn, long bytesOut,
+    long nanos)
+  {
+    ReaderMetrics m = CURRENT.get();
+    if (m != null) {
+      m.addDecode(codec, 1, nanos, bytesIn, bytesOut);
+    }
+  }
+
+  /** Records a hit or miss in a tile, plane or metadata cache. */
+  public static void recordCacheHit(boolean hit) {
+    ReaderMetrics m = CURRENT.get();
+    if (m != null) {
+      if (hit) m.cacheHits.incrementAndGet();
+      else m.cacheMisses.incrementAndGet();
+    }
+  }
+
+  // -- ReaderMetrics API methods - totals --
+
+  /** Gets the totals for the given reader class, creating them if needed. */
+  public static ReaderMetrics get(String readerClass) {
+    ReaderMetrics totals = TOTALS.get(readerClass);
+    if (totals == null) {
+      ReaderMetrics created = new ReaderMetrics(readerClass);
+      totals = TOTALS.putIfAbsent(readerClass, created);
+      if (totals == null) {
+        totals = created;
+        if (jmxEnabled) register(totals);
+      }
+    }
+    return totals;
+  }
+
+  /** Gets the totals for every reader class seen so far. */
+  public static List<ReaderMetrics> getAll() {
+    List<ReaderMetrics> all = new ArrayList<ReaderMetrics>(TOTALS.values());
+    return Collections.unmodifiableList(all);
+  }
+
+  /**
+   * Adds the counters of a finished call to the totals of the given reader
+   * class, and notifies the listeners.
+   *
+   * @param readerClass the class of the reader that did the work
+   * @param method the name of the instrumented method
+   * @param call the counters collected during the call
+   */
+  public static void completed(String readerClass, String method,
+    ReaderMetrics call)
+  {
+    get(readerClass).add(call);
+    for (ReaderMetricsListener l : LISTENERS) {
+      l.callCompleted(readerClass, method, call);
+    }
+  }
+
+  /** Discards all totals. */
+  public static void resetAll() {
+    for (ReaderMetrics m : TOTALS.values()) {
+      m.reset();
+    }
+  }
+
+  public static void addListener(ReaderMetricsListener l) {
+    LISTENERS.add(l);
+  }
+
+  public static void removeListener(ReaderMetricsListener l) {
+    LISTENERS.remove(l);
+  }
+
+  /**
+   * Sets whether the totals for each reader class are registered with the
+   * platform MBean server, under
+   * <code>loci.formats:type=ReaderMetrics,name=&lt;reader class&gt;</code>.
+   */
+  public static synchronized void setJMXEnabled(boolean enabled) {
+    if (enabled == jmxEnabled) return;
+    jmxEnabled = enabled;
+    for (ReaderMetrics m : TOTALS.values()) {
+      if (enabled) register(m);
+      else unregister(m);
+    }
+  }
+
+  public static boolean isJMXEnabled() {
+    return jmxEnabled;
+  }
+
+  // -- ReaderMetrics API methods - counters --
+
+  /** Records a call to setId that took the given time. */
+  public void addSetId(long nanos) {
+    setIdCalls.incrementAndGet();
+    setIdNanos.addAndGet(nanos);
+  }
+
+  /**
+   * Records a pixel read that took the given time and returned the given
+   * number of bytes.
+   */
+  public void addOpenBytes(long nanos, long bytes) {
+    openBytesCalls.incrementAndGet();
+    openBytesNanos.addAndGet(nanos);
+    bytesReturned.addAndGet(bytes);
+  }
+
+  /** Adds all of the given counters to these counters. */
+  public void add(ReaderMetrics m) {
+    setIdCalls.addAndGet(m.setIdCalls.get());
+    setIdNanos.addAndGet(m.setIdNanos.get());
+    openBytesCalls.addAndGet(m.openBytesCalls.get());
+    openBytesNanos.addAndGet(m.openBytesNanos.get());
+    bytesReturned.addAndGet(m.bytesReturned.get());
+    bytesRead.addAndGet(m.bytesRead.get());
+    seeks.addAndGet(m.seeks.get());
+    cacheHits.addAndGet(m.cacheHits.get());
+    cacheMisses.addAndGet(m.cacheMisses.get());
+    for (Map.Entry<String, AtomicLong[]> e : m.codecs.entrySet()) {
+      AtomicLong[] c = e.getValue();
+      addDecode(e.getKey(), c[0].get(), c[1].get(), c[2].get(), c[3].get());
+    }
+  }
+
+  /** Resets all counters to zero. */
+  public void reset() {
+    setIdCalls.set(0);
+    setIdNanos.set(0);
+    openBytesCalls.set(0);
+    openBytesNanos.set(0);
+    bytesReturned.set(0);
+    bytesRead.set(0);
+    seeks.set(0);
+    cacheHits.set(0);
+    cacheMisses.set(0);
+    codecs.clear();
+  }
+
+  // -- ReaderMetricsMXBean API methods --
+
+  @Override
+  public String getName() {
+    return name;
+  }
+
+  @Override
+  public long getSetIdCalls() {
+    return setIdCalls.get();
+  }
+
+  @Override
+  public long getSetIdNanos() {
+    return setIdNanos.get();
+  }
+
+  @Override
+  public long getOpenBytesCalls() {
+    return openBytesCalls.get();
+  }
+
+  @Override
+  public long getOpenBytesNanos() {
+    return openBytesNanos.get();
+  }
+
+  @Override
+  public long getBytesReturned() {
+    return bytesReturned.get();
+  }
+
+  @Override
+  public long getBytesRead() {
+    return bytesRead.get();
+  }
+
+  @Override
+  public long getSeeks() {
+    return seeks.get();
+  }
+
+  @Override
+  public long getCacheHits() {
+    return cacheHits.get();
+  }
+
+  @Override
+  public long getCacheMisses() {
+    return cacheMisses.get();
+  }
+
+  @Override
+  public Map<String, Long> getDecodeCalls() {
+    return getCodecCounts(0);
+  }
+
+  @Override
+  public Map<String, Long> getDecodeNanos() {
+    return getCodecCounts(1);
+  }
+
+  @Override
+  public Map<String, Long> getDecodeBytesIn() {
+    return getCodecCounts(2);
+  }
+
+  @Override
+  public Map<String, Long> getDecodeBytesOut() {
+    return getCodecCounts(3);
+  }
+
+  // -- Object API methods --
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder(String.valueOf(name));
+    sb.append(": setId=").append(getSetIdCalls());
+    sb.append(" (").append(getSetIdNanos() / 1000000).append(" ms)");
+    sb.append(", openBytes=").append(getOpenBytesCalls());
+    sb.append(" (").append(getOpenBytesNanos() / 1000000).append(" ms, ");
+    sb.append(getBytesReturned()).append(" bytes)");
+    sb.append(", read=").append(getBytesRead()).append(" bytes in ");
+    sb.append(getSeeks()).append(" reads");
+    sb.append(", cache=").append(getCacheHits()).append('/');
+    sb.append(getCacheHits() + getCacheMisses()).append(" hits");
+    Map<String, Long> calls = getDecodeCalls();
+    Map<String, Long> nanos = getDecodeNanos();
+    Map<String, Long> out = getDecodeBytesOut();
+    for (String codec : calls.keySet()) {
+      sb.append(", ").append(codec).append('=').append(calls.get(codec));
+      sb.append(" (").append(nanos.get(codec) / 1000000).append(" ms, ");
+      sb.append(out.get(codec)).append(" bytes)");
+    }
+    return sb.toString();
+  }
+
+  // -- Helper methods --
+
+  private void addDecode(String codec, long calls, long nanos, long bytesIn,
+    long bytesOut)
+  {
+    AtomicLong[] c = codecs.get(codec);
+    if (c == null) {
+      AtomicLong[] created = new AtomicLong[] {
+        new AtomicLong(), new AtomicLong(), new AtomicLong(), new AtomicLong()
+      };
+      c = codecs.putIfAbsent(codec, created);
+      if (c == null) c = created;
+    }
+    c[0].addAndGet(calls);
+    c[1].addAndGet(nanos);
+    c[2].addAndGet(bytesIn);
+    c[3].addAndGet(bytesOut);
+  }
+
+  private Map<String, Long> getCodecCounts(int index) {
+    Map<String, Long> counts = new TreeMap<String, Long>();
+    for (Map.Entry<String, AtomicLong[]> e : codecs.entrySet()) {
+      counts.put(e.getKey(), e.getValue()[index].get());
+    }
+    return counts;
+  }
+
+  private static ObjectName getObjectName(ReaderMetrics m)
+    throws JMException
+  {
+    return new ObjectName(JMX_DOMAIN + ":type=ReaderMetrics,name=" +
+      ObjectName.quote(m.getName()));
+  }
+
+  private static void register(ReaderMetrics m) {
+    try {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      ObjectName objectName = getObjectName(m);
+      if (!server.isRegistered(objectName)) {
+        server.registerMBean(m, objectName);
+      }
+    }
+    catch (JMException e) {
+      LOGGER.warn("Could not register metrics for {}", m.getName(), e);
+    }
+  }
+
+  private static void unregister(ReaderMetrics m) {
+    try {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      ObjectName objectName = getObjectName(m);
+      if (server.isRegistered(objectName)) {
+        server.unregisterMBean(objectName);
+      }
+    }
+    catch (JMException e) {
+      LOGGER.warn("Could not unregister metrics for {}", m.getName(), e);
+    }
+  }
+
+}
@@ -0,0 +1,87 @@
+/*
+ * #%L
+ * Top-level reader and writer APIs
+ * %%
+ * Copyright (C) 2005 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.formats;
+
+import java.util.Map;
+
+/**
+ * Management interface for the counters collected for one reader class.
+ * Times are in nanoseconds, and codec counters are keyed by codec name.
+ *
+ * @see ReaderMetrics
+ */
+public interface ReaderMetricsMXBean {
+
+  /** Gets the name of the reader class. */
+  String getName();
+
+  /** Gets the number of calls to setId. */
+  long getSetIdCalls();
+
+  /** Gets the total time spent in setId. */
+  long getSetIdNanos();
+
+  /** Gets the number of calls that read pixels. */
+  long getOpenBytesCalls();
+
+  /** Gets the total time spent reading pixels. */
+  long getOpenBytesNanos();
+
+  /** Gets the number of pixel bytes returned to the caller. */
+  long getBytesReturned();
+
+  /** Gets the number of bytes read from disk while reading pixels. */
+  long getBytesRead();
+
+  /** Gets the number of separate reads (and so potential seeks) on disk. */
+  long getSeeks();
+
+  /** Gets the number of cache hits. */
+  long getCacheHits();
+
+  /** Gets the number of cache misses. */
+  long getCacheMisses();
+
+  /** Gets the number of blocks decoded by each codec. */
+  Map<String, Long> getDecodeCalls();
+
+  /** Gets the time spent decoding by each codec. */
+  Map<String, Long> getDecodeNanos();
+
+  /** Gets the number of compressed bytes decoded by each codec. */
+  Map<String, Long> getDecodeBytesIn();
+
+  /** Gets the number of bytes produced by each codec. */
+  Map<String, Long> getDecodeBytesOut();
+
+}
@@ -34,6 +34,7 @@ package loci.formats;
 
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Hashtable;
 import java.util.List;
@@ -348,6 +349,50 @@ public abstract class ReaderWrapper implements IFormatReader {
     return reader.openBytes(no, buf, x, y, w, h);
   }
 
+  @Override
+  public ByteBuffer openBytes(int no, ByteBuffer buf)
+    throws FormatException, IOException
+  {
+    return openBytes(no, buf, 0, 0, getSizeX(), getSizeY());
+  }
+
+  /**
+   * Passes the buffer to the wrapped reader, unless a subclass changes the
+   * pixels returned by the byte array openBytes methods; in that case the
+   * plane is read into a temporary byte array and copied.
+   */
+  @Override
+  public ByteBuffer openBytes(int no, ByteBuffer buf, int x, int y,
+    int w, int h) throws FormatException, IOException
+  {
+    if (!FormatTools.overridesOpenBytes(this, ReaderWrapper.class)) {
+      return reader.openBytes(no, buf, x, y, w, h);
+    }
+    FormatTools.checkPlaneParameters(this, no, buf.remaining(), x, y, w, h);
+    byte[] b = openBytes(no, x, y, w, h);
+    buf.put(b, 0, FormatTools.getPlaneSize(this, w, h));
+    return buf;
+  }
+
+  /**
+   * Passes the requests to the wrapped reader, unless a subclass changes the
+   * pixels returned by the byte array openBytes methods; in that case each
+   * request is read in turn.
+   */
+  @Override
+  public void openTiles(List<TileRequest> tiles)
+    throws FormatException, IOException
+  {
+    if (!FormatTools.overridesOpenBytes(this, ReaderWrapper.class)) {
+      reader.openTiles(tiles);
+      return;
+    }
+    for (TileRequest t : tiles) {
+      if (t.buf == null) t.buf = openBytes(t.no, t.x, t.y, t.w, t.h);
+      else openBytes(t.no, t.buf, t.x, t.y, t.w, t.h);
+    }
+  }
+
   @Override
   public Object openPlane(int no, int x, int y, int w, int h)
     throws FormatException, IOException
@@ -32,8 +32,22 @@
 
 package loci.formats.meta;
 
-import ome.xml.meta.MetadataStore;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import loci.formats.ome.CompactOMEXMLMetadata;
+
 import ome.xml.meta.MetadataRetrieve;
+import ome.xml.meta.MetadataStore;
+import ome.xml.meta.OMEXMLMetadata;
+import ome.xml.meta.OMEXMLMetadataImpl;
+import ome.xml.model.Annotation;
+import ome.xml.model.Image;
+import ome.xml.model.OME;
+import ome.xml.model.Pixels;
+import ome.xml.model.Plane;
 
 /**
  * A utility class containing a method for piping a source
@@ -45,11 +59,14 @@ import ome.xml.meta.MetadataRetrieve;
  * {@link loci.formats.ome.OMEXMLMetadata}, thus generating OME-XML from
  * information in an OMERO database.
  *
- * @author Curtis Rueden ctrueden at wisc.edu
+ * <p>Conversion is delegated to {@link ome.xml.meta.MetadataConverter},
+ * except that Planes are copied one Image at a time when both objects are
+ * OME-XML metadata.  Plane metadata usually dominates the size of a large
+ * dataset, and copying it directly between the OME-XML models avoids
+ * several lookups per Plane attribute.
  *
- * @deprecated Use ome.xml.meta.MetadataConverter.
+ * @author Curtis Rueden ctrueden at wisc.edu
  */
-@Deprecated
 public final class MetadataConverter {
 
   // -- Constructor --
@@ -67,7 +84,186 @@ public final class MetadataConverter {
    * (source) into a metadata store (destination).
    */
   public static void convertMetadata(MetadataRetrieve src, MetadataStore dest) {
-    ome.xml.meta.MetadataConverter.convertMetadata(src, dest);
+    if (!(src instanceof OMEXMLMetadata) || !(dest instanceof OMEXMLMetadata)) {
+      ome.xml.meta.MetadataConverter.convertMetadata(src, dest);
+      return;
+    }
+
+    // convert everything except the Planes, which are copied below
+    ome.xml.meta.MetadataConverter.convertMetadata(hidePlanes(src), dest);
+
+    int imageCount = 0;
+    try {
+      imageCount = src.getImageCount();
+    }
+    catch (NullPointerException e) {
+      // no Images to copy Planes from
+    }
+    for (int image=0; image<imageCount; image++) {
+      if (!copyPlaneModels(src, dest, image)) {
+        copyPlanes(src, dest, image);
+      }
+    }
+  }
+
+  // -- Helper methods --
+
+  /**
+   * Wraps the given source so that it reports no Planes for any Image.
+   */
+  private static MetadataRetrieve hidePlanes(final MetadataRetrieve src) {
+    InvocationHandler handler = new InvocationHandler() {
+      @Override
+      public Object invoke(Object proxy, Method method, Object[] args)
+        throws Throwable
+      {
+        if (method.getName().equals("getPlaneCount")) {
+          return 0;
+        }
+        try {
+          return method.invoke(src, args);
+        }
+        catch (InvocationTargetException e) {
+          throw e.getCause();
+        }
+      }
+    };
+    return (MetadataRetrieve) Proxy.newProxyInstance(
+      MetadataRetrieve.class.getClassLoader(),
+      new Class<?>[] {MetadataRetrieve.class}, handler);
+  }
+
+  /**
+   * Copies the Planes of the given Image directly from the source model into
+   * the destination model.  This is only possible when both objects keep
+   * their Planes in the model and the destination Image has no Planes yet.
+   *
+   * @return true if the Planes were copied
+   */
+  private static boolean copyPlaneModels(MetadataRetrieve src,
+    MetadataStore dest, int image)
+  {
+    if (!isModelBacked(src) || !isModelBacked(dest)) {
+      return false;
+    }
+    Pixels srcPixels = getPixels((OMEXMLMetadata) src, image);
+    Pixels destPixels = getPixels((OMEXMLMetadata) dest, image);
+    if (srcPixels == null || destPixels == null ||
+      destPixels.sizeOfPlaneList() > 0)
+    {
+      return false;
+    }
+
+    int planeCount = srcPixels.sizeOfPlaneList();
+    for (int p=0; p<planeCount; p++) {
+      Plane srcPlane = srcPixels.getPlane(p);
+      Plane destPlane = new Plane();
+      destPlane.setTheZ(srcPlane.getTheZ());
+      destPlane.setTheC(srcPlane.getTheC());
+      destPlane.setTheT(srcPlane.getTheT());
+      destPlane.setDeltaT(srcPlane.getDeltaT());
+      destPlane.setExposureTime(srcPlane.getExposureTime());
+      destPlane.setPositionX(srcPlane.getPositionX());
+      destPlane.setPositionY(srcPlane.getPositionY());
+      destPlane.setPositionZ(srcPlane.getPositionZ());
+      destPlane.setHashSHA1(srcPlane.getHashSHA1());
+      destPixels.addPlane(destPlane);
+    }
+
+    // annotation links must point to the destination's annotations,
+    // so they are set by ID and resolved later
+    for (int p=0; p<planeCount; p++) {
+      Plane srcPlane = srcPixels.getPlane(p);
+      int refCount = srcPlane.sizeOfLinkedAnnotationList();
+      for (int r=0; r<refCount; r++) {
+        Annotation annotation = srcPlane.getLinkedAnnotation(r);
+        if (annotation != null && annotation.getID() != null) {
+          dest.setPlaneAnnotationRef(annotation.getID(), image, p, r);
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Copies the Planes of the given Image through the metadata API.
+   */
+  private static void copyPlanes(MetadataRetrieve src, MetadataStore dest,
+    int image)
+  {
+    int planeCount = 0;
+    try {
+      planeCount = src.getPlaneCount(image);
+    }
+    catch (NullPointerException e) {
+      return;
+    }
+    for (int p=0; p<planeCount; p++) {
+      if (src.getPlaneTheZ(image, p) != null) {
+        dest.setPlaneTheZ(src.getPlaneTheZ(image, p), image, p);
+      }
+      if (src.getPlaneTheC(image, p) != null) {
+        dest.setPlaneTheC(src.getPlaneTheC(image, p), image, p);
+      }
+      if (src.getPlaneTheT(image, p) != null) {
+        dest.setPlaneTheT(src.getPlaneTheT(image, p), image, p);
+      }
+      if (src.getPlaneDeltaT(image, p) != null) {
+        dest.setPlaneDeltaT(src.getPlaneDeltaT(image, p), image, p);
+      }
+      if (src.getPlaneExposureTime(image, p) != null) {
+        dest.setPlaneExposureTime(
+          src.getPlaneExposureTime(image, p), image, p);
+      }
+      if (src.getPlanePositionX(image, p) != null) {
+        dest.setPlanePositionX(src.getPlanePositionX(image, p), image, p);
+      }
+      if (src.getPlanePositionY(image, p) != null) {
+        dest.setPlanePositionY(src.getPlanePositionY(image, p), image, p);
+      }
+      if (src.getPlanePositionZ(image, p) != null) {
+        dest.setPlanePositionZ(src.getPlanePositionZ(image, p), image, p);
+      }
+      if (src.getPlaneHashSHA1(image, p) != null) {
+        dest.setPlaneHashSHA1(src.getPlaneHashSHA1(image, p), image, p);
+      }
+      int refCount = 0;
+      try {
+        refCount = src.getPlaneAnnotationRefCount(image, p);
+      }
+      catch (NullPointerException e) {
+        // no annotation links
+      }
+      for (int r=0; r<refCount; r++) {
+        dest.setPlaneAnnotationRef(
+          src.getPlaneAnnotationRef(image, p, r), image, p, r);
+      }
+    }
+  }
+
+  /**
+   * Returns true if the given object is OME-XML metadata that stores its
+   * Planes in the model, so that the model can be modified directly.
+   * {@link CompactOMEXMLMetadata} is excluded as retrieving its model would
+   * expand its Plane columns.
+   */
+  private static boolean isModelBacked(Object meta) {
+    return meta instanceof OMEXMLMetadataImpl &&
+      !(meta instanceof CompactOMEXMLMetadata);
+  }
+
+  /** Gets the Pixels of the given Image, or null if they do not exist. */
+  private static Pixels getPixels(OMEXMLMetadata meta, int image) {
+    Object root = meta.getRoot();
+    if (!(root instanceof OME)) {
+      return null;
+    }
+    OME ome = (OME) root;
+    if (image >= ome.sizeOfImageList()) {
+      return null;
+    }
+    Image img = ome.getImage(image);
+    return img == null ? null : img.getPixels();
   }
 
 }
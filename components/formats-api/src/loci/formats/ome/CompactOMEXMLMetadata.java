@@ -0,0 +1,468 @@
+/*
+ * #%L
+ * Top-level reader and writer APIs
+ * %%
+ * Copyright (C) 2005 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.formats.ome;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import ome.units.quantity.Length;
+import ome.units.quantity.Quantity;
+import ome.units.quantity.Time;
+import ome.units.unit.Unit;
+import ome.xml.meta.MetadataRoot;
+import ome.xml.model.primitives.NonNegativeInteger;
+
+/**
+ * Extension of OMEPyramidStore that keeps Plane metadata in primitive
+ * arrays instead of OME model objects.
+ *
+ * Datasets with millions of planes otherwise need one Plane object, and
+ * several boxed values, per plane.  Here, each Image's Plane fields are
+ * stored as columns of ints and doubles indexed by Plane; Plane objects
+ * are only created when the model itself is needed, i.e. by
+ * {@link #getRoot()}, {@link #dumpXML()} or {@link #resolveReferences()},
+ * or when a Plane's hash or annotation references are set.  All
+ * {@link loci.formats.meta.MetadataRetrieve} methods return the same
+ * values as for {@link OMEXMLMetadataImpl}.
+ *
+ * Planes are only stored as columns for Images that have no Plane objects
+ * yet; an Image's Planes must be populated after its Pixels.
+ */
+public class CompactOMEXMLMetadata extends OMEPyramidStore {
+
+  // -- Fields --
+
+  /** Plane columns for each Image, or null where Planes are in the model. */
+  private List<PlaneColumns> planes;
+
+  // -- MetadataStore API methods --
+
+  @Override
+  public void setPlaneTheZ(NonNegativeInteger theZ, int image, int plane) {
+    PlaneColumns columns = getColumns(image, true);
+    if (columns == null) super.setPlaneTheZ(theZ, image, plane);
+    else columns.theZ.set(plane, theZ, columns);
+  }
+
+  @Override
+  public void setPlaneTheC(NonNegativeInteger theC, int image, int plane) {
+    PlaneColumns columns = getColumns(image, true);
+    if (columns == null) super.setPlaneTheC(theC, image, plane);
+    else columns.theC.set(plane, theC, columns);
+  }
+
+  @Override
+  public void setPlaneTheT(NonNegativeInteger theT, int image, int plane) {
+    PlaneColumns columns = getColumns(image, true);
+    if (columns == null) super.setPlaneTheT(theT, image, plane);
+    else columns.theT.set(plane, theT, columns);
+  }
+
+  @Override
+  public void setPlaneDeltaT(Time deltaT, int image, int plane) {
+    PlaneColumns columns = getColumns(image, true);
+    if (columns == null) super.setPlaneDeltaT(deltaT, image, plane);
+    else columns.deltaT.set(plane, deltaT, columns);
+  }
+
+  @Override
+  public void setPlaneExposureTime(Time exposureTime, int image, int plane) {
+    PlaneColumns columns = getColumns(image, true);
+    if (columns == null) super.setPlaneExposureTime(exposureTime, image, plane);
+    else columns.exposureTime.set(plane, exposureTime, columns);
+  }
+
+  @Override
+  public void setPlanePositionX(Length positionX, int image, int plane) {
+    PlaneColumns columns = getColumns(image, true);
+    if (columns == null) super.setPlanePositionX(positionX, image, plane);
+    else columns.positionX.set(plane, positionX, columns);
+  }
+
+  @Override
+  public void setPlanePositionY(Length positionY, int image, int plane) {
+    PlaneColumns columns = getColumns(image, true);
+    if (columns == null) super.setPlanePositionY(positionY, image, plane);
+    else columns.positionY.set(plane, positionY, columns);
+  }
+
+  @Override
+  public void setPlanePositionZ(Length positionZ, int image, int plane) {
+    PlaneColumns columns = getColumns(image, true);
+    if (columns == null) super.setPlanePositionZ(positionZ, image, plane);
+    else columns.positionZ.set(plane, positionZ, columns);
+  }
+
+  @Override
+  public void setPlaneHashSHA1(String hashSHA1, int image, int plane) {
+    // hashes are rare, so they are only stored in the model
+    materialize(image);
+    super.setPlaneHashSHA1(hashSHA1, image, plane);
+  }
+
+  @Override
+  public void setPlaneAnnotationRef(String annotation, int image, int plane,
+    int annotationRef)
+  {
+    materialize(image);
+    super.setPlaneAnnotationRef(annotation, image, plane, annotationRef);
+  }
+
+  // -- MetadataRetrieve API methods --
+
+  @Override
+  public int getPlaneCount(int image) {
+    PlaneColumns columns = getColumns(image, false);
+    return columns == null ? super.getPlaneCount(image) : columns.count;
+  }
+
+  @Override
+  public NonNegativeInteger getPlaneTheZ(int image, int plane) {
+    PlaneColumns columns = getColumns(image, plane);
+    return columns == null ?
+      super.getPlaneTheZ(image, plane) : columns.theZ.get(plane);
+  }
+
+  @Override
+  public NonNegativeInteger getPlaneTheC(int image, int plane) {
+    PlaneColumns columns = getColumns(image, plane);
+    return columns == null ?
+      super.getPlaneTheC(image, plane) : columns.theC.get(plane);
+  }
+
+  @Override
+  public NonNegativeInteger getPlaneTheT(int image, int plane) {
+    PlaneColumns columns = getColumns(image, plane);
+    return columns == null ?
+      super.getPlaneTheT(image, plane) : columns.theT.get(plane);
+  }
+
+  @Override
+  public Time getPlaneDeltaT(int image, int plane) {
+    PlaneColumns columns = getColumns(image, plane);
+    return columns == null ?
+      super.getPlaneDeltaT(image, plane) : columns.deltaT.get(plane);
+  }
+
+  @Override
+  public Time getPlaneExposureTime(int image, int plane) {
+    PlaneColumns columns = getColumns(image, plane);
+    return columns == null ?
+      super.getPlaneExposureTime(image, plane) : columns.exposureTime.get(plane);
+  }
+
+  @Override
+  public Length getPlanePositionX(int image, int plane) {
+    PlaneColumns columns = getColumns(image, plane);
+    return columns == null ?
+      super.getPlanePositionX(image, plane) : columns.positionX.get(plane);
+  }
+
+  @Override
+  public Length getPlanePositionY(int image, int plane) {
+    PlaneColumns columns = getColumns(image, plane);
+    return columns == null ?
+      super.getPlanePositionY(image, plane) : columns.positionY.get(plane);
+  }
+
+  @Override
+  public Length getPlanePositionZ(int image, int plane) {
+    PlaneColumns columns = getColumns(image, plane);
+    return columns == null ?
+      super.getPlanePositionZ(image, plane) : columns.positionZ.get(plane);
+  }
+
+  @Override
+  public String getPlaneHashSHA1(int image, int plane) {
+    PlaneColumns columns = getColumns(image, plane);
+    return columns == null ? super.getPlaneHashSHA1(image, plane) : null;
+  }
+
+  @Override
+  public int getPlaneAnnotationRefCount(int image, int plane) {
+    PlaneColumns columns = getColumns(image, plane);
+    return columns == null ? super.getPlaneAnnotationRefCount(image, plane) : 0;
+  }
+
+  @Override
+  public String getPlaneAnnotationRef(int image, int plane,
+    int annotationRef)
+  {
+    materialize(image);
+    return super.getPlaneAnnotationRef(image, plane, annotationRef);
+  }
+
+  // -- OMEXMLMetadata API methods --
+
+  @Override
+  public void createRoot() {
+    super.createRoot();
+    planes = null;
+  }
+
+  @Override
+  public MetadataRoot getRoot() {
+    materialize();
+    return super.getRoot();
+  }
+
+  @Override
+  public void setRoot(MetadataRoot root) {
+    // the new root may already contain Planes for any Image
+    planes = null;
+    super.setRoot(root);
+  }
+
+  @Override
+  public String dumpXML() {
+    materialize();
+    return super.dumpXML();
+  }
+
+  @Override
+  public int resolveReferences() {
+    materialize();
+    return super.resolveReferences();
+  }
+
+  // -- Helper methods --
+
+  /**
+   * Gets the columns for the given Image, or null if its Planes are stored
+   * in the model.  If 'create' is true, columns are created for an Image
+   * that has Pixels but no Planes.
+   */
+  private PlaneColumns getColumns(int image, boolean create) {
+    if (planes != null && image >= 0 && image < planes.size() &&
+      planes.get(image) != null)
+    {
+      return planes.get(image);
+    }
+    if (!create || image < 0 || image >= getImageCount()) return null;
+    try {
+      if (super.getPlaneCount(image) > 0) return null;
+    }
+    catch (NullPointerException e) {
+      // no Pixels yet, so let the model create them
+      return null;
+    }
+    if (planes == null) planes = new ArrayList<PlaneColumns>();
+    while (planes.size() <= image) planes.add(null);
+    PlaneColumns columns = new PlaneColumns();
+    planes.set(image, columns);
+    return columns;
+  }
+
+  /**
+   * Gets the columns for the given Image if they contain the given Plane,
+   * or null if the model should be queried instead.
+   */
+  private PlaneColumns getColumns(int image, int plane) {
+    PlaneColumns columns = getColumns(image, false);
+    if (columns == null || plane < 0 || plane >= columns.count) return null;
+    return columns;
+  }
+
+  /** Moves all Plane columns into the model. */
+  private void materialize() {
+    if (planes == null) return;
+    for (int i=0; i<planes.size(); i++) materialize(i);
+    planes = null;
+  }
+
+  /** Moves the given Image's Plane columns into the model. */
+  private void materialize(int image) {
+    PlaneColumns columns = getColumns(image, false);
+    if (columns == null) return;
+    planes.set(image, null);
+    for (int p=0; p<columns.count; p++) {
+      // always set TheZ, so that the Plane is created in order
+      super.setPlaneTheZ(columns.theZ.get(p), image, p);
+      NonNegativeInteger theC = columns.theC.get(p);
+      if (theC != null) super.setPlaneTheC(theC, image, p);
+      NonNegativeInteger theT = columns.theT.get(p);
+      if (theT != null) super.setPlaneTheT(theT, image, p);
+      Time deltaT = columns.deltaT.get(p);
+      if (deltaT != null) super.setPlaneDeltaT(deltaT, image, p);
+      Time exposureTime = columns.exposureTime.get(p);
+      if (exposureTime != null) {
+        super.setPlaneExposureTime(exposureTime, image, p);
+      }
+      Length positionX = columns.positionX.get(p);
+      if (positionX != null) super.setPlanePositionX(positionX, image, p);
+      Length positionY = columns.positionY.get(p);
+      if (positionY != null) super.setPlanePositionY(positionY, image, p);
+      Length positionZ = columns.positionZ.get(p);
+      if (positionZ != null) super.setPlanePositionZ(positionZ, image, p);
+    }
+  }
+
+  /** Gets a capacity of at least the given size for a column. */
+  private static int grow(int length, int size) {
+    return Math.max(size, Math.max(16, length + (length >> 1)));
+  }
+
+  // -- Helper classes --
+
+  /** Plane fields of one Image. */
+  private static class PlaneColumns {
+    /** Number of Planes, i.e. one more than the largest Plane index set. */
+    public int count;
+
+    public final IndexColumn theZ = new IndexColumn();
+    public final IndexColumn theC = new IndexColumn();
+    public final IndexColumn theT = new IndexColumn();
+    public final QuantityColumn<Time> deltaT = new TimeColumn();
+    public final QuantityColumn<Time> exposureTime = new TimeColumn();
+    public final QuantityColumn<Length> positionX = new LengthColumn();
+    public final QuantityColumn<Length> positionY = new LengthColumn();
+    public final QuantityColumn<Length> positionZ = new LengthColumn();
+  }
+
+  /**
+   * Column of non-negative integers; -1 marks unset values.  The array is
+   * only allocated once a value is set.
+   */
+  private static class IndexColumn {
+    private int[] values;
+
+    public NonNegativeInteger get(int plane) {
+      if (values == null || plane >= values.length || values[plane] < 0) {
+        return null;
+      }
+      return new NonNegativeInteger(values[plane]);
+    }
+
+    public void set(int plane, NonNegativeInteger value,
+      PlaneColumns columns)
+    {
+      if (plane < 0) {
+        throw new IndexOutOfBoundsException("Invalid plane index: " + plane);
+      }
+      columns.count = Math.max(columns.count, plane + 1);
+      if (value == null && (values == null || plane >= values.length)) {
+        return;
+      }
+      if (values == null || plane >= values.length) {
+        int oldLength = values == null ? 0 : values.length;
+        values = values == null ? new int[grow(0, plane + 1)] :
+          Arrays.copyOf(values, grow(values.length, plane + 1));
+        Arrays.fill(values, oldLength, values.length, -1);
+      }
+      values[plane] = value == null ? -1 : value.getValue();
+    }
+  }
+
+  /**
+   * Column of quantities that share a unit, stored as doubles; NaN marks
+   * unset values.  Values in another unit, or whose value is not a Double,
+   * are kept as objects so that they are returned unchanged.
+   */
+  private abstract static class QuantityColumn<Q extends Quantity> {
+    private double[] values;
+    private Unit<Q> unit;
+    private Map<Integer, Q> others;
+
+    protected abstract Q create(Double value, Unit<Q> unit);
+
+    protected abstract Unit<Q> getUnit(Q quantity);
+
+    public Q get(int plane) {
+      if (others != null) {
+        Q q = others.get(plane);
+        if (q != null) return q;
+      }
+      if (values == null || plane >= values.length ||
+        Double.isNaN(values[plane]))
+      {
+        return null;
+      }
+      return create(values[plane], unit);
+    }
+
+    public void set(int plane, Q value, PlaneColumns columns) {
+      if (plane < 0) {
+        throw new IndexOutOfBoundsException("Invalid plane index: " + plane);
+      }
+      columns.count = Math.max(columns.count, plane + 1);
+      if (others != null) others.remove(plane);
+      if (values != null && plane < values.length) values[plane] = Double.NaN;
+      if (value == null) return;
+
+      Number n = value.value();
+      if (unit == null) unit = getUnit(value);
+      if (!(n instanceof Double) || ((Double) n).isNaN() ||
+        !unit.equals(getUnit(value)))
+      {
+        if (others == null) others = new HashMap<Integer, Q>();
+        others.put(plane, value);
+        return;
+      }
+      if (values == null || plane >= values.length) {
+        int oldLength = values == null ? 0 : values.length;
+        values = values == null ? new double[grow(0, plane + 1)] :
+          Arrays.copyOf(values, grow(values.length, plane + 1));
+        Arrays.fill(values, oldLength, values.length, Double.NaN);
+      }
+      values[plane] = n.doubleValue();
+    }
+  }
+
+  private static class TimeColumn extends QuantityColumn<Time> {
+    @Override
+    protected Time create(Double value, Unit<Time> unit) {
+      return new Time(value, unit);
+    }
+
+    @Override
+    protected Unit<Time> getUnit(Time quantity) {
+      return quantity.unit();
+    }
+  }
+
+  private static class LengthColumn extends QuantityColumn<Length> {
+    @Override
+    protected Length create(Double value, Unit<Length> unit) {
+      return new Length(value, unit);
+    }
+
+    @Override
+    protected Unit<Length> getUnit(Length quantity) {
+      return quantity.unit();
+    }
+  }
+
+}
@@ -99,6 +99,24 @@ public interface OMEXMLService extends Service {
   public OMEXMLMetadata createOMEXMLMetadata(String xml, String version)
     throws ServiceException;
 
+  /**
+   * Creates an OME-XML metadata object from the given OME-XML string,
+   * optionally omitting the StructuredAnnotations block and all
+   * AnnotationRef elements while the XML is parsed.  This is useful when only
+   * the image dimensions or file layout are needed, as the annotations
+   * often account for most of the XML in large documents.
+   *
+   * @param xml The OME-XML string to use for initial population of the
+   *   metadata object.
+   * @param skipAnnotations true if annotations should not be parsed.
+   * @return A new instance of {@link loci.formats.ome.AbstractOMEXMLMetadata},
+   *   or null if the class is not available.
+   * @throws ServiceException If there is an error creating the OME-XML
+   * metadata object.
+   */
+  public OMEXMLMetadata createOMEXMLMetadata(String xml,
+    boolean skipAnnotations) throws ServiceException;
+
   /**
    * Constructs an OME root node.
    * @param xml String of XML to create the root node from.
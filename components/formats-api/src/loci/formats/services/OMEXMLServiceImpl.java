@@ -56,6 +56,7 @@ import loci.formats.FormatTools;
 import loci.formats.MetadataTools;
 import loci.formats.Modulo;
 import loci.formats.meta.IMetadata;
+import loci.formats.meta.MetadataConverter;
 import loci.formats.meta.MetadataRetrieve;
 import loci.formats.meta.MetadataStore;
 import loci.formats.meta.ModuloAnnotation;
@@ -65,7 +66,6 @@ import loci.formats.ome.OMEXMLMetadata;
 
 import ome.units.quantity.Length;
 
-import ome.xml.meta.MetadataConverter;
 import ome.xml.meta.OMEXMLMetadataRoot;
 import ome.xml.model.BinData;
 import ome.xml.model.Channel;
@@ -370,7 +370,30 @@ public class OMEXMLServiceImpl extends AbstractService implements OMEXMLService
       xml = XMLTools.sanitizeXML(xml);
     }
     OMEXMLMetadataRoot ome =
-      xml == null ? null : createRoot(transformToLatestVersion(xml));
+      xml == null ? null : createRoot(transformToLatestVersion(xml), null);
+
+    OMEXMLMetadata meta = new OMEPyramidStore();
+    if (ome != null) meta.setRoot(ome);
+    return meta;
+  }
+
+  /**
+   * @see OMEXMLService#createOMEXMLMetadata(java.lang.String, boolean)
+   */
+  @Override
+  public OMEXMLMetadata createOMEXMLMetadata(String xml,
+    boolean skipAnnotations)
+    throws ServiceException
+  {
+    if (!skipAnnotations) {
+      return createOMEXMLMetadata(xml);
+    }
+    if (xml != null) {
+      xml = XMLTools.sanitizeXML(xml);
+    }
+    OMEXMLMetadataRoot ome = xml == null ? null :
+      createRoot(transformToLatestVersion(xml),
+      OMEXMLStreamParser.ANNOTATION_ELEMENTS);
 
     OMEXMLMetadata meta = new OMEPyramidStore();
     if (ome != null) meta.setRoot(ome);
@@ -380,7 +403,7 @@ public class OMEXMLServiceImpl extends AbstractService implements OMEXMLService
   /** @see OMEXMLService#createOMEXMLRoot(java.lang.String) */
   @Override
   public OMEModelObject createOMEXMLRoot(String xml) throws ServiceException {
-    return createRoot(transformToLatestVersion(xml));
+    return createRoot(transformToLatestVersion(xml), null);
   }
 
   /** @see OMEXMLService#isOMEXMLMetadata(java.lang.Object) */
@@ -399,17 +422,20 @@ public class OMEXMLServiceImpl extends AbstractService implements OMEXMLService
    * Constructs an OME root node. <b>NOTE:</b> This method is mostly here to
    * ensure type safety of return values as instances of service dependency
    * classes should not leak out of the interface.
+   * The XML is read in a single streaming pass; see
+   * {@link OMEXMLStreamParser}.
    * @param xml String of XML to create the root node from.
+   * @param skipped Local names of elements to omit, or null.
    * @return An ome.xml.model.OMEModelObject subclass root node.
-   * @throws IOException If there is an error reading from the string.
-   * @throws SAXException If there is an error parsing the XML.
-   * @throws ParserConfigurationException If there is an error preparing the
-   * parsing infrastructure.
+   * @throws ServiceException If there is an error parsing the XML.
    */
-  private OMEXMLMetadataRoot createRoot(String xml) throws ServiceException {
+  private OMEXMLMetadataRoot createRoot(String xml, Set<String> skipped)
+    throws ServiceException
+  {
     try {
       OMEModel model = new OMEModelImpl();
-      OMEXMLMetadataRoot ome = new OMEXMLMetadataRoot(XMLTools.parseDOM(xml).getDocumentElement(), model);
+      Element root = OMEXMLStreamParser.parse(xml, skipped).getDocumentElement();
+      OMEXMLMetadataRoot ome = new OMEXMLMetadataRoot(root, model);
       model.resolveReferences();
       return ome;
     }
@@ -426,23 +452,12 @@ public class OMEXMLServiceImpl extends AbstractService implements OMEXMLService
       return LATEST_VERSION;
     }
     else if (o instanceof String) {
-      String xml = (String) o;
-      try {
-        Element e = XMLTools.parseDOM(xml).getDocumentElement();
-        String namespace = e.getAttribute("xmlns");
-        if (namespace == null || namespace.equals("")) {
-          namespace = e.getAttribute("xmlns:ome");
-        }
-        if (namespace == null || namespace.equals("")) {
-          namespace = e.getAttribute("xmlns:OME");
-        }
-
+      // only the root element is needed, so avoid building a full DOM
+      String namespace = OMEXMLStreamParser.getRootNamespace((String) o);
+      if (namespace != null) {
         return namespace.endsWith("ome.xsd") ? "2003-FC" :
           namespace.substring(namespace.lastIndexOf("/") + 1);
       }
-      catch (ParserConfigurationException pce) { }
-      catch (SAXException se) { }
-      catch (IOException ioe) { }
     }
     return null;
   }
@@ -874,7 +889,7 @@ public class OMEXMLServiceImpl extends AbstractService implements OMEXMLService
   @Override
   public void convertMetadata(String xml, MetadataStore dest)
     throws ServiceException {
-    OMEXMLMetadataRoot ome = createRoot(transformToLatestVersion(xml));
+    OMEXMLMetadataRoot ome = createRoot(transformToLatestVersion(xml), null);
     String rootVersion = getOMEXMLVersion(ome);
     String storeVersion = getOMEXMLVersion(dest);
     if (rootVersion.equals(storeVersion)) {
@@ -0,0 +1,218 @@
+/*
+ * #%L
+ * Top-level reader and writer APIs
+ * %%
+ * Copyright (C) 2005 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.formats.services;
+
+import java.io.StringReader;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.Text;
+
+/**
+ * Single-pass StAX parser for OME-XML strings.
+ *
+ * The OME model objects are populated from DOM elements, so a DOM is still
+ * built; however, the document is read exactly once, version detection
+ * only reads the root element, and whole element subtrees can be dropped
+ * as they are encountered instead of being materialized and discarded.
+ * The resulting DOM mirrors what a non-namespace-aware
+ * {@link javax.xml.parsers.DocumentBuilder} would produce: qualified element
+ * and attribute names, with namespace declarations stored as
+ * <code>xmlns</code> attributes.
+ */
+final class OMEXMLStreamParser {
+
+  // -- Constants --
+
+  /** Elements dropped when annotations are not needed. */
+  static final Set<String> ANNOTATION_ELEMENTS;
+  static {
+    Set<String> names = new HashSet<String>();
+    names.add("StructuredAnnotations");
+    names.add("AnnotationRef");
+    ANNOTATION_ELEMENTS = Collections.unmodifiableSet(names);
+  }
+
+  // -- Constructor --
+
+  private OMEXMLStreamParser() { }
+
+  // -- Utility methods --
+
+  /**
+   * Reads the namespace of the root element, stopping as soon as the root
+   * element has been parsed.  The default namespace is preferred, followed
+   * by the "ome" and "OME" prefixes.
+   * @return the namespace, the empty string if none was declared,
+   *   or null if the XML could not be parsed
+   */
+  static String getRootNamespace(String xml) {
+    XMLStreamReader reader = null;
+    try {
+      reader = createFactory().createXMLStreamReader(new StringReader(xml));
+      while (reader.hasNext()) {
+        if (reader.next() == XMLStreamConstants.START_ELEMENT) {
+          String ome = null, upperOME = null;
+          for (int i=0; i<reader.getNamespaceCount(); i++) {
+            String prefix = reader.getNamespacePrefix(i);
+            String uri = reader.getNamespaceURI(i);
+            if (prefix == null || prefix.isEmpty()) {
+              if (uri != null && !uri.isEmpty()) return uri;
+            }
+            else if (prefix.equals("ome")) ome = uri;
+            else if (prefix.equals("OME")) upperOME = uri;
+          }
+          if (ome != null && !ome.isEmpty()) return ome;
+          return upperOME == null ? "" : upperOME;
+        }
+      }
+    }
+    catch (XMLStreamException e) { }
+    finally {
+      close(reader);
+    }
+    return null;
+  }
+
+  /**
+   * Parses the given XML string into a DOM document.
+   * @param xml the XML to parse
+   * @param skipped local names of elements whose subtrees should be omitted,
+   *   or null to keep every element
+   */
+  static Document parse(String xml, Set<String> skipped)
+    throws ParserConfigurationException, XMLStreamException
+  {
+    Document doc =
+      DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+    XMLStreamReader reader =
+      createFactory().createXMLStreamReader(new StringReader(xml));
+    try {
+      Node current = doc;
+      int skipDepth = 0;
+      while (reader.hasNext()) {
+        int event = reader.next();
+        if (skipDepth > 0) {
+          if (event == XMLStreamConstants.START_ELEMENT) skipDepth++;
+          else if (event == XMLStreamConstants.END_ELEMENT) skipDepth--;
+          continue;
+        }
+        switch (event) {
+          case XMLStreamConstants.START_ELEMENT:
+            if (skipped != null && skipped.contains(reader.getLocalName())) {
+              skipDepth = 1;
+              break;
+            }
+            Element e = doc.createElement(
+              qualifiedName(reader.getPrefix(), reader.getLocalName()));
+            for (int i=0; i<reader.getNamespaceCount(); i++) {
+              String prefix = reader.getNamespacePrefix(i);
+              String uri = reader.getNamespaceURI(i);
+              e.setAttribute(qualifiedName("xmlns", prefix),
+                uri == null ? "" : uri);
+            }
+            for (int i=0; i<reader.getAttributeCount(); i++) {
+              e.setAttribute(qualifiedName(reader.getAttributePrefix(i),
+                reader.getAttributeLocalName(i)), reader.getAttributeValue(i));
+            }
+            current.appendChild(e);
+            current = e;
+            break;
+          case XMLStreamConstants.END_ELEMENT:
+            current = current.getParentNode();
+            break;
+          case XMLStreamConstants.CHARACTERS:
+          case XMLStreamConstants.SPACE:
+            if (current != doc) {
+              Node last = current.getLastChild();
+              if (last != null && last.getNodeType() == Node.TEXT_NODE) {
+                ((Text) last).appendData(reader.getText());
+              }
+              else {
+                current.appendChild(doc.createTextNode(reader.getText()));
+              }
+            }
+            break;
+          case XMLStreamConstants.CDATA:
+            if (current != doc) {
+              current.appendChild(doc.createCDATASection(reader.getText()));
+            }
+            break;
+          default:
+            break;
+        }
+      }
+    }
+    finally {
+      close(reader);
+    }
+    return doc;
+  }
+
+  // -- Helper methods --
+
+  private static XMLInputFactory createFactory() {
+    XMLInputFactory factory = XMLInputFactory.newInstance();
+    factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+    factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+    factory.setProperty(
+      XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+    return factory;
+  }
+
+  private static String qualifiedName(String prefix, String localName) {
+    if (prefix == null || prefix.isEmpty()) return localName;
+    if (localName == null || localName.isEmpty()) return prefix;
+    return prefix + ":" + localName;
+  }
+
+  private static void close(XMLStreamReader reader) {
+    if (reader == null) return;
+    try {
+      reader.close();
+    }
+    catch (XMLStreamException e) { }
+  }
+
+}
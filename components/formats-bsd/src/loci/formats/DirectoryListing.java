@@ -0,0 +1,208 @@
+/*
+ * #%L
+ * BSD implementations of Bio-Formats readers and writers
+ * %%
+ * Copyright (C) 2005 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.formats;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import loci.common.Location;
+
+/**
+ * DirectoryListing is a sorted snapshot of the names in a directory, used by
+ * {@link FilePattern} to find matching files without scanning the whole
+ * directory for each numerical block.
+ *
+ * Snapshots of real directories are cached, and reused as long as the
+ * directory's modification time has not changed.  A snapshot taken less than
+ * {@link #MTIME_RESOLUTION} milliseconds after the directory was modified is
+ * not reused, as a further change in the same interval would not be visible
+ * in the modification time.
+ */
+public class DirectoryListing {
+
+  // -- Constants --
+
+  /** Maximum number of cached directory snapshots. */
+  public static final int MAX_CACHED_LISTINGS = 16;
+
+  /**
+   * Coarsest modification time resolution of the supported file systems,
+   * in milliseconds.
+   */
+  public static final long MTIME_RESOLUTION = 2000;
+
+  // -- Static fields --
+
+  /** Cached snapshots, indexed by directory path and hidden file handling. */
+  private static final Map<String, DirectoryListing> CACHE =
+    new LinkedHashMap<String, DirectoryListing>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(
+        Map.Entry<String, DirectoryListing> eldest)
+      {
+        return size() > MAX_CACHED_LISTINGS;
+      }
+    };
+
+  // -- Fields --
+
+  /** Sorted names. */
+  private final String[] names;
+
+  /** Modification time of the directory when it was listed. */
+  private final long lastModified;
+
+  /** Time at which the directory was listed. */
+  private final long listed;
+
+  // -- Constructors --
+
+  /** Constructs an index over the given names. */
+  public DirectoryListing(String[] names) {
+    this(names, 0, 0);
+  }
+
+  private DirectoryListing(String[] names, long lastModified, long listed) {
+    this.names = names.clone();
+    Arrays.sort(this.names);
+    this.lastModified = lastModified;
+    this.listed = listed;
+  }
+
+  // -- DirectoryListing API methods --
+
+  /** Gets the number of names in this listing. */
+  public int size() {
+    return names.length;
+  }
+
+  /** Gets the name at the given index, in sorted order. */
+  public String get(int index) {
+    return names[index];
+  }
+
+  /** Gets a sorted copy of all names in this listing. */
+  public String[] getNames() {
+    return names.clone();
+  }
+
+  /** Returns true if this listing contains the given name. */
+  public boolean contains(String name) {
+    return Arrays.binarySearch(names, name) >= 0;
+  }
+
+  /**
+   * Gets the index of the first name that starts with the given prefix.
+   * All names with the prefix are between this index (inclusive) and
+   * {@link #getPrefixEnd(String)} (exclusive).
+   */
+  public int getPrefixStart(String prefix) {
+    int index = Arrays.binarySearch(names, prefix);
+    return index < 0 ? -index - 1 : index;
+  }
+
+  /** Gets the index after the last name that starts with the given prefix. */
+  public int getPrefixEnd(String prefix) {
+    int index = getPrefixStart(prefix);
+    if (prefix.isEmpty()) return names.length;
+    // binary search past the last name that has this prefix
+    int end = names.length;
+    while (index < end) {
+      int mid = (index + end) >>> 1;
+      if (names[mid].startsWith(prefix)) index = mid + 1;
+      else end = mid;
+    }
+    return index;
+  }
+
+  /** Gets the names that start with the given prefix, in sorted order. */
+  public String[] getNames(String prefix) {
+    return Arrays.copyOfRange(names,
+      getPrefixStart(prefix), getPrefixEnd(prefix));
+  }
+
+  // -- Utility methods --
+
+  /**
+   * Gets a snapshot of the given directory, reusing a cached snapshot if the
+   * directory has not been modified since it was taken.
+   *
+   * @param dir the directory to list
+   * @param noHiddenFiles true if hidden files should be excluded
+   *   (see {@link Location#list(boolean)})
+   * @return the snapshot, or null if the directory cannot be listed
+   */
+  public static DirectoryListing getListing(String dir,
+    boolean noHiddenFiles)
+  {
+    Location location = new Location(dir).getAbsoluteFile();
+    String path = location.getAbsolutePath();
+    long lastModified = location.lastModified();
+
+    // mapped and remote directories do not have a usable modification time
+    boolean cacheable = lastModified > 0 &&
+      Location.getMappedId(dir).equals(dir);
+    String key = path + (noHiddenFiles ? "?nohidden" : "");
+    if (cacheable) {
+      synchronized (CACHE) {
+        DirectoryListing listing = CACHE.get(key);
+        if (listing != null && listing.lastModified == lastModified &&
+          listing.listed - lastModified >= MTIME_RESOLUTION)
+        {
+          return listing;
+        }
+      }
+    }
+
+    long listed = System.currentTimeMillis();
+    String[] names = location.list(noHiddenFiles);
+    if (names == null) return null;
+    DirectoryListing listing =
+      new DirectoryListing(names, lastModified, listed);
+    if (cacheable) {
+      synchronized (CACHE) {
+        CACHE.put(key, listing);
+      }
+    }
+    return listing;
+  }
+
+  /** Discards all cached directory snapshots. */
+  public static void clearCache() {
+    synchronized (CACHE) {
+      CACHE.clear();
+    }
+  }
+
+}
@@ -36,7 +36,11 @@ import java.io.File;
 import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
@@ -404,15 +408,13 @@ public class FilePattern {
     else if (!dir.equals("") && !dir.endsWith(File.separator)) {
       dir += File.separator;
     }
-    Location dirFile = new Location(dir.equals("") ? "." : dir);
 
     // list files in the given directory
-    Location[] f = dirFile.listFiles();
-    if (f == null) return null;
-    String[] nameList = new String[f.length];
-    for (int i=0; i<nameList.length; i++) nameList[i] = f[i].getName();
+    DirectoryListing listing =
+      DirectoryListing.getListing(dir.equals("") ? "." : dir, false);
+    if (listing == null) return null;
 
-    return findPattern(name, dir, nameList);
+    return findPattern(name, dir, listing, null);
   }
 
   /**
@@ -441,6 +443,24 @@ public class FilePattern {
    */
   public static String findPattern(String name, String dir, String[] nameList,
     int[] excludeAxes)
+  {
+    return findPattern(name, dir, new DirectoryListing(nameList),
+      excludeAxes);
+  }
+
+  /**
+   * Identifies the group pattern from a given filename, directory and
+   * sorted listing of candidate filenames.
+   *
+   * @param name The file basename to use as a template for the match.
+   * @param dir The directory prefix to use for matching files.
+   * @param nameList The names through which to search for matching files.
+   * @param excludeAxes The list of axis types which should be
+   * excluded from the pattern (see {@link AxisGuesser}).
+   * @return the identified pattern.
+   */
+  public static String findPattern(String name, String dir,
+    DirectoryListing nameList, int[] excludeAxes)
   {
     if (excludeAxes == null) excludeAxes = new int[0];
 
@@ -498,7 +518,7 @@ public class FilePattern {
       String pre = name.substring(0, indexList[i]);
       String post = name.substring(endList[i]);
       NumberFilter filter = new NumberFilter(pre, post);
-      String[] list = matchFiles(nameList, filter);
+      String[] list = matchFiles(nameList, pre, filter);
       if (list == null || list.length == 0) return null;
       if (list.length == 1) {
         // false alarm; this number block is constant
@@ -613,9 +633,10 @@ public class FilePattern {
   public static String[] findSeriesPatterns(String base) {
     Location file = new Location(base).getAbsoluteFile();
     Location parent = file.getParentFile();
-    String[] list = parent.list(true);
+    DirectoryListing list =
+      DirectoryListing.getListing(parent.getAbsolutePath(), true);
     if (list == null) {
-      list = new String[0];
+      list = new DirectoryListing(new String[0]);
     }
     return findSeriesPatterns(base, parent.getAbsolutePath(), list);
   }
@@ -639,6 +660,21 @@ public class FilePattern {
    */
   public static String[] findSeriesPatterns(String base, String dir,
     String[] nameList)
+  {
+    return findSeriesPatterns(base, dir, new DirectoryListing(nameList));
+  }
+
+  /**
+   * Works like {@link #findSeriesPatterns(String, String, String[])},
+   * using a sorted listing of candidate filenames.
+   *
+   * @param base The file basename to use as a template for the match.
+   * @param dir The directory prefix to use for matching files.
+   * @param nameList The names through which to search for matching files.
+   * @return an array containing all identified patterns.
+   */
+  public static String[] findSeriesPatterns(String base, String dir,
+    DirectoryListing nameList)
   {
     String baseSuffix = base.substring(base.lastIndexOf(File.separator) + 1);
     int dot = baseSuffix.indexOf('.');
@@ -647,11 +683,19 @@ public class FilePattern {
 
     String absoluteBase = new Location(base).getAbsolutePath();
 
-    ArrayList<String> patterns = new ArrayList<String>();
+    String dirPrefix = dir == null ? "" : dir;
+    if (!dirPrefix.equals("") && !dirPrefix.endsWith(File.separator)) {
+      dirPrefix += File.separator;
+    }
+
+    Set<String> patterns = new HashSet<String>();
+    // whether the base file is part of each full pattern
+    Map<String, Boolean> containsBase = new HashMap<String, Boolean>();
     int[] exclude = new int[] {AxisGuesser.S_AXIS};
-    for (String name : nameList) {
+    for (int n=0; n<nameList.size(); n++) {
+      String name = nameList.get(n);
       String pattern = findPattern(name, dir, nameList, exclude);
-      if (pattern == null) continue;
+      if (pattern == null || patterns.contains(pattern)) continue;
       int start = pattern.lastIndexOf(File.separator) + 1;
       if (start < 0) start = 0;
       String patternSuffix = pattern.substring(start);
@@ -659,20 +703,34 @@ public class FilePattern {
       if (dot < 0) patternSuffix = "";
       else patternSuffix = patternSuffix.substring(dot + 1);
 
-      String checkPattern = findPattern(name, dir, nameList);
-      String[] checkFiles = new FilePattern(checkPattern).getFiles();
+      if (!patternSuffix.equals(baseSuffix)) continue;
 
-      // ensure that escaping is consistent with the base file
-      // this is needed to make sure that file grouping works correctly
-      // on Windows
-      for (int q=0; q<checkFiles.length; q++) {
-        checkFiles[q] = new Location(checkFiles[q]).getAbsolutePath();
+      // a pattern that names a listed file is only accepted for the base file
+      if (!absoluteBase.equals(pattern) &&
+        isListed(pattern, dirPrefix, nameList))
+      {
+        continue;
       }
 
-      if (!patterns.contains(pattern) && (!new Location(pattern).exists() ||
-        absoluteBase.equals(pattern)) && patternSuffix.equals(baseSuffix) &&
-        DataTools.indexOf(checkFiles, absoluteBase) >= 0)
-      {
+      String checkPattern = findPattern(name, dir, nameList, null);
+      Boolean check = containsBase.get(checkPattern);
+      if (check == null) {
+        String[] checkFiles = new FilePattern(checkPattern).getFiles();
+
+        // ensure that escaping is consistent with the base file
+        // this is needed to make sure that file grouping works correctly
+        // on Windows
+        check = Boolean.FALSE;
+        for (String checkFile : checkFiles) {
+          if (new Location(checkFile).getAbsolutePath().equals(absoluteBase)) {
+            check = Boolean.TRUE;
+            break;
+          }
+        }
+        containsBase.put(checkPattern, check);
+      }
+
+      if (check) {
         patterns.add(pattern);
       }
     }
@@ -683,14 +741,32 @@ public class FilePattern {
 
   // -- Utility helper methods --
 
+  // checks whether the given pattern names an existing file,
+  // using the listing for files in the listed directory
+  private static boolean isListed(String pattern, String dir,
+    DirectoryListing nameList)
+  {
+    if (pattern.startsWith(dir)) {
+      String name = pattern.substring(dir.length());
+      if (nameList.contains(name)) return true;
+      // any file with a block in its name would have been listed
+      if (name.indexOf(File.separator) < 0 &&
+        name.indexOf(FilePatternBlock.BLOCK_START) >= 0)
+      {
+        return false;
+      }
+    }
+    return new Location(pattern).exists();
+  }
+
   // recursive method for fixed-width numerical blocks
   private static String findPattern(String name,
-      String[] nameList, int ndx, int end, String p) {
+      DirectoryListing nameList, int ndx, int end, String p) {
     if (ndx == end) return p;
+    String pre = name.substring(0, ndx);
     for (int i=end-ndx; i>=1; i--) {
-      NumberFilter filter = new NumberFilter(
-        name.substring(0, ndx), name.substring(ndx + i));
-      String[] list = matchFiles(nameList, filter);
+      NumberFilter filter = new NumberFilter(pre, name.substring(ndx + i));
+      String[] list = matchFiles(nameList, pre, filter);
       BigInteger[] numbers = new BigInteger[list.length];
       for (int j=0; j<list.length; j++) {
         numbers[j] = new BigInteger(list[j].substring(ndx, ndx + i));
@@ -746,11 +822,15 @@ public class FilePattern {
     return bounds.toString();
   }
 
-  // filters the given list of filenames according to the specified filter
-  private static String[] matchFiles(String[] inFiles, NumberFilter filter) {
+  // filters the given list of filenames according to the specified filter;
+  // only names starting with the filter's prefix are checked
+  private static String[] matchFiles(DirectoryListing inFiles, String prefix,
+    NumberFilter filter)
+  {
     List<String> list = new ArrayList<String>();
-    for (int i=0; i<inFiles.length; i++) {
-      if (filter.accept(inFiles[i])) list.add(inFiles[i]);
+    int end = inFiles.getPrefixEnd(prefix);
+    for (int i=inFiles.getPrefixStart(prefix); i<end; i++) {
+      if (filter.accept(inFiles.get(i))) list.add(inFiles.get(i));
     }
     return list.toArray(new String[0]);
   }
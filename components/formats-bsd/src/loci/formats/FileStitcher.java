@@ -41,12 +41,16 @@ import java.util.HashMap;
 import java.util.LinkedHashSet;
 import java.util.Hashtable;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import loci.common.DataTools;
 import loci.common.Location;
+import loci.common.RandomAccessInputStream;
 import loci.formats.in.MetadataOptions;
 import loci.formats.meta.MetadataStore;
+import loci.formats.tiff.IFD;
+import loci.formats.tiff.TiffParser;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -64,6 +68,9 @@ public class FileStitcher extends ReaderWrapper {
 
   private static final int MAX_READERS = 1000;
 
+  /** Number of bytes at the start of each file compared with the template. */
+  private static final int TEMPLATE_HEADER_LENGTH = 16;
+
   // -- Fields --
 
   /**
@@ -92,6 +99,12 @@ public class FileStitcher extends ReaderWrapper {
   private boolean noStitch;
   private boolean group = true;
 
+  /**
+   * Whether every file in a pattern is assumed to have the same layout
+   * as the first file.
+   */
+  private boolean homogeneous = false;
+
   private MetadataStore store;
 
   private ExternalSeries[] externals;
@@ -167,6 +180,28 @@ public class FileStitcher extends ReaderWrapper {
     return !doNotChangePattern;
   }
 
+  /**
+   * Sets whether every file in the pattern has exactly the same layout as
+   * the first file, e.g. uncompressed single-file TIFFs with identical
+   * dimensions written by one acquisition.
+   *
+   * When enabled, the first file is parsed once and used as a template:
+   * other files of the same length are read by pointing the template reader
+   * at them (see {@link FormatReader#reopenFile(String)}), rather than by
+   * fully initializing a new reader for each file.  Files whose length or
+   * first bytes differ from the first file are initialized normally, as
+   * are TIFF files whose first IFD has a different pixel layout (e.g.
+   * compression or strip offsets).
+   * File existence is checked using one directory listing per directory.
+   */
+  public void setHomogeneous(boolean homogeneous) {
+    FormatTools.assertId(getCurrentFile(), false, 2);
+    this.homogeneous = homogeneous;
+  }
+
+  /** Gets whether files in the pattern are assumed to share one layout. */
+  public boolean isHomogeneous() { return homogeneous; }
+
   /** Gets the reader appropriate for use with the given image plane. */
   public IFormatReader getReader(int no) throws FormatException, IOException {
     if (noStitch) return reader;
@@ -480,7 +515,10 @@ public class FileStitcher extends ReaderWrapper {
 
     if (ino < r.getImageCount()) {
       byte[] b = r.openBytes(ino, buf, x, y, w, h);
-      if (!noStitch && ino == r.getImageCount() - 1) {
+      // the template reader's file is closed when it is next repointed
+      if (!noStitch && ino == r.getImageCount() - 1 &&
+        !externals[getExternalSeries()].isTemplate(r))
+      {
         r.close();
       }
       return b;
@@ -1051,13 +1089,17 @@ public class FileStitcher extends ReaderWrapper {
         fp.getPattern() + "). " + msg);
     }
 
+    Map<String, DirectoryListing> listings =
+      new HashMap<String, DirectoryListing>();
     for (int i=0; i<files.length; i++) {
       String file = files[i];
 
       // HACK: skip file existence check for fake files
       if (file.toLowerCase().endsWith(".fake")) continue;
 
-      if (!new Location(file).exists()) {
+      if (!(homogeneous ? isListed(file, listings) :
+        new Location(file).exists()))
+      {
         throw new FormatException("File #" + i +
           " (" + file + ") does not exist.");
       }
@@ -1138,6 +1180,26 @@ public class FileStitcher extends ReaderWrapper {
 
   // -- Helper methods --
 
+  /**
+   * Checks whether the given file exists, using a snapshot of each parent
+   * directory.  Mapped files are checked directly.
+   */
+  private boolean isListed(String file, Map<String, DirectoryListing> listings)
+  {
+    Location location = new Location(file);
+    String parent = location.getParent();
+    if (parent == null || !Location.getMappedId(file).equals(file)) {
+      return location.exists();
+    }
+    DirectoryListing names = listings.get(parent);
+    if (names == null && !listings.containsKey(parent)) {
+      names = DirectoryListing.getListing(parent, false);
+      listings.put(parent, names);
+    }
+    return (names != null && names.contains(location.getName())) ||
+      location.exists();
+  }
+
   private int getExternalSeries() {
     return getExternalSeries(getCoreIndex());
   }
@@ -1298,7 +1360,10 @@ public class FileStitcher extends ReaderWrapper {
       if (r.getCurrentFile() == null) {
         r.setGroupFiles(false);
       }
-      r.setId(externals[external].getFiles()[fno]);
+      if (externals[external].isTemplate(r)) {
+        externals[external].reopenTemplate(fno);
+      }
+      else r.setId(externals[external].getFiles()[fno]);
       r.setCoreIndex(reader.getCoreMetadataList().size() > 1 ? sno : 0);
       String newOrder = ((DimensionSwapper) reader).getInputOrder();
       if ((externals[external].getFiles().length > 1 || !r.isOrderCertain()) &&
@@ -1328,6 +1393,30 @@ public class FileStitcher extends ReaderWrapper {
     private AxisGuesser ag;
     private int imagesPerFile;
 
+    /**
+     * Core reader of readers[0], used as a template for other files,
+     * or null if the template is not in use.
+     */
+    private FormatReader template;
+
+    /** Length of the template file. */
+    private long templateLength;
+
+    /** First bytes of the template file. */
+    private byte[] templateHeader;
+
+    /**
+     * Pixel layout of the template file's first IFD,
+     * or null if the template file is not a TIFF.
+     */
+    private long[] templateLayout;
+
+    /**
+     * Whether each file matches the template: 0 if not yet checked,
+     * 1 if it matches and -1 if it does not.
+     */
+    private byte[] matchesTemplate;
+
     public ExternalSeries(FilePattern pattern)
       throws FormatException, IOException
     {
@@ -1335,17 +1424,30 @@ public class FileStitcher extends ReaderWrapper {
       files = this.pattern.getFiles();
 
       int nReaders = files.length > MAX_READERS ? 1 : files.length;
+      if (homogeneous) nReaders = Math.min(nReaders, 2);
       readers = new DimensionSwapper[nReaders];
       for (int i=0; i<readers.length; i++) {
-        if (classList != null) {
-          readers[i] = new DimensionSwapper(new ImageReader(classList));
-        }
-        else readers[i] = new DimensionSwapper();
-        readers[i].setMetadataOptions(getMetadataOptions());
-        readers[i].setGroupFiles(false);
+        readers[i] = createReader();
       }
       readers[0].setId(files[0]);
 
+      if (homogeneous && readers.length == 2) {
+        IFormatReader core = readers[0].unwrap();
+        templateLength = new Location(files[0]).length();
+        if (core instanceof FormatReader && templateLength > 0 &&
+          readers[0].getUsedFiles().length == 1)
+        {
+          template = (FormatReader) core;
+          templateHeader = readHeader(files[0]);
+          templateLayout = readTiffLayout(files[0]);
+          matchesTemplate = new byte[files.length];
+          matchesTemplate[0] = 1;
+        }
+        else {
+          LOGGER.debug("Cannot use {} as a template", files[0]);
+        }
+      }
+
       ag = new AxisGuesser(this.pattern, readers[0].getDimensionOrder(),
         readers[0].getSizeZ(), readers[0].getSizeT(),
         readers[0].getSizeC(), readers[0].isOrderCertain());
@@ -1358,12 +1460,133 @@ public class FileStitcher extends ReaderWrapper {
     }
 
     public DimensionSwapper getReader(int fno) {
+      if (template != null) {
+        return matchesTemplate(fno) ? readers[0] : readers[1];
+      }
       if (fno < readers.length) {
         return readers[fno];
       }
       return readers[0];
     }
 
+    /** Returns true if the given reader is pointed at files via a template. */
+    public boolean isTemplate(IFormatReader r) {
+      return template != null && r == readers[0];
+    }
+
+    /** Points the template reader at the given file, if necessary. */
+    public void reopenTemplate(int fno) throws IOException {
+      if (!files[fno].equals(template.getCurrentFile())) {
+        template.reopenFile(files[fno]);
+      }
+    }
+
+    private boolean matchesTemplate(int fno) {
+      if (matchesTemplate[fno] == 0) {
+        boolean match = new Location(files[fno]).length() == templateLength;
+        if (!match) {
+          LOGGER.debug("{} does not match the template length", files[fno]);
+        }
+        else {
+          try {
+            match = Arrays.equals(readHeader(files[fno]), templateHeader);
+            if (!match) {
+              LOGGER.debug("{} does not match the template header",
+                files[fno]);
+            }
+            else if (templateLayout != null) {
+              match = Arrays.equals(readTiffLayout(files[fno]),
+                templateLayout);
+              if (!match) {
+                LOGGER.debug("{} does not match the template IFD layout",
+                  files[fno]);
+              }
+            }
+          }
+          catch (IOException e) {
+            LOGGER.debug("Could not compare " + files[fno] +
+              " with the template", e);
+            match = false;
+          }
+        }
+        matchesTemplate[fno] = (byte) (match ? 1 : -1);
+      }
+      return matchesTemplate[fno] > 0;
+    }
+
+    /** Reads the first bytes of the given file. */
+    private byte[] readHeader(String file) throws IOException {
+      RandomAccessInputStream s = new RandomAccessInputStream(file);
+      try {
+        byte[] header =
+          new byte[(int) Math.min(TEMPLATE_HEADER_LENGTH, s.length())];
+        s.readFully(header);
+        return header;
+      }
+      finally {
+        s.close();
+      }
+    }
+
+    /**
+     * Reads the pixel layout of the given file's first IFD: the dimensions,
+     * sample format, compression, and strip or tile offsets and byte counts.
+     * Returns null if the file is not a valid TIFF.
+     */
+    private long[] readTiffLayout(String file) throws IOException {
+      RandomAccessInputStream s = new RandomAccessInputStream(file);
+      try {
+        TiffParser parser = new TiffParser(s);
+        if (!parser.isValidHeader()) {
+          return null;
+        }
+        IFD ifd = parser.getFirstIFD();
+        if (ifd == null) {
+          return null;
+        }
+        long[] offsets = ifd.getStripOffsets();
+        long[] byteCounts = ifd.getStripByteCounts();
+        int[] bitsPerSample = ifd.getBitsPerSample();
+        long[] layout = new long[9 + bitsPerSample.length +
+          offsets.length + byteCounts.length];
+        int i = 0;
+        layout[i++] = ifd.getImageWidth();
+        layout[i++] = ifd.getImageLength();
+        layout[i++] = ifd.getTileWidth();
+        layout[i++] = ifd.getTileLength();
+        layout[i++] = ifd.getSamplesPerPixel();
+        layout[i++] = ifd.getPlanarConfiguration();
+        layout[i++] = ifd.getPixelType();
+        layout[i++] = ifd.getCompression().getCode();
+        layout[i++] = bitsPerSample.length;
+        for (int bits : bitsPerSample) {
+          layout[i++] = bits;
+        }
+        System.arraycopy(offsets, 0, layout, i, offsets.length);
+        i += offsets.length;
+        System.arraycopy(byteCounts, 0, layout, i, byteCounts.length);
+        return layout;
+      }
+      catch (FormatException e) {
+        LOGGER.debug("Could not read the first IFD of " + file, e);
+        return null;
+      }
+      finally {
+        s.close();
+      }
+    }
+
+    private DimensionSwapper createReader() {
+      DimensionSwapper r = null;
+      if (classList != null) {
+        r = new DimensionSwapper(new ImageReader(classList));
+      }
+      else r = new DimensionSwapper();
+      r.setMetadataOptions(getMetadataOptions());
+      r.setGroupFiles(false);
+      return r;
+    }
+
     public DimensionSwapper[] getReaders() {
       return readers;
     }
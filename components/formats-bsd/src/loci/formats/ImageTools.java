@@ -546,6 +546,47 @@ public final class ImageTools {
     return dest;
   }
 
+  /**
+   * Copies a rectangular region from one tile to another, one row at a time.
+   * Both tiles must use the layout returned by
+   * {@link IFormatReader#openBytes(int, byte[], int, int, int, int)}.
+   *
+   * @param src the source tile
+   * @param srcWidth the width in pixels of the source tile
+   * @param srcHeight the height in pixels of the source tile
+   * @param srcX the X coordinate of the region within the source tile
+   * @param srcY the Y coordinate of the region within the source tile
+   * @param dest the destination tile
+   * @param destWidth the width in pixels of the destination tile
+   * @param destHeight the height in pixels of the destination tile
+   * @param destX the X coordinate of the region within the destination tile
+   * @param destY the Y coordinate of the region within the destination tile
+   * @param w the width in pixels of the region to copy
+   * @param h the height in pixels of the region to copy
+   * @param bpp the number of bytes per pixel
+   * @param channels the number of channels stored in each tile
+   * @param interleaved true if the channels are interleaved
+   */
+  public static void copyRegion(byte[] src, int srcWidth, int srcHeight,
+    int srcX, int srcY, byte[] dest, int destWidth, int destHeight,
+    int destX, int destY, int w, int h, int bpp, int channels,
+    boolean interleaved)
+  {
+    int pixel = interleaved ? bpp * channels : bpp;
+    int planes = interleaved ? 1 : channels;
+    int rowLength = w * pixel;
+    for (int c=0; c<planes; c++) {
+      int srcPlane = c * srcWidth * srcHeight * pixel;
+      int destPlane = c * destWidth * destHeight * pixel;
+      for (int row=0; row<h; row++) {
+        int srcIndex = srcPlane + ((srcY + row) * srcWidth + srcX) * pixel;
+        int destIndex =
+          destPlane + ((destY + row) * destWidth + destX) * pixel;
+        System.arraycopy(src, srcIndex, dest, destIndex, rowLength);
+      }
+    }
+  }
+
   // -- Indexed color conversion --
 
   /** Converts a LUT and an array of indices into an array of RGB tuples. */
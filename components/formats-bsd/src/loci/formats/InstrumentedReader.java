@@ -0,0 +1,299 @@
+/*
+ * #%L
+ * BSD implementations of Bio-Formats readers and writers
+ * %%
+ * Copyright (C) 2005 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.formats;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reader wrapper that records where time goes while reading: time spent in
+ * setId and in reading pixels, bytes read from disk and the number of
+ * separate reads, decoding time and volume per codec, and cache hits.
+ *
+ * The counters for each call are added to the totals for the class of the
+ * reader that does the work (e.g. loci.formats.in.TiffDelegateReader, not
+ * ImageReader), which can be read from {@link ReaderMetrics}, exported
+ * through JMX, or observed call by call with a
+ * {@link ReaderMetricsListener}.  Calls made from inside another
+ * instrumented call are counted once, by the outermost wrapper.
+ */
+public class InstrumentedReader extends ReaderWrapper {
+
+  // -- Constants --
+
+  private static final Logger LOGGER =
+    LoggerFactory.getLogger(InstrumentedReader.class);
+
+  // -- Fields --
+
+  /** Class name of the reader that does the work, once a file is open. */
+  private String readerName;
+
+  // -- Constructors --
+
+  /** Constructs an instrumented reader around a new image reader. */
+  public InstrumentedReader() {
+    super();
+  }
+
+  /** Constructs an instrumented reader around the given reader. */
+  public InstrumentedReader(IFormatReader r) {
+    super(r);
+  }
+
+  // -- InstrumentedReader API methods --
+
+  /** Gets the totals for the class of the reader doing the work. */
+  public ReaderMetrics getMetrics() {
+    return ReaderMetrics.get(getReaderName());
+  }
+
+  // -- IFormatReader API methods --
+
+  /* @see IFormatReader#openBytes(int) */
+  @Override
+  public byte[] openBytes(int no) throws FormatException, IOException {
+    ReaderMetrics call = begin("openBytes");
+    if (call == null) return reader.openBytes(no);
+    long start = System.nanoTime();
+    try {
+      return reader.openBytes(no);
+    }
+    finally {
+      call.addOpenBytes(System.nanoTime() - start,
+        getPlaneSize(getSizeX(), getSizeY()));
+      end(call);
+    }
+  }
+
+  /* @see IFormatReader#openBytes(int, int, int, int, int) */
+  @Override
+  public byte[] openBytes(int no, int x, int y, int w, int h)
+    throws FormatException, IOException
+  {
+    ReaderMetrics call = begin("openBytes");
+    if (call == null) return reader.openBytes(no, x, y, w, h);
+    long start = System.nanoTime();
+    try {
+      return reader.openBytes(no, x, y, w, h);
+    }
+    finally {
+      call.addOpenBytes(System.nanoTime() - start, getPlaneSize(w, h));
+      end(call);
+    }
+  }
+
+  /* @see IFormatReader#openBytes(int, byte[]) */
+  @Override
+  public byte[] openBytes(int no, byte[] buf)
+    throws FormatException, IOException
+  {
+    ReaderMetrics call = begin("openBytes");
+    if (call == null) return reader.openBytes(no, buf);
+    long start = System.nanoTime();
+    try {
+      return reader.openBytes(no, buf);
+    }
+    finally {
+      call.addOpenBytes(System.nanoTime() - start,
+        getPlaneSize(getSizeX(), getSizeY()));
+      end(call);
+    }
+  }
+
+  /* @see IFormatReader#openBytes(int, byte[], int, int, int, int) */
+  @Override
+  public byte[] openBytes(int no, byte[] buf, int x, int y, int w, int h)
+    throws FormatException, IOException
+  {
+    ReaderMetrics call = begin("openBytes");
+    if (call == null) return reader.openBytes(no, buf, x, y, w, h);
+    long start = System.nanoTime();
+    try {
+      return reader.openBytes(no, buf, x, y, w, h);
+    }
+    finally {
+      call.addOpenBytes(System.nanoTime() - start, getPlaneSize(w, h));
+      end(call);
+    }
+  }
+
+  /* @see IFormatReader#openBytes(int, ByteBuffer) */
+  @Override
+  public ByteBuffer openBytes(int no, ByteBuffer buf)
+    throws FormatException, IOException
+  {
+    return openBytes(no, buf, 0, 0, getSizeX(), getSizeY());
+  }
+
+  /* @see IFormatReader#openBytes(int, ByteBuffer, int, int, int, int) */
+  @Override
+  public ByteBuffer openBytes(int no, ByteBuffer buf, int x, int y,
+    int w, int h) throws FormatException, IOException
+  {
+    ReaderMetrics call = begin("openBytes");
+    if (call == null) return reader.openBytes(no, buf, x, y, w, h);
+    long start = System.nanoTime();
+    try {
+      return reader.openBytes(no, buf, x, y, w, h);
+    }
+    finally {
+      call.addOpenBytes(System.nanoTime() - start, getPlaneSize(w, h));
+      end(call);
+    }
+  }
+
+  /* @see IFormatReader#openTiles(List) */
+  @Override
+  public void openTiles(List<TileRequest> tiles)
+    throws FormatException, IOException
+  {
+    ReaderMetrics call = begin("openTiles");
+    if (call == null) {
+      reader.openTiles(tiles);
+      return;
+    }
+    long start = System.nanoTime();
+    try {
+      reader.openTiles(tiles);
+    }
+    finally {
+      long bytes = 0;
+      for (TileRequest t : tiles) {
+        bytes += getPlaneSize(t.w, t.h);
+      }
+      call.addOpenBytes(System.nanoTime() - start, bytes);
+      end(call);
+    }
+  }
+
+  /* @see IFormatReader#openThumbBytes(int) */
+  @Override
+  public byte[] openThumbBytes(int no) throws FormatException, IOException {
+    ReaderMetrics call = begin("openThumbBytes");
+    if (call == null) return reader.openThumbBytes(no);
+    long start = System.nanoTime();
+    try {
+      return reader.openThumbBytes(no);
+    }
+    finally {
+      call.addOpenBytes(System.nanoTime() - start,
+        getPlaneSize(getThumbSizeX(), getThumbSizeY()));
+      end(call);
+    }
+  }
+
+  /* @see IFormatReader#close(boolean) */
+  @Override
+  public void close(boolean fileOnly) throws IOException {
+    if (!fileOnly) readerName = null;
+    super.close(fileOnly);
+  }
+
+  // -- IFormatHandler API methods --
+
+  /* @see IFormatHandler#setId(String) */
+  @Override
+  public void setId(String id) throws FormatException, IOException {
+    readerName = null;
+    ReaderMetrics call = begin("setId");
+    if (call == null) {
+      super.setId(id);
+      return;
+    }
+    long start = System.nanoTime();
+    try {
+      super.setId(id);
+    }
+    finally {
+      call.addSetId(System.nanoTime() - start);
+      end(call);
+    }
+  }
+
+  /* @see IFormatHandler#close() */
+  @Override
+  public void close() throws IOException {
+    readerName = null;
+    super.close();
+  }
+
+  // -- Helper methods --
+
+  /**
+   * Starts recording a call on this thread.
+   * @return the counters for the call, or null if an enclosing call is
+   *   already being recorded
+   */
+  private ReaderMetrics begin(String method) {
+    if (ReaderMetrics.current() != null) return null;
+    ReaderMetrics call = new ReaderMetrics(method);
+    ReaderMetrics.attach(call);
+    return call;
+  }
+
+  /** Stops recording and adds the call to the totals. */
+  private void end(ReaderMetrics call) {
+    ReaderMetrics.attach(null);
+    ReaderMetrics.completed(getReaderName(), call.getName(), call);
+  }
+
+  /** Gets the class name of the reader that does the work. */
+  private String getReaderName() {
+    if (readerName != null) return readerName;
+    IFormatReader r = reader;
+    try {
+      r = unwrap();
+    }
+    catch (FormatException e) {
+      LOGGER.debug("Could not unwrap reader", e);
+    }
+    catch (IOException e) {
+      LOGGER.debug("Could not unwrap reader", e);
+    }
+    String name = r.getClass().getName();
+    if (getCurrentFile() != null) readerName = name;
+    return name;
+  }
+
+  private long getPlaneSize(int w, int h) {
+    if (getCurrentFile() == null) return 0;
+    return (long) w * h * getRGBChannelCount() *
+      FormatTools.getBytesPerPixel(getPixelType());
+  }
+
+}
@@ -683,6 +683,8 @@ public class Memoizer extends ReaderWrapper {
         }
       }
 
+      ReaderMetrics.recordCacheHit(memo != null);
+
       if (memo == null) {
         OMEXMLService service = getService();
         super.setMetadataStore(service.createOMEXMLMetadata());
@@ -0,0 +1,444 @@
+/*
+ * #%L
+ * BSD implementations of Bio-Formats readers and writers
+ * %%
+ * Copyright (C) 2005 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.formats;
+
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import loci.formats.meta.MetadataStore;
+
+import org.objenesis.instantiator.ObjectInstantiator;
+import org.objenesis.strategy.InstantiatorStrategy;
+import org.objenesis.strategy.StdInstantiatorStrategy;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.KryoException;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+/**
+ * Reader wrapper that allows concurrent pixel reads from one initialized
+ * file.
+ *
+ * The wrapped reader is initialized once by {@link #setId(String)}, and all
+ * metadata methods are answered by it as for any other wrapper.  Pixels can
+ * additionally be read with the stateless
+ * {@link #openBytes(int, int, int, int, int, int, int)} methods, which may be
+ * called from any number of threads.  Each such call borrows a clone of the
+ * wrapped reader from a pool, so that up to {@link #getPoolSize()} reads
+ * proceed in parallel.
+ *
+ * Clones are not initialized with setId.  Instead, the wrapped reader's
+ * state is captured once after initialization (in the same way as
+ * {@link Memoizer} does on disk) and each clone is restored from that
+ * snapshot, then reopens the file.  The snapshot does not include the
+ * {@link CoreMetadata} objects or the metadata store; every clone shares
+ * the wrapped reader's instances, which must be treated as read-only.
+ *
+ * The stateful methods inherited from ReaderWrapper (setSeries, openBytes,
+ * etc.) still operate on the wrapped reader, and are not thread-safe.
+ */
+public class PooledReader extends ReaderWrapper {
+
+  // -- Constants --
+
+  /** Default maximum number of clones (one per available processor). */
+  public static final int DEFAULT_POOL_SIZE =
+    Runtime.getRuntime().availableProcessors();
+
+  // -- Fields --
+
+  /** Clones that are not currently in use. */
+  private final LinkedList<IFormatReader> idle =
+    new LinkedList<IFormatReader>();
+
+  /** All clones created since the file was opened. */
+  private final List<IFormatReader> clones = new ArrayList<IFormatReader>();
+
+  /**
+   * Number of open clones, including clones being created and clones of a
+   * previously opened file that are still in use.
+   */
+  private int cloneCount;
+
+  /** Incremented whenever the clones of the current file are discarded. */
+  private int generation;
+
+  /** Maximum number of clones. */
+  private int poolSize = DEFAULT_POOL_SIZE;
+
+  /** Serialized state of the wrapped reader, without shared objects. */
+  private byte[] snapshot;
+
+  /** Objects that are shared between the wrapped reader and its clones. */
+  private final List<Object> shared = new ArrayList<Object>();
+  private final Map<Object, Integer> sharedIndex =
+    new IdentityHashMap<Object, Integer>();
+
+  private Kryo kryo;
+
+  // -- Constructors --
+
+  /** Constructs a pooled reader around a new image reader. */
+  public PooledReader() { super(); }
+
+  /** Constructs a pooled reader around the given reader. */
+  public PooledReader(IFormatReader r) { super(r); }
+
+  /**
+   * Constructs a pooled reader around the given reader, with at most the
+   * given number of clones.
+   */
+  public PooledReader(IFormatReader r, int poolSize) {
+    super(r);
+    setPoolSize(poolSize);
+  }
+
+  // -- PooledReader API methods --
+
+  /** Sets the maximum number of clones, i.e. of concurrent reads. */
+  public void setPoolSize(int poolSize) {
+    if (poolSize < 1) {
+      throw new IllegalArgumentException("Pool size must be positive");
+    }
+    synchronized (idle) {
+      this.poolSize = poolSize;
+      idle.notifyAll();
+    }
+  }
+
+  /** Gets the maximum number of clones. */
+  public int getPoolSize() {
+    synchronized (idle) {
+      return poolSize;
+    }
+  }
+
+  /** Gets the number of clones that have been created. */
+  public int getCloneCount() {
+    synchronized (idle) {
+      return clones.size();
+    }
+  }
+
+  /**
+   * Creates a new clone of the wrapped reader, open on the same file.  The
+   * clone does not belong to the pool, and must be closed by the caller.
+   * This method may be called concurrently.
+   */
+  public IFormatReader openCopy() throws FormatException, IOException {
+    return createClone();
+  }
+
+  /**
+   * Obtains the specified image plane from the given series and resolution.
+   * This method may be called concurrently, and does not change the current
+   * series or resolution.
+   *
+   * @see IFormatReader#openBytes(int)
+   */
+  public byte[] openBytes(int series, int resolution, int no)
+    throws FormatException, IOException
+  {
+    IFormatReader clone = borrow();
+    try {
+      clone.setSeries(series);
+      clone.setResolution(resolution);
+      return clone.openBytes(no);
+    }
+    finally {
+      giveBack(clone);
+    }
+  }
+
+  /**
+   * Obtains a sub-image of the specified image plane from the given series
+   * and resolution.  This method may be called concurrently, and does not
+   * change the current series or resolution.
+   *
+   * @see IFormatReader#openBytes(int, int, int, int, int)
+   */
+  public byte[] openBytes(int series, int resolution, int no,
+    int x, int y, int w, int h) throws FormatException, IOException
+  {
+    IFormatReader clone = borrow();
+    try {
+      clone.setSeries(series);
+      clone.setResolution(resolution);
+      return clone.openBytes(no, x, y, w, h);
+    }
+    finally {
+      giveBack(clone);
+    }
+  }
+
+  /**
+   * Obtains a sub-image of the specified image plane from the given series
+   * and resolution into a pre-allocated byte array.  This method may be
+   * called concurrently, and does not change the current series or
+   * resolution.
+   *
+   * @see IFormatReader#openBytes(int, byte[], int, int, int, int)
+   */
+  public byte[] openBytes(int series, int resolution, int no, byte[] buf,
+    int x, int y, int w, int h) throws FormatException, IOException
+  {
+    IFormatReader clone = borrow();
+    try {
+      clone.setSeries(series);
+      clone.setResolution(resolution);
+      return clone.openBytes(no, buf, x, y, w, h);
+    }
+    finally {
+      giveBack(clone);
+    }
+  }
+
+  // -- IFormatHandler API methods --
+
+  /* @see IFormatHandler#setId(String) */
+  @Override
+  public void setId(String id) throws FormatException, IOException {
+    closeClones();
+    super.setId(id);
+    try {
+      takeSnapshot();
+    }
+    catch (KryoException e) {
+      throw new FormatException("Could not capture reader state", e);
+    }
+  }
+
+  /* @see IFormatHandler#close() */
+  @Override
+  public void close() throws IOException {
+    closeClones();
+    super.close();
+  }
+
+  // -- IFormatReader API methods --
+
+  /* @see IFormatReader#close(boolean) */
+  @Override
+  public void close(boolean fileOnly) throws IOException {
+    closeClones();
+    super.close(fileOnly);
+  }
+
+  // -- Helper methods --
+
+  /** Captures the state of the freshly initialized wrapped reader. */
+  private synchronized void takeSnapshot() {
+    kryo = new Kryo();
+    kryo.setInstantiatorStrategy(new ConstructorInstantiatorStrategy());
+    SharedSerializer serializer = new SharedSerializer();
+    kryo.addDefaultSerializer(CoreMetadata.class, serializer);
+    MetadataStore store = reader.getMetadataStore();
+    if (store != null) {
+      kryo.register(store.getClass(), serializer);
+    }
+
+    shared.clear();
+    sharedIndex.clear();
+    Output output = new Output(4096, -1);
+    kryo.writeClassAndObject(output, reader);
+    output.close();
+    snapshot = output.toBytes();
+  }
+
+  /** Restores a new, open clone of the wrapped reader from the snapshot. */
+  private IFormatReader createClone() throws FormatException, IOException {
+    IFormatReader clone;
+    synchronized (this) {
+      if (snapshot == null) {
+        throw new FormatException("No file has been opened");
+      }
+      try {
+        clone = (IFormatReader) kryo.readClassAndObject(new Input(snapshot));
+      }
+      catch (KryoException e) {
+        throw new FormatException("Could not restore reader state", e);
+      }
+    }
+    clone.reopenFile();
+    return clone;
+  }
+
+  /** Takes an idle clone, creating one if the pool is not yet full. */
+  private IFormatReader borrow() throws FormatException, IOException {
+    int created;
+    synchronized (idle) {
+      while (idle.isEmpty() && cloneCount >= poolSize) {
+        try {
+          idle.wait();
+        }
+        catch (InterruptedException e) {
+          throw new FormatException("Interrupted while waiting for a reader",
+            e);
+        }
+      }
+      if (!idle.isEmpty()) return idle.removeFirst();
+      cloneCount++;
+      created = generation;
+    }
+    IFormatReader clone = null;
+    try {
+      clone = createClone();
+    }
+    finally {
+      synchronized (idle) {
+        if (clone == null) {
+          cloneCount--;
+          idle.notifyAll();
+        }
+        // a clone of a file closed in the meantime is closed when given back
+        else if (generation == created) clones.add(clone);
+      }
+    }
+    return clone;
+  }
+
+  /** Returns a borrowed clone to the pool. */
+  private void giveBack(IFormatReader clone) throws IOException {
+    synchronized (idle) {
+      if (clones.contains(clone)) {
+        idle.addFirst(clone);
+        idle.notify();
+        return;
+      }
+    }
+    // the file was closed while the clone was in use
+    try {
+      clone.close();
+    }
+    finally {
+      synchronized (idle) {
+        cloneCount--;
+        idle.notifyAll();
+      }
+    }
+  }
+
+  /**
+   * Closes all idle clones and forgets the snapshot.  Clones that are in use
+   * are closed when given back, and still count towards the pool size.
+   */
+  private void closeClones() throws IOException {
+    List<IFormatReader> toClose;
+    synchronized (idle) {
+      toClose = new ArrayList<IFormatReader>(idle);
+      cloneCount -= idle.size();
+      generation++;
+      idle.clear();
+      clones.clear();
+      idle.notifyAll();
+    }
+    synchronized (this) {
+      snapshot = null;
+      kryo = null;
+      shared.clear();
+      sharedIndex.clear();
+    }
+    for (IFormatReader clone : toClose) {
+      clone.close();
+    }
+  }
+
+  // -- Helper classes --
+
+  /**
+   * Instantiates classes through their no-argument constructor using plain
+   * reflection, so that field initializers (e.g. of transient fields) run.
+   * Kryo's default strategy generates accessor classes in a separate class
+   * loader, which cannot see the package-private readers nested in other
+   * readers.  Classes without a usable constructor are instantiated
+   * without one.
+   */
+  private static class ConstructorInstantiatorStrategy
+    implements InstantiatorStrategy
+  {
+    private final InstantiatorStrategy fallback =
+      new StdInstantiatorStrategy();
+
+    @Override
+    public <T> ObjectInstantiator<T> newInstantiatorOf(final Class<T> type) {
+      try {
+        final Constructor<T> constructor = type.getDeclaredConstructor();
+        constructor.setAccessible(true);
+        return new ObjectInstantiator<T>() {
+          @Override
+          public T newInstance() {
+            try {
+              return constructor.newInstance();
+            }
+            catch (Exception e) {
+              throw new KryoException("Could not create " + type.getName(), e);
+            }
+          }
+        };
+      }
+      catch (Exception e) {
+        return fallback.newInstantiatorOf(type);
+      }
+    }
+  }
+
+  /**
+   * Serializes an object as a reference to the original instance, so that
+   * restored clones share it.
+   */
+  private class SharedSerializer extends Serializer<Object> {
+    @Override
+    public void write(Kryo k, Output output, Object object) {
+      Integer index = sharedIndex.get(object);
+      if (index == null) {
+        index = shared.size();
+        shared.add(object);
+        sharedIndex.put(object, index);
+      }
+      output.writeInt(index, true);
+    }
+
+    @Override
+    public Object read(Kryo k, Input input, Class<Object> type) {
+      return shared.get(input.readInt(true));
+    }
+  }
+
+}
@@ -0,0 +1,694 @@
+/*
+ * #%L
+ * BSD implementations of Bio-Formats readers and writers
+ * %%
+ * Copyright (C) 2005 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.formats;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import loci.common.Constants;
+import loci.common.DataTools;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reader wrapper that adds downsampled resolutions to series that have only
+ * one resolution.
+ *
+ * Each synthetic resolution is half the width and height of the one above
+ * it, and resolutions are added until the image fits in a single tile.
+ * Resolutions are built lazily, one tile at a time, by averaging 2x2 blocks
+ * of the resolution above; only the tiles that are requested (and the tiles
+ * they are built from) are ever computed.  Indexed images are subsampled
+ * rather than averaged.
+ *
+ * Built tiles are kept in memory, bounded by a number of bytes, and may also
+ * be stored in a sidecar directory so that they are reused when the same
+ * file is opened again.  The sidecar is placed in the given directory, or
+ * next to the memo file if the wrapped reader is a {@link Memoizer}.
+ *
+ * Synthetic resolutions are only exposed when the wrapped reader does not
+ * flatten resolutions, i.e. after calling
+ * {@link #setFlattenedResolutions(boolean)} with false.  They are visible
+ * through the {@link IPyramidHandler} methods and the per-resolution
+ * dimensions, but not in {@link #getCoreMetadataList()}.
+ */
+public class PyramidGenerator extends ReaderWrapper {
+
+  // -- Constants --
+
+  /** Default width and height of synthetic resolution tiles. */
+  public static final int DEFAULT_TILE_SIZE = 256;
+
+  /** Default maximum number of bytes of tiles to keep in memory (64 MB). */
+  public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+  private static final String STORE_SUFFIX = ".bfpyramid";
+  private static final String STORE_INFO = "source";
+
+  private static final Logger LOGGER =
+    LoggerFactory.getLogger(PyramidGenerator.class);
+
+  // -- Fields --
+
+  /** Directory in which to create tile stores, or null. */
+  private File directory;
+
+  /** Tile store for the current file, or null if tiles are not stored. */
+  private File store;
+
+  private int tileSize = DEFAULT_TILE_SIZE;
+
+  /** Number of resolutions, including synthetic ones, for each series. */
+  private int[] resolutionCounts;
+
+  /** Current synthetic resolution. */
+  private int resolution;
+
+  /** Tiles kept in memory, in least to most recently used order. */
+  private final LinkedHashMap<TileKey, byte[]> tiles =
+    new LinkedHashMap<TileKey, byte[]>(16, 0.75f, true);
+
+  private long maxBytes = DEFAULT_MAX_BYTES;
+  private long cachedBytes;
+
+  // -- Constructors --
+
+  /** Constructs a pyramid generator around a new image reader. */
+  public PyramidGenerator() {
+    this(new ImageReader());
+  }
+
+  /**
+   * Constructs a pyramid generator with the given reader.  Tiles are stored
+   * next to the memo file if the reader is a {@link Memoizer} that creates
+   * one, and are only kept in memory otherwise.
+   */
+  public PyramidGenerator(IFormatReader r) {
+    this(r, null);
+  }
+
+  /**
+   * Constructs a pyramid generator with the given reader.
+   * @param directory the directory in which to store tiles, laid out as
+   *   for {@link Memoizer} memo files; if null, see
+   *   {@link #PyramidGenerator(IFormatReader)}
+   */
+  public PyramidGenerator(IFormatReader r, File directory) {
+    super(r);
+    this.directory = directory;
+  }
+
+  // -- PyramidGenerator API methods --
+
+  /**
+   * Sets the width and height of synthetic resolution tiles.  This must be
+   * called before {@link #setId(String)}.
+   */
+  public void setTileSize(int tileSize) {
+    FormatTools.assertId(getCurrentFile(), false, 1);
+    if (tileSize <= 0) {
+      throw new IllegalArgumentException("Invalid tile size: " + tileSize);
+    }
+    this.tileSize = tileSize;
+  }
+
+  /** Gets the width and height of synthetic resolution tiles. */
+  public int getTileSize() {
+    return tileSize;
+  }
+
+  /**
+   * Sets the maximum number of bytes of tiles to keep in memory, evicting
+   * tiles if necessary.
+   */
+  public void setMaximumBytes(long maxBytes) {
+    if (maxBytes < 0) {
+      throw new IllegalArgumentException("Invalid cache size: " + maxBytes);
+    }
+    synchronized (tiles) {
+      this.maxBytes = maxBytes;
+      evict();
+    }
+  }
+
+  /** Gets the maximum number of bytes of tiles to keep in memory. */
+  public long getMaximumBytes() {
+    synchronized (tiles) {
+      return maxBytes;
+    }
+  }
+
+  /**
+   * Gets the directory in which tiles for the given file are stored, or null
+   * if tiles would only be kept in memory.
+   */
+  public File getTileStore(String id) {
+    if (directory != null) {
+      // same layout as Memoizer: the absolute path, minus the root
+      String path = new File(id).getAbsolutePath();
+      path = path.substring(path.indexOf(File.separator) + 1);
+      File f = new File(directory, path);
+      return new File(f.getParent(), "." + f.getName() + STORE_SUFFIX);
+    }
+    if (reader instanceof Memoizer) {
+      File memo = ((Memoizer) reader).getMemoFile(id);
+      if (memo != null) {
+        String name = memo.getName();
+        name = name.substring(0, name.lastIndexOf('.'));
+        return new File(memo.getParent(), name + STORE_SUFFIX);
+      }
+    }
+    return null;
+  }
+
+  /** Removes all tiles kept in memory.  Stored tiles are not removed. */
+  public void clearCache() {
+    synchronized (tiles) {
+      tiles.clear();
+      cachedBytes = 0;
+    }
+  }
+
+  // -- IPyramidHandler API methods --
+
+  /* @see IPyramidHandler#getResolutionCount() */
+  @Override
+  public int getResolutionCount() {
+    if (!isSynthetic()) return super.getResolutionCount();
+    return resolutionCounts[getSeries()];
+  }
+
+  /* @see IPyramidHandler#setResolution(int) */
+  @Override
+  public void setResolution(int no) {
+    if (!isSynthetic()) {
+      super.setResolution(no);
+      return;
+    }
+    if (no < 0 || no >= getResolutionCount()) {
+      throw new IllegalArgumentException("Invalid resolution: " + no);
+    }
+    resolution = no;
+  }
+
+  /* @see IPyramidHandler#getResolution() */
+  @Override
+  public int getResolution() {
+    if (!isSynthetic()) return super.getResolution();
+    return resolution;
+  }
+
+  // -- IFormatReader API methods --
+
+  /* @see IFormatReader#getSizeX() */
+  @Override
+  public int getSizeX() {
+    return getLevelSize(super.getSizeX(), resolution);
+  }
+
+  /* @see IFormatReader#getSizeY() */
+  @Override
+  public int getSizeY() {
+    return getLevelSize(super.getSizeY(), resolution);
+  }
+
+  /* @see IFormatReader#getOptimalTileWidth() */
+  @Override
+  public int getOptimalTileWidth() {
+    if (resolution == 0) return super.getOptimalTileWidth();
+    return Math.min(tileSize, getSizeX());
+  }
+
+  /* @see IFormatReader#getOptimalTileHeight() */
+  @Override
+  public int getOptimalTileHeight() {
+    if (resolution == 0) return super.getOptimalTileHeight();
+    return Math.min(tileSize, getSizeY());
+  }
+
+  /* @see IFormatReader#setSeries(int) */
+  @Override
+  public void setSeries(int no) {
+    super.setSeries(no);
+    resolution = 0;
+  }
+
+  /* @see IFormatReader#setCoreIndex(int) */
+  @Override
+  public void setCoreIndex(int no) {
+    super.setCoreIndex(no);
+    resolution = 0;
+  }
+
+  /* @see IFormatReader#openBytes(int) */
+  @Override
+  public byte[] openBytes(int no) throws FormatException, IOException {
+    return openBytes(no, 0, 0, getSizeX(), getSizeY());
+  }
+
+  /* @see IFormatReader#openBytes(int, int, int, int, int) */
+  @Override
+  public byte[] openBytes(int no, int x, int y, int w, int h)
+    throws FormatException, IOException
+  {
+    byte[] buf = new byte[FormatTools.getPlaneSize(this, w, h)];
+    return openBytes(no, buf, x, y, w, h);
+  }
+
+  /* @see IFormatReader#openBytes(int, byte[]) */
+  @Override
+  public byte[] openBytes(int no, byte[] buf)
+    throws FormatException, IOException
+  {
+    return openBytes(no, buf, 0, 0, getSizeX(), getSizeY());
+  }
+
+  /* @see IFormatReader#openBytes(int, byte[], int, int, int, int) */
+  @Override
+  public byte[] openBytes(int no, byte[] buf, int x, int y, int w, int h)
+    throws FormatException, IOException
+  {
+    FormatTools.checkPlaneParameters(this, no, buf.length, x, y, w, h);
+    return readRegion(resolution, no, buf, x, y, w, h);
+  }
+
+  /* @see IFormatReader#setNormalized(boolean) */
+  @Override
+  public void setNormalized(boolean normalize) {
+    clearCache();
+    super.setNormalized(normalize);
+  }
+
+  /* @see IFormatReader#close(boolean) */
+  @Override
+  public void close(boolean fileOnly) throws IOException {
+    clearCache();
+    if (!fileOnly) {
+      store = null;
+      resolutionCounts = null;
+      resolution = 0;
+    }
+    super.close(fileOnly);
+  }
+
+  // -- IFormatHandler API methods --
+
+  /* @see IFormatHandler#setId(String) */
+  @Override
+  public void setId(String id) throws FormatException, IOException {
+    close();
+    super.setId(id);
+
+    resolutionCounts = new int[getSeriesCount()];
+    for (int s=0; s<resolutionCounts.length; s++) {
+      reader.setSeries(s);
+      resolutionCounts[s] = 1;
+      if (!reader.hasFlattenedResolutions() &&
+        reader.getResolutionCount() == 1)
+      {
+        int size = Math.max(reader.getSizeX(), reader.getSizeY());
+        while (getLevelSize(size, resolutionCounts[s] - 1) > tileSize) {
+          resolutionCounts[s]++;
+        }
+      }
+    }
+    reader.setSeries(0);
+    resolution = 0;
+
+    openStore(id);
+  }
+
+  /* @see IFormatHandler#close() */
+  @Override
+  public void close() throws IOException {
+    close(false);
+  }
+
+  // -- Helper methods --
+
+  /** Returns true if the current series has synthetic resolutions. */
+  private boolean isSynthetic() {
+    return resolutionCounts != null && resolutionCounts[getSeries()] > 1;
+  }
+
+  /** Gets the width or height of the given resolution. */
+  private static int getLevelSize(int size, int level) {
+    return (int) (((long) size + (1L << level) - 1) >> level);
+  }
+
+  /**
+   * Reads a region of the given resolution of the current series, from the
+   * wrapped reader or from synthetic resolution tiles.
+   */
+  private byte[] readRegion(int level, int no, byte[] buf,
+    int x, int y, int w, int h)
+    throws FormatException, IOException
+  {
+    if (level == 0) {
+      synchronized (reader) {
+        return reader.openBytes(no, buf, x, y, w, h);
+      }
+    }
+
+    int sizeX = getLevelSize(super.getSizeX(), level);
+    int sizeY = getLevelSize(super.getSizeY(), level);
+    int bpp = FormatTools.getBytesPerPixel(getPixelType());
+    int channels = getRGBChannelCount();
+    boolean interleaved = isInterleaved();
+
+    for (int row=y / tileSize; row * tileSize < y + h; row++) {
+      int tileY = row * tileSize;
+      int th = Math.min(tileSize, sizeY - tileY);
+      for (int col=x / tileSize; col * tileSize < x + w; col++) {
+        int tileX = col * tileSize;
+        int tw = Math.min(tileSize, sizeX - tileX);
+        byte[] tile = getTile(level, no, col, row);
+
+        int regionX = Math.max(x, tileX);
+        int regionY = Math.max(y, tileY);
+        int regionWidth = Math.min(x + w, tileX + tw) - regionX;
+        int regionHeight = Math.min(y + h, tileY + th) - regionY;
+        ImageTools.copyRegion(tile, tw, th, regionX - tileX, regionY - tileY,
+          buf, w, h, regionX - x, regionY - y, regionWidth, regionHeight,
+          bpp, channels, interleaved);
+      }
+    }
+    return buf;
+  }
+
+  /**
+   * Gets the given tile of a synthetic resolution of the current series,
+   * building it from the resolution above if necessary.
+   */
+  private byte[] getTile(int level, int no, int col, int row)
+    throws FormatException, IOException
+  {
+    TileKey key = new TileKey(getSeries(), level, no, col, row);
+    synchronized (tiles) {
+      byte[] tile = tiles.get(key);
+      if (tile != null) return tile;
+    }
+
+    int sizeX = getLevelSize(super.getSizeX(), level);
+    int sizeY = getLevelSize(super.getSizeY(), level);
+    int tw = Math.min(tileSize, sizeX - col * tileSize);
+    int th = Math.min(tileSize, sizeY - row * tileSize);
+    int tileBytes = FormatTools.getPlaneSize(this, tw, th);
+
+    byte[] tile = loadTile(key, tileBytes);
+    if (tile == null) {
+      int srcX = 2 * col * tileSize;
+      int srcY = 2 * row * tileSize;
+      int srcWidth =
+        Math.min(2 * tw, getLevelSize(super.getSizeX(), level - 1) - srcX);
+      int srcHeight =
+        Math.min(2 * th, getLevelSize(super.getSizeY(), level - 1) - srcY);
+      byte[] src = new byte[FormatTools.getPlaneSize(this, srcWidth, srcHeight)];
+      readRegion(level - 1, no, src, srcX, srcY, srcWidth, srcHeight);
+
+      tile = new byte[tileBytes];
+      downsample(src, srcWidth, srcHeight, tile, tw, th);
+      saveTile(key, tile);
+    }
+
+    synchronized (tiles) {
+      byte[] previous = tiles.put(key, tile);
+      if (previous != null) cachedBytes -= previous.length;
+      cachedBytes += tile.length;
+      evict();
+    }
+    return tile;
+  }
+
+  /**
+   * Halves the given image in each dimension, averaging each 2x2 block of
+   * samples (or fewer, at the right and bottom edges).
+   */
+  private void downsample(byte[] src, int srcWidth, int srcHeight,
+    byte[] dest, int destWidth, int destHeight)
+  {
+    int pixelType = getPixelType();
+    int bpp = FormatTools.getBytesPerPixel(pixelType);
+    int channels = getRGBChannelCount();
+    boolean interleaved = isInterleaved();
+    boolean little = isLittleEndian();
+    // averaging color table indices would produce unrelated colors
+    boolean average = !isIndexed();
+
+    for (int c=0; c<channels; c++) {
+      for (int y=0; y<destHeight; y++) {
+        int rows = average ? Math.min(2, srcHeight - 2 * y) : 1;
+        for (int x=0; x<destWidth; x++) {
+          int cols = average ? Math.min(2, srcWidth - 2 * x) : 1;
+          double sum = 0;
+          for (int dy=0; dy<rows; dy++) {
+            for (int dx=0; dx<cols; dx++) {
+              int offset = getOffset(2 * x + dx, 2 * y + dy, c,
+                srcWidth, srcHeight, channels, interleaved, bpp);
+              sum += getSample(src, offset, pixelType, bpp, little);
+            }
+          }
+          int offset = getOffset(x, y, c, destWidth, destHeight, channels,
+            interleaved, bpp);
+          setSample(dest, offset, sum / (rows * cols), pixelType, bpp, little);
+        }
+      }
+    }
+  }
+
+  private static int getOffset(int x, int y, int c, int width, int height,
+    int channels, boolean interleaved, int bpp)
+  {
+    if (interleaved) return ((y * width + x) * channels + c) * bpp;
+    return ((c * height + y) * width + x) * bpp;
+  }
+
+  private static double getSample(byte[] buf, int offset, int pixelType,
+    int bpp, boolean little)
+  {
+    switch (pixelType) {
+      case FormatTools.INT8:
+        return buf[offset];
+      case FormatTools.INT16:
+        return DataTools.bytesToShort(buf, offset, little);
+      case FormatTools.INT32:
+        return DataTools.bytesToInt(buf, offset, little);
+      case FormatTools.FLOAT:
+        return Float.intBitsToFloat(DataTools.bytesToInt(buf, offset, little));
+      case FormatTools.DOUBLE:
+        return Double.longBitsToDouble(
+          DataTools.bytesToLong(buf, offset, little));
+      default:
+        // unsigned types
+        return DataTools.bytesToLong(buf, offset, bpp, little);
+    }
+  }
+
+  private static void setSample(byte[] buf, int offset, double value,
+    int pixelType, int bpp, boolean little)
+  {
+    long bits;
+    switch (pixelType) {
+      case FormatTools.FLOAT:
+        bits = Float.floatToIntBits((float) value);
+        break;
+      case FormatTools.DOUBLE:
+        bits = Double.doubleToLongBits(value);
+        break;
+      default:
+        bits = Math.round(value);
+    }
+    DataTools.unpackBytes(bits, buf, offset, bpp, little);
+  }
+
+  /**
+   * Removes least recently used tiles until the cache is within its size
+   * limit.  Must be called while holding the lock on the tile map.
+   */
+  private void evict() {
+    Iterator<Map.Entry<TileKey, byte[]>> entries = tiles.entrySet().iterator();
+    while (cachedBytes > maxBytes && entries.hasNext()) {
+      cachedBytes -= entries.next().getValue().length;
+      entries.remove();
+    }
+  }
+
+  // -- Helper methods - tile store --
+
+  /**
+   * Prepares the tile store for the given file, discarding stored tiles
+   * if the file has changed since they were stored.
+   */
+  private void openStore(String id) {
+    store = getTileStore(id);
+    if (store == null) return;
+    if (!store.isDirectory() && !store.mkdirs()) {
+      LOGGER.warn("skipping tile store: cannot create {}", store);
+      store = null;
+      return;
+    }
+
+    File source = new File(id);
+    String info = source.length() + " " + source.lastModified() + " " +
+      tileSize;
+    File infoFile = new File(store, STORE_INFO);
+    try {
+      String stored = null;
+      if (infoFile.exists()) {
+        byte[] b = new byte[(int) infoFile.length()];
+        readFully(infoFile, b);
+        stored = new String(b, Constants.ENCODING);
+      }
+      if (!info.equals(stored)) {
+        File[] files = store.listFiles();
+        if (files != null) {
+          for (File f : files) f.delete();
+        }
+        writeFully(infoFile, info.getBytes(Constants.ENCODING));
+      }
+    }
+    catch (IOException e) {
+      LOGGER.warn("skipping tile store: cannot initialize {}", store, e);
+      store = null;
+    }
+  }
+
+  /** Reads the given tile from the tile store, or returns null. */
+  private byte[] loadTile(TileKey key, int length) {
+    File f = getTileFile(key);
+    if (f == null || f.length() != length) return null;
+    byte[] tile = new byte[length];
+    try {
+      readFully(f, tile);
+      return tile;
+    }
+    catch (IOException e) {
+      LOGGER.debug("could not read stored tile {}", f, e);
+      return null;
+    }
+  }
+
+  /** Writes the given tile to the tile store, if there is one. */
+  private void saveTile(TileKey key, byte[] tile) {
+    File f = getTileFile(key);
+    if (f == null) return;
+    // write to a temporary file first, so that readers in other processes
+    // never see a partial tile
+    File tmp = null;
+    try {
+      tmp = File.createTempFile(f.getName(), ".tmp", f.getParentFile());
+      writeFully(tmp, tile);
+      if (!tmp.renameTo(f)) tmp.delete();
+    }
+    catch (IOException e) {
+      LOGGER.warn("disabling tile store: cannot write {}", f, e);
+      if (tmp != null) tmp.delete();
+      store = null;
+    }
+  }
+
+  private File getTileFile(TileKey key) {
+    // normalization changes the pixels, so normalized tiles are not stored
+    File dir = store;
+    if (dir == null || isNormalized()) return null;
+    return new File(dir, "s" + key.series + "_r" + key.resolution + "_p" +
+      key.no + "_" + key.col + "_" + key.row + ".tile");
+  }
+
+  private static void readFully(File f, byte[] b) throws IOException {
+    InputStream in = new FileInputStream(f);
+    try {
+      new DataInputStream(in).readFully(b);
+    }
+    finally {
+      in.close();
+    }
+  }
+
+  private static void writeFully(File f, byte[] b) throws IOException {
+    OutputStream out = new FileOutputStream(f);
+    try {
+      out.write(b);
+    }
+    finally {
+      out.close();
+    }
+  }
+
+  // -- Helper classes --
+
+  /** Identifies a single synthetic resolution tile. */
+  private static final class TileKey {
+    private final int series;
+    private final int resolution;
+    private final int no;
+    private final int col;
+    private final int row;
+
+    TileKey(int series, int resolution, int no, int col, int row) {
+      this.series = series;
+      this.resolution = resolution;
+      this.no = no;
+      this.col = col;
+      this.row = row;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof TileKey)) return false;
+      TileKey k = (TileKey) o;
+      return series == k.series && resolution == k.resolution &&
+        no == k.no && col == k.col && row == k.row;
+    }
+
+    @Override
+    public int hashCode() {
+      int hash = series;
+      hash = 31 * hash + resolution;
+      hash = 31 * hash + no;
+      hash = 31 * hash + col;
+      hash = 31 * hash + row;
+      return hash;
+    }
+  }
+
+}
@@ -0,0 +1,395 @@
+/*
+ * #%L
+ * BSD implementations of Bio-Formats readers and writers
+ * %%
+ * Copyright (C) 2005 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.formats;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Reader wrapper that keeps recently decoded tiles in memory.
+ *
+ * Each request is split along the grid defined by the wrapped reader's
+ * optimal tile size, and each grid tile is cached separately, keyed by
+ * series, resolution, plane index and tile bounds.  Overlapping requests
+ * (e.g. a viewport that is panned by a few pixels) are then assembled
+ * from cached tiles instead of being decoded again.
+ *
+ * The total size of the cached tiles is bounded by a number of bytes;
+ * the least recently used tiles are evicted first.  The cache itself may
+ * be used by concurrent callers, but decoding is serialized on the
+ * wrapped reader, and the current series and resolution are shared
+ * between all callers as with any other reader.  Each request is read
+ * from the series and resolution that were current when it was made.
+ */
+public class TileCache extends ReaderWrapper {
+
+  // -- Constants --
+
+  /** Default maximum number of bytes to cache (64 MB). */
+  public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+  // -- Fields --
+
+  /** Cached tiles, in least to most recently used order. */
+  private final LinkedHashMap<TileKey, byte[]> tiles =
+    new LinkedHashMap<TileKey, byte[]>(16, 0.75f, true);
+
+  /** Maximum number of bytes to cache. */
+  private long maxBytes;
+
+  /** Number of bytes currently cached. */
+  private long cachedBytes;
+
+  private long hits;
+  private long misses;
+  private long evictions;
+
+  // -- Constructors --
+
+  /** Constructs a tile cache around a new image reader. */
+  public TileCache() {
+    this(new ImageReader());
+  }
+
+  /** Constructs a tile cache with the given reader. */
+  public TileCache(IFormatReader r) {
+    this(r, DEFAULT_MAX_BYTES);
+  }
+
+  /**
+   * Constructs a tile cache with the given reader.
+   * @param maxBytes the maximum number of bytes to cache
+   */
+  public TileCache(IFormatReader r, long maxBytes) {
+    super(r);
+    setMaximumBytes(maxBytes);
+  }
+
+  // -- TileCache API methods --
+
+  /**
+   * Sets the maximum number of bytes to cache, evicting tiles if necessary.
+   * A value of 0 disables caching.
+   */
+  public void setMaximumBytes(long maxBytes) {
+    if (maxBytes < 0) {
+      throw new IllegalArgumentException("Invalid cache size: " + maxBytes);
+    }
+    synchronized (tiles) {
+      this.maxBytes = maxBytes;
+      evict();
+    }
+  }
+
+  /** Gets the maximum number of bytes to cache. */
+  public long getMaximumBytes() {
+    synchronized (tiles) {
+      return maxBytes;
+    }
+  }
+
+  /** Gets the number of bytes currently cached. */
+  public long getCachedBytes() {
+    synchronized (tiles) {
+      return cachedBytes;
+    }
+  }
+
+  /** Gets the number of tiles currently cached. */
+  public int getCachedTileCount() {
+    synchronized (tiles) {
+      return tiles.size();
+    }
+  }
+
+  /** Gets the number of tile requests that were found in the cache. */
+  public long getHitCount() {
+    synchronized (tiles) {
+      return hits;
+    }
+  }
+
+  /** Gets the number of tile requests that had to be decoded. */
+  public long getMissCount() {
+    synchronized (tiles) {
+      return misses;
+    }
+  }
+
+  /** Gets the number of tiles evicted to stay within the size limit. */
+  public long getEvictionCount() {
+    synchronized (tiles) {
+      return evictions;
+    }
+  }
+
+  /** Removes all cached tiles.  The hit and miss counts are not reset. */
+  public void clearCache() {
+    synchronized (tiles) {
+      tiles.clear();
+      cachedBytes = 0;
+    }
+  }
+
+  // -- IFormatReader API methods --
+
+  /* @see IFormatReader#openBytes(int) */
+  @Override
+  public byte[] openBytes(int no) throws FormatException, IOException {
+    return openBytes(no, 0, 0, getSizeX(), getSizeY());
+  }
+
+  /* @see IFormatReader#openBytes(int, int, int, int, int) */
+  @Override
+  public byte[] openBytes(int no, int x, int y, int w, int h)
+    throws FormatException, IOException
+  {
+    byte[] buf = new byte[FormatTools.getPlaneSize(this, w, h)];
+    return openBytes(no, buf, x, y, w, h);
+  }
+
+  /* @see IFormatReader#openBytes(int, byte[]) */
+  @Override
+  public byte[] openBytes(int no, byte[] buf)
+    throws FormatException, IOException
+  {
+    return openBytes(no, buf, 0, 0, getSizeX(), getSizeY());
+  }
+
+  /* @see IFormatReader#openBytes(int, byte[], int, int, int, int) */
+  @Override
+  public byte[] openBytes(int no, byte[] buf, int x, int y, int w, int h)
+    throws FormatException, IOException
+  {
+    FormatTools.checkPlaneParameters(this, no, buf.length, x, y, w, h);
+
+    int series = getSeries();
+    int resolution = getResolution();
+    int sizeX = getSizeX();
+    int sizeY = getSizeY();
+    int tileWidth = Math.max(1, Math.min(getOptimalTileWidth(), sizeX));
+    int tileHeight = Math.max(1, Math.min(getOptimalTileHeight(), sizeY));
+    int bpp = FormatTools.getBytesPerPixel(getPixelType());
+    int channels = getRGBChannelCount();
+    boolean interleaved = isInterleaved();
+
+    long tileBytes = (long) tileWidth * tileHeight * bpp * channels;
+    if (tileBytes > getMaximumBytes()) {
+      // tiles would be evicted immediately, so do not bother caching
+      return readRegion(series, resolution, no, buf, x, y, w, h);
+    }
+
+    for (int tileY=(y / tileHeight) * tileHeight; tileY<y + h;
+      tileY+=tileHeight)
+    {
+      int th = Math.min(tileHeight, sizeY - tileY);
+      for (int tileX=(x / tileWidth) * tileWidth; tileX<x + w;
+        tileX+=tileWidth)
+      {
+        int tw = Math.min(tileWidth, sizeX - tileX);
+        byte[] tile = getTile(series, resolution, no, tileX, tileY, tw, th);
+
+        int regionX = Math.max(x, tileX);
+        int regionY = Math.max(y, tileY);
+        int regionWidth = Math.min(x + w, tileX + tw) - regionX;
+        int regionHeight = Math.min(y + h, tileY + th) - regionY;
+        ImageTools.copyRegion(tile, tw, th, regionX - tileX, regionY - tileY,
+          buf, w, h, regionX - x, regionY - y, regionWidth, regionHeight,
+          bpp, channels, interleaved);
+      }
+    }
+    return buf;
+  }
+
+  /* @see IFormatReader#setNormalized(boolean) */
+  @Override
+  public void setNormalized(boolean normalize) {
+    clearCache();
+    super.setNormalized(normalize);
+  }
+
+  /* @see IFormatReader#setFlattenedResolutions(boolean) */
+  @Override
+  public void setFlattenedResolutions(boolean flattened) {
+    clearCache();
+    super.setFlattenedResolutions(flattened);
+  }
+
+  /* @see IFormatReader#close(boolean) */
+  @Override
+  public void close(boolean fileOnly) throws IOException {
+    clearCache();
+    super.close(fileOnly);
+  }
+
+  // -- IFormatHandler API methods --
+
+  /* @see IFormatHandler#setId(String) */
+  @Override
+  public void setId(String id) throws FormatException, IOException {
+    clearCache();
+    super.setId(id);
+  }
+
+  /* @see IFormatHandler#close() */
+  @Override
+  public void close() throws IOException {
+    clearCache();
+    super.close();
+  }
+
+  // -- Helper methods --
+
+  /** Retrieves the given tile from the cache, decoding it if necessary. */
+  private byte[] getTile(int series, int resolution, int no,
+    int x, int y, int w, int h)
+    throws FormatException, IOException
+  {
+    TileKey key = new TileKey(series, resolution, no, x, y, w, h);
+    synchronized (tiles) {
+      byte[] tile = tiles.get(key);
+      if (tile != null) {
+        hits++;
+        ReaderMetrics.recordCacheHit(true);
+        return tile;
+      }
+      misses++;
+    }
+    ReaderMetrics.recordCacheHit(false);
+
+    byte[] tile = readRegion(series, resolution, no, null, x, y, w, h);
+
+    synchronized (tiles) {
+      byte[] previous = tiles.put(key, tile);
+      if (previous != null) {
+        cachedBytes -= previous.length;
+      }
+      cachedBytes += tile.length;
+      evict();
+    }
+    return tile;
+  }
+
+  /**
+   * Reads the given region from the wrapped reader.  Another caller may
+   * have changed the current series or resolution since the request was
+   * made, so the requested ones are selected (and the current ones then
+   * restored) while holding the lock on the wrapped reader.
+   */
+  private byte[] readRegion(int series, int resolution, int no, byte[] buf,
+    int x, int y, int w, int h)
+    throws FormatException, IOException
+  {
+    synchronized (reader) {
+      int currentSeries = reader.getSeries();
+      int currentResolution = reader.getResolution();
+      boolean switched =
+        series != currentSeries || resolution != currentResolution;
+      if (switched) {
+        reader.setSeries(series);
+        reader.setResolution(resolution);
+      }
+      try {
+        if (buf == null) {
+          return reader.openBytes(no, x, y, w, h);
+        }
+        return reader.openBytes(no, buf, x, y, w, h);
+      }
+      finally {
+        if (switched) {
+          reader.setSeries(currentSeries);
+          reader.setResolution(currentResolution);
+        }
+      }
+    }
+  }
+
+  /**
+   * Removes least recently used tiles until the cache is within its size
+   * limit.  Must be called while holding the lock on the tile map.
+   */
+  private void evict() {
+    Iterator<Map.Entry<TileKey, byte[]>> entries = tiles.entrySet().iterator();
+    while (cachedBytes > maxBytes && entries.hasNext()) {
+      cachedBytes -= entries.next().getValue().length;
+      entries.remove();
+      evictions++;
+    }
+  }
+
+  // -- Helper classes --
+
+  /** Identifies a single cached tile. */
+  private static final class TileKey {
+    private final int series;
+    private final int resolution;
+    private final int no;
+    private final int x;
+    private final int y;
+    private final int w;
+    private final int h;
+
+    TileKey(int series, int resolution, int no, int x, int y, int w, int h) {
+      this.series = series;
+      this.resolution = resolution;
+      this.no = no;
+      this.x = x;
+      this.y = y;
+      this.w = w;
+      this.h = h;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof TileKey)) return false;
+      TileKey k = (TileKey) o;
+      return series == k.series && resolution == k.resolution &&
+        no == k.no && x == k.x && y == k.y && w == k.w && h == k.h;
+    }
+
+    @Override
+    public int hashCode() {
+      int hash = series;
+      hash = 31 * hash + resolution;
+      hash = 31 * hash + no;
+      hash = 31 * hash + x;
+      hash = 31 * hash + y;
+      hash = 31 * hash + w;
+      hash = 31 * hash + h;
+      return hash;
+    }
+  }
+
+}
@@ -97,10 +97,57 @@ public class Cache implements CacheReporter {
         "; expected " + strategy.getLengths().length);
     }
 
-    int ndx = FormatTools.positionToRaster(strategy.getLengths(), pos);
+    return getObject(FormatTools.positionToRaster(strategy.getLengths(), pos));
+  }
+
+  /**
+   * Gets the cached object at the given index, or null if it has not
+   * been loaded.
+   */
+  public synchronized Object getObject(int ndx) {
     return cache[ndx];
   }
 
+  /**
+   * Stores an object that was loaded outside of {@link #recache(int)},
+   * e.g. by a {@link CachePrefetcher} worker. The object is discarded if the
+   * given index is no longer supposed to be cached.
+   *
+   * @return true if the object was stored
+   */
+  public boolean setObject(int ndx, Object o) {
+    synchronized (this) {
+      if (!inCache[ndx] || cache[ndx] != null) return false;
+      cache[ndx] = o;
+    }
+    notifyListeners(new CacheEvent(this, CacheEvent.OBJECT_LOADED, ndx));
+    return true;
+  }
+
+  /**
+   * Marks exactly the given indices as ones that should be cached, dropping
+   * every other cached object.
+   */
+  public void retain(int[] indices) {
+    Vector<Integer> dropped = new Vector<Integer>();
+    synchronized (this) {
+      boolean[] keep = new boolean[inCache.length];
+      for (int ndx : indices) {
+        if (ndx >= 0) keep[ndx] = true;
+      }
+      for (int i=0; i<inCache.length; i++) {
+        inCache[i] = keep[i];
+        if (!keep[i] && cache[i] != null) {
+          cache[i] = null;
+          dropped.add(i);
+        }
+      }
+    }
+    for (Integer ndx : dropped) {
+      notifyListeners(new CacheEvent(this, CacheEvent.OBJECT_DROPPED, ndx));
+    }
+  }
+
   /**
    * Returns true if the object at the given dimensional position is
    * in the cache.
@@ -110,12 +157,12 @@ public class Cache implements CacheReporter {
   }
 
   /** Returns true if the object at the given index is in the cache. */
-  public boolean isInCache(int pos) throws CacheException {
+  public synchronized boolean isInCache(int pos) throws CacheException {
     return inCache[pos];
   }
 
   /** Reallocates the cache. */
-  public void reset() throws CacheException {
+  public synchronized void reset() throws CacheException {
     currentPos = new int[strategy.getLengths().length];
     cache = new Object[source.getObjectCount()];
     inCache = new boolean[source.getObjectCount()];
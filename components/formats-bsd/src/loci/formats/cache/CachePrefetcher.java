@@ -0,0 +1,262 @@
+/*
+ * #%L
+ * BSD implementations of Bio-Formats readers and writers
+ * %%
+ * Copyright (C) 2005 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.formats.cache;
+
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.Set;
+
+import loci.formats.FormatTools;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Loads the planes on a {@link Cache}'s load list in the background, using
+ * a pool of worker threads. Each worker has its own {@link ICacheSource}
+ * (and so its own reader), as a single IFormatReader must not be used by more
+ * than one thread at a time.
+ *
+ * Whenever the cache's current position or strategy parameters change, the
+ * pending requests are replaced by the new load list in priority order;
+ * requests that are no longer on the load list are never started, and any
+ * that were already in progress are discarded when they finish.
+ *
+ * The cache should be constructed with autoUpdate set to false, so that
+ * {@link Cache#setCurrentPos(int[])} returns immediately and leaves loading
+ * to the prefetcher. Note that {@link CacheEvent#OBJECT_LOADED} events are
+ * delivered on the worker threads.
+ */
+public class CachePrefetcher implements CacheListener {
+
+  // -- Constants --
+
+  private static final Logger LOGGER =
+    LoggerFactory.getLogger(CachePrefetcher.class);
+
+  // -- Fields --
+
+  private final Cache cache;
+  private final Worker[] workers;
+
+  /** Raster indices waiting to be loaded, highest priority first. */
+  private final LinkedList<Integer> queue = new LinkedList<Integer>();
+
+  /** Raster indices currently being loaded by a worker. */
+  private final Set<Integer> loading = new HashSet<Integer>();
+
+  private volatile boolean quit;
+
+  // -- Constructors --
+
+  /**
+   * Constructs a prefetcher for the given cache, with one worker thread per
+   * source. Each source must provide the same objects as the cache's own
+   * source; sources must not be shared between workers.
+   */
+  public CachePrefetcher(Cache cache, ICacheSource[] sources)
+    throws CacheException
+  {
+    if (cache == null) throw new CacheException("cache is null");
+    if (sources == null || sources.length == 0) {
+      throw new CacheException("no sources");
+    }
+    this.cache = cache;
+    workers = new Worker[sources.length];
+    for (int i=0; i<workers.length; i++) {
+      if (sources[i] == null) throw new CacheException("source is null");
+      workers[i] = new Worker(sources[i], i);
+    }
+    cache.addCacheListener(this);
+    update();
+    for (Worker w : workers) w.start();
+  }
+
+  // -- CachePrefetcher API methods --
+
+  /** Gets the number of worker threads. */
+  public int getWorkerCount() { return workers.length; }
+
+  /** Gets the number of requests that have not yet been started. */
+  public synchronized int getPendingCount() { return queue.size(); }
+
+  /** Returns true if no requests are pending or in progress. */
+  public synchronized boolean isIdle() {
+    return queue.isEmpty() && loading.isEmpty();
+  }
+
+  /** Returns true if the given index is waiting to be loaded or loading. */
+  public synchronized boolean isLoading(int ndx) {
+    return queue.contains(ndx) || loading.contains(ndx);
+  }
+
+  /**
+   * Moves the given indices ahead of all other pending requests, so that
+   * the workers load them in parallel before anything else.  Indices that
+   * are already loaded or being loaded are ignored, as are indices that are
+   * not on the cache's load list once a worker gets to them.
+   */
+  public synchronized void request(int[] indices) {
+    for (int i=indices.length - 1; i>=0; i--) {
+      int ndx = indices[i];
+      if (ndx < 0 || loading.contains(ndx)) continue;
+      if (cache.getObject(ndx) != null) continue;
+      queue.remove(Integer.valueOf(ndx));
+      queue.addFirst(ndx);
+    }
+    notifyAll();
+  }
+
+  /**
+   * Replaces the pending requests with the load list for the cache's current
+   * position. This is called automatically when the position or the
+   * strategy's priorities, order or range change; it must be called
+   * explicitly after replacing the cache's strategy or source.
+   */
+  public void update() throws CacheException {
+    ICacheStrategy strategy = cache.getStrategy();
+    int[] len = strategy.getLengths();
+    int[][] positions = strategy.getLoadList(cache.getCurrentPos());
+    int[] indices = new int[positions.length];
+    for (int i=0; i<positions.length; i++) {
+      indices[i] = FormatTools.positionToRaster(len, positions[i]);
+    }
+    cache.retain(indices);
+
+    synchronized (this) {
+      queue.clear();
+      for (int ndx : indices) {
+        if (ndx < 0 || loading.contains(ndx)) continue;
+        if (cache.getObject(ndx) == null) queue.add(ndx);
+      }
+      notifyAll();
+    }
+  }
+
+  /**
+   * Stops all worker threads, waiting for any loads in progress to finish.
+   * The sources are not closed.
+   */
+  public void quit() {
+    cache.removeCacheListener(this);
+    synchronized (this) {
+      quit = true;
+      queue.clear();
+      notifyAll();
+    }
+    for (Worker w : workers) {
+      try {
+        w.join();
+      }
+      catch (InterruptedException exc) {
+        LOGGER.info("Thread interrupted", exc);
+      }
+    }
+  }
+
+  // -- CacheListener API methods --
+
+  /* @see CacheListener#cacheUpdated(CacheEvent) */
+  @Override
+  public void cacheUpdated(CacheEvent e) {
+    switch (e.getType()) {
+      case CacheEvent.POSITION_CHANGED:
+      case CacheEvent.PRIORITIES_CHANGED:
+      case CacheEvent.ORDER_CHANGED:
+      case CacheEvent.RANGE_CHANGED:
+        try {
+          update();
+        }
+        catch (CacheException exc) {
+          LOGGER.info("Could not update prefetch list", exc);
+        }
+        break;
+    }
+  }
+
+  // -- Helper methods --
+
+  /** Blocks until a request is available; returns -1 on quit. */
+  private synchronized int nextRequest() {
+    while (!quit && queue.isEmpty()) {
+      try {
+        wait();
+      }
+      catch (InterruptedException exc) {
+        return -1;
+      }
+    }
+    if (quit) return -1;
+    int ndx = queue.removeFirst();
+    loading.add(ndx);
+    return ndx;
+  }
+
+  private synchronized void finishRequest(int ndx) {
+    loading.remove(ndx);
+  }
+
+  // -- Helper classes --
+
+  private class Worker extends Thread {
+    private final ICacheSource source;
+
+    Worker(ICacheSource source, int n) {
+      super("Bio-Formats-Cache-Prefetcher-" + n);
+      setPriority(Thread.MIN_PRIORITY);
+      setDaemon(true);
+      this.source = source;
+    }
+
+    @Override
+    public void run() {
+      while (true) {
+        int ndx = nextRequest();
+        if (ndx < 0) break;
+        try {
+          // skip requests made stale between dequeue and load
+          if (cache.isInCache(ndx) && cache.getObject(ndx) == null) {
+            cache.setObject(ndx, source.getObject(ndx));
+          }
+        }
+        catch (CacheException exc) {
+          LOGGER.info("Could not load object " + ndx, exc);
+        }
+        finally {
+          finishRequest(ndx);
+        }
+      }
+    }
+  }
+
+}
@@ -38,6 +38,8 @@ import org.slf4j.LoggerFactory;
 /**
  * Thread responsible for updating the cache
  * (loading and dropping planes) in the background.
+ *
+ * @see CachePrefetcher for loading with several readers in parallel
  */
 public class CacheUpdater extends Thread {
 
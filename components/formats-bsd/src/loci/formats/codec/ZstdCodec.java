@@ -0,0 +1,178 @@
+/*
+ * #%L
+ * BSD implementations of Bio-Formats readers and writers
+ * %%
+ * Copyright (C) 2005 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.formats.codec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdException;
+import com.github.luben.zstd.ZstdInputStream;
+
+import loci.common.RandomAccessInputStream;
+import loci.formats.FormatException;
+import loci.formats.MissingLibraryException;
+
+/**
+ * This class implements Zstandard compression and decompression, as used
+ * by TIFF compression code 50000.
+ *
+ * Compression uses zstd-jni, which bundles native libraries for the common
+ * platforms; a {@link MissingLibraryException} is thrown if the native
+ * library cannot be loaded.
+ */
+public class ZstdCodec extends BaseCodec {
+
+  // -- Constants --
+
+  /** Message displayed if the zstd-jni native library cannot be loaded. */
+  public static final String NO_ZSTD_MSG =
+    "The zstd-jni library is required for Zstandard compression.\r\n" +
+    "Please make sure it is present in your classpath and that a native " +
+    "library is available for this platform.";
+
+  // -- Static fields --
+
+  private static Boolean available;
+
+  // -- ZstdCodec API methods --
+
+  /** Returns true if the zstd-jni native library can be loaded. */
+  public static synchronized boolean isAvailable() {
+    if (available == null) {
+      try {
+        Zstd.defaultCompressionLevel();
+        available = true;
+      }
+      catch (LinkageError e) {
+        LOGGER.debug("Could not load zstd-jni", e);
+        available = false;
+      }
+    }
+    return available;
+  }
+
+  // -- Codec API methods --
+
+  /**
+   * The level is taken from {@link ZstdCodecOptions#level} if a
+   * {@link ZstdCodecOptions} is supplied; otherwise
+   * {@link ZstdCodecOptions#DEFAULT_LEVEL} is used.
+   *
+   * @see Codec#compress(byte[], CodecOptions)
+   */
+  @Override
+  public byte[] compress(byte[] data, CodecOptions options)
+    throws FormatException
+  {
+    if (data == null || data.length == 0)
+      throw new IllegalArgumentException("No data to compress");
+    checkAvailable();
+    int level = ZstdCodecOptions.DEFAULT_LEVEL;
+    if (options instanceof ZstdCodecOptions) {
+      level = ((ZstdCodecOptions) options).level;
+    }
+    try {
+      return Zstd.compress(data, level);
+    }
+    catch (ZstdException e) {
+      throw new FormatException(e);
+    }
+  }
+
+  /* @see Codec#decompress(RandomAccessInputStream, CodecOptions) */
+  @Override
+  public byte[] decompress(RandomAccessInputStream in, CodecOptions options)
+    throws FormatException, IOException
+  {
+    if (in == null)
+      throw new IllegalArgumentException("No data to decompress.");
+    byte[] buf = new byte[(int) (in.length() - in.getFilePointer())];
+    in.readFully(buf);
+    return decompress(buf, options);
+  }
+
+  /**
+   * The CodecOptions parameter should have the following fields set:
+   *  {@link CodecOptions#maxBytes maxBytes}
+   *
+   * If maxBytes is not set, the decompressed size is read from the frame
+   * header, or the frame is decompressed as a stream if the header does
+   * not record the size.
+   *
+   * @see Codec#decompress(byte[], CodecOptions)
+   */
+  @Override
+  public byte[] decompress(byte[] data, CodecOptions options)
+    throws FormatException
+  {
+    if (data == null)
+      throw new IllegalArgumentException("No data to decompress.");
+    checkAvailable();
+    try {
+      long size = options == null ? 0 : options.maxBytes;
+      if (size <= 0) {
+        size = Zstd.getFrameContentSize(data);
+      }
+      if (size > 0 && size <= Integer.MAX_VALUE) {
+        return Zstd.decompress(data, (int) size);
+      }
+
+      try (ZstdInputStream s =
+        new ZstdInputStream(new ByteArrayInputStream(data)))
+      {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 4);
+        byte[] buf = new byte[8192];
+        int n = s.read(buf);
+        while (n > 0) {
+          out.write(buf, 0, n);
+          n = s.read(buf);
+        }
+        return out.toByteArray();
+      }
+    }
+    catch (ZstdException | IOException e) {
+      throw new FormatException(e);
+    }
+  }
+
+  // -- Helper methods --
+
+  private static void checkAvailable() throws MissingLibraryException {
+    if (!isAvailable()) {
+      throw new MissingLibraryException(NO_ZSTD_MSG);
+    }
+  }
+
+}
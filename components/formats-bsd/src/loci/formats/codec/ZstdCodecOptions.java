@@ -0,0 +1,86 @@
+/*
+ * #%L
+ * BSD implementations of Bio-Formats readers and writers
+ * %%
+ * Copyright (C) 2005 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.formats.codec;
+
+/**
+ * Options for compressing and decompressing Zstandard data.
+ */
+public class ZstdCodecOptions extends CodecOptions {
+
+  // -- Constants --
+
+  /** Default compression level, matching the zstd library default. */
+  public static final int DEFAULT_LEVEL = 3;
+
+  // -- Fields --
+
+  /**
+   * The compression level, from 1 (fastest) to 22 (smallest); negative
+   * levels trade ratio for additional speed (WRITE).
+   */
+  public int level = DEFAULT_LEVEL;
+
+  // -- Constructors --
+
+  /** Creates a new instance. */
+  public ZstdCodecOptions() {
+    super();
+  }
+
+  /**
+   * Creates a new instance with options.
+   * @param options The option to set.
+   */
+  public ZstdCodecOptions(CodecOptions options) {
+    super(options);
+    if (options instanceof ZstdCodecOptions) {
+      level = ((ZstdCodecOptions) options).level;
+    }
+  }
+
+  // -- Static methods --
+
+  /** Return ZstdCodecOptions with reasonable default values. */
+  public static ZstdCodecOptions getDefaultOptions() {
+    return getDefaultOptions(CodecOptions.getDefaultOptions());
+  }
+
+  /**
+   * Return ZstdCodecOptions using the given CodecOptions as the default.
+   * @param options The specified options.
+   */
+  public static ZstdCodecOptions getDefaultOptions(CodecOptions options) {
+    return new ZstdCodecOptions(options);
+  }
+
+}
@@ -70,6 +70,9 @@ public class AVIReader extends FormatReader {
   private static final int JPEG = 1196444237;
   private static final int Y8 = 538982489;
 
+  /** idx1 flag indicating that a frame is a key frame. */
+  private static final int AVIIF_KEYFRAME = 0x10;
+
   /** Huffman table for MJPEG data. */
   private static final byte[] MJPEG_HUFFMAN_TABLE = new byte[] {
     (byte) 0xff, (byte) 0xc4, 1, (byte) 0xa2, 0, 0, 1, 5, 1, 1, 1, 1, 1, 1, 0,
@@ -149,6 +152,9 @@ public class AVIReader extends FormatReader {
   private byte[] lastImage;
   private int lastImageNo;
 
+  /** Key frames and decoded checkpoints for inter-frame codecs. */
+  private KeyFrameIndex frameIndex;
+
   // -- Constructor --
 
   /** Constructs a new AVI reader. */
@@ -200,7 +206,7 @@ public class AVIReader extends FormatReader {
     in.seek(fileOff);
 
     if (bmpCompression != 0 && bmpCompression != Y8) {
-      byte[] b = uncompress(no, buf);
+      byte[] b = uncompress(no);
       int rowLen = FormatTools.getPlaneSize(this, w, 1);
       int inputRowLen = FormatTools.getPlaneSize(this, getSizeX(), 1);
       for (int row=0; row<h; row++) {
@@ -299,6 +305,7 @@ public class AVIReader extends FormatReader {
       lut = null;
       lastImage = null;
       lastImageNo = -1;
+      frameIndex = null;
     }
   }
 
@@ -317,6 +324,7 @@ public class AVIReader extends FormatReader {
     offsets = new ArrayList<Long>();
     lengths = new ArrayList<Long>();
     lastImageNo = -1;
+    frameIndex = new KeyFrameIndex();
 
     while (in.getFilePointer() < in.length() - 8) {
       readChunk();
@@ -334,7 +342,7 @@ public class AVIReader extends FormatReader {
     if (bmpCompression == JPEG) {
       long fileOff = offsets.get(0).longValue();
       in.seek(fileOff);
-      int planeSize = uncompress(0, null).length;
+      int planeSize = uncompress(0).length;
       int nBytes = planeSize / (getSizeX() * getSizeY());
       if (nBytes * getSizeX() * getSizeY() != planeSize) {
         ms0.sizeY /= 2;
@@ -398,25 +406,35 @@ public class AVIReader extends FormatReader {
 
   // -- Helper methods --
 
-  private byte[] uncompress(int no, byte[] buf)
+  private byte[] uncompress(int no)
     throws FormatException, IOException
   {
     if (lastImageNo == no) {
-      buf = lastImage;
-      return buf;
+      return lastImage;
+    }
+
+    if (bmpCompression == MSRLE || bmpCompression == MS_VIDEO) {
+      // each frame is decoded relative to the previous frame, so decode
+      // from the nearest key frame or checkpoint up to the requested frame
+      int start = frameIndex.getDecodeStart(no, lastImageNo);
+      if (start - 1 != lastImageNo) {
+        lastImage = frameIndex.getCheckpointFrame(start - 1);
+        lastImageNo = lastImage == null ? -1 : start - 1;
+      }
+      for (int i=start; i<no; i++) {
+        decodeFrame(i);
+      }
     }
+    return decodeFrame(no);
+  }
+
+  private byte[] decodeFrame(int no) throws FormatException, IOException {
+    byte[] buf = null;
     CodecOptions options = new CodecOptions();
     options.width = getSizeX();
     options.height = getSizeY();
     options.previousImage = (lastImageNo == no - 1) ? lastImage : null;
 
-    if (options.previousImage == null && bmpCompression != JPEG) {
-      while (lastImageNo < no - 1) {
-        openBytes(lastImageNo + 1, buf);
-      }
-      options.previousImage = lastImage;
-    }
-
     long fileOff = offsets.get(no).longValue();
     in.seek(fileOff);
 
@@ -526,6 +544,9 @@ public class AVIReader extends FormatReader {
     }
     lastImage = buf;
     lastImageNo = no;
+    if (bmpCompression != JPEG) {
+      frameIndex.addCheckpoint(no, buf);
+    }
     return buf;
   }
 
@@ -850,6 +871,7 @@ public class AVIReader extends FormatReader {
 
                     offsets.clear();
                     lengths.clear();
+                    frameIndex = new KeyFrameIndex();
 
                     long tableEnd = in.getFilePointer() + size;
                     if (tableEnd <= 0 || tableEnd > in.length()) {
@@ -878,6 +900,9 @@ public class AVIReader extends FormatReader {
                         }
                         else if (chunkSize > 0 || offsets.size() > 0) {
                           offsets.add(new Long(useSOM ? startOfMovi + offset : offset));
+                          if ((flags & AVIIF_KEYFRAME) != 0) {
+                            frameIndex.addKeyFrame(offsets.size() - 1);
+                          }
                         }
                         lengths.add(new Long(chunkSize));
                       }
@@ -0,0 +1,584 @@
+/*
+ * #%L
+ * BSD implementations of Bio-Formats readers and writers
+ * %%
+ * Copyright (C) 2005 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.formats.in;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import loci.common.IRandomAccess;
+
+/**
+ * Raw DEFLATE decoder that can be repositioned within the uncompressed data.
+ *
+ * Every time another block of output has been inflated, the decoder state
+ * and the 32 KB history window are saved as a checkpoint.  Seeking resumes
+ * from the nearest checkpoint at or before the target instead of inflating
+ * again from the start of the stream.  The number of checkpoints is bounded,
+ * so memory use does not grow with the size of the compressed data.
+ */
+class CheckpointInflater {
+
+  // -- Constants --
+
+  /** Minimum number of inflated bytes between checkpoints. */
+  static final long MIN_SPACING = 1024 * 1024;
+
+  /** Maximum number of checkpoints kept per stream. */
+  static final int MAX_CHECKPOINTS = 512;
+
+  private static final int WINDOW_SIZE = 32768;
+  private static final int WINDOW_MASK = WINDOW_SIZE - 1;
+  private static final int BUFFER_SIZE = 65536;
+
+  private static final int HEADER = 0;
+  private static final int STORED = 1;
+  private static final int HUFFMAN = 2;
+  private static final int DONE = 3;
+
+  private static final int[] LENGTH_BASE = {
+    3, 4, 5, 6, 7, 8, 9, 10, 11, 13, 15, 17, 19, 23, 27, 31, 35, 43, 51, 59,
+    67, 83, 99, 115, 131, 163, 195, 227, 258
+  };
+  private static final int[] LENGTH_EXTRA = {
+    0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 2, 2, 2, 2, 3, 3, 3, 3, 4, 4, 4, 4,
+    5, 5, 5, 5, 0
+  };
+  private static final int[] DISTANCE_BASE = {
+    1, 2, 3, 4, 5, 7, 9, 13, 17, 25, 33, 49, 65, 97, 129, 193, 257, 385, 513,
+    769, 1025, 1537, 2049, 3073, 4097, 6145, 8193, 12289, 16385, 24577
+  };
+  private static final int[] DISTANCE_EXTRA = {
+    0, 0, 0, 0, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5, 6, 6, 7, 7, 8, 8, 9, 9, 10, 10,
+    11, 11, 12, 12, 13, 13
+  };
+  private static final int[] CODE_LENGTH_ORDER = {
+    16, 17, 18, 0, 8, 7, 9, 6, 10, 5, 11, 4, 12, 3, 13, 2, 14, 1, 15
+  };
+
+  private static final HuffmanTable FIXED_LITERALS;
+  private static final HuffmanTable FIXED_DISTANCES;
+
+  static {
+    int[] lengths = new int[288];
+    for (int i=0; i<lengths.length; i++) {
+      lengths[i] = i < 144 ? 8 : i < 256 ? 9 : i < 280 ? 7 : 8;
+    }
+    int[] distances = new int[30];
+    for (int i=0; i<distances.length; i++) {
+      distances[i] = 5;
+    }
+    try {
+      FIXED_LITERALS = new HuffmanTable(lengths, 0, lengths.length);
+      FIXED_DISTANCES = new HuffmanTable(distances, 0, distances.length);
+    }
+    catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  // -- Fields --
+
+  private IRandomAccess in;
+  private final long dataOffset;
+  private final long compressedLength;
+  private final long spacing;
+
+  /** Compressed bytes, starting at bufferOffset within the stream. */
+  private final byte[] buffer = new byte[BUFFER_SIZE];
+  private long bufferOffset;
+  private int bufferPos;
+  private int bufferLength;
+
+  /** Number of zero bytes supplied past the end of the compressed data. */
+  private int overrun;
+
+  private long bitBuffer;
+  private int bitCount;
+
+  /** History window; the byte at output position p is at p & WINDOW_MASK. */
+  private final byte[] window = new byte[WINDOW_SIZE];
+  private long position;
+
+  private int mode;
+  private boolean lastBlock;
+  private long blockStart;
+  private int storedRemaining;
+  private int copyLength;
+  private int copyDistance;
+  private HuffmanTable literals;
+  private HuffmanTable distances;
+
+  private final List<Checkpoint> checkpoints = new ArrayList<Checkpoint>();
+  private long nextCheckpoint;
+
+  // -- Constructor --
+
+  /**
+   * Creates a decoder for the raw DEFLATE stream stored in
+   * <code>in</code> at the given offset.
+   *
+   * @param in handle from which compressed bytes are read
+   * @param dataOffset offset of the first compressed byte
+   * @param compressedLength number of compressed bytes
+   * @param length number of bytes in the inflated stream, used to choose
+   *   the checkpoint spacing
+   */
+  CheckpointInflater(IRandomAccess in, long dataOffset, long compressedLength,
+    long length) throws IOException
+  {
+    this.in = in;
+    this.dataOffset = dataOffset;
+    this.compressedLength = compressedLength;
+    spacing = Math.max(MIN_SPACING, length / MAX_CHECKPOINTS + 1);
+    nextCheckpoint = spacing;
+    restart();
+  }
+
+  // -- CheckpointInflater API methods --
+
+  /** Returns the position of the next byte that will be inflated. */
+  long getPosition() {
+    return position;
+  }
+
+  /** Returns the number of checkpoints saved so far. */
+  int getCheckpointCount() {
+    return checkpoints.size();
+  }
+
+  /**
+   * Replaces the handle from which compressed bytes are read.  Checkpoints
+   * are kept; the next {@link #seek(long)} resumes from one of them.
+   */
+  void setInput(IRandomAccess in) throws IOException {
+    this.in = in;
+    restart();
+  }
+
+  /** Moves the decoder to the given position in the inflated data. */
+  void seek(long pos) throws IOException {
+    Checkpoint checkpoint = findCheckpoint(pos);
+    long start = checkpoint == null ? 0 : checkpoint.position;
+    if (pos < position || position < start) {
+      if (checkpoint == null) restart();
+      else restore(checkpoint);
+    }
+    while (position < pos) {
+      int n = inflate(null, 0, (int) Math.min(pos - position, BUFFER_SIZE));
+      if (n <= 0) break;
+    }
+  }
+
+  /**
+   * Inflates up to <code>len</code> bytes into the given array.  If the array
+   * is null, the bytes are decoded and discarded.
+   *
+   * @return the number of bytes inflated, or -1 at the end of the stream
+   */
+  int inflate(byte[] b, int off, int len) throws IOException {
+    int n = 0;
+    while (n < len) {
+      if (copyLength > 0) {
+        int count = Math.min(copyLength, len - n);
+        copyMatch(b, off + n, count);
+        copyLength -= count;
+        n += count;
+        continue;
+      }
+      if (position >= nextCheckpoint && mode != DONE) {
+        saveCheckpoint();
+      }
+      switch (mode) {
+        case HEADER:
+          if (lastBlock) mode = DONE;
+          else readBlockHeader();
+          break;
+        case STORED:
+          if (storedRemaining == 0) {
+            mode = HEADER;
+            break;
+          }
+          int count = Math.min(storedRemaining, len - n);
+          copyStored(b, off + n, count);
+          storedRemaining -= count;
+          n += count;
+          break;
+        case HUFFMAN:
+          n += inflateSymbols(b, off + n, len - n);
+          break;
+        default:
+          return n == 0 ? -1 : n;
+      }
+    }
+    return n;
+  }
+
+  // -- Helper methods --
+
+  /**
+   * Decodes literal/length symbols until <code>len</code> bytes have been
+   * produced, the block ends, a match overruns the request, or a checkpoint
+   * is due.
+   */
+  private int inflateSymbols(byte[] b, int off, int len) throws IOException {
+    int n = 0;
+    while (n < len && position < nextCheckpoint) {
+      int symbol = decodeSymbol(literals);
+      if (symbol < 256) {
+        window[(int) position & WINDOW_MASK] = (byte) symbol;
+        if (b != null) b[off + n] = (byte) symbol;
+        position++;
+        n++;
+        continue;
+      }
+      if (symbol == 256) {
+        mode = HEADER;
+        break;
+      }
+      symbol -= 257;
+      if (symbol >= LENGTH_BASE.length) {
+        throw new IOException("Invalid length code in DEFLATE stream");
+      }
+      int length = LENGTH_BASE[symbol] + getBits(LENGTH_EXTRA[symbol]);
+      symbol = decodeSymbol(distances);
+      if (symbol >= DISTANCE_BASE.length) {
+        throw new IOException("Invalid distance code in DEFLATE stream");
+      }
+      int distance = DISTANCE_BASE[symbol] + getBits(DISTANCE_EXTRA[symbol]);
+      if (distance > position) {
+        throw new IOException("Invalid distance in DEFLATE stream");
+      }
+      copyDistance = distance;
+      int count = Math.min(length, len - n);
+      copyMatch(b, off + n, count);
+      n += count;
+      copyLength = length - count;
+      if (copyLength > 0) break;
+    }
+    return n;
+  }
+
+  /** Copies bytes of the current match from the history window. */
+  private void copyMatch(byte[] b, int off, int count) {
+    for (int i=0; i<count; i++) {
+      byte v = window[(int) (position - copyDistance) & WINDOW_MASK];
+      window[(int) position & WINDOW_MASK] = v;
+      if (b != null) b[off + i] = v;
+      position++;
+    }
+  }
+
+  /** Copies bytes of the current stored block. */
+  private void copyStored(byte[] b, int off, int count) throws IOException {
+    while (count > 0 && bitCount >= 8) {
+      byte v = (byte) getBits(8);
+      window[(int) position & WINDOW_MASK] = v;
+      if (b != null) b[off++] = v;
+      position++;
+      count--;
+    }
+    while (count > 0) {
+      if (bufferPos == bufferLength) {
+        fill();
+        if (bufferLength == 0) {
+          throw new EOFException("Unexpected end of DEFLATE stream");
+        }
+      }
+      int n = Math.min(count, bufferLength - bufferPos);
+      if (b != null) System.arraycopy(buffer, bufferPos, b, off, n);
+      int w = (int) position & WINDOW_MASK;
+      int first = Math.min(n, WINDOW_SIZE - w);
+      System.arraycopy(buffer, bufferPos, window, w, first);
+      System.arraycopy(buffer, bufferPos + first, window, 0, n - first);
+      bufferPos += n;
+      position += n;
+      off += n;
+      count -= n;
+    }
+  }
+
+  private void readBlockHeader() throws IOException {
+    blockStart = getBitPosition();
+    lastBlock = getBits(1) == 1;
+    int type = getBits(2);
+    switch (type) {
+      case 0:
+        getBits(bitCount & 7);
+        int length = getBits(16);
+        int complement = getBits(16);
+        if (length != (~complement & 0xffff)) {
+          throw new IOException("Invalid stored block in DEFLATE stream");
+        }
+        storedRemaining = length;
+        mode = STORED;
+        break;
+      case 1:
+        literals = FIXED_LITERALS;
+        distances = FIXED_DISTANCES;
+        mode = HUFFMAN;
+        break;
+      case 2:
+        readDynamicTables();
+        mode = HUFFMAN;
+        break;
+      default:
+        throw new IOException("Invalid block type in DEFLATE stream");
+    }
+  }
+
+  private void readDynamicTables() throws IOException {
+    int literalCount = getBits(5) + 257;
+    int distanceCount = getBits(5) + 1;
+    int codeCount = getBits(4) + 4;
+    if (literalCount > 286 || distanceCount > 30) {
+      throw new IOException("Invalid code counts in DEFLATE stream");
+    }
+
+    int[] lengths = new int[19];
+    for (int i=0; i<codeCount; i++) {
+      lengths[CODE_LENGTH_ORDER[i]] = getBits(3);
+    }
+    HuffmanTable codes = new HuffmanTable(lengths, 0, lengths.length);
+
+    int total = literalCount + distanceCount;
+    lengths = new int[total];
+    int index = 0;
+    while (index < total) {
+      int symbol = decodeSymbol(codes);
+      if (symbol < 16) {
+        lengths[index++] = symbol;
+        continue;
+      }
+      int value = 0;
+      int repeat;
+      if (symbol == 16) {
+        if (index == 0) {
+          throw new IOException("Invalid code lengths in DEFLATE stream");
+        }
+        value = lengths[index - 1];
+        repeat = 3 + getBits(2);
+      }
+      else if (symbol == 17) repeat = 3 + getBits(3);
+      else repeat = 11 + getBits(7);
+      if (index + repeat > total) {
+        throw new IOException("Invalid code lengths in DEFLATE stream");
+      }
+      while (repeat-- > 0) lengths[index++] = value;
+    }
+    if (lengths[256] == 0) {
+      throw new IOException("Missing end-of-block code in DEFLATE stream");
+    }
+
+    literals = new HuffmanTable(lengths, 0, literalCount);
+    distances = new HuffmanTable(lengths, literalCount, distanceCount);
+  }
+
+  private int decodeSymbol(HuffmanTable table) throws IOException {
+    need(table.bits);
+    int entry = table.table[(int) bitBuffer & table.mask];
+    int length = entry & 15;
+    if (length == 0) {
+      throw new IOException("Invalid Huffman code in DEFLATE stream");
+    }
+    bitBuffer >>>= length;
+    bitCount -= length;
+    return entry >>> 4;
+  }
+
+  private int getBits(int n) throws IOException {
+    if (n == 0) return 0;
+    need(n);
+    int value = (int) (bitBuffer & ((1L << n) - 1));
+    bitBuffer >>>= n;
+    bitCount -= n;
+    return value;
+  }
+
+  private void need(int n) throws IOException {
+    while (bitCount < n) {
+      if (bufferPos == bufferLength) fill();
+      long value = 0;
+      if (bufferPos < bufferLength) {
+        value = buffer[bufferPos++] & 0xff;
+      }
+      else if (++overrun > 8) {
+        throw new EOFException("Unexpected end of DEFLATE stream");
+      }
+      bitBuffer |= value << bitCount;
+      bitCount += 8;
+    }
+  }
+
+  private void fill() throws IOException {
+    bufferOffset += bufferLength;
+    bufferPos = 0;
+    bufferLength = (int) Math.max(0,
+      Math.min(buffer.length, compressedLength - bufferOffset));
+    if (bufferLength > 0) {
+      in.seek(dataOffset + bufferOffset);
+      in.readFully(buffer, 0, bufferLength);
+    }
+  }
+
+  /** Returns the offset in bits of the next unread compressed bit. */
+  private long getBitPosition() {
+    return (bufferOffset + bufferPos + overrun) * 8 - bitCount;
+  }
+
+  private void seekBits(long bit) throws IOException {
+    bufferOffset = bit >>> 3;
+    bufferPos = 0;
+    bufferLength = 0;
+    overrun = 0;
+    bitBuffer = 0;
+    bitCount = 0;
+    getBits((int) (bit & 7));
+  }
+
+  private void restart() throws IOException {
+    seekBits(0);
+    position = 0;
+    mode = HEADER;
+    lastBlock = false;
+    copyLength = 0;
+  }
+
+  private void saveCheckpoint() {
+    Checkpoint checkpoint = new Checkpoint();
+    checkpoint.position = position;
+    checkpoint.bitPosition = getBitPosition();
+    checkpoint.blockStart = blockStart;
+    checkpoint.mode = mode;
+    checkpoint.lastBlock = lastBlock;
+    checkpoint.storedRemaining = storedRemaining;
+    checkpoint.window = window.clone();
+    checkpoints.add(checkpoint);
+    nextCheckpoint = position + spacing;
+  }
+
+  private void restore(Checkpoint checkpoint) throws IOException {
+    System.arraycopy(checkpoint.window, 0, window, 0, WINDOW_SIZE);
+    if (checkpoint.mode == HUFFMAN) {
+      // rebuild the Huffman tables from the start of the block
+      seekBits(checkpoint.blockStart);
+      readBlockHeader();
+    }
+    seekBits(checkpoint.bitPosition);
+    position = checkpoint.position;
+    blockStart = checkpoint.blockStart;
+    mode = checkpoint.mode;
+    lastBlock = checkpoint.lastBlock;
+    storedRemaining = checkpoint.storedRemaining;
+    copyLength = 0;
+  }
+
+  /** Returns the last checkpoint at or before pos, or null if none. */
+  private Checkpoint findCheckpoint(long pos) {
+    int low = 0;
+    int high = checkpoints.size() - 1;
+    Checkpoint found = null;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      Checkpoint checkpoint = checkpoints.get(mid);
+      if (checkpoint.position <= pos) {
+        found = checkpoint;
+        low = mid + 1;
+      }
+      else high = mid - 1;
+    }
+    return found;
+  }
+
+  // -- Helper classes --
+
+  /** Saved decoder state. */
+  private static class Checkpoint {
+    long position;
+    long bitPosition;
+    long blockStart;
+    int mode;
+    boolean lastBlock;
+    int storedRemaining;
+    byte[] window;
+  }
+
+  /**
+   * Single-level lookup table for a canonical Huffman code.  Each entry
+   * holds the symbol in the upper bits and the code length in the low
+   * four bits; a length of zero marks an unused code.
+   */
+  private static class HuffmanTable {
+    final int bits;
+    final int mask;
+    final int[] table;
+
+    HuffmanTable(int[] lengths, int offset, int count) throws IOException {
+      int[] counts = new int[16];
+      int max = 0;
+      for (int i=0; i<count; i++) {
+        counts[lengths[offset + i]]++;
+        max = Math.max(max, lengths[offset + i]);
+      }
+      counts[0] = 0;
+      int left = 1;
+      for (int len=1; len<16; len++) {
+        left = (left << 1) - counts[len];
+        if (left < 0) {
+          throw new IOException("Over-subscribed Huffman code");
+        }
+      }
+
+      bits = max;
+      mask = (1 << max) - 1;
+      table = new int[1 << max];
+
+      int[] next = new int[16];
+      int code = 0;
+      for (int len=1; len<16; len++) {
+        code = (code + counts[len - 1]) << 1;
+        next[len] = code;
+      }
+      for (int symbol=0; symbol<count; symbol++) {
+        int len = lengths[offset + symbol];
+        if (len == 0) continue;
+        int reversed = Integer.reverse(next[len]++) >>> (32 - len);
+        for (int i=reversed; i<table.length; i+=1<<len) {
+          table[i] = (symbol << 4) | len;
+        }
+      }
+    }
+  }
+
+}
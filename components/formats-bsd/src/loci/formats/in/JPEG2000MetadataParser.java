@@ -34,6 +34,7 @@ package loci.formats.in;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -96,6 +97,9 @@ public class JPEG2000MetadataParser {
   /** Number of JPEG 2000 resolution levels the file has. */
   private Integer resolutionLevels;
 
+  /** Index of the tile-parts in the first codestream, if it is tiled. */
+  private JPEG2000TileIndex tileIndex;
+
   /** Color lookup table stored in the file. */
   private int[][] lut;
 
@@ -267,6 +271,13 @@ public class JPEG2000MetadataParser {
     JPEG2000SegmentMarker segmentMarker;
     int segmentMarkerCode = 0, segmentLength = 0;
     long pos = in.getFilePointer(), nextPos = 0;
+    long codestreamStart = pos;
+    // State needed to index the tile-parts
+    long sizOffset = -1;
+    int[] grid = null;
+    boolean tileable = true;
+    int decompositionLevels = 0;
+    List<long[]> droppedSegments = new ArrayList<long[]>();
     LOGGER.trace("Parsing JPEG 2000 contiguous codestream of length {} at {}",
         length, pos);
     long maximumReadOffset = pos + length;
@@ -306,11 +317,21 @@ public class JPEG2000MetadataParser {
         }
         switch (segmentMarker) {
           case SOT:
+            if (codestreamStart == codestreamOffset && grid != null &&
+              tileable && !in.isLittleEndian())
+            {
+              parseTileParts(codestreamStart, sizOffset, grid,
+                decompositionLevels, pos,
+                Math.min(maximumReadOffset, in.length()), droppedSegments);
+            }
+            terminate = true;
+            break;
           case SOD:
           case EOC:
             terminate = true;
             break;
           case SIZ: {
+            sizOffset = pos;
             // Skipping:
             //  * Capability (uint16)
             in.skipBytes(2);
@@ -320,24 +341,41 @@ public class JPEG2000MetadataParser {
             codestreamSizeY = in.readInt();
             LOGGER.trace("Read reference grid height {} at {}", codestreamSizeY,
                 in.getFilePointer());
-            // Skipping:
-            //  * Horizontal image offset (uint32)
-            //  * Vertical image offset (uint32)
-            //  * Tile width (uint32)
-            //  * Tile height (uint32)
-            //  * Horizontal tile offset (uint32)
-            //  * Vertical tile offset (uint32)
-            in.skipBytes(24);
+            // Image offset, tile size and tile offset (uint32 each)
+            grid = new int[6];
+            for (int i=0; i<grid.length; i++) {
+              grid[i] = in.readInt();
+            }
             codestreamSizeC = in.readShort();
             LOGGER.trace("Read total components {} at {}",
                 codestreamSizeC, in.getFilePointer());
             int type = in.read();
-            in.skipBytes(3);
             codestreamPixelType = convertPixelType(type);
             LOGGER.trace("Read codestream pixel type {} at {}",
                 codestreamPixelType, in.getFilePointer());
+            // Tiles can only be extracted without a resampling step if no
+            // component is subsampled.
+            for (int c=0; c<codestreamSizeC; c++) {
+              if (c > 0) {
+                in.skipBytes(1);
+              }
+              int subsamplingX = in.read();
+              int subsamplingY = in.read();
+              if (subsamplingX != 1 || subsamplingY != 1) {
+                tileable = false;
+              }
+            }
             break;
           }
+          case TLM:
+          case PLM:
+            // Lengths for the whole image; meaningless for a single tile
+            droppedSegments.add(new long[] {pos, segmentLength + 2});
+            break;
+          case PPM:
+            // Packet headers for all tiles are stored in the main header
+            tileable = false;
+            break;
           case COD: {
             // Skipping:
             //  * Segment coding style (uint8)
@@ -348,6 +386,17 @@ public class JPEG2000MetadataParser {
             resolutionLevels = in.readUnsignedByte();
             LOGGER.trace("Found number of resolution levels {} at {} ",
                 resolutionLevels, in.getFilePointer());
+            decompositionLevels =
+              Math.max(decompositionLevels, resolutionLevels);
+            break;
+          }
+          case COC: {
+            // Skipping:
+            //  * Component index (uint8 or uint16)
+            //  * Segment coding style (uint8)
+            in.skipBytes(codestreamSizeC < 257 ? 2 : 3);
+            decompositionLevels =
+              Math.max(decompositionLevels, in.readUnsignedByte());
             break;
           }
           case COM:
@@ -369,6 +418,15 @@ public class JPEG2000MetadataParser {
     }
   }
 
+  /**
+   * Returns the index of the tile-parts in the first codestream.
+   * @return The tile index or <code>null</code> if the codestream is not
+   * tiled or its tiles cannot be decoded independently.
+   */
+  public JPEG2000TileIndex getTileIndex() {
+    return tileIndex;
+  }
+
   /**
    * Whether or not the codestream is raw and not JP2 boxed.
    * @return <code>true</code> if the codestream is raw and <code>false</code>
@@ -460,6 +518,109 @@ public class JPEG2000MetadataParser {
     return lut;
   }
 
+  /**
+   * Walks the SOT marker segments of a codestream and records the offset and
+   * length of every tile-part.
+   * @param codestreamStart Offset of the SOC marker.
+   * @param sizOffset Offset of the SIZ marker segment.
+   * @param grid Image offset, tile size and tile offset from the SIZ marker
+   * segment.
+   * @param decompositionLevels Largest number of decomposition levels used
+   * by any component.
+   * @param mainHeaderEnd Offset of the first SOT marker.
+   * @param end Offset of the end of the codestream.
+   * @param droppedSegments Main header segments to drop from single tiles.
+   * @throws IOException Thrown if there is an error reading from the file.
+   */
+  private void parseTileParts(long codestreamStart, long sizOffset,
+    int[] grid, int decompositionLevels, long mainHeaderEnd, long end,
+    List<long[]> droppedSegments)
+    throws IOException
+  {
+    if (grid[0] != 0 || grid[1] != 0) {
+      // Only images whose origin is on the reference grid origin are indexed
+      return;
+    }
+    // Extracted tiles are moved to the reference grid origin.  That leaves
+    // the wavelet decomposition and the code-block and precinct partitions
+    // unchanged only if every tile origin is a multiple of a power of two
+    // that is at least as large as both the tile and 2^NL.
+    long minimumTileSize = 1L << decompositionLevels;
+    for (int i=2; i<4; i++) {
+      if (Integer.bitCount(grid[i]) != 1 || grid[i] < minimumTileSize) {
+        return;
+      }
+    }
+    JPEG2000TileIndex index = new JPEG2000TileIndex(codestreamSizeX,
+      codestreamSizeY, grid[2], grid[3], grid[4], grid[5], codestreamStart,
+      sizOffset, mainHeaderEnd, droppedSegments);
+
+    long pos = mainHeaderEnd;
+    while (pos + 12 <= end) {
+      in.seek(pos);
+      if (in.readUnsignedShort() != JPEG2000SegmentMarker.SOT.getCode()) {
+        break;
+      }
+      // Skipping:
+      //  * Length of marker segment (uint16)
+      in.skipBytes(2);
+      int tile = in.readUnsignedShort();
+      long length = in.readInt() & 0xffffffffL;
+      if (length == 0) {
+        // The last tile-part extends to the EOC marker
+        length = end - pos;
+        in.seek(end - 2);
+        if (in.readUnsignedShort() == JPEG2000SegmentMarker.EOC.getCode()) {
+          length -= 2;
+        }
+      }
+      if (length < 12 || pos + length > end) {
+        LOGGER.debug("Invalid JPEG 2000 tile-part length {} at {}",
+            length, pos);
+        return;
+      }
+      // Coding style overrides in the tile-part header must also keep the
+      // tile size at least 2^NL
+      long segment = pos + 12;
+      in.seek(segment);
+      while (segment + 4 <= pos + length) {
+        int marker = in.readUnsignedShort();
+        if (marker == JPEG2000SegmentMarker.SOD.getCode()) {
+          break;
+        }
+        int segmentLength = in.readUnsignedShort();
+        int levels = 0;
+        if (marker == JPEG2000SegmentMarker.COD.getCode()) {
+          // Skipping:
+          //  * Segment coding style (uint8)
+          //  * Progression order (uint8)
+          //  * Total quality layers (uint16)
+          //  * Multiple component transform (uint8)
+          in.skipBytes(5);
+          levels = in.readUnsignedByte();
+        }
+        else if (marker == JPEG2000SegmentMarker.COC.getCode()) {
+          // Skipping:
+          //  * Component index (uint8 or uint16)
+          //  * Segment coding style (uint8)
+          in.skipBytes(codestreamSizeC < 257 ? 2 : 3);
+          levels = in.readUnsignedByte();
+        }
+        if ((1L << levels) > Math.min(grid[2], grid[3])) {
+          return;
+        }
+        segment += segmentLength + 2;
+        in.seek(segment);
+      }
+      index.addTilePart(tile, pos, length);
+      pos += length;
+    }
+    if (index.isComplete()) {
+      LOGGER.debug("Indexed {} JPEG 2000 tiles", index.getTileCount());
+      tileIndex = index;
+    }
+  }
+
   private int convertPixelType(int type) {
     int bits = (type & 0x7f) + 1;
     boolean isSigned = ((type & 0x80) >> 7) == 1;
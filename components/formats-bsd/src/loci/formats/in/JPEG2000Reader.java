@@ -34,6 +34,8 @@ package loci.formats.in;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -60,6 +62,12 @@ public class JPEG2000Reader extends FormatReader {
   private static final Logger LOGGER =
     LoggerFactory.getLogger(JPEG2000Reader.class);
 
+  /**
+   * Maximum number of bytes of decoded tiles to keep in memory.  The most
+   * recently decoded tile is always kept, even if it is larger.
+   */
+  private static final long TILE_CACHE_SIZE = 64 * 1024 * 1024;
+
   // -- Fields --
 
   /** The number of JPEG 2000 resolution levels the file has. */
@@ -70,8 +78,16 @@ public class JPEG2000Reader extends FormatReader {
 
   private long pixelsOffset;
 
-  private int lastSeries = -1;
-  private byte[] lastSeriesPlane;
+  /** Index of the tile-parts, or null if the image is not tiled. */
+  private JPEG2000TileIndex tileIndex;
+
+  /**
+   * Decoded tiles keyed by resolution and tile index, least recently used
+   * first.  Untiled images are cached as a single tile.
+   */
+  private LinkedHashMap<Long, byte[]> tiles =
+    new LinkedHashMap<Long, byte[]>(16, 0.75f, true);
+  private long cachedBytes;
 
   // -- Constructor --
 
@@ -147,8 +163,9 @@ public class JPEG2000Reader extends FormatReader {
       resolutionLevels = null;
       lut = null;
       pixelsOffset = 0;
-      lastSeries = -1;
-      lastSeriesPlane = null;
+      tileIndex = null;
+      tiles.clear();
+      cachedBytes = 0;
     }
   }
 
@@ -161,29 +178,44 @@ public class JPEG2000Reader extends FormatReader {
   {
     FormatTools.checkPlaneParameters(this, no, buf.length, x, y, w, h);
 
-    if (lastSeries == getCoreIndex() && lastSeriesPlane != null) {
-      try (RandomAccessInputStream s = new RandomAccessInputStream(lastSeriesPlane)) {
+    if (tileIndex == null) {
+      try (RandomAccessInputStream s =
+        new RandomAccessInputStream(getTile(-1)))
+      {
         readPlane(s, x, y, w, h, buf);
       }
       return buf;
     }
 
-    JPEG2000CodecOptions options = JPEG2000CodecOptions.getDefaultOptions();
-    options.interleaved = isInterleaved();
-    options.littleEndian = isLittleEndian();
-    if (resolutionLevels != null) {
-      options.resolution = Math.abs(getCoreIndex() - resolutionLevels);
-    }
-    else if (core.size() > 1) {
-      options.resolution = getCoreIndex();
-    }
-
-    in.seek(pixelsOffset);
-    lastSeriesPlane = new JPEG2000Codec().decompress(in, options);
-    try (RandomAccessInputStream s = new RandomAccessInputStream(lastSeriesPlane)) {
-      readPlane(s, x, y, w, h, buf);
+    // decode only the tiles that intersect the region, at this resolution
+    int scale = 1 << getReduction();
+    int pixel = FormatTools.getBytesPerPixel(getPixelType()) *
+      getRGBChannelCount();
+    for (int tile=0; tile<tileIndex.getTileCount(); tile++) {
+      int[] bounds = tileIndex.getTileBounds(tile);
+      int tileX = ceilDiv(bounds[0], scale);
+      int tileY = ceilDiv(bounds[1], scale);
+      int tileWidth = ceilDiv(bounds[2], scale) - tileX;
+      int tileHeight = ceilDiv(bounds[3], scale) - tileY;
+      int x0 = Math.max(x, tileX);
+      int y0 = Math.max(y, tileY);
+      int x1 = Math.min(x + w, tileX + tileWidth);
+      int y1 = Math.min(y + h, tileY + tileHeight);
+      if (x0 >= x1 || y0 >= y1) continue;
+
+      byte[] data = getTile(tile);
+      if (data.length < tileWidth * tileHeight * pixel) {
+        throw new FormatException("Tile " + tile + " decoded to " +
+          data.length + " bytes; expected " +
+          (tileWidth * tileHeight * pixel));
+      }
+      int len = (x1 - x0) * pixel;
+      for (int row=y0; row<y1; row++) {
+        int src = ((row - tileY) * tileWidth + x0 - tileX) * pixel;
+        int dest = ((row - y) * w + x0 - x) * pixel;
+        System.arraycopy(data, src, buf, dest, len);
+      }
     }
-    lastSeries = getCoreIndex();
     return buf;
   }
 
@@ -215,6 +247,10 @@ public class JPEG2000Reader extends FormatReader {
     lut = metadataParser.getLookupTable();
 
     pixelsOffset = metadataParser.getCodestreamOffset();
+    tileIndex = metadataParser.getTileIndex();
+    if (tileIndex != null && tileIndex.getTileCount() < 2) {
+      tileIndex = null;
+    }
 
     ms0.sizeZ = 1;
     ms0.sizeT = 1;
@@ -261,4 +297,57 @@ public class JPEG2000Reader extends FormatReader {
 
   // -- Helper methods --
 
+  /**
+   * Returns the number of times the current resolution has been halved
+   * relative to the full resolution image.
+   */
+  private int getReduction() {
+    return resolutionLevels == null ? 0 : getCoreIndex();
+  }
+
+  /**
+   * Returns the decoded samples of a tile at the current resolution,
+   * decoding and caching them if necessary.
+   * @param tile The tile index, or -1 to decode the whole codestream.
+   */
+  private byte[] getTile(int tile) throws FormatException, IOException {
+    Long key = ((long) getCoreIndex() << 32) | (tile & 0xffffffffL);
+    byte[] data = tiles.get(key);
+    if (data != null) {
+      return data;
+    }
+
+    JPEG2000CodecOptions options = JPEG2000CodecOptions.getDefaultOptions();
+    options.interleaved = isInterleaved();
+    options.littleEndian = isLittleEndian();
+    if (resolutionLevels != null) {
+      options.resolution = Math.abs(getCoreIndex() - resolutionLevels);
+    }
+    else if (core.size() > 1) {
+      options.resolution = getCoreIndex();
+    }
+
+    if (tile < 0) {
+      in.seek(pixelsOffset);
+      data = new JPEG2000Codec().decompress(in, options);
+    }
+    else {
+      data = new JPEG2000Codec().decompress(
+        tileIndex.getTileCodestream(in, tile), options);
+    }
+
+    tiles.put(key, data);
+    cachedBytes += data.length;
+    Iterator<byte[]> iter = tiles.values().iterator();
+    while (cachedBytes > TILE_CACHE_SIZE && tiles.size() > 1) {
+      cachedBytes -= iter.next().length;
+      iter.remove();
+    }
+    return data;
+  }
+
+  private static int ceilDiv(int value, int divisor) {
+    return (value + divisor - 1) / divisor;
+  }
+
 }
@@ -0,0 +1,225 @@
+/*
+ * #%L
+ * BSD implementations of Bio-Formats readers and writers
+ * %%
+ * Copyright (C) 2005 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.formats.in;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import loci.common.DataTools;
+import loci.common.RandomAccessInputStream;
+import loci.formats.codec.JPEG2000SegmentMarker;
+
+/**
+ * Index of the tile-parts in a tiled JPEG 2000 codestream, built by
+ * {@link JPEG2000MetadataParser}.
+ *
+ * Each tile can be extracted as a self-contained single-tile codestream:
+ * the main header is copied with its SIZ marker segment rewritten to
+ * describe an image the size of the tile, and the tile's tile-parts are
+ * appended.  The parser only builds an index when tiles are aligned such
+ * that moving a tile to the reference grid origin leaves its wavelet
+ * decomposition and its precinct and code-block partitions unchanged, so the
+ * tile decodes to exactly the same samples as the corresponding region of
+ * the full image.
+ */
+public class JPEG2000TileIndex {
+
+  // -- Fields --
+
+  private int sizeX;
+  private int sizeY;
+  private int tileSizeX;
+  private int tileSizeY;
+  private int tileOffsetX;
+  private int tileOffsetY;
+
+  /** Offset of the SOC marker. */
+  private long codestreamOffset;
+
+  /** Offset of the SIZ marker segment. */
+  private long sizOffset;
+
+  /** Offset of the first SOT marker, i.e. the end of the main header. */
+  private long mainHeaderEnd;
+
+  /**
+   * Main header marker segments ({offset, length}) that describe the whole
+   * image and are dropped from extracted tiles.
+   */
+  private List<long[]> droppedSegments;
+
+  /** Tile-parts ({offset, length}) of each tile, in codestream order. */
+  private Map<Integer, List<long[]>> tileParts =
+    new HashMap<Integer, List<long[]>>();
+
+  // -- Constructor --
+
+  JPEG2000TileIndex(int sizeX, int sizeY, int tileSizeX, int tileSizeY,
+    int tileOffsetX, int tileOffsetY, long codestreamOffset, long sizOffset,
+    long mainHeaderEnd, List<long[]> droppedSegments)
+  {
+    this.sizeX = sizeX;
+    this.sizeY = sizeY;
+    this.tileSizeX = tileSizeX;
+    this.tileSizeY = tileSizeY;
+    this.tileOffsetX = tileOffsetX;
+    this.tileOffsetY = tileOffsetY;
+    this.codestreamOffset = codestreamOffset;
+    this.sizOffset = sizOffset;
+    this.mainHeaderEnd = mainHeaderEnd;
+    this.droppedSegments = new ArrayList<long[]>(droppedSegments);
+  }
+
+  // -- JPEG2000TileIndex API methods --
+
+  /** Returns the number of tile columns. */
+  public int getTileColumns() {
+    return (sizeX - tileOffsetX + tileSizeX - 1) / tileSizeX;
+  }
+
+  /** Returns the number of tile rows. */
+  public int getTileRows() {
+    return (sizeY - tileOffsetY + tileSizeY - 1) / tileSizeY;
+  }
+
+  /** Returns the total number of tiles. */
+  public int getTileCount() {
+    return getTileColumns() * getTileRows();
+  }
+
+  /**
+   * Returns the bounds of a tile on the reference grid, as
+   * {x0, y0, x1, y1} with x1 and y1 exclusive.
+   */
+  public int[] getTileBounds(int tile) {
+    int col = tile % getTileColumns();
+    int row = tile / getTileColumns();
+    int x0 = tileOffsetX + col * tileSizeX;
+    int y0 = tileOffsetY + row * tileSizeY;
+    return new int[] {x0, y0, Math.min(x0 + tileSizeX, sizeX),
+      Math.min(y0 + tileSizeY, sizeY)};
+  }
+
+  /** Returns true if every tile has at least one tile-part. */
+  public boolean isComplete() {
+    for (int tile=0; tile<getTileCount(); tile++) {
+      if (!tileParts.containsKey(tile)) return false;
+    }
+    return true;
+  }
+
+  /**
+   * Reads the given tile as a self-contained codestream.
+   *
+   * @param in the stream containing the codestream
+   * @param tile the tile index, in raster order
+   */
+  public byte[] getTileCodestream(RandomAccessInputStream in, int tile)
+    throws IOException
+  {
+    List<long[]> parts = tileParts.get(tile);
+    if (parts == null) {
+      throw new IOException("Missing JPEG 2000 tile " + tile);
+    }
+
+    int length = 2;
+    for (long[] segment : getMainHeaderSegments()) {
+      length += (int) segment[1];
+    }
+    for (long[] part : parts) {
+      length += (int) part[1];
+    }
+
+    byte[] codestream = new byte[length];
+    int p = 0;
+    for (long[] segment : getMainHeaderSegments()) {
+      in.seek(segment[0]);
+      in.readFully(codestream, p, (int) segment[1]);
+      if (segment[0] <= sizOffset && sizOffset < segment[0] + segment[1]) {
+        // shrink the image to this tile, at the reference grid origin
+        int[] bounds = getTileBounds(tile);
+        int siz = p + (int) (sizOffset - segment[0]);
+        DataTools.unpackBytes(bounds[2] - bounds[0], codestream, siz + 6, 4,
+          false);
+        DataTools.unpackBytes(bounds[3] - bounds[1], codestream, siz + 10, 4,
+          false);
+        DataTools.unpackBytes(0, codestream, siz + 14, 4, false);
+        DataTools.unpackBytes(0, codestream, siz + 18, 4, false);
+        DataTools.unpackBytes(0, codestream, siz + 30, 4, false);
+        DataTools.unpackBytes(0, codestream, siz + 34, 4, false);
+      }
+      p += (int) segment[1];
+    }
+    for (long[] part : parts) {
+      in.seek(part[0]);
+      in.readFully(codestream, p, (int) part[1]);
+      // Isot: the extracted tile is the only tile
+      codestream[p + 4] = 0;
+      codestream[p + 5] = 0;
+      p += (int) part[1];
+    }
+    DataTools.unpackBytes(JPEG2000SegmentMarker.EOC.getCode(), codestream, p,
+      2, false);
+    return codestream;
+  }
+
+  // -- Package-private methods --
+
+  /** Records a tile-part found while parsing the codestream. */
+  void addTilePart(int tile, long offset, long length) {
+    List<long[]> parts = tileParts.get(tile);
+    if (parts == null) {
+      parts = new ArrayList<long[]>();
+      tileParts.put(tile, parts);
+    }
+    parts.add(new long[] {offset, length});
+  }
+
+  // -- Helper methods --
+
+  /** Returns the ranges of the main header that are kept in each tile. */
+  private List<long[]> getMainHeaderSegments() {
+    List<long[]> segments = new ArrayList<long[]>();
+    long start = codestreamOffset;
+    for (long[] dropped : droppedSegments) {
+      segments.add(new long[] {start, dropped[0] - start});
+      start = dropped[0] + dropped[1];
+    }
+    segments.add(new long[] {start, mainHeaderEnd - start});
+    return segments;
+  }
+
+}
@@ -0,0 +1,211 @@
+/*
+ * #%L
+ * BSD implementations of Bio-Formats readers and writers
+ * %%
+ * Copyright (C) 2005 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+
+package loci.formats.in;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Key frame index and cache of decoded frames for movie formats whose
+ * codecs decode each frame relative to the previous one.
+ *
+ * A frame that is not a key frame can only be decoded once every frame
+ * since the preceding key frame has been decoded.  Decoded frames are
+ * therefore kept as checkpoints at regular intervals, so that a random seek
+ * resumes from the nearest key frame, checkpoint or most recently decoded
+ * frame, and decodes at most one checkpoint interval of frames.
+ *
+ * The key frames are part of the reader's state; the checkpoints are not
+ * and are discarded when the reader is serialized.
+ */
+public class KeyFrameIndex {
+
+  // -- Constants --
+
+  /** Default number of frames between checkpoints. */
+  public static final int DEFAULT_CHECKPOINT_INTERVAL = 16;
+
+  /** Default maximum number of checkpoints kept in memory. */
+  public static final int DEFAULT_MAX_CHECKPOINTS = 16;
+
+  // -- Fields --
+
+  /** Sorted indices of the key frames. */
+  private List<Integer> keyFrames = new ArrayList<Integer>();
+
+  private int checkpointInterval;
+  private int maxCheckpoints;
+
+  /** Decoded frames, indexed by frame number, in access order. */
+  private transient Map<Integer, byte[]> checkpoints;
+
+  // -- Constructors --
+
+  /** Constructs an index using the default checkpoint settings. */
+  public KeyFrameIndex() {
+    this(DEFAULT_CHECKPOINT_INTERVAL, DEFAULT_MAX_CHECKPOINTS);
+  }
+
+  /**
+   * Constructs an index that keeps up to maxCheckpoints decoded frames,
+   * one for every checkpointInterval frames.
+   */
+  public KeyFrameIndex(int checkpointInterval, int maxCheckpoints) {
+    if (checkpointInterval <= 0) {
+      throw new IllegalArgumentException(
+        "Invalid checkpoint interval: " + checkpointInterval);
+    }
+    this.checkpointInterval = checkpointInterval;
+    this.maxCheckpoints = maxCheckpoints;
+  }
+
+  // -- KeyFrameIndex API methods --
+
+  /** Marks the given frame as a key frame. */
+  public void addKeyFrame(int no) {
+    int index = Collections.binarySearch(keyFrames, no);
+    if (index < 0) {
+      keyFrames.add(-index - 1, no);
+    }
+  }
+
+  /** Returns true if the given frame has been marked as a key frame. */
+  public boolean isKeyFrame(int no) {
+    return Collections.binarySearch(keyFrames, no) >= 0;
+  }
+
+  /** Returns the number of frames marked as key frames. */
+  public int getKeyFrameCount() {
+    return keyFrames.size();
+  }
+
+  /**
+   * Returns the last key frame at or before the given frame.  The first
+   * frame is always treated as a key frame.
+   */
+  public int getKeyFrame(int no) {
+    int index = Collections.binarySearch(keyFrames, no);
+    if (index >= 0) {
+      return no;
+    }
+    index = -index - 2;
+    return index < 0 ? 0 : keyFrames.get(index);
+  }
+
+  /**
+   * Stores a copy of the given decoded frame if it falls on a checkpoint.
+   * Key frames are not stored, as they can be decoded directly.
+   */
+  public void addCheckpoint(int no, byte[] frame) {
+    if (frame == null || maxCheckpoints <= 0 || no <= 0 ||
+      no % checkpointInterval != 0 || isKeyFrame(no))
+    {
+      return;
+    }
+    getCheckpoints().put(no, frame.clone());
+  }
+
+  /**
+   * Returns the last checkpoint at or before the given frame,
+   * or -1 if there is none.
+   */
+  public int getCheckpoint(int no) {
+    int checkpoint = -1;
+    if (checkpoints != null) {
+      for (Integer frame : checkpoints.keySet()) {
+        if (frame <= no && frame > checkpoint) {
+          checkpoint = frame;
+        }
+      }
+    }
+    return checkpoint;
+  }
+
+  /**
+   * Returns a copy of the decoded checkpoint frame,
+   * or null if the frame is not a checkpoint.
+   */
+  public byte[] getCheckpointFrame(int no) {
+    byte[] frame = checkpoints == null ? null : checkpoints.get(no);
+    return frame == null ? null : frame.clone();
+  }
+
+  /**
+   * Returns the first frame that must be decoded in order to decode the
+   * given frame.  If the returned frame minus one is neither lastDecoded
+   * nor a checkpoint, the returned frame is a key frame and is decoded
+   * without a previous frame.
+   *
+   * @param no the frame to decode
+   * @param lastDecoded the most recently decoded frame, or -1 if none
+   */
+  public int getDecodeStart(int no, int lastDecoded) {
+    int key = getKeyFrame(no);
+    if (key == no) {
+      return no;
+    }
+    int checkpoint = getCheckpoint(no - 1);
+    if (lastDecoded >= key && lastDecoded < no && lastDecoded >= checkpoint) {
+      return lastDecoded + 1;
+    }
+    if (checkpoint >= key) {
+      return checkpoint + 1;
+    }
+    return key;
+  }
+
+  /** Discards all checkpoints. */
+  public void clearCheckpoints() {
+    checkpoints = null;
+  }
+
+  // -- Helper methods --
+
+  private Map<Integer, byte[]> getCheckpoints() {
+    if (checkpoints == null) {
+      final int max = maxCheckpoints;
+      checkpoints = new LinkedHashMap<Integer, byte[]>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, byte[]> e) {
+          return size() > max;
+        }
+      };
+    }
+    return checkpoints;
+  }
+
+}
@@ -33,6 +33,7 @@
 package loci.formats.in;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -41,11 +42,13 @@ import loci.formats.FormatException;
 import loci.formats.FormatTools;
 import loci.formats.MetadataTools;
 import loci.formats.SubResolutionFormatReader;
+import loci.formats.TileRequest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import loci.common.DataTools;
 import loci.common.RandomAccessInputStream;
+import loci.common.Region;
 import loci.formats.codec.JPEG2000CodecOptions;
 import loci.formats.meta.MetadataStore;
 import loci.formats.tiff.IFD;
@@ -289,25 +292,7 @@ public class MinimalTiffReader extends SubResolutionFormatReader {
     FormatTools.checkPlaneParameters(this, no, buf.length, x, y, w, h);
 
     IFD firstIFD = ifds.get(0);
-    lastPlane = no;
-    IFD ifd;
-    if (seriesToIFD) {
-      ifd = ifds.get(getSeries());
-    } else {
-      ifd = ifds.get(no);
-    }
-    if ((firstIFD.getCompression() == TiffCompression.JPEG_2000
-        || firstIFD.getCompression() == TiffCompression.JPEG_2000_LOSSY)
-        && resolutionLevels != null) {
-      if (getCoreIndex() > 0) {
-        ifd = subResolutionIFDs.get(no).get(getCoreIndex() - 1);
-      }
-      setResolutionLevel(ifd);
-    }
-
-    if (tiffParser == null) {
-      initTiffParser();
-    }
+    IFD ifd = getPlaneIFD(no);
 
     tiffParser.getSamples(ifd, buf, x, y, w, h);
 
@@ -362,6 +347,71 @@ public class MinimalTiffReader extends SubResolutionFormatReader {
     return buf;
   }
 
+  /**
+   * Reads straight into the buffer, unless the samples need to be
+   * converted (16 and 24-bit floating point data) or a subclass processes
+   * the pixels returned by the byte array openBytes methods.
+   *
+   * @see loci.formats.FormatReader#openBytes(int, ByteBuffer, int, int, int, int)
+   */
+  @Override
+  public ByteBuffer openBytes(int no, ByteBuffer buf, int x, int y,
+    int w, int h) throws FormatException, IOException
+  {
+    if (FormatTools.overridesOpenBytes(this, MinimalTiffReader.class) ||
+      (getPixelType() == FormatTools.FLOAT &&
+      ifds.get(0).getBitsPerSample()[0] < 32))
+    {
+      return super.openBytes(no, buf, x, y, w, h);
+    }
+    FormatTools.checkPlaneParameters(this, no, buf.remaining(), x, y, w, h);
+    // getPlaneIFD initializes the parser if necessary
+    IFD ifd = getPlaneIFD(no);
+    tiffParser.getSamples(ifd, buf, x, y, w, h);
+    return buf;
+  }
+
+  /**
+   * Reads all of the requests in one batch, so that tiles shared between
+   * requests are decoded once and nearby tiles are read together.
+   *
+   * @see loci.formats.IFormatReader#openTiles(List)
+   */
+  @Override
+  public void openTiles(List<TileRequest> tiles)
+    throws FormatException, IOException
+  {
+    IFD firstIFD = ifds.get(0);
+    if (tiles.size() < 2 ||
+      FormatTools.overridesOpenBytes(this, MinimalTiffReader.class) ||
+      (getPixelType() == FormatTools.FLOAT &&
+      firstIFD.getBitsPerSample()[0] < 32) ||
+      (resolutionLevels != null &&
+      (firstIFD.getCompression() == TiffCompression.JPEG_2000 ||
+      firstIFD.getCompression() == TiffCompression.JPEG_2000_LOSSY)))
+    {
+      super.openTiles(tiles);
+      return;
+    }
+
+    IFD[] tileIFDs = new IFD[tiles.size()];
+    Region[] regions = new Region[tiles.size()];
+    byte[][] bufs = new byte[tiles.size()][];
+    int bpp = FormatTools.getBytesPerPixel(getPixelType());
+    for (int i=0; i<tiles.size(); i++) {
+      TileRequest t = tiles.get(i);
+      FormatTools.checkPlaneParameters(this, t.no,
+        t.buf == null ? -1 : t.buf.length, t.x, t.y, t.w, t.h);
+      if (t.buf == null) {
+        t.buf = DataTools.allocate(t.w, t.h, getRGBChannelCount(), bpp);
+      }
+      tileIFDs[i] = getPlaneIFD(t.no);
+      regions[i] = new Region(t.x, t.y, t.w, t.h);
+      bufs[i] = t.buf;
+    }
+    tiffParser.getSamples(tileIFDs, regions, bufs);
+  }
+
   /* @see loci.formats.IFormatReader#reopenFile() */
   @Override
   public void reopenFile() throws IOException {
@@ -690,6 +740,34 @@ public class MinimalTiffReader extends SubResolutionFormatReader {
   }
 
 
+  /**
+   * Gets the IFD that stores the given plane, selecting the resolution level
+   * and initializing the parser if necessary.
+   */
+  private IFD getPlaneIFD(int no) throws FormatException, IOException {
+    IFD firstIFD = ifds.get(0);
+    lastPlane = no;
+    IFD ifd;
+    if (seriesToIFD) {
+      ifd = ifds.get(getSeries());
+    } else {
+      ifd = ifds.get(no);
+    }
+    if ((firstIFD.getCompression() == TiffCompression.JPEG_2000
+        || firstIFD.getCompression() == TiffCompression.JPEG_2000_LOSSY)
+        && resolutionLevels != null) {
+      if (getCoreIndex() > 0) {
+        ifd = subResolutionIFDs.get(no).get(getCoreIndex() - 1);
+      }
+      setResolutionLevel(ifd);
+    }
+
+    if (tiffParser == null) {
+      initTiffParser();
+    }
+    return ifd;
+  }
+
   /** Reinitialize the underlying TiffParser. */
   protected void initTiffParser() {
     if (in == null) {
@@ -122,6 +122,12 @@ public class NativeQTReader extends FormatReader {
 
   private boolean flip;
 
+  /**
+   * Sync samples (key frames) of the movie, or null if every frame
+   * is a sync sample.
+   */
+  private KeyFrameIndex frameIndex;
+
   // -- Constructor --
 
   /** Constructs a new QuickTime reader. */
@@ -174,32 +180,25 @@ public class NativeQTReader extends FormatReader {
     String code = codec;
     if (no >= getImageCount() - altPlanes) code = altCodec;
 
-    int offset = offsets.get(no).intValue();
-    int nextOffset = (int) pixelBytes;
-
-    scale = offsets.get(0).intValue();
-    offset -= scale;
-
-    if (no < offsets.size() - 1) {
-      nextOffset = offsets.get(no + 1).intValue() - scale;
-    }
-
-    if ((nextOffset - offset) < 0) {
-      int temp = offset;
-      offset = nextOffset;
-      nextOffset = temp;
+    if (frameIndex != null && code.equals("rle ") &&
+      !code.equals(altCodec) && (prevPlane != no || prevPixels == null))
+    {
+      // QuickTime RLE frames other than sync samples only update the
+      // previous frame, so decode from the nearest sync sample or
+      // checkpoint up to the requested frame
+      int last = prevPixels == null ? -1 : prevPlane;
+      int start = frameIndex.getDecodeStart(no, last);
+      if (start - 1 != last) {
+        prevPixels = frameIndex.getCheckpointFrame(start - 1);
+        prevPlane = prevPixels == null ? -1 : start - 1;
+      }
+      for (int i=start; i<no; i++) {
+        decodeFrame(i, code);
+      }
     }
 
-    byte[] pixs = new byte[nextOffset - offset];
-
-    in.seek(pixelOffset + offset);
-    in.read(pixs);
-
-    canUsePrevious = (prevPixels != null) && (prevPlane == no - 1) &&
-      !code.equals(altCodec);
-
     byte[] t = prevPlane == no && prevPixels != null && !code.equals(altCodec) ?
-      prevPixels : uncompress(pixs, code);
+      prevPixels : decodeFrame(no, code);
     if (code.equals("rpza")) {
       for (int i=0; i<t.length; i++) {
         t[i] = (byte) (255 - t[i]);
@@ -208,18 +207,6 @@ public class NativeQTReader extends FormatReader {
       return buf;
     }
 
-    // on rare occassions, we need to trim the data
-    if (canUsePrevious && (prevPixels.length < t.length)) {
-      byte[] temp = t;
-      t = new byte[prevPixels.length];
-      System.arraycopy(temp, 0, t, 0, t.length);
-    }
-
-    if (t.length > 0) {
-      prevPixels = t;
-    }
-    prevPlane = no;
-
     // determine whether we need to strip out any padding bytes
 
     int bytes = bitsPerPixel < 40 ? bitsPerPixel / 8 : (bitsPerPixel - 32) / 8;
@@ -289,6 +276,7 @@ public class NativeQTReader extends FormatReader {
       chunkSizes = null;
       interlaced = separatedFork = flip = false;
       forkFile = null;
+      frameIndex = null;
     }
   }
 
@@ -597,6 +585,17 @@ public class NativeQTReader extends FormatReader {
             }
           }
         }
+        else if (atomType.equals("stss")) {
+          // found the sync samples; frames are numbered from 1
+          if (frameIndex == null) {
+            frameIndex = new KeyFrameIndex();
+            in.skipBytes(4);
+            int numSyncSamples = in.readInt();
+            for (int i=0; i<numSyncSamples; i++) {
+              frameIndex.addKeyFrame(in.readInt() - 1);
+            }
+          }
+        }
         else if (atomType.equals("stts")) {
           in.skipBytes(12);
           int fps = in.readInt();
@@ -633,6 +632,59 @@ public class NativeQTReader extends FormatReader {
     LOGGER.debug(sb.toString());
   }
 
+  /**
+   * Reads and decompresses the given frame, updating the previous frame.
+   * RPZA frames are returned without being kept as the previous frame.
+   */
+  private byte[] decodeFrame(int no, String code)
+    throws FormatException, IOException
+  {
+    int offset = offsets.get(no).intValue();
+    int nextOffset = (int) pixelBytes;
+
+    scale = offsets.get(0).intValue();
+    offset -= scale;
+
+    if (no < offsets.size() - 1) {
+      nextOffset = offsets.get(no + 1).intValue() - scale;
+    }
+
+    if ((nextOffset - offset) < 0) {
+      int temp = offset;
+      offset = nextOffset;
+      nextOffset = temp;
+    }
+
+    byte[] pixs = new byte[nextOffset - offset];
+
+    in.seek(pixelOffset + offset);
+    in.read(pixs);
+
+    canUsePrevious = (prevPixels != null) && (prevPlane == no - 1) &&
+      !code.equals(altCodec);
+
+    byte[] t = uncompress(pixs, code);
+    if (code.equals("rpza")) {
+      return t;
+    }
+
+    // on rare occassions, we need to trim the data
+    if (canUsePrevious && (prevPixels.length < t.length)) {
+      byte[] temp = t;
+      t = new byte[prevPixels.length];
+      System.arraycopy(temp, 0, t, 0, t.length);
+    }
+
+    if (t.length > 0) {
+      prevPixels = t;
+    }
+    prevPlane = no;
+    if (frameIndex != null && prevPixels != null) {
+      frameIndex.addCheckpoint(no, prevPixels);
+    }
+    return t;
+  }
+
   /** Uncompresses an image plane according to the the codec identifier. */
   private byte[] uncompress(byte[] pixs, String code)
     throws FormatException, IOException
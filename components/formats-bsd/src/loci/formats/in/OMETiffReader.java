@@ -34,17 +34,23 @@ package loci.formats.in;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.HashSet;
 import java.util.Hashtable;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import loci.common.DataTools;
 import loci.common.Location;
 import loci.common.RandomAccessInputStream;
+import loci.common.Region;
 import loci.common.services.DependencyException;
 import loci.common.services.ServiceException;
 import loci.common.services.ServiceFactory;
@@ -57,6 +63,7 @@ import loci.formats.MetadataTools;
 import loci.formats.MissingLibraryException;
 import loci.formats.Modulo;
 import loci.formats.SubResolutionFormatReader;
+import loci.formats.TileRequest;
 import loci.formats.meta.MetadataStore;
 import loci.formats.ome.OMEXMLMetadata;
 import loci.formats.services.OMEXMLService;
@@ -137,7 +144,8 @@ public class OMETiffReader extends SubResolutionFormatReader {
     if (service == null) setupService();
     OMEXMLMetadata meta;
     try {
-      meta = service.createOMEXMLMetadata(xml);
+      // only the dimensions are needed here
+      meta = service.createOMEXMLMetadata(xml, true);
       metaFile = new Location(id).getAbsolutePath();
     }
     catch (ServiceException se) {
@@ -179,7 +187,7 @@ public class OMETiffReader extends SubResolutionFormatReader {
 
       try {
         String xml = readMetadataFile();
-        service.createOMEXMLMetadata(xml);
+        service.createOMEXMLMetadata(xml, true);
       } catch (ServiceException se) {
         LOGGER.debug("OME-XML parsing failed", se);
         return false;
@@ -316,43 +324,88 @@ public class OMETiffReader extends SubResolutionFormatReader {
     throws FormatException, IOException
   {
     FormatTools.checkPlaneParameters(this, no, buf.length, x, y, w, h);
-    lastPlane = no;
-    int i = info[series][no].ifd;
-
     if (!info[series][no].exists ||
       info[series][no].reader == null ||
       info[series][no].id == null)
     {
+      lastPlane = no;
       Arrays.fill(buf, (byte) 0);
       return buf;
     }
+    readIFDPlane(no, ByteBuffer.wrap(buf), x, y, w, h);
+    return buf;
+  }
 
-    MinimalTiffReader r = (MinimalTiffReader) info[series][no].reader;
-    if (r.getCurrentFile() == null) {
-      r.setId(info[series][no].id);
+  /**
+   * Reads straight into the buffer, unless a subclass processes the pixels
+   * returned by the byte array openBytes methods.
+   *
+   * @see loci.formats.FormatReader#openBytes(int, ByteBuffer, int, int, int, int)
+   */
+  @Override
+  public ByteBuffer openBytes(int no, ByteBuffer buf, int x, int y,
+    int w, int h) throws FormatException, IOException
+  {
+    if (FormatTools.overridesOpenBytes(this, OMETiffReader.class)) {
+      return super.openBytes(no, buf, x, y, w, h);
     }
-    r.lastPlane = i;
-    IFDList ifdList = r.getIFDs();
-    if (i >= ifdList.size()) {
-      LOGGER.warn("Error untangling IFDs; the OME-TIFF file may be malformed (IFD #{} missing).", i);
+    FormatTools.checkPlaneParameters(this, no, buf.remaining(), x, y, w, h);
+    int size = FormatTools.getPlaneSize(this, w, h);
+    int position = buf.position();
+    if (!info[series][no].exists ||
+      info[series][no].reader == null ||
+      info[series][no].id == null)
+    {
+      lastPlane = no;
+      buf.put(new byte[size]);
       return buf;
     }
-    IFD ifd = ifdList.get(i);
-    try (RandomAccessInputStream s = new RandomAccessInputStream(info[series][no].id, 16)) {
-      TiffParser p = new TiffParser(s);
-      if (resolution > 0) {
-        IFDList subifds = p.getSubIFDs(ifd);
-        ifd = subifds.get(((OMETiffCoreMetadata)core.get(series, resolution)).subresolutionOffset);
+    readIFDPlane(no, buf, x, y, w, h);
+    ((Buffer) buf).position(position + size);
+    return buf;
+  }
+
+  /**
+   * Groups the requests by file, so that the tiles stored in each file are
+   * read in one batch.
+   *
+   * @see loci.formats.IFormatReader#openTiles(List)
+   */
+  @Override
+  public void openTiles(List<TileRequest> tiles)
+    throws FormatException, IOException
+  {
+    if (tiles.size() < 2 ||
+      FormatTools.overridesOpenBytes(this, OMETiffReader.class))
+    {
+      super.openTiles(tiles);
+      return;
+    }
+    int bpp = FormatTools.getBytesPerPixel(getPixelType());
+    Map<String, List<TileRequest>> files =
+      new LinkedHashMap<String, List<TileRequest>>();
+    for (TileRequest t : tiles) {
+      FormatTools.checkPlaneParameters(this, t.no,
+        t.buf == null ? -1 : t.buf.length, t.x, t.y, t.w, t.h);
+      if (t.buf == null) {
+        t.buf = DataTools.allocate(t.w, t.h, getRGBChannelCount(), bpp);
       }
-      p.getSamples(ifd, buf, x, y, w, h);
+      OMETiffPlane plane = info[series][t.no];
+      if (!plane.exists || plane.reader == null || plane.id == null) {
+        lastPlane = t.no;
+        Arrays.fill(t.buf, (byte) 0);
+        continue;
+      }
+      List<TileRequest> fileTiles = files.get(plane.id);
+      if (fileTiles == null) {
+        fileTiles = new ArrayList<TileRequest>();
+        files.put(plane.id, fileTiles);
+      }
+      fileTiles.add(t);
     }
-
-    // reasonably safe to close the reader if the entire plane or
-    // lower-right-most tile from a single plane file has been read
-    if (r.getImageCount() == 1 && w + x == getSizeX() && h + y == getSizeY()) {
-      r.close();
+    for (Map.Entry<String, List<TileRequest>> file : files.entrySet()) {
+      readIFDTiles(file.getKey(), file.getValue());
     }
-    return buf;
   }
 
   /* @see loci.formats.SubResolutionFormatReader#getSeriesUsedFiles(boolean) */
@@ -1267,6 +1320,93 @@ public class OMETiffReader extends SubResolutionFormatReader {
 
   // -- Helper methods --
 
+  /** Reads a plane from an existing file into the buffer. */
+  private void readIFDPlane(int no, ByteBuffer buf, int x, int y,
+    int w, int h) throws FormatException, IOException
+  {
+    lastPlane = no;
+    int i = info[series][no].ifd;
+
+    MinimalTiffReader r = (MinimalTiffReader) info[series][no].reader;
+    if (r.getCurrentFile() == null) {
+      r.setId(info[series][no].id);
+    }
+    r.lastPlane = i;
+    IFDList ifdList = r.getIFDs();
+    if (i >= ifdList.size()) {
+      LOGGER.warn("Error untangling IFDs; the OME-TIFF file may be malformed (IFD #{} missing).", i);
+      return;
+    }
+    IFD ifd = ifdList.get(i);
+    try (RandomAccessInputStream s = new RandomAccessInputStream(info[series][no].id, 16)) {
+      TiffParser p = new TiffParser(s);
+      if (resolution > 0) {
+        IFDList subifds = p.getSubIFDs(ifd);
+        ifd = subifds.get(((OMETiffCoreMetadata)core.get(series, resolution)).subresolutionOffset);
+      }
+      p.getSamples(ifd, buf, x, y, w, h);
+    }
+
+    // reasonably safe to close the reader if the entire plane or
+    // lower-right-most tile from a single plane file has been read
+    if (r.getImageCount() == 1 && w + x == getSizeX() && h + y == getSizeY()) {
+      r.close();
+    }
+  }
+
+  /** Reads a batch of tiles that are all stored in the given file. */
+  private void readIFDTiles(String id, List<TileRequest> tiles)
+    throws FormatException, IOException
+  {
+    List<IFD> ifds = new ArrayList<IFD>();
+    List<Region> regions = new ArrayList<Region>();
+    List<byte[]> bufs = new ArrayList<byte[]>();
+    try (RandomAccessInputStream s = new RandomAccessInputStream(id, 16)) {
+      TiffParser p = new TiffParser(s);
+      Map<IFD, IFDList> subifds = new IdentityHashMap<IFD, IFDList>();
+      for (TileRequest t : tiles) {
+        lastPlane = t.no;
+        int i = info[series][t.no].ifd;
+        MinimalTiffReader r = (MinimalTiffReader) info[series][t.no].reader;
+        if (r.getCurrentFile() == null) {
+          r.setId(id);
+        }
+        r.lastPlane = i;
+        IFDList ifdList = r.getIFDs();
+        if (i >= ifdList.size()) {
+          LOGGER.warn("Error untangling IFDs; the OME-TIFF file may be malformed (IFD #{} missing).", i);
+          continue;
+        }
+        IFD ifd = ifdList.get(i);
+        if (resolution > 0) {
+          IFDList list = subifds.get(ifd);
+          if (list == null) {
+            list = p.getSubIFDs(ifd);
+            subifds.put(ifd, list);
+          }
+          ifd = list.get(((OMETiffCoreMetadata) core.get(series, resolution)).subresolutionOffset);
+        }
+        ifds.add(ifd);
+        regions.add(new Region(t.x, t.y, t.w, t.h));
+        bufs.add(t.buf);
+      }
+      p.getSamples(ifds.toArray(new IFD[ifds.size()]),
+        regions.toArray(new Region[regions.size()]),
+        bufs.toArray(new byte[bufs.size()][]));
+    }
+
+    // reasonably safe to close the reader if the entire plane or
+    // lower-right-most tile from a single plane file has been read
+    for (TileRequest t : tiles) {
+      MinimalTiffReader r = (MinimalTiffReader) info[series][t.no].reader;
+      if (r.getCurrentFile() != null && r.getImageCount() == 1 &&
+        t.w + t.x == getSizeX() && t.h + t.y == getSizeY())
+      {
+        r.close();
+      }
+    }
+  }
+
   private String normalizeFilename(String dir, String name) {
      File file = new File(dir, name);
      if (file.exists()) return file.getAbsolutePath();
@@ -33,11 +33,16 @@
 package loci.formats.in;
 
 import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.List;
 
 import loci.formats.CoreMetadata;
 import loci.formats.DelegateReader;
 import loci.formats.FormatException;
+import loci.formats.FormatTools;
+import loci.formats.TileRequest;
 import loci.formats.UnsupportedCompressionException;
 
 /**
@@ -84,6 +89,56 @@ public class TiffDelegateReader extends DelegateReader {
     return super.openBytes(no, buf, x, y, w, h);
   }
 
+  @Override
+  public ByteBuffer openBytes(int no, ByteBuffer buf, int x, int y,
+    int w, int h) throws FormatException, IOException
+  {
+    if (!isLegacy()) {
+      int position = buf.position();
+      try {
+        return nativeReader.openBytes(no, buf, x, y, w, h);
+      }
+      catch (UnsupportedCompressionException e) {
+        LOGGER.debug("Could not open plane with native reader", e);
+        if (!legacyReaderInitialized) {
+          legacyReader.setId(getCurrentFile());
+          legacyReaderInitialized = true;
+          nativeReader.close();
+          nativeReaderInitialized = false;
+        }
+        ((Buffer) buf).position(position);
+        return legacyReader.openBytes(no, buf, x, y, w, h);
+      }
+    }
+    return super.openBytes(no, buf, x, y, w, h);
+  }
+
+  @Override
+  public void openTiles(List<TileRequest> tiles)
+    throws FormatException, IOException
+  {
+    if (!isLegacy() &&
+      !FormatTools.overridesOpenBytes(this, TiffDelegateReader.class))
+    {
+      try {
+        nativeReader.openTiles(tiles);
+        return;
+      }
+      catch (UnsupportedCompressionException e) {
+        LOGGER.debug("Could not open tiles with native reader", e);
+        if (!legacyReaderInitialized) {
+          legacyReader.setId(getCurrentFile());
+          legacyReaderInitialized = true;
+          nativeReader.close();
+          nativeReaderInitialized = false;
+        }
+        legacyReader.openTiles(tiles);
+        return;
+      }
+    }
+    super.openTiles(tiles);
+  }
+
   @Override
   public void setId(String id) throws FormatException, IOException {
     if (isLegacy()) {
@@ -0,0 +1,345 @@
+/*
+ * #%L
+ * BSD implementations of Bio-Formats readers and writers
+ * %%
+ * Copyright (C) 2005 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.formats.in;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+
+import loci.common.DataTools;
+import loci.common.IRandomAccess;
+import loci.common.Location;
+import loci.common.RandomAccessInputStream;
+import loci.common.StreamHandle;
+
+/**
+ * Read-only random access handle for a single entry in a ZIP file.
+ *
+ * Entries are located using the ZIP central directory, so no entry data
+ * needs to be read in order to list them.  STORED entries are read directly
+ * from the ZIP file at the entry's data offset.  DEFLATED entries are
+ * inflated on demand by a {@link CheckpointInflater}, so seeking backwards
+ * resumes from the nearest saved checkpoint rather than from the start of
+ * the entry.  Neither case holds the entry in memory.
+ */
+public class ZipEntryHandle extends StreamHandle {
+
+  // -- Constants --
+
+  private static final int LOCAL_HEADER = 0x04034b50;
+  private static final int CENTRAL_HEADER = 0x02014b50;
+  private static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+  private static final int ZIP64_END_OF_CENTRAL_DIRECTORY = 0x06064b50;
+  private static final int ZIP64_LOCATOR = 0x07064b50;
+  private static final int ZIP64_EXTRA = 0x0001;
+
+  private static final int END_LENGTH = 22;
+  private static final int MAX_COMMENT_LENGTH = 65535;
+  private static final long UNKNOWN = 0xffffffffL;
+
+  // -- Fields --
+
+  private String entryName;
+  private int flags;
+  private int method;
+  private long headerOffset;
+  private long compressedSize;
+
+  /** Offset of the entry data within the ZIP file, once known. */
+  private long dataOffset = -1;
+
+  private IRandomAccess raw;
+  private CheckpointInflater inflater;
+
+  /** Position of the next byte read through the stream. */
+  private long entryPosition;
+
+  // -- Constructor --
+
+  private ZipEntryHandle(String file, String entryName, int flags, int method,
+    long headerOffset, long compressedSize, long size)
+  {
+    this.file = file;
+    this.entryName = entryName;
+    this.flags = flags;
+    this.method = method;
+    this.headerOffset = headerOffset;
+    this.compressedSize = compressedSize;
+    length = size;
+    stream = new DataInputStream(new EntryStream());
+  }
+
+  // -- ZipEntryHandle API methods --
+
+  /**
+   * Reads the central directory of a ZIP file and creates a handle for
+   * each entry.  The given stream is only used while listing the entries;
+   * each handle opens its own handle on <code>file</code> when first read.
+   *
+   * @return the entries in central directory order, or null if the file does
+   *   not have a readable central directory
+   */
+  public static List<ZipEntryHandle> getEntries(RandomAccessInputStream zip,
+    String file) throws IOException
+  {
+    boolean little = zip.isLittleEndian();
+    zip.order(true);
+    try {
+      return readCentralDirectory(zip, file);
+    }
+    finally {
+      zip.order(little);
+    }
+  }
+
+  /** Gets the name of this entry. */
+  public String getEntryName() {
+    return entryName;
+  }
+
+  /** Gets the compression method of this entry. */
+  public int getMethod() {
+    return method;
+  }
+
+  /**
+   * Returns true if this handle can read the entry, i.e. the entry is
+   * neither encrypted nor compressed with a method other than STORED or
+   * DEFLATED.
+   */
+  public boolean isSupported() {
+    return (flags & 1) == 0 &&
+      (method == ZipEntry.STORED || method == ZipEntry.DEFLATED);
+  }
+
+  // -- IRandomAccess API methods --
+
+  /* @see loci.common.IRandomAccess#seek(long) */
+  @Override
+  public void seek(long pos) throws IOException {
+    fp = pos;
+    entryPosition = pos;
+  }
+
+  /* @see loci.common.IRandomAccess#close() */
+  @Override
+  public void close() throws IOException {
+    if (raw != null && Location.getMappedFile(file) != raw) {
+      raw.close();
+    }
+    raw = null;
+  }
+
+  // -- StreamHandle API methods --
+
+  /* @see loci.common.StreamHandle#resetStream() */
+  @Override
+  protected void resetStream() throws IOException {
+    entryPosition = 0;
+  }
+
+  // -- Helper methods --
+
+  private static List<ZipEntryHandle> readCentralDirectory(
+    RandomAccessInputStream zip, String file) throws IOException
+  {
+    long fileLength = zip.length();
+    if (fileLength < END_LENGTH) return null;
+
+    long tailStart =
+      Math.max(0, fileLength - END_LENGTH - MAX_COMMENT_LENGTH);
+    byte[] tail = new byte[(int) (fileLength - tailStart)];
+    zip.seek(tailStart);
+    zip.readFully(tail);
+    int end = tail.length - END_LENGTH;
+    while (end >= 0 &&
+      DataTools.bytesToInt(tail, end, true) != END_OF_CENTRAL_DIRECTORY)
+    {
+      end--;
+    }
+    if (end < 0) return null;
+
+    long entryCount = DataTools.bytesToInt(tail, end + 10, 2, true);
+    long directoryOffset =
+      DataTools.bytesToInt(tail, end + 16, true) & 0xffffffffL;
+    if (entryCount == 0xffff || directoryOffset == UNKNOWN) {
+      long locator = tailStart + end - 20;
+      if (locator < 0) return null;
+      zip.seek(locator);
+      if (zip.readInt() != ZIP64_LOCATOR) return null;
+      zip.skipBytes(4);
+      zip.seek(zip.readLong());
+      if (zip.readInt() != ZIP64_END_OF_CENTRAL_DIRECTORY) return null;
+      zip.skipBytes(28);
+      entryCount = zip.readLong();
+      zip.skipBytes(8);
+      directoryOffset = zip.readLong();
+    }
+    if (directoryOffset < 0 || directoryOffset >= fileLength) return null;
+
+    List<ZipEntryHandle> entries = new ArrayList<ZipEntryHandle>();
+    zip.seek(directoryOffset);
+    for (long i=0; i<entryCount; i++) {
+      if (zip.getFilePointer() + 46 > fileLength ||
+        zip.readInt() != CENTRAL_HEADER)
+      {
+        return null;
+      }
+      zip.skipBytes(4);
+      int flags = zip.readUnsignedShort();
+      int method = zip.readUnsignedShort();
+      zip.skipBytes(8);
+      long compressedSize = zip.readInt() & 0xffffffffL;
+      long size = zip.readInt() & 0xffffffffL;
+      int nameLength = zip.readUnsignedShort();
+      int extraLength = zip.readUnsignedShort();
+      int commentLength = zip.readUnsignedShort();
+      zip.skipBytes(8);
+      long headerOffset = zip.readInt() & 0xffffffffL;
+      byte[] name = new byte[nameLength];
+      zip.readFully(name);
+      byte[] extra = new byte[extraLength];
+      zip.readFully(extra);
+      zip.skipBytes(commentLength);
+
+      // ZIP64 sizes and offsets are stored only for fields that overflowed
+      int p = 0;
+      while (p + 4 <= extra.length) {
+        int id = DataTools.bytesToInt(extra, p, 2, true);
+        int fieldLength = DataTools.bytesToInt(extra, p + 2, 2, true);
+        p += 4;
+        if (id == ZIP64_EXTRA) {
+          int fieldEnd = Math.min(extra.length, p + fieldLength);
+          if (size == UNKNOWN && p + 8 <= fieldEnd) {
+            size = DataTools.bytesToLong(extra, p, true);
+            p += 8;
+          }
+          if (compressedSize == UNKNOWN && p + 8 <= fieldEnd) {
+            compressedSize = DataTools.bytesToLong(extra, p, true);
+            p += 8;
+          }
+          if (headerOffset == UNKNOWN && p + 8 <= fieldEnd) {
+            headerOffset = DataTools.bytesToLong(extra, p, true);
+          }
+          break;
+        }
+        p += fieldLength;
+      }
+
+      entries.add(new ZipEntryHandle(file,
+        new String(name, StandardCharsets.UTF_8), flags, method,
+        headerOffset, compressedSize, size));
+    }
+    return entries;
+  }
+
+  /** Opens the ZIP file and locates the entry data, if not already done. */
+  private void open() throws IOException {
+    if (raw != null) return;
+    if (!isSupported()) {
+      throw new IOException("Unsupported ZIP entry: " + entryName);
+    }
+    raw = Location.getHandle(file, false, false);
+    if (dataOffset < 0) {
+      byte[] header = new byte[30];
+      raw.seek(headerOffset);
+      raw.readFully(header);
+      if (DataTools.bytesToInt(header, 0, true) != LOCAL_HEADER) {
+        throw new IOException("Invalid local header for ZIP entry: " +
+          entryName);
+      }
+      int nameLength = DataTools.bytesToInt(header, 26, 2, true);
+      int extraLength = DataTools.bytesToInt(header, 28, 2, true);
+      dataOffset = headerOffset + header.length + nameLength + extraLength;
+    }
+    if (method == ZipEntry.DEFLATED) {
+      if (inflater == null) {
+        inflater =
+          new CheckpointInflater(raw, dataOffset, compressedSize, length);
+      }
+      else inflater.setInput(raw);
+    }
+  }
+
+  /** Reads entry bytes starting at the given position. */
+  private int read(long pos, byte[] b, int off, int len) throws IOException {
+    if (len == 0) return 0;
+    if (pos >= length) return -1;
+    len = (int) Math.min(len, length - pos);
+    open();
+    if (method == ZipEntry.STORED) {
+      raw.seek(dataOffset + pos);
+      return raw.read(b, off, len);
+    }
+    inflater.seek(pos);
+    return inflater.inflate(b, off, len);
+  }
+
+  // -- Helper classes --
+
+  /** Stream view of the entry, positioned independently of the file. */
+  private class EntryStream extends InputStream {
+
+    @Override
+    public int read() throws IOException {
+      byte[] b = new byte[1];
+      return read(b, 0, 1) == 1 ? b[0] & 0xff : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int n = ZipEntryHandle.this.read(entryPosition, b, off, len);
+      if (n > 0) entryPosition += n;
+      return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      long skipped = Math.max(0, Math.min(n, length - entryPosition));
+      entryPosition += skipped;
+      return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+      return (int) Math.max(0,
+        Math.min(Integer.MAX_VALUE, length - entryPosition));
+    }
+
+  }
+
+}
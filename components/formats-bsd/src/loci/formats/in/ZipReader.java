@@ -35,6 +35,7 @@ package loci.formats.in;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
@@ -147,26 +148,43 @@ public class ZipReader extends FormatReader {
     IRandomAccess rawHandle = Location.getHandle(id, false, false);
     in = new RandomAccessInputStream(rawHandle, id);
 
-    ZipInputStream zip = new ZipInputStream(in);
-    ZipEntry ze = null;
-    entryName = null;
-    boolean matchFound = false;
-    while (true) {
-      ze = zip.getNextEntry();
-      if (ze == null) break;
-
-      if (entryName == null) {
-        entryName = ze.getName();
+    // Entries are listed from the central directory where possible, so
+    // that none of the compressed data needs to be inflated here.
+    List<ZipEntryHandle> entries = ZipEntryHandle.getEntries(in, id);
+    List<String> names = new ArrayList<String>();
+    if (entries != null) {
+      for (ZipEntryHandle entry : entries) {
+        String name = entry.getEntryName();
+        IRandomAccess handle = entry;
+        if (!entry.isSupported()) {
+          handle = new ZipHandle(id, new ZipEntry(name));
+        }
+        Location.mapFile(name, handle);
+        names.add(name);
       }
-
-      if (!matchFound && ze.getName().startsWith(innerFile)) {
-        entryName = ze.getName();
-        matchFound = true;
+    }
+    else {
+      in.seek(0);
+      ZipInputStream zip = new ZipInputStream(in);
+      ZipEntry ze = null;
+      while (true) {
+        ze = zip.getNextEntry();
+        if (ze == null) break;
+        Location.mapFile(ze.getName(), new ZipHandle(id, ze));
+        names.add(ze.getName());
       }
+    }
+    mappedFiles.addAll(names);
 
-      ZipHandle handle = new ZipHandle(id, ze);
-      Location.mapFile(ze.getName(), handle);
-      mappedFiles.add(ze.getName());
+    entryName = null;
+    for (String name : names) {
+      if (name.startsWith(innerFile)) {
+        entryName = name;
+        break;
+      }
+    }
+    if (entryName == null && names.size() > 0) {
+      entryName = names.get(0);
     }
 
     if (entryName == null) {
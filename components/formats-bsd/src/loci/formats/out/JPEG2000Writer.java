@@ -33,21 +33,78 @@
 package loci.formats.out;
 
 import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import loci.common.DataTools;
 import loci.formats.FormatException;
 import loci.formats.FormatTools;
 import loci.formats.FormatWriter;
 import loci.formats.codec.CompressionType;
 import loci.formats.codec.JPEG2000Codec;
 import loci.formats.codec.JPEG2000CodecOptions;
+import loci.formats.codec.JPEG2000SegmentMarker;
 import loci.formats.meta.MetadataRetrieve;
 
 /**
  * JPEG2000Writer is the file format writer for JPEG2000 files.
+ *
+ * If a tile size is set, either with {@link #setTileSizeX(int)} and
+ * {@link #setTileSizeY(int)} or through the tileWidth and tileHeight codec
+ * options, the plane is written as a tiled codestream.  Each saveBytes call
+ * must then cover whole tiles; tiles are encoded in parallel and streamed
+ * to the file as they complete, and a TLM marker segment indexing the
+ * tile-parts is filled in when the writer is closed.  Tile sizes are rounded
+ * to powers of two so that independently encoded tiles decode to the same
+ * samples as the assembled image, at every resolution.
  */
 public class JPEG2000Writer extends FormatWriter {
 
+  // -- Constants --
+
+  /** Number of decomposition levels used by the encoder by default. */
+  private static final int DEFAULT_DECOMPOSITION_LEVELS = 5;
+
+  /** Maximum number of entries in a single TLM marker segment. */
+  private static final int TLM_ENTRIES = (65535 - 4) / 6;
+
+  /** JP2 box types, as stored in the file. */
+  private static final int JP2C = 0x6a703263;
+  private static final int IHDR = 0x69686472;
+
+  /** Maximum number of tiles that are encoded but not yet written. */
+  private static final int MAX_PENDING_TILES =
+    2 * Runtime.getRuntime().availableProcessors();
+
+  private static ExecutorService encodePool;
+
   // -- Fields --
 
+  private int tileSizeX;
+  private int tileSizeY;
+
+  /** Tiles that have been submitted for encoding, in submission order. */
+  private ArrayDeque<PendingTile> pendingTiles = new ArrayDeque<PendingTile>();
+
+  /** Coding style and quantization segments of the main header. */
+  private List<byte[]> codingSegments;
+
+  /** Offset of the first TLM marker segment, or -1 if none was written. */
+  private long tlmOffset = -1;
+
+  /** Tile index and length of each tile-part, in codestream order. */
+  private int[] tilePartIndexes;
+  private long[] tilePartLengths;
+  private int tilePartCount;
+
   // -- Constructor --
 
   /** Creates a new instance. */
@@ -69,7 +126,22 @@ public class JPEG2000Writer extends FormatWriter {
     throws FormatException, IOException
   {
     checkParams(no, buf, x, y, w, h);
-    
+
+    if (tileSizeX == 0 && tileSizeY == 0 && options != null &&
+      options.tileWidth > 0 && options.tileHeight > 0)
+    {
+      setTileSizeX(options.tileWidth);
+      setTileSizeY(options.tileHeight);
+    }
+    if (tileSizeX > 0 && tileSizeY > 0) {
+      if (no != 0) {
+        throw new FormatException(
+          "Tiled JPEG-2000 files can only contain a single plane.");
+      }
+      saveTiles(buf, x, y, w, h);
+      return;
+    }
+
     /*
     if (!isFullPlane(x, y, w, h)) {
       throw new FormatException(
@@ -99,6 +171,97 @@ public class JPEG2000Writer extends FormatWriter {
     throws FormatException, IOException
   {
     checkParams(no, buf, x, y, w, h);
+    options = getCodecOptions(w, h);
+    return new JPEG2000Codec().compress(buf, options);
+  }
+
+  /**
+   * Overridden to indicate that stacks are not supported. 
+   * @see loci.formats.IFormatWriter#canDoStacks() 
+   */
+  @Override
+  public boolean canDoStacks() { return false; }
+
+  /**
+   * Overridden to return the formats supported by the writer.
+   * @see loci.formats.IFormatWriter#getPixelTypes(String) 
+   */
+  @Override
+  public int[] getPixelTypes(String codec) {
+    return new int[] {FormatTools.INT8, FormatTools.UINT8, FormatTools.INT16,
+      FormatTools.UINT16, FormatTools.INT32, FormatTools.UINT32};
+  }
+
+  /* @see loci.formats.IFormatWriter#getTileSizeX() */
+  @Override
+  public int getTileSizeX() throws FormatException {
+    if (tileSizeX == 0) {
+      return super.getTileSizeX();
+    }
+    return tileSizeX;
+  }
+
+  /**
+   * Overridden to round the tile width down to a power of two.
+   * @see loci.formats.IFormatWriter#setTileSizeX(int)
+   */
+  @Override
+  public int setTileSizeX(int tileSize) throws FormatException {
+    super.setTileSizeX(tileSize);
+    tileSizeX = Integer.highestOneBit(tileSize);
+    return tileSizeX;
+  }
+
+  /* @see loci.formats.IFormatWriter#getTileSizeY() */
+  @Override
+  public int getTileSizeY() throws FormatException {
+    if (tileSizeY == 0) {
+      return super.getTileSizeY();
+    }
+    return tileSizeY;
+  }
+
+  /**
+   * Overridden to round the tile height down to a power of two.
+   * @see loci.formats.IFormatWriter#setTileSizeY(int)
+   */
+  @Override
+  public int setTileSizeY(int tileSize) throws FormatException {
+    super.setTileSizeY(tileSize);
+    tileSizeY = Integer.highestOneBit(tileSize);
+    return tileSizeY;
+  }
+
+  // -- IFormatHandler API methods --
+
+  /* @see loci.formats.IFormatHandler#close() */
+  @Override
+  public void close() throws IOException {
+    try {
+      if (out != null && tlmOffset >= 0) {
+        finishCodestream();
+      }
+    }
+    finally {
+      for (PendingTile pending : pendingTiles) {
+        pending.data.cancel(true);
+      }
+      pendingTiles.clear();
+      super.close();
+      codingSegments = null;
+      tlmOffset = -1;
+      tilePartIndexes = null;
+      tilePartLengths = null;
+      tilePartCount = 0;
+    }
+  }
+
+  // -- Helper methods --
+
+  /** Builds the codec options for a buffer of the given size. */
+  private JPEG2000CodecOptions getCodecOptions(int w, int h)
+    throws FormatException
+  {
     MetadataRetrieve retrieve = getMetadataRetrieve();
     boolean littleEndian = false;
     if (retrieve.getPixelsBigEndian(series) != null) {
@@ -114,35 +277,361 @@ public class JPEG2000Writer extends FormatWriter {
 
     //To be on the save-side
     if (options == null) options = JPEG2000CodecOptions.getDefaultOptions();
-    options = new JPEG2000CodecOptions(options);
-    options.width = w;
-    options.height = h;
-    options.channels = nChannels;
-    options.bitsPerSample = bytesPerPixel * 8;
-    options.littleEndian = littleEndian;
-    options.interleaved = interleaved;
-    options.lossless = compression == null || 
+    JPEG2000CodecOptions j2kOptions = new JPEG2000CodecOptions(options);
+    j2kOptions.width = w;
+    j2kOptions.height = h;
+    j2kOptions.channels = nChannels;
+    j2kOptions.bitsPerSample = bytesPerPixel * 8;
+    j2kOptions.littleEndian = littleEndian;
+    j2kOptions.interleaved = interleaved;
+    j2kOptions.lossless = compression == null || 
     compression.equals(CompressionType.J2K.getCompression());
-    options.colorModel = getColorModel();
+    j2kOptions.colorModel = getColorModel();
+    return j2kOptions;
+  }
 
-    return new JPEG2000Codec().compress(buf, options);
+  /**
+   * Splits a region that is aligned to the tile grid into tiles and submits
+   * them for encoding, writing encoded tiles as needed to keep the number
+   * of pending tiles bounded.
+   */
+  private void saveTiles(byte[] buf, int x, int y, int w, int h)
+    throws FormatException, IOException
+  {
+    int sizeX = getSizeX();
+    int sizeY = getSizeY();
+    if (x % tileSizeX != 0 || y % tileSizeY != 0 ||
+      (w % tileSizeX != 0 && x + w != sizeX) ||
+      (h % tileSizeY != 0 && y + h != sizeY))
+    {
+      throw new FormatException("Tiled JPEG-2000 regions must be aligned " +
+        "to the " + tileSizeX + "x" + tileSizeY + " tile grid.");
+    }
+    int tileColumns = (sizeX + tileSizeX - 1) / tileSizeX;
+    int tileCount = tileColumns * ((sizeY + tileSizeY - 1) / tileSizeY);
+    if (tileCount > 65535) {
+      throw new FormatException("Too many JPEG-2000 tiles (" + tileCount +
+        "); the tile size must be increased.");
+    }
+    if (tilePartIndexes == null) {
+      tilePartIndexes = new int[tileCount];
+      tilePartLengths = new long[tileCount];
+    }
+
+    // Tiles at the image origin have the same wavelet decomposition and
+    // code-block and precinct partitions as in the assembled image only if
+    // they are at least 2^NL pixels in each dimension.
+    int levels = DEFAULT_DECOMPOSITION_LEVELS;
+    if (options instanceof JPEG2000CodecOptions &&
+      ((JPEG2000CodecOptions) options).numDecompositionLevels != null)
+    {
+      levels = ((JPEG2000CodecOptions) options).numDecompositionLevels;
+    }
+    levels = Math.min(levels,
+      Integer.numberOfTrailingZeros(Math.min(tileSizeX, tileSizeY)));
+
+    int bytes = FormatTools.getBytesPerPixel(FormatTools.pixelTypeFromString(
+      getMetadataRetrieve().getPixelsType(series).toString()));
+    int channels = getSamplesPerPixel();
+    for (int ty=y; ty<y+h; ty+=tileSizeY) {
+      for (int tx=x; tx<x+w; tx+=tileSizeX) {
+        int tw = Math.min(tileSizeX, x + w - tx);
+        int th = Math.min(tileSizeY, y + h - ty);
+        byte[] tile = new byte[tw * th * bytes * channels];
+        if (interleaved) {
+          int rowLength = tw * bytes * channels;
+          for (int row=0; row<th; row++) {
+            int src = ((ty - y + row) * w + tx - x) * bytes * channels;
+            System.arraycopy(buf, src, tile, row * rowLength, rowLength);
+          }
+        }
+        else {
+          int rowLength = tw * bytes;
+          for (int c=0; c<channels; c++) {
+            for (int row=0; row<th; row++) {
+              int src = ((c * h + ty - y + row) * w + tx - x) * bytes;
+              int dest = (c * th + row) * rowLength;
+              System.arraycopy(buf, src, tile, dest, rowLength);
+            }
+          }
+        }
+
+        final byte[] samples = tile;
+        final JPEG2000CodecOptions tileOptions = getCodecOptions(tw, th);
+        tileOptions.numDecompositionLevels = levels;
+        tileOptions.tileWidth = 0;
+        tileOptions.tileHeight = 0;
+        Future<byte[]> data = getEncodePool().submit(new Callable<byte[]>() {
+          @Override
+          public byte[] call() throws FormatException {
+            return new JPEG2000Codec().compress(samples, tileOptions);
+          }
+        });
+        int index = (ty / tileSizeY) * tileColumns + tx / tileSizeX;
+        pendingTiles.add(new PendingTile(index, data));
+        while (pendingTiles.size() > MAX_PENDING_TILES) {
+          writePendingTile();
+        }
+      }
+    }
+  }
+
+  /** Waits for the oldest pending tile and writes it as a tile-part. */
+  private void writePendingTile() throws FormatException, IOException {
+    PendingTile pending = pendingTiles.poll();
+    byte[] encoded;
+    try {
+      encoded = pending.data.get();
+    }
+    catch (InterruptedException e) {
+      throw new IOException("Interrupted while encoding JPEG-2000 tile", e);
+    }
+    catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof FormatException) {
+        throw (FormatException) cause;
+      }
+      throw new FormatException("Could not encode JPEG-2000 tile", cause);
+    }
+
+    for (int i=0; i<tilePartCount; i++) {
+      if (tilePartIndexes[i] == pending.tile) {
+        throw new FormatException(
+          "JPEG-2000 tile " + pending.tile + " was written twice.");
+      }
+    }
+
+    int codestream = getCodestreamOffset(encoded);
+    int sot = codestream + 2;
+    List<byte[]> segments = new ArrayList<byte[]>();
+    while (DataTools.bytesToInt(encoded, sot, 2, false) !=
+      JPEG2000SegmentMarker.SOT.getCode())
+    {
+      int length = DataTools.bytesToInt(encoded, sot + 2, 2, false) + 2;
+      segments.add(Arrays.copyOfRange(encoded, sot, sot + length));
+      sot += length;
+    }
+    int eoc = encoded.length - 2;
+    long psot = DataTools.bytesToLong(encoded, sot + 6, 4, false);
+    if (psot != 0 && psot != eoc - sot) {
+      throw new FormatException(
+        "Encoded JPEG-2000 tile has more than one tile-part.");
+    }
+
+    if (tlmOffset < 0) {
+      writeHeader(encoded, codestream, segments);
+    }
+
+    // The tile's coding segments can differ from those of the first tile
+    // (e.g. in the number of quality layers); they are then repeated in the
+    // tile-part header, which takes precedence over the main header.
+    List<byte[]> tileSegments = getCodingSegments(segments);
+    int headerLength = 0;
+    if (!equals(tileSegments, codingSegments)) {
+      for (byte[] segment : tileSegments) {
+        headerLength += segment.length;
+      }
+    }
+    else {
+      tileSegments.clear();
+    }
+
+    byte[] tilePart = new byte[eoc - sot + headerLength];
+    System.arraycopy(encoded, sot, tilePart, 0, 12);
+    DataTools.unpackBytes(pending.tile, tilePart, 4, 2, false);
+    DataTools.unpackBytes(tilePart.length, tilePart, 6, 4, false);
+    tilePart[10] = 0;
+    tilePart[11] = 1;
+    int p = 12;
+    for (byte[] segment : tileSegments) {
+      System.arraycopy(segment, 0, tilePart, p, segment.length);
+      p += segment.length;
+    }
+    System.arraycopy(encoded, sot + 12, tilePart, p, eoc - sot - 12);
+    out.write(tilePart);
+
+    tilePartIndexes[tilePartCount] = pending.tile;
+    tilePartLengths[tilePartCount] = tilePart.length;
+    tilePartCount++;
   }
-    
+
   /**
-   * Overridden to indicate that stacks are not supported. 
-   * @see loci.formats.IFormatWriter#canDoStacks() 
+   * Writes the JP2 boxes (if any) and the main header of the tiled
+   * codestream, using an encoded tile as a template.
    */
-  @Override
-  public boolean canDoStacks() { return false; }
+  private void writeHeader(byte[] encoded, int codestream,
+    List<byte[]> segments)
+    throws FormatException, IOException
+  {
+    int sizeX = getSizeX();
+    int sizeY = getSizeY();
+    if (codestream > 0) {
+      byte[] boxes = Arrays.copyOf(encoded, codestream);
+      int ihdr = indexOf(boxes, IHDR);
+      if (ihdr >= 0) {
+        DataTools.unpackBytes(sizeY, boxes, ihdr + 4, 4, false);
+        DataTools.unpackBytes(sizeX, boxes, ihdr + 8, 4, false);
+      }
+      // The contiguous codestream box extends to the end of the file
+      DataTools.unpackBytes(0, boxes, codestream - 8, 4, false);
+      out.write(boxes);
+    }
+
+    out.writeShort(JPEG2000SegmentMarker.SOC.getCode());
+    for (byte[] segment : segments) {
+      if (DataTools.bytesToInt(segment, 0, 2, false) ==
+        JPEG2000SegmentMarker.SIZ.getCode())
+      {
+        segment = segment.clone();
+        DataTools.unpackBytes(sizeX, segment, 6, 4, false);
+        DataTools.unpackBytes(sizeY, segment, 10, 4, false);
+        DataTools.unpackBytes(tileSizeX, segment, 22, 4, false);
+        DataTools.unpackBytes(tileSizeY, segment, 26, 4, false);
+      }
+      out.write(segment);
+    }
+    codingSegments = getCodingSegments(segments);
+
+    tlmOffset = out.getFilePointer();
+    out.write(getTLM());
+  }
+
+  /** Fills in the TLM marker segments and terminates the codestream. */
+  private void finishCodestream() throws IOException {
+    try {
+      while (!pendingTiles.isEmpty()) {
+        writePendingTile();
+      }
+    }
+    catch (FormatException e) {
+      throw new IOException(e);
+    }
+    out.writeShort(JPEG2000SegmentMarker.EOC.getCode());
+    long end = out.getFilePointer();
+    out.seek(tlmOffset);
+    out.write(getTLM());
+    out.seek(end);
+    if (tilePartCount < tilePartIndexes.length) {
+      throw new IOException("Only " + tilePartCount + " of " +
+        tilePartIndexes.length + " JPEG-2000 tiles were written.");
+    }
+  }
 
   /**
-   * Overridden to return the formats supported by the writer.
-   * @see loci.formats.IFormatWriter#getPixelTypes(String) 
+   * Returns the TLM marker segments for every tile, with the tile-parts
+   * written so far.  Each entry is a 16-bit tile index and a 32-bit length.
    */
-  @Override
-  public int[] getPixelTypes(String codec) {
-    return new int[] {FormatTools.INT8, FormatTools.UINT8, FormatTools.INT16,
-      FormatTools.UINT16, FormatTools.INT32, FormatTools.UINT32};
+  private byte[] getTLM() {
+    int tiles = tilePartIndexes.length;
+    int segmentCount = (tiles + TLM_ENTRIES - 1) / TLM_ENTRIES;
+    byte[] tlm = new byte[segmentCount * 6 + tiles * 6];
+    int p = 0;
+    for (int segment=0; segment<segmentCount; segment++) {
+      int first = segment * TLM_ENTRIES;
+      int entries = Math.min(TLM_ENTRIES, tiles - first);
+      DataTools.unpackBytes(JPEG2000SegmentMarker.TLM.getCode(), tlm, p, 2,
+        false);
+      DataTools.unpackBytes(4 + entries * 6, tlm, p + 2, 2, false);
+      tlm[p + 4] = (byte) segment;
+      tlm[p + 5] = 0x60;
+      p += 6;
+      for (int i=first; i<first+entries; i++) {
+        if (i < tilePartCount) {
+          DataTools.unpackBytes(tilePartIndexes[i], tlm, p, 2, false);
+          DataTools.unpackBytes(tilePartLengths[i], tlm, p + 2, 4, false);
+        }
+        p += 6;
+      }
+    }
+    return tlm;
+  }
+
+  /**
+   * Returns the offset of the codestream within an encoded buffer, skipping
+   * the JP2 boxes if there are any.
+   */
+  private static int getCodestreamOffset(byte[] encoded)
+    throws FormatException
+  {
+    int p = 0;
+    while (p + 8 <= encoded.length) {
+      if (DataTools.bytesToInt(encoded, p, 2, false) ==
+        JPEG2000SegmentMarker.SOC.getCode())
+      {
+        return p;
+      }
+      int length = DataTools.bytesToInt(encoded, p, 4, false);
+      if (DataTools.bytesToInt(encoded, p + 4, 4, false) == JP2C) {
+        return p + 8;
+      }
+      if (length < 8) {
+        break;
+      }
+      p += length;
+    }
+    throw new FormatException("Could not find JPEG-2000 codestream.");
+  }
+
+  /** Returns the segments that describe coding style and quantization. */
+  private static List<byte[]> getCodingSegments(List<byte[]> segments) {
+    List<byte[]> coding = new ArrayList<byte[]>();
+    for (byte[] segment : segments) {
+      int marker = DataTools.bytesToInt(segment, 0, 2, false);
+      if (marker == JPEG2000SegmentMarker.COD.getCode() ||
+        marker == JPEG2000SegmentMarker.COC.getCode() ||
+        marker == JPEG2000SegmentMarker.QCD.getCode() ||
+        marker == JPEG2000SegmentMarker.QCC.getCode() ||
+        marker == JPEG2000SegmentMarker.RGN.getCode() ||
+        marker == JPEG2000SegmentMarker.POC.getCode())
+      {
+        coding.add(segment);
+      }
+    }
+    return coding;
+  }
+
+  private static boolean equals(List<byte[]> a, List<byte[]> b) {
+    if (a.size() != b.size()) return false;
+    for (int i=0; i<a.size(); i++) {
+      if (!Arrays.equals(a.get(i), b.get(i))) return false;
+    }
+    return true;
+  }
+
+  /** Returns the offset of the given box type in a buffer, or -1. */
+  private static int indexOf(byte[] data, int type) {
+    for (int i=0; i+4<=data.length; i++) {
+      if (DataTools.bytesToInt(data, i, 4, false) == type) return i;
+    }
+    return -1;
+  }
+
+  private static synchronized ExecutorService getEncodePool() {
+    if (encodePool == null) {
+      encodePool = Executors.newFixedThreadPool(
+        Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+          @Override
+          public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "jpeg2000-encoder");
+            t.setDaemon(true);
+            return t;
+          }
+        });
+    }
+    return encodePool;
+  }
+
+  // -- Helper classes --
+
+  /** A tile that has been submitted for encoding. */
+  private static class PendingTile {
+    final int tile;
+    final Future<byte[]> data;
+
+    PendingTile(int tile, Future<byte[]> data) {
+      this.tile = tile;
+      this.data = data;
+    }
   }
 
 }
@@ -58,6 +58,7 @@ import loci.formats.meta.MetadataRetrieve;
 import loci.formats.ome.OMEXMLMetadata;
 import loci.formats.services.OMEXMLService;
 import loci.formats.tiff.IFD;
+import loci.formats.tiff.TiffParser;
 import loci.formats.tiff.TiffSaver;
 import loci.formats.in.MetadataOptions;
 import loci.formats.in.DynamicMetadataOptions;
@@ -78,6 +79,13 @@ public class OMETiffWriter extends TiffWriter {
 
   public static final String COMPANION_KEY = "ometiff.companion";
 
+  /**
+   * Option key for the number of bytes to reserve for the OME-XML comment in
+   * the first IFD of each file.  If the final OME-XML fits, it is written in
+   * place when the writer is closed; otherwise it is appended to the file.
+   */
+  public static final String RESERVE_COMMENT_KEY = "ometiff.reserve_comment";
+
   // -- Fields --
 
   private String[][] imageLocations;
@@ -87,6 +95,12 @@ public class OMETiffWriter extends TiffWriter {
 
   private Map<String, String> uuids = new HashMap<String, String>();
 
+  /** Offsets of the first and last IFD written to each file. */
+  private Map<String, long[]> ifdOffsets = new HashMap<String, long[]>();
+
+  /** Index of the IFD that holds the reserved comment in the current file. */
+  private int reservedIFD = -1;
+
   // -- Constructor --
 
   public OMETiffWriter() {
@@ -123,6 +137,8 @@ public class OMETiffWriter extends TiffWriter {
               new Location(companion).getName());
         }
 
+        recordIFDOffsets();
+
         List<String> files = new ArrayList<String>();
         for (String[] s : imageLocations) {
           for (String f : s) {
@@ -188,6 +204,7 @@ public class OMETiffWriter extends TiffWriter {
         omeMeta = null;
         service = null;
         ifdCounts.clear();
+        ifdOffsets.clear();
       }
       else {
         for(String k : ifdCounts.keySet())
@@ -216,17 +233,51 @@ public class OMETiffWriter extends TiffWriter {
     throws FormatException, IOException
   {
     super.saveBytes(no, buf, ifd, x, y, w, h);
+    recordImageLocation(no);
+  }
 
-    int index = no;
-    while (imageLocations[series][index] != null) {
-      if (index < imageLocations[series].length - 1) {
-        index++;
-      }
-      else {
-        break;
+  // -- TiffWriter API methods --
+
+  /**
+   * @see TiffWriter#saveCompressedBytes(int, byte[][], IFD, int, int, int, int)
+   */
+  @Override
+  public void saveCompressedBytes(int no, byte[][] strips, IFD ifd,
+    int x, int y, int w, int h)
+    throws FormatException, IOException
+  {
+    super.saveCompressedBytes(no, strips, ifd, x, y, w, h);
+    recordImageLocation(no);
+  }
+
+  /* @see TiffWriter#prepareToWriteImage(int, byte[], IFD, int, int, int, int) */
+  @Override
+  protected int prepareToWriteImage(
+      int no, byte[] buf, IFD ifd, int x, int y, int w, int h)
+  throws IOException, FormatException {
+    int index = super.prepareToWriteImage(no, buf, ifd, x, y, w, h);
+    int reserve = getReservedCommentSize();
+    if (index < 0 || reserve <= 0) {
+      return index;
+    }
+    if (reservedIFD < 0 && tiffSaver.getFirstIFDOffset() < 0 &&
+      !ifdOffsets.containsKey(currentId))
+    {
+      reservedIFD = index;
+    }
+    if (index == reservedIFD) {
+      // pad the description so that the OME-XML can later be written in
+      // place; this is done for every tile of the IFD, as its size must not
+      // change once the first tile has been written
+      Object description = ifd.getIFDValue(IFD.IMAGE_DESCRIPTION);
+      StringBuilder padded =
+        new StringBuilder(description == null ? "" : description.toString());
+      while (padded.length() < reserve) {
+        padded.append(' ');
       }
+      ifd.putIFDValue(IFD.IMAGE_DESCRIPTION, padded.toString());
     }
-    imageLocations[series][index] = currentId;
+    return index;
   }
 
   // -- FormatWriter API methods --
@@ -235,6 +286,8 @@ public class OMETiffWriter extends TiffWriter {
   @Override
   public void setId(String id) throws FormatException, IOException {
     if (id.equals(currentId)) return;
+    recordIFDOffsets();
+    reservedIFD = -1;
     super.setId(id);
     if (imageLocations == null) {
       MetadataRetrieve r = getMetadataRetrieve();
@@ -256,8 +309,54 @@ public class OMETiffWriter extends TiffWriter {
     return null;
   }
 
+  /**
+   * Returns the number of bytes reserved for the OME-XML comment in the
+   * first IFD of each file, as set by {@link #RESERVE_COMMENT_KEY}.
+   */
+  public int getReservedCommentSize() {
+    MetadataOptions options = getMetadataOptions();
+    if (options instanceof DynamicMetadataOptions) {
+      Integer reserve =
+        ((DynamicMetadataOptions) options).getInteger(RESERVE_COMMENT_KEY, 0);
+      return reserve == null ? 0 : reserve;
+    }
+    return 0;
+  }
+
   // -- Helper methods --
 
+  /** Records the current file as the location of the given plane. */
+  private void recordImageLocation(int no) {
+    int index = no;
+    while (imageLocations[series][index] != null) {
+      if (index < imageLocations[series].length - 1) {
+        index++;
+      }
+      else {
+        break;
+      }
+    }
+    imageLocations[series][index] = currentId;
+  }
+
+  /** Merges the IFD offsets written by the current TIFF saver. */
+  private void recordIFDOffsets() {
+    if (currentId == null || tiffSaver == null ||
+      tiffSaver.getFirstIFDOffset() < 0)
+    {
+      return;
+    }
+    long[] offsets = ifdOffsets.get(currentId);
+    if (offsets == null) {
+      ifdOffsets.put(currentId, new long[] {tiffSaver.getFirstIFDOffset(),
+        tiffSaver.getLastIFDOffset()});
+    }
+    else {
+      offsets[0] = Math.min(offsets[0], tiffSaver.getFirstIFDOffset());
+      offsets[1] = Math.max(offsets[1], tiffSaver.getLastIFDOffset());
+    }
+  }
+
   /** Gets the UUID corresponding to the given filename. */
   private String getUUID(String filename) {
     String uuid = uuids.get(filename);
@@ -330,8 +429,30 @@ public class OMETiffWriter extends TiffWriter {
       TiffSaver saver = new TiffSaver(out, file);
       saver.setBigTiff(isBigTiff);
       in = new RandomAccessInputStream(file);
-      saver.overwriteLastIFDOffset(in);
-      saver.overwriteComment(in, xml);
+
+      // use the IFD offsets recorded while writing, unless the file
+      // contained IFDs that were not written by this writer
+      long[] offsets = ifdOffsets.get(file);
+      if (offsets != null) {
+        TiffParser parser = new TiffParser(in);
+        if (parser.getFirstOffset() != offsets[0]) {
+          offsets = null;
+        }
+        else {
+          saver.setLittleEndian(parser.checkHeader());
+          saver.setBigTiff(parser.isBigTiff());
+        }
+      }
+
+      if (offsets == null) {
+        saver.overwriteLastIFDOffset(in);
+        saver.overwriteComment(in, xml);
+      }
+      else {
+        saver.overwriteIFDOffset(in, offsets[1], 0);
+        saver.overwriteIFDValueAtOffset(in, offsets[0],
+          IFD.IMAGE_DESCRIPTION, xml);
+      }
     }
     catch (FormatException exc) {
       IOException io = new IOException("Unable to append OME-XML comment");
@@ -33,6 +33,7 @@
 package loci.formats.out;
 
 import java.io.IOException;
+import java.util.Arrays;
 
 import loci.common.RandomAccessInputStream;
 import loci.common.RandomAccessOutputStream;
@@ -48,6 +49,18 @@ import loci.formats.tiff.TiffSaver;
  */
 public class PyramidOMETiffWriter extends OMETiffWriter {
 
+  // -- Fields --
+
+  /**
+   * Offset of each plane's IFD, indexed by series, resolution and plane, as
+   * recorded while writing; null if the IFDs were not all written to a
+   * single file by this writer.
+   */
+  private long[][][] ifdOffsets;
+
+  /** File to which the recorded IFDs were written. */
+  private String ifdOffsetsFile;
+
   // -- Constructor --
 
   // -- IFormatHandler API methods --
@@ -74,19 +87,9 @@ public class PyramidOMETiffWriter extends OMETiffWriter {
   public void saveBytes(int no, byte[] buf, IFD ifd, int x, int y, int w, int h)
     throws FormatException, IOException
   {
-    if (ifd == null) {
-      ifd = new IFD();
-    }
-    if (getResolution() > 0) {
-      ifd.put(IFD.NEW_SUBFILE_TYPE, 1);
-    }
-    else {
-      if (!ifd.containsKey(IFD.SUB_IFD)) {
-        ifd.put(IFD.SUB_IFD, (long) 0);
-      }
-    }
-
+    ifd = prepareResolutionIFD(ifd);
     super.saveBytes(no, buf, ifd, x, y, w, h);
+    recordIFDOffset(no);
   }
 
   @Override
@@ -109,52 +112,176 @@ public class PyramidOMETiffWriter extends OMETiffWriter {
 
     // post-processing step to fill in all SubIFD arrays
     try {
-      boolean littleEndian = false;
-      long[] allOffsets = null;
-      try (RandomAccessInputStream in = new RandomAccessInputStream(id)) {
-        TiffParser parser = new TiffParser(in);
-        littleEndian = parser.checkHeader();
-        allOffsets = parser.getIFDOffsets();
+      long[][][] offsets = ifdOffsets;
+      if (!id.equals(ifdOffsetsFile) || !isComplete(offsets, planeCounts,
+        resCounts))
+      {
+        offsets = readIFDOffsets(id, planeCounts, resCounts);
       }
 
-      int mainIFDIndex = 0;
-      int currentFullResolution = 0;
-      for (int i=0; i<r.getImageCount(); i++) {
-        setSeries(i);
-        int resCount = resCounts[i];
-        for (int p=0; p<planeCounts[i]; p++) {
-          long[] subIFDOffsets = new long[resCount - 1];
-          for (int res=0; res<subIFDOffsets.length; res++) {
-            subIFDOffsets[res] = allOffsets[mainIFDIndex + (res + 1) * planeCounts[i]];
-          }
+      try (RandomAccessOutputStream out = new RandomAccessOutputStream(id);
+           RandomAccessInputStream in = new RandomAccessInputStream(id)) {
+        TiffParser parser = new TiffParser(in);
+        boolean littleEndian = parser.checkHeader();
+        out.order(littleEndian);
+        in.order(littleEndian);
+        TiffSaver saver = new TiffSaver(out, id);
+        saver.setBigTiff(parser.isBigTiff());
+        saver.setLittleEndian(littleEndian);
 
-          try (RandomAccessOutputStream out = new RandomAccessOutputStream(id);
-               RandomAccessInputStream in = new RandomAccessInputStream(id)) {
-            out.order(littleEndian);
-            in.order(littleEndian);
-            TiffSaver saver = new TiffSaver(out, id);
-            saver.setBigTiff(isBigTiff);
-            saver.setLittleEndian(littleEndian);
-            int index = mainIFDIndex + 1;
-            if (p == planeCounts[i] - 1) {
-              index += (planeCounts[i] * (resCount - 1));
+        // link the full resolution IFDs into a single chain, with the
+        // sub-resolutions of each plane in its SubIFD array
+        for (int i=0; i<offsets.length; i++) {
+          for (int p=0; p<planeCounts[i]; p++) {
+            long nextPointer = 0;
+            if (p < planeCounts[i] - 1) {
+              nextPointer = offsets[i][0][p + 1];
+            }
+            else if (i < offsets.length - 1) {
+              nextPointer = offsets[i + 1][0][0];
+            }
+            long[] subIFDOffsets = new long[resCounts[i] - 1];
+            for (int res=0; res<subIFDOffsets.length; res++) {
+              subIFDOffsets[res] = offsets[i][res + 1][p];
             }
-            long nextPointer = index < allOffsets.length ? allOffsets[index] : 0;
 
-            saver.overwriteIFDOffset(in, allOffsets[mainIFDIndex], nextPointer);
-            saver.overwriteIFDValue(in, currentFullResolution, IFD.SUB_IFD, subIFDOffsets);
+            saver.overwriteIFDOffset(in, offsets[i][0][p], nextPointer);
+            saver.overwriteIFDValueAtOffset(in, offsets[i][0][p],
+              IFD.SUB_IFD, subIFDOffsets);
           }
-
-          mainIFDIndex++;
-          currentFullResolution++;
         }
-        mainIFDIndex += (planeCounts[i] * (resCount - 1));
       }
       setSeries(0);
     }
     catch (FormatException e) {
       throw new IOException("Failed to assemble SubIFD offsets", e);
     }
+    finally {
+      ifdOffsets = null;
+      ifdOffsetsFile = null;
+    }
+  }
+
+  // -- TiffWriter API methods --
+
+  /**
+   * @see TiffWriter#saveCompressedBytes(int, byte[][], IFD, int, int, int, int)
+   */
+  @Override
+  public void saveCompressedBytes(int no, byte[][] strips, IFD ifd,
+    int x, int y, int w, int h)
+    throws FormatException, IOException
+  {
+    ifd = prepareResolutionIFD(ifd);
+    super.saveCompressedBytes(no, strips, ifd, x, y, w, h);
+    recordIFDOffset(no);
+  }
+
+  // -- Helper methods --
+
+  /**
+   * Marks the IFD of a sub-resolution as such, or reserves the SubIFD array
+   * in the IFD of a full resolution plane.
+   */
+  private IFD prepareResolutionIFD(IFD ifd) {
+    if (ifd == null) {
+      ifd = new IFD();
+    }
+    if (getResolution() > 0) {
+      ifd.put(IFD.NEW_SUBFILE_TYPE, 1);
+    }
+    else {
+      if (!ifd.containsKey(IFD.SUB_IFD)) {
+        // reserve the whole SubIFD array, so that it can be filled in place
+        int subResolutions = getResolutionCount() - 1;
+        if (subResolutions > 0) {
+          ifd.put(IFD.SUB_IFD, new long[subResolutions]);
+        }
+        else {
+          ifd.put(IFD.SUB_IFD, (long) 0);
+        }
+      }
+    }
+    return ifd;
+  }
+
+  /**
+   * Records the offset of the IFD that was just written for the given plane
+   * of the current series and resolution.
+   */
+  private void recordIFDOffset(int no) throws FormatException {
+    if (ifdOffsetsFile == null) {
+      MetadataRetrieve r = getMetadataRetrieve();
+      ifdOffsets = new long[r.getImageCount()][][];
+      ifdOffsetsFile = currentId;
+    }
+    else if (!ifdOffsetsFile.equals(currentId)) {
+      ifdOffsets = null;
+    }
+    if (ifdOffsets == null) {
+      return;
+    }
+    int s = getSeries();
+    if (ifdOffsets[s] == null) {
+      ifdOffsets[s] = new long[getResolutionCount()][getPlaneCount(s)];
+      for (long[] resolution : ifdOffsets[s]) {
+        Arrays.fill(resolution, -1);
+      }
+    }
+    ifdOffsets[s][getResolution()][no] = tiffSaver.getRecentIFDOffset();
+  }
+
+  /**
+   * Returns true if an offset was recorded for every plane at every
+   * resolution of every series.
+   */
+  private static boolean isComplete(long[][][] offsets, int[] planeCounts,
+    int[] resCounts)
+  {
+    if (offsets == null) {
+      return false;
+    }
+    for (int i=0; i<offsets.length; i++) {
+      if (offsets[i] == null || offsets[i].length != resCounts[i]) {
+        return false;
+      }
+      for (long[] resolution : offsets[i]) {
+        if (resolution.length != planeCounts[i]) {
+          return false;
+        }
+        for (long offset : resolution) {
+          if (offset < 0) {
+            return false;
+          }
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Reads the IFD offsets from the file, assuming that each series was
+   * written one resolution at a time.
+   */
+  private static long[][][] readIFDOffsets(String id, int[] planeCounts,
+    int[] resCounts)
+    throws IOException
+  {
+    long[] allOffsets;
+    try (RandomAccessInputStream in = new RandomAccessInputStream(id)) {
+      allOffsets = new TiffParser(in).getIFDOffsets();
+    }
+    long[][][] offsets = new long[planeCounts.length][][];
+    int index = 0;
+    for (int i=0; i<offsets.length; i++) {
+      offsets[i] = new long[resCounts[i]][planeCounts[i]];
+      for (int res=0; res<resCounts[i]; res++) {
+        for (int p=0; p<planeCounts[i]; p++) {
+          offsets[i][res][p] = allOffsets[index++];
+        }
+      }
+    }
+    return offsets;
   }
 
 }
@@ -39,12 +39,15 @@ import loci.formats.FormatException;
 import loci.formats.FormatTools;
 import loci.formats.FormatWriter;
 import loci.formats.ImageTools;
+import loci.formats.codec.CodecOptions;
 import loci.formats.codec.CompressionType;
+import loci.formats.codec.ZstdCodecOptions;
 import loci.formats.gui.AWTImageTools;
+import loci.formats.in.DynamicMetadataOptions;
+import loci.formats.in.MetadataOptions;
 import loci.formats.meta.MetadataRetrieve;
 import loci.formats.tiff.IFD;
 import loci.formats.tiff.TiffCompression;
-import loci.formats.tiff.TiffParser;
 import loci.formats.tiff.TiffRational;
 import loci.formats.tiff.TiffSaver;
 import ome.units.quantity.Length;
@@ -69,6 +72,20 @@ public class TiffWriter extends FormatWriter {
     CompressionType.JPEG.getCompression();
   public static final String COMPRESSION_ZLIB =
     CompressionType.ZLIB.getCompression();
+  public static final String COMPRESSION_ZSTD =
+    CompressionType.ZSTD.getCompression();
+
+  /**
+   * Option key for the Zstandard compression level, used when
+   * {@link #COMPRESSION_ZSTD} is selected.
+   */
+  public static final String ZSTD_LEVEL_KEY = "tiff.zstd_level";
+
+  /**
+   * Option key for enabling horizontal differencing (TIFF predictor 2)
+   * before LZW, Deflate or Zstandard compression.
+   */
+  public static final String PREDICTOR_KEY = "tiff.predictor";
 
   private static final String[] BIG_TIFF_SUFFIXES = {"tf2", "tf8", "btf"};
 
@@ -127,9 +144,39 @@ public class TiffWriter extends FormatWriter {
     else if (compression.equals(COMPRESSION_ZLIB)) {
       compressType = TiffCompression.DEFLATE;
     }
+    else if (compression.equals(COMPRESSION_ZSTD)) {
+      compressType = TiffCompression.ZSTD;
+    }
     Object v = ifd.get(new Integer(IFD.COMPRESSION));
     if (v == null)
       ifd.put(new Integer(IFD.COMPRESSION), compressType.getCode());
+    if (usePredictor(compressType) && !ifd.containsKey(IFD.PREDICTOR)) {
+      ifd.put(new Integer(IFD.PREDICTOR), 2);
+    }
+  }
+
+  /**
+   * Returns true if horizontal differencing should be applied before
+   * compressing with the given compression type.  Differencing is only
+   * performed for lossless dictionary-based codecs, and for samples of at
+   * most 4 bytes.
+   */
+  private boolean usePredictor(TiffCompression compressType) {
+    if (compressType != TiffCompression.LZW &&
+      compressType != TiffCompression.DEFLATE &&
+      compressType != TiffCompression.ZSTD)
+    {
+      return false;
+    }
+    MetadataOptions options = getMetadataOptions();
+    if (!(options instanceof DynamicMetadataOptions) ||
+      !((DynamicMetadataOptions) options).getBoolean(PREDICTOR_KEY, false))
+    {
+      return false;
+    }
+    int type = FormatTools.pixelTypeFromString(
+      getMetadataRetrieve().getPixelsType(series).toString());
+    return FormatTools.getBytesPerPixel(type) <= 4;
   }
 
   // -- Constructors --
@@ -147,7 +194,8 @@ public class TiffWriter extends FormatWriter {
       COMPRESSION_J2K,
       COMPRESSION_J2K_LOSSY,
       COMPRESSION_JPEG,
-      COMPRESSION_ZLIB
+      COMPRESSION_ZLIB,
+      COMPRESSION_ZSTD
     };
     isBigTiff = false;
   }
@@ -281,6 +329,101 @@ public class TiffWriter extends FormatWriter {
     }
   }
 
+  /**
+   * Compresses a single tile of the given plane without writing it, so that
+   * compression can be done on the caller's threads.  The tile size is taken
+   * from this writer if tiling is enabled, and otherwise from the IFD; the
+   * region must start on a tile boundary and be no larger than one tile.
+   * The IFD is copied and not modified; as it is read from the caller's
+   * thread, it should not be the IFD that tiles are being written with.
+   * The result is written with
+   * {@link #saveCompressedBytes(int, byte[][], IFD, int, int, int, int)}.
+   */
+  public byte[][] compressBytes(int no, byte[] buf, IFD ifd,
+    int x, int y, int w, int h)
+    throws IOException, FormatException
+  {
+    // the writer's state is only read while holding its lock, as writing
+    // a tile temporarily switches series to calculate the IFD index
+    IFD tileIFD;
+    int type, samples;
+    synchronized (this) {
+      if (checkParams) checkParams(no, buf, x, y, w, h);
+      tileIFD = ifd == null ? new IFD() : new IFD(ifd);
+      int currentTileSizeX = getTileSizeX();
+      int currentTileSizeY = getTileSizeY();
+      if (currentTileSizeX > 0 && currentTileSizeY > 0) {
+        tileIFD.put(new Integer(IFD.TILE_WIDTH), new Long(currentTileSizeX));
+        tileIFD.put(new Integer(IFD.TILE_LENGTH), new Long(currentTileSizeY));
+      }
+      else {
+        currentTileSizeX = tileIFD.getIFDIntValue(IFD.TILE_WIDTH, 0);
+        currentTileSizeY = tileIFD.getIFDIntValue(IFD.TILE_LENGTH, 0);
+      }
+      if (currentTileSizeX <= 0 || currentTileSizeY <= 0 ||
+        x % currentTileSizeX != 0 || y % currentTileSizeY != 0 ||
+        w > currentTileSizeX || h > currentTileSizeY)
+      {
+        throw new FormatException(String.format(
+          "Region %dx%d at (%d, %d) is not a single %dx%d tile",
+          w, h, x, y, currentTileSizeX, currentTileSizeY));
+      }
+      tileIFD.put(new Integer(IFD.IMAGE_WIDTH), new Long(getSizeX()));
+      tileIFD.put(new Integer(IFD.IMAGE_LENGTH), new Long(getSizeY()));
+      tileIFD.put(new Integer(IFD.LITTLE_ENDIAN),
+        new Boolean(isLittleEndian()));
+      tileIFD.putIFDValue(IFD.PLANAR_CONFIGURATION,
+        interleaved || getSamplesPerPixel() == 1 ? 1 : 2);
+      formatCompression(tileIFD);
+
+      type = FormatTools.pixelTypeFromString(
+        getMetadataRetrieve().getPixelsType(series).toString());
+      samples = getSamplesPerPixel();
+    }
+    return tiffSaver.compressImage(buf, tileIFD, type, w, h, samples, false);
+  }
+
+  /**
+   * Writes a tile that was compressed by
+   * {@link #compressBytes(int, byte[], IFD, int, int, int, int)} to the
+   * specified series in the current file.  Only the compressed bytes are
+   * placed; the offsets and byte counts are recorded in the IFD as
+   * {@link #saveBytes(int, byte[], IFD, int, int, int, int)} would.
+   */
+  public void saveCompressedBytes(int no, byte[][] strips, IFD ifd,
+    int x, int y, int w, int h)
+    throws IOException, FormatException
+  {
+    if (ifd == null) ifd = new IFD();
+    MetadataRetrieve retrieve = getMetadataRetrieve();
+    int type = FormatTools.pixelTypeFromString(
+        retrieve.getPixelsType(series).toString());
+    int currentTileSizeX = getTileSizeX();
+    int currentTileSizeY = getTileSizeY();
+    if (currentTileSizeX > 0 && currentTileSizeY > 0) {
+      ifd.put(new Integer(IFD.TILE_WIDTH), new Long(currentTileSizeX));
+      ifd.put(new Integer(IFD.TILE_LENGTH), new Long(currentTileSizeY));
+    }
+
+    int index;
+    // This operation is synchronized
+    synchronized (this) {
+      // This operation is synchronized against the TIFF saver.
+      synchronized (tiffSaver) {
+        index = prepareToWriteImage(no, null, ifd, x, y, w, h);
+        if (index == -1) {
+          return;
+        }
+      }
+    }
+
+    boolean lastPlane = no == getPlaneCount() - 1;
+    boolean lastSeries = getSeries() == retrieve.getImageCount() - 1;
+    boolean lastResolution = getResolution() == getResolutionCount() - 1;
+    tiffSaver.writeCompressedImage(strips, ifd, index, type,
+      getSamplesPerPixel(), x, y, lastPlane && lastSeries && lastResolution);
+  }
+
   /**
    * Performs the preparation for work prior to the usage of the TIFF saver.
    * This method is factored out from <code>saveBytes()</code> in an attempt to
@@ -290,13 +433,7 @@ public class TiffWriter extends FormatWriter {
       int no, byte[] buf, IFD ifd, int x, int y, int w, int h)
   throws IOException, FormatException {
     MetadataRetrieve retrieve = getMetadataRetrieve();
-    boolean littleEndian = false;
-    if (retrieve.getPixelsBigEndian(series) != null) {
-      littleEndian = !retrieve.getPixelsBigEndian(series).booleanValue();
-    }
-    else if (retrieve.getPixelsBinDataCount(series) == 0) {
-      littleEndian = !retrieve.getPixelsBinDataBigEndian(series, 0).booleanValue();
-    }
+    boolean littleEndian = isLittleEndian();
 
     // Ensure that no more than one thread manipulated the initialized array
     // at one time.
@@ -322,7 +459,7 @@ public class TiffWriter extends FormatWriter {
     int bytesPerPixel = FormatTools.getBytesPerPixel(type);
 
     int blockSize = w * h * c * bytesPerPixel;
-    if (blockSize > buf.length) {
+    if (buf != null && blockSize > buf.length) {
       c = buf.length / (w * h * bytesPerPixel);
     }
 
@@ -451,20 +588,11 @@ public class TiffWriter extends FormatWriter {
   public void saveBytes(int no, byte[] buf, int x, int y, int w, int h)
     throws FormatException, IOException
   {
-    IFD ifd = new IFD();
+    IFD ifd = null;
     if (!sequential) {
-      try (RandomAccessInputStream stream = new RandomAccessInputStream(currentId)) {
-        TiffParser parser = new TiffParser(stream);
-        long[] ifdOffsets = parser.getIFDOffsets();
-        if (no < ifdOffsets.length) {
-          ifd = parser.getIFD(ifdOffsets[no]);
-        }
-        saveBytes(no, buf, ifd, x, y, w, h);
-      }
-    }
-    else {
-      saveBytes(no, buf, ifd, x, y, w, h);
+      ifd = tiffSaver.getWrittenIFD(no);
     }
+    saveBytes(no, buf, ifd == null ? new IFD() : ifd, x, y, w, h);
   }
 
   /* @see loci.formats.IFormatWriter#canDoStacks(String) */
@@ -501,24 +629,47 @@ public class TiffWriter extends FormatWriter {
 
   // -- Helper methods --
 
-  protected void setupTiffSaver() throws IOException {
-    out.close();
-    out = createOutputStream();
-    tiffSaver = createTiffSaver();
-
+  /** Returns true if pixels in the current series are little-endian. */
+  private boolean isLittleEndian() {
     MetadataRetrieve retrieve = getMetadataRetrieve();
-    boolean littleEndian = false;
     if (retrieve.getPixelsBigEndian(series) != null) {
-      littleEndian = !retrieve.getPixelsBigEndian(series).booleanValue();
+      return !retrieve.getPixelsBigEndian(series).booleanValue();
     }
     else if (retrieve.getPixelsBinDataCount(series) == 0) {
-      littleEndian = !retrieve.getPixelsBinDataBigEndian(series, 0).booleanValue();
+      return !retrieve.getPixelsBinDataBigEndian(series, 0).booleanValue();
     }
+    return false;
+  }
+
+  protected void setupTiffSaver() throws IOException {
+    out.close();
+    out = createOutputStream();
+    tiffSaver = createTiffSaver();
+
+    boolean littleEndian = isLittleEndian();
 
     tiffSaver.setWritingSequentially(sequential);
     tiffSaver.setLittleEndian(littleEndian);
     tiffSaver.setBigTiff(isBigTiff);
-    tiffSaver.setCodecOptions(options);
+    tiffSaver.setCodecOptions(getTiffCodecOptions());
+  }
+
+  /**
+   * Returns the codec options to pass to the TIFF saver, adding the
+   * Zstandard level if {@link #COMPRESSION_ZSTD} is selected.
+   */
+  private CodecOptions getTiffCodecOptions() {
+    if (!COMPRESSION_ZSTD.equals(compression)) {
+      return options;
+    }
+    ZstdCodecOptions zstd = ZstdCodecOptions.getDefaultOptions(
+      options == null ? CodecOptions.getDefaultOptions() : options);
+    MetadataOptions metadataOptions = getMetadataOptions();
+    if (metadataOptions instanceof DynamicMetadataOptions) {
+      zstd.level = ((DynamicMetadataOptions) metadataOptions).getInteger(
+        ZSTD_LEVEL_KEY, zstd.level);
+    }
+    return zstd;
   }
 
   @Override
@@ -41,6 +41,7 @@ import loci.common.DataTools;
 import loci.common.enumeration.CodedEnum;
 import loci.common.enumeration.EnumException;
 import loci.formats.FormatException;
+import loci.formats.ReaderMetrics;
 import loci.formats.UnsupportedCompressionException;
 import loci.formats.codec.Codec;
 import loci.formats.codec.CodecOptions;
@@ -53,6 +54,8 @@ import loci.formats.codec.NikonCodec;
 import loci.formats.codec.PackbitsCodec;
 import loci.formats.codec.PassthroughCodec;
 import loci.formats.codec.ZlibCodec;
+import loci.formats.codec.ZstdCodec;
+import loci.formats.codec.ZstdCodecOptions;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -193,6 +196,24 @@ public enum TiffCompression implements CodedEnum {
  
   },
   NIKON(34713, new NikonCodec(), "Nikon"),
+  ZSTD(50000, new ZstdCodec(), "Zstandard") {
+    @Override
+    public CodecOptions getCompressionCodecOptions(IFD ifd)
+        throws FormatException {
+      return getCompressionCodecOptions(ifd, null);
+    }
+
+    @Override
+    public CodecOptions getCompressionCodecOptions(IFD ifd, CodecOptions opt)
+    throws FormatException {
+      CodecOptions options = super.getCompressionCodecOptions(ifd, opt);
+      ZstdCodecOptions zstd = ZstdCodecOptions.getDefaultOptions(options);
+      if (opt instanceof ZstdCodecOptions) {
+        zstd.level = ((ZstdCodecOptions) opt).level;
+      }
+      return zstd;
+    }
+  },
   LURAWAVE(65535, new LuraWaveCodec(), "LuraWave");
 
   // -- Constants --
@@ -276,7 +297,14 @@ public enum TiffCompression implements CodedEnum {
       throw new UnsupportedCompressionException(
           "Sorry, " + getCodecName() + " compression mode is not supported");
     }
-    return codec.decompress(input, options);
+    if (ReaderMetrics.current() == null) {
+      return codec.decompress(input, options);
+    }
+    long start = System.nanoTime();
+    byte[] output = codec.decompress(input, options);
+    ReaderMetrics.recordDecode(getCodecName(), input.length,
+      output == null ? 0 : output.length, System.nanoTime() - start);
+    return output;
   }
 
   /** Undoes in-place differencing according to the given predictor value. */
@@ -33,10 +33,23 @@
 package loci.formats.tiff;
 
 import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import loci.common.ByteArrayHandle;
 import loci.common.Constants;
@@ -46,6 +59,7 @@ import loci.common.Region;
 import loci.common.enumeration.EnumException;
 import loci.formats.FormatException;
 import loci.formats.ImageTools;
+import loci.formats.ReaderMetrics;
 import loci.formats.codec.CodecOptions;
 
 import org.slf4j.Logger;
@@ -66,6 +80,18 @@ public class TiffParser {
   private static final Logger LOGGER =
     LoggerFactory.getLogger(TiffParser.class);
 
+  /**
+   * Largest gap between two stored tiles that is read through rather than
+   * skipped when reading a batch of tiles.
+   */
+  private static final int MAX_COALESCED_GAP = 64 * 1024;
+
+  /** Maximum number of bytes read in one call when reading a batch. */
+  private static final int MAX_COALESCED_READ = 16 * 1024 * 1024;
+
+  /** Shared pool used to decode batches of tiles. */
+  private static ExecutorService decodePool;
+
   // -- Fields --
 
   /** Input source from which to parse TIFF data. */
@@ -74,6 +100,9 @@ public class TiffParser {
   /** Cached tile buffer to avoid re-allocations when reading tiles. */
   private byte[] cachedTileBuffer;
 
+  /** Maximum number of bytes staged when reading into a direct buffer. */
+  private static final int READ_CHUNK_SIZE = 1024 * 1024;
+
   /** Whether or not the TIFF file contains BigTIFF data. */
   private boolean bigTiff;
 
@@ -703,21 +732,40 @@ public class TiffParser {
   public byte[] getTile(IFD ifd, byte[] buf, int row, int col)
     throws FormatException, IOException
   {
-    byte[] jpegTable = (byte[]) ifd.getIFDValue(IFD.JPEG_TABLES);
-
     codecOptions.interleaved = true;
     codecOptions.littleEndian = ifd.isLittleEndian();
 
-    long tileWidth = ifd.getTileWidth();
-    long tileLength = ifd.getTileLength();
-    int samplesPerPixel = ifd.getSamplesPerPixel();
-    int planarConfig = ifd.getPlanarConfiguration();
-    TiffCompression compression = ifd.getCompression();
+    long[] range = getTileRange(ifd, row, col);
+    int size = getTileSize(ifd);
 
-    long numTileCols = ifd.getTilesPerRow();
+    if (buf == null) buf = new byte[size];
+    if (range == null) {
+      // make sure that the buffer is cleared before returning
+      // the caller may be reusing the same buffer for multiple calls to getTile
+      Arrays.fill(buf, (byte) 0);
+      return buf;
+    }
+    byte[] tile = new byte[(int) range[1]];
+
+    LOGGER.debug("Reading tile Length {} Offset {}", tile.length, range[0]);
+    in.seek(range[0]);
+    in.read(tile);
+    ReaderMetrics.recordRead(tile.length, 1);
 
+    decodeTile(ifd, tile, buf, row, codecOptions);
+    return buf;
+  }
+
+  /**
+   * Gets the file offset and length of the given tile or strip, or null if
+   * the tile is not stored in the file.
+   */
+  private long[] getTileRange(IFD ifd, int row, int col)
+    throws FormatException, IOException
+  {
+    long tileWidth = ifd.getTileWidth();
+    long numTileCols = ifd.getTilesPerRow();
     int pixel = ifd.getBytesPerSample()[0];
-    int effectiveChannels = planarConfig == 2 ? 1 : samplesPerPixel;
 
     if (ifd.get(IFD.STRIP_BYTE_COUNTS) instanceof OnDemandLongArray) {
       OnDemandLongArray counts = (OnDemandLongArray) ifd.get(IFD.STRIP_BYTE_COUNTS);
@@ -752,34 +800,46 @@ public class TiffParser {
     }
 
     long stripOffset = 0;
-    long nStrips = 0;
 
     if (ifd.getOnDemandStripOffsets() != null) {
       OnDemandLongArray stripOffsets = ifd.getOnDemandStripOffsets();
       stripOffsets.setStream(in);
       stripOffset = stripOffsets.get(offsetIndex);
-      nStrips = stripOffsets.size();
     }
     else {
       long[] stripOffsets = ifd.getStripOffsets();
       stripOffset = stripOffsets[offsetIndex];
-      nStrips = stripOffsets.length;
     }
 
-    int size = (int) (tileWidth * tileLength * pixel * effectiveChannels);
-
-    if (buf == null) buf = new byte[size];
     if (stripByteCounts[countIndex] == 0 || stripOffset >= in.length()) {
-      // make sure that the buffer is cleared before returning
-      // the caller may be reusing the same buffer for multiple calls to getTile
-      Arrays.fill(buf, (byte) 0);
-      return buf;
+      return null;
     }
-    byte[] tile = new byte[(int) stripByteCounts[countIndex]];
+    return new long[] {stripOffset, stripByteCounts[countIndex]};
+  }
 
-    LOGGER.debug("Reading tile Length {} Offset {}", tile.length, stripOffset);
-    in.seek(stripOffset);
-    in.read(tile);
+  /** Gets the size in bytes of one decoded tile or strip. */
+  private int getTileSize(IFD ifd) throws FormatException {
+    int samplesPerPixel = ifd.getSamplesPerPixel();
+    int planarConfig = ifd.getPlanarConfiguration();
+    int pixel = ifd.getBytesPerSample()[0];
+    int effectiveChannels = planarConfig == 2 ? 1 : samplesPerPixel;
+    return (int) (ifd.getTileWidth() * ifd.getTileLength() * pixel *
+      effectiveChannels);
+  }
+
+  /**
+   * Decodes the stored bytes of a tile or strip into the given buffer.
+   * This does not read from the file, so tiles from the same file may be
+   * decoded concurrently as long as each uses its own codec options.
+   */
+  private void decodeTile(IFD ifd, byte[] tile, byte[] buf, int row,
+    CodecOptions options) throws FormatException, IOException
+  {
+    byte[] jpegTable = (byte[]) ifd.getIFDValue(IFD.JPEG_TABLES);
+    TiffCompression compression = ifd.getCompression();
+    int planarConfig = ifd.getPlanarConfiguration();
+    int pixel = ifd.getBytesPerSample()[0];
+    int size = getTileSize(ifd);
 
     // reverse bits in each byte if FillOrder == 2
 
@@ -791,8 +851,8 @@ public class TiffParser {
       }
     }
 
-    codecOptions.maxBytes = (int) Math.max(size, tile.length);
-    codecOptions.ycbcr =
+    options.maxBytes = (int) Math.max(size, tile.length);
+    options.ycbcr =
       ifd.getPhotometricInterpretation() == PhotoInterp.Y_CB_CR &&
       ifd.getIFDIntValue(IFD.Y_CB_CR_SUB_SAMPLING) == 1 && ycbcrCorrection;
 
@@ -800,13 +860,15 @@ public class TiffParser {
       byte[] q = new byte[jpegTable.length + tile.length - 4];
       System.arraycopy(jpegTable, 0, q, 0, jpegTable.length - 2);
       System.arraycopy(tile, 2, q, jpegTable.length - 2, tile.length - 2);
-      tile = compression.decompress(q, codecOptions);
+      tile = compression.decompress(q, options);
     }
-    else tile = compression.decompress(tile, codecOptions);
+    else tile = compression.decompress(tile, options);
     TiffCompression.undifference(tile, ifd);
     unpackBytes(buf, 0, tile, ifd);
 
     if (planarConfig == 2 && !ifd.isTiled() && ifd.getSamplesPerPixel() > 1) {
+      long nStrips = ifd.getOnDemandStripOffsets() != null ?
+        ifd.getOnDemandStripOffsets().size() : ifd.getStripOffsets().length;
       int channel = (int) (row % nStrips);
       if (channel < ifd.getBytesPerSample().length) {
         int realBytes = ifd.getBytesPerSample()[channel];
@@ -827,8 +889,6 @@ public class TiffParser {
         }
       }
     }
-
-    return buf;
   }
 
   public byte[] getSamples(IFD ifd, byte[] buf)
@@ -848,8 +908,127 @@ public class TiffParser {
   public byte[] getSamples(IFD ifd, byte[] buf, int x, int y,
     long width, long height, int overlapX, int overlapY)
     throws FormatException, IOException
+  {
+    readSamples(ifd, ByteBuffer.wrap(buf), x, y, width, height,
+      overlapX, overlapY);
+    return buf;
+  }
+
+  /**
+   * Reads the given region of the image into a buffer, which may be a direct
+   * buffer.  The samples are stored in the same layout as
+   * {@link #getSamples(IFD, byte[], int, int, long, long)}, starting at the
+   * buffer's current position; the position is advanced past the region.
+   * Uncompressed strips are read straight into the buffer, and compressed
+   * tiles are decoded one at a time, so no buffer the size of the region
+   * is allocated.
+   */
+  public ByteBuffer getSamples(IFD ifd, ByteBuffer buf, int x, int y,
+    long width, long height) throws FormatException, IOException
+  {
+    long size = width * height * ifd.getSamplesPerPixel() *
+      ifd.getBytesPerSample()[0];
+    if (size > buf.remaining()) {
+      throw new FormatException("Buffer too small (got " + buf.remaining() +
+        ", expected " + size + ").");
+    }
+    int base = buf.position();
+    ByteBuffer region = buf.duplicate();
+    ((Buffer) region).limit(base + (int) size);
+    readSamples(ifd, region, x, y, width, height, 0, 0);
+    ((Buffer) buf).position(base + (int) size);
+    return buf;
+  }
+
+  /**
+   * Reads a batch of regions, each from its own IFD.  The stored bytes of
+   * every tile needed by the batch are read in file order, with nearby
+   * tiles coalesced into a single read, and tiles that use a thread-safe
+   * codec are decoded concurrently.  Each region is then copied into the
+   * corresponding buffer exactly as
+   * {@link #getSamples(IFD, byte[], int, int, long, long)} would.
+   *
+   * @param ifds the IFD to read for each region
+   * @param regions the regions to read
+   * @param bufs the buffer for each region; must not be null
+   * @return the given array of buffers
+   */
+  public byte[][] getSamples(IFD[] ifds, Region[] regions, byte[][] bufs)
+    throws FormatException, IOException
+  {
+    if (ifds.length != regions.length || bufs.length != regions.length) {
+      throw new IllegalArgumentException("Expected one IFD and one buffer " +
+        "per region (got " + ifds.length + " IFDs, " + bufs.length +
+        " buffers and " + regions.length + " regions)");
+    }
+
+    // collect the stored range of every tile needed by the batch,
+    // once per IFD; single tile images are left to the usual path
+
+    Map<IFD, Map<Integer, byte[]>> decoded =
+      new IdentityHashMap<IFD, Map<Integer, byte[]>>();
+    List<StoredTile> stored = new ArrayList<StoredTile>();
+    for (int i=0; i<regions.length; i++) {
+      IFD ifd = ifds[i];
+      if (ifd.getTilesPerRow() * ifd.getTilesPerColumn() <= 1) continue;
+      Map<Integer, byte[]> tiles = decoded.get(ifd);
+      if (tiles == null) {
+        tiles = new HashMap<Integer, byte[]>();
+        decoded.put(ifd, tiles);
+      }
+      for (int[] tile : getIntersectingTiles(ifd, regions[i])) {
+        int index = (int) (tile[0] * ifd.getTilesPerRow() + tile[1]);
+        if (tiles.containsKey(index)) continue;
+        tiles.put(index, null);
+        long[] range = getTileRange(ifd, tile[0], tile[1]);
+        if (range != null && range[0] + range[1] <= in.length()) {
+          stored.add(new StoredTile(ifd, index, tile[0], range));
+        }
+      }
+    }
+
+    readStoredTiles(stored);
+    decodeStoredTiles(stored);
+    for (StoredTile tile : stored) {
+      decoded.get(tile.ifd).put(tile.index, tile.data);
+    }
+
+    for (int i=0; i<regions.length; i++) {
+      Region r = regions[i];
+      Map<Integer, byte[]> tiles = decoded.get(ifds[i]);
+      if (tiles == null) {
+        getSamples(ifds[i], bufs[i], r.x, r.y, r.width, r.height);
+        continue;
+      }
+      IFD ifd = ifds[i];
+      in.order(ifd.isLittleEndian());
+      TiffCompression compression = ifd.getCompression();
+      if (compression == TiffCompression.JPEG_2000 ||
+        compression == TiffCompression.JPEG_2000_LOSSY)
+      {
+        codecOptions =
+          compression.getCompressionCodecOptions(ifd, codecOptions);
+      }
+      else codecOptions = compression.getCompressionCodecOptions(ifd);
+      codecOptions.interleaved = true;
+      codecOptions.littleEndian = ifd.isLittleEndian();
+      readTiles(ifd, ByteBuffer.wrap(bufs[i]), 0, r.x, r.y, r.width,
+        r.height, 0, 0, tiles);
+    }
+    return bufs;
+  }
+
+  /**
+   * Reads the given region into the output buffer, from its current position
+   * up to its limit.
+   */
+  private void readSamples(IFD ifd, ByteBuffer out, int x, int y,
+    long width, long height, int overlapX, int overlapY)
+    throws FormatException, IOException
   {
     LOGGER.trace("parsing IFD entries");
+    int base = out.position();
+    int capacity = out.limit() - base;
 
     // get internal non-IFD entries
     boolean littleEndian = ifd.isLittleEndian();
@@ -971,8 +1150,8 @@ public class TiffParser {
 
         if (width == tileWidth && height == imageLength) {
           // we want to entire tile, so just read the whole thing directly
-          int len = (int) Math.min(buf.length - offset, byteCount);
-          in.read(buf, offset, len);
+          int len = (int) Math.min(capacity - offset, byteCount);
+          read(out, base + offset, len);
           offset += len;
         }
         else {
@@ -982,9 +1161,9 @@ public class TiffParser {
           in.skipBytes((int) (y * bpp * tileWidth));
           for (int row=0; row<height; row++) {
             in.skipBytes(x * bpp);
-            int len = (int) Math.min(buf.length - offset, width * bpp);
+            int len = (int) Math.min(capacity - offset, width * bpp);
             if (len > 0) {
-              in.read(buf, offset, len);
+              read(out, base + offset, len);
               offset += len;
               int skip = (int) (bpp * (tileWidth - x - width));
               if (skip + in.getFilePointer() < in.length()) {
@@ -998,6 +1177,13 @@ public class TiffParser {
         }
       }
       if (effectiveChannels > 1) {
+        boolean wrapped = out.hasArray() && out.arrayOffset() + base == 0 &&
+          out.array().length == capacity;
+        byte[] buf = wrapped ? out.array() : new byte[capacity];
+        if (!wrapped) {
+          ((Buffer) out).position(base);
+          out.get(buf);
+        }
         byte[][] split = new byte[effectiveChannels][buf.length / effectiveChannels];
         for (int c=0; c<split.length; c++) {
           split[c] = ImageTools.splitChannels(buf, c, effectiveChannels, bytes, false, true);
@@ -1005,10 +1191,42 @@ public class TiffParser {
         for (int c=0; c<split.length; c++) {
           System.arraycopy(split[c], 0, buf, c * split[c].length, split[c].length);
         }
+        if (!wrapped) {
+          ((Buffer) out).position(base);
+          out.put(buf);
+        }
       }
-      return buf;
+      return;
     }
 
+    readTiles(ifd, out, base, x, y, width, height, overlapX, overlapY, null);
+  }
+
+  /**
+   * Decodes every tile that intersects the given region, and copies the
+   * intersecting part of each tile into the output buffer, relative to the
+   * given base position.  Tiles that are present in the given map (keyed
+   * by tile index) have already been decoded and are not read again.
+   */
+  private void readTiles(IFD ifd, ByteBuffer out, int base, int x, int y,
+    long width, long height, int overlapX, int overlapY,
+    Map<Integer, byte[]> decoded)
+    throws FormatException, IOException
+  {
+    int samplesPerPixel = ifd.getSamplesPerPixel();
+    long tileWidth = ifd.getTileWidth();
+    long tileLength = ifd.getTileLength();
+    if (tileLength <= 0) {
+      tileLength = height;
+    }
+
+    long numTileRows = ifd.getTilesPerColumn();
+    long numTileCols = ifd.getTilesPerRow();
+
+    int planarConfig = ifd.getPlanarConfiguration();
+    int pixel = ifd.getBytesPerSample()[0];
+    int effectiveChannels = planarConfig == 2 ? 1 : samplesPerPixel;
+
     long nrows = numTileRows;
     if (planarConfig == 2) numTileRows *= samplesPerPixel;
 
@@ -1056,7 +1274,11 @@ public class TiffParser {
 
         if (!imageBounds.intersects(tileBounds)) continue;
 
-        getTile(ifd, cachedTileBuffer, row, col);
+        byte[] tile = decoded == null ? null :
+          decoded.get((int) (row * numTileCols + col));
+        if (tile == null) {
+          tile = getTile(ifd, cachedTileBuffer, row, col);
+        }
 
         // adjust tile bounds, if necessary
 
@@ -1094,11 +1316,13 @@ public class TiffParser {
           if (rowLen == outputRowLen && overlapX == 0 && overlapY == 0 &&
             rowLen == pixel * imageBounds.intersection(tileBounds).width)
           {
-            System.arraycopy(cachedTileBuffer, src, buf, dest, copy * theight);
+            ((Buffer) out).position(base + dest);
+            out.put(tile, src, copy * theight);
           }
           else {
             for (int tileRow=0; tileRow<theight; tileRow++) {
-              System.arraycopy(cachedTileBuffer, src, buf, dest, copy);
+              ((Buffer) out).position(base + dest);
+              out.put(tile, src, copy);
               src += rowLen;
               dest += outputRowLen;
             }
@@ -1107,9 +1331,203 @@ public class TiffParser {
       }
     }
 
+  }
+
+  /** Gets the row and column of every tile that intersects the region. */
+  private List<int[]> getIntersectingTiles(IFD ifd, Region region)
+    throws FormatException
+  {
+    long tileWidth = ifd.getTileWidth();
+    long tileLength = ifd.getTileLength();
+    if (tileLength <= 0) {
+      tileLength = region.height;
+    }
+    long numTileRows = ifd.getTilesPerColumn();
+    long numTileCols = ifd.getTilesPerRow();
+    long nrows = numTileRows;
+    if (ifd.getPlanarConfiguration() == 2) {
+      numTileRows *= ifd.getSamplesPerPixel();
+    }
+
+    List<int[]> tiles = new ArrayList<int[]>();
+    Region tileBounds = new Region(0, 0, (int) tileWidth, (int) tileLength);
+    for (int row=0; row<numTileRows; row++) {
+      tileBounds.y = (int) ((row % nrows) * tileLength);
+      for (int col=0; col<numTileCols; col++) {
+        tileBounds.x = (int) (col * tileWidth);
+        if (region.intersects(tileBounds)) {
+          tiles.add(new int[] {row, col});
+        }
+      }
+    }
+    return tiles;
+  }
+
+  /**
+   * Reads the stored bytes of the given tiles in file order, merging tiles
+   * that are close together into a single read.
+   */
+  private void readStoredTiles(List<StoredTile> tiles) throws IOException {
+    List<StoredTile> sorted = new ArrayList<StoredTile>(tiles);
+    Collections.sort(sorted, new Comparator<StoredTile>() {
+      @Override
+      public int compare(StoredTile a, StoredTile b) {
+        return Long.compare(a.offset, b.offset);
+      }
+    });
+
+    int first = 0;
+    while (first < sorted.size()) {
+      long start = sorted.get(first).offset;
+      long end = start + sorted.get(first).length;
+      int last = first + 1;
+      while (last < sorted.size()) {
+        StoredTile next = sorted.get(last);
+        long nextEnd = Math.max(end, next.offset + next.length);
+        if (next.offset - end > MAX_COALESCED_GAP ||
+          nextEnd - start > MAX_COALESCED_READ)
+        {
+          break;
+        }
+        end = nextEnd;
+        last++;
+      }
+
+      byte[] block = new byte[(int) (end - start)];
+      LOGGER.debug("Reading {} tiles Length {} Offset {}",
+        last - first, block.length, start);
+      in.seek(start);
+      in.readFully(block);
+      ReaderMetrics.recordRead(block.length, 1);
+      for (int i=first; i<last; i++) {
+        StoredTile tile = sorted.get(i);
+        int from = (int) (tile.offset - start);
+        tile.data = Arrays.copyOfRange(block, from, from + tile.length);
+      }
+      first = last;
+    }
+  }
+
+  /**
+   * Decodes the stored bytes of the given tiles in place.  Tiles whose
+   * codec keeps no state are decoded concurrently.
+   */
+  private void decodeStoredTiles(List<StoredTile> tiles)
+    throws FormatException, IOException
+  {
+    List<Future<byte[]>> results = new ArrayList<Future<byte[]>>();
+    List<StoredTile> pending = new ArrayList<StoredTile>();
+    // decoding on the pool counts towards the caller's metrics
+    final ReaderMetrics metrics = ReaderMetrics.current();
+    for (final StoredTile tile : tiles) {
+      final TiffCompression compression = tile.ifd.getCompression();
+      if (!isThreadSafe(compression) || tiles.size() == 1) {
+        if (compression == TiffCompression.JPEG_2000 ||
+          compression == TiffCompression.JPEG_2000_LOSSY)
+        {
+          codecOptions =
+            compression.getCompressionCodecOptions(tile.ifd, codecOptions);
+        }
+        else codecOptions = compression.getCompressionCodecOptions(tile.ifd);
+        tile.data = decodeStoredTile(tile, codecOptions);
+        continue;
+      }
+      pending.add(tile);
+      results.add(getDecodePool().submit(new Callable<byte[]>() {
+        @Override
+        public byte[] call() throws FormatException, IOException {
+          ReaderMetrics previous = ReaderMetrics.attach(metrics);
+          try {
+            return decodeStoredTile(tile,
+              compression.getCompressionCodecOptions(tile.ifd));
+          }
+          finally {
+            ReaderMetrics.attach(previous);
+          }
+        }
+      }));
+    }
+
+    for (int i=0; i<pending.size(); i++) {
+      try {
+        pending.get(i).data = results.get(i).get();
+      }
+      catch (InterruptedException e) {
+        throw new IOException(e);
+      }
+      catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof FormatException) throw (FormatException) cause;
+        if (cause instanceof IOException) throw (IOException) cause;
+        if (cause instanceof RuntimeException) {
+          throw (RuntimeException) cause;
+        }
+        throw new FormatException(cause);
+      }
+    }
+  }
+
+  private byte[] decodeStoredTile(StoredTile tile, CodecOptions options)
+    throws FormatException, IOException
+  {
+    options.interleaved = true;
+    options.littleEndian = tile.ifd.isLittleEndian();
+    byte[] buf = new byte[getTileSize(tile.ifd)];
+    decodeTile(tile.ifd, tile.data, buf, tile.row, options);
     return buf;
   }
 
+  /** Returns true if the given compression can decode on several threads. */
+  private static boolean isThreadSafe(TiffCompression compression) {
+    switch (compression) {
+      case DEFAULT_UNCOMPRESSED:
+      case UNCOMPRESSED:
+      case LZW:
+      case PACK_BITS:
+      case DEFLATE:
+      case PROPRIETARY_DEFLATE:
+      case ZSTD:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  private static synchronized ExecutorService getDecodePool() {
+    if (decodePool == null) {
+      decodePool = Executors.newFixedThreadPool(
+        Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+          @Override
+          public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "tiff-decoder");
+            t.setDaemon(true);
+            return t;
+          }
+        });
+    }
+    return decodePool;
+  }
+
+  /**
+   * Reads len bytes from the current file into the output buffer at the
+   * given position, without staging the whole range on the heap.
+   */
+  private void read(ByteBuffer out, int position, int len) throws IOException {
+    ReaderMetrics.recordRead(len, 1);
+    if (out.hasArray()) {
+      in.read(out.array(), out.arrayOffset() + position, len);
+      return;
+    }
+    ((Buffer) out).position(position);
+    byte[] chunk = new byte[Math.min(len, READ_CHUNK_SIZE)];
+    while (len > 0) {
+      int n = Math.min(len, chunk.length);
+      in.read(chunk, 0, n);
+      out.put(chunk, 0, n);
+      len -= n;
+    }
+  }
+
   // -- Utility methods - byte stream decoding --
 
   /**
@@ -1351,4 +1769,25 @@ public class TiffParser {
 
     return new TiffIFDEntry(entryTag, entryType, valueCount, offset);
   }
+
+  // -- Helper classes --
+
+  /** Stored bytes of one tile that is part of a batch read. */
+  private static class StoredTile {
+    final IFD ifd;
+    final int index;
+    final int row;
+    final long offset;
+    final int length;
+    byte[] data;
+
+    StoredTile(IFD ifd, int index, int row, long[] range) {
+      this.ifd = ifd;
+      this.index = index;
+      this.row = row;
+      this.offset = range[0];
+      this.length = (int) range[1];
+    }
+  }
+
 }
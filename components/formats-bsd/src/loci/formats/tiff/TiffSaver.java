@@ -85,6 +85,22 @@ public class TiffSaver {
   private List<Long> sequentialTileOffsets;
   private Long sequentialTileFilePointer;
 
+  /**
+   * IFDs written so far, with their offsets and next IFD pointers, indexed by
+   * image number.  Only maintained for non-sequential writes, so that the
+   * output file does not need to be reparsed for every strip or tile.
+   */
+  private IFDList writtenIFDs;
+  private List<Long> writtenIFDOffsets;
+  private List<Long> writtenNextOffsets;
+
+  /** Offsets of the first and last image IFDs written by this saver. */
+  private long firstIFDOffset = -1;
+  private long lastIFDOffset = -1;
+
+  /** Offset of the image IFD written most recently. */
+  private long recentIFDOffset = -1;
+
   /** The codec options if set. */
   private CodecOptions options;
 
@@ -148,6 +164,66 @@ public class TiffSaver {
     }
   }
 
+  /**
+   * Returns a copy of the IFD most recently written for the given image
+   * index, or null if that IFD has not been written.  For non-sequential
+   * writes this does not read from the output file, unless the file already
+   * contained IFDs before this saver first wrote to it.
+   *
+   * @param no the image index within the current file, starting from 0
+   */
+  public IFD getWrittenIFD(int no) throws FormatException, IOException {
+    if (sequentialWrite) {
+      return null;
+    }
+    loadWrittenIFDs();
+    if (no < 0 || no >= writtenIFDs.size()) {
+      return null;
+    }
+    return new IFD(writtenIFDs.get(no));
+  }
+
+  /**
+   * Returns the offsets of all IFDs written so far.  For non-sequential
+   * writes this does not read from the output file, unless the file already
+   * contained IFDs before this saver first wrote to it; returns null for
+   * sequential writes.
+   */
+  public long[] getWrittenIFDOffsets() throws FormatException, IOException {
+    if (sequentialWrite) {
+      return null;
+    }
+    loadWrittenIFDs();
+    return toPrimitiveArray(writtenIFDOffsets);
+  }
+
+  /**
+   * Returns the offset of the first image IFD written by this saver, or -1 if
+   * no image has been written.  This is tracked for both sequential and
+   * non-sequential writes.
+   */
+  public long getFirstIFDOffset() {
+    return firstIFDOffset;
+  }
+
+  /**
+   * Returns the offset of the last image IFD written by this saver, i.e. the
+   * IFD at the end of the chain, or -1 if no image has been written.  This is
+   * tracked for both sequential and non-sequential writes.
+   */
+  public long getLastIFDOffset() {
+    return lastIFDOffset;
+  }
+
+  /**
+   * Returns the offset of the IFD written by the most recent image write, or
+   * -1 if no image has been written.  All tiles of an image share a single
+   * IFD, so after any tile has been written this is that image's IFD.
+   */
+  public long getRecentIFDOffset() {
+    return recentIFDOffset;
+  }
+
   /**
    * Sets whether or not we know that the planes will be written sequentially.
    * If we are writing planes sequentially and set this flag, then performance
@@ -292,110 +368,157 @@ public class TiffSaver {
       throw new FormatException("IFD cannot be null");
     }
 
+    if (nChannels == null) {
+      int bytesPerPixel = FormatTools.getBytesPerPixel(pixelType);
+      nChannels = buf.length / (w * h * bytesPerPixel);
+    }
+
+    byte[][] strips =
+      compressImage(buf, ifd, pixelType, w, h, nChannels, copyDirectly);
+
+    // This operation is synchronized
+    synchronized (this) {
+      writeImageIFD(ifd, no, strips, nChannels, last, x ,y);
+    }
+  }
+
+  /**
+   * Splits the given block into strips or tiles and compresses them exactly
+   * as {@link #writeImage(byte[], IFD, int, int, int, int, int, int, boolean)}
+   * would, without writing anything to the file.  Only the preparation of
+   * the IFD is synchronized, so several threads may compress tiles at once
+   * as long as each uses its own copy of the IFD.  The result is written with
+   * {@link #writeCompressedImage(byte[][], IFD, int, int, int, int, int, boolean)}.
+   *
+   * @param buf The block that is to be compressed.
+   * @param ifd The IFD describing the image. Mustn't be <code>null</code>.
+   * @param pixelType The type of pixels.
+   * @param w The width of the block.
+   * @param h The height of the block.
+   * @param nChannels The number of channels in the block.
+   * @param copyDirectly Pass <code>true</code> if a single strip may be
+   *   copied from the block without reorganizing it.
+   * @return The compressed strips or tiles, in the order they are written.
+   * @throws FormatException
+   * @throws IOException
+   */
+  public byte[][] compressImage(byte[] buf, IFD ifd, int pixelType, int w,
+      int h, int nChannels, boolean copyDirectly)
+  throws FormatException, IOException
+  {
+    if (buf == null) {
+      throw new FormatException("Image data cannot be null");
+    }
+    if (ifd == null) {
+      throw new FormatException("IFD cannot be null");
+    }
+
+    int bytesPerPixel = FormatTools.getBytesPerPixel(pixelType);
+    int blockSize = w * h * bytesPerPixel;
+
     // These operations are synchronized
     TiffCompression compression;
-    int tileWidth, tileHeight, nStrips;
+    int tileWidth, tileHeight, tilesPerRow, rowsPerStrip;
+    long imageWidth, ifdTileWidth;
+    int[] bps;
     boolean interleaved;
-    ByteArrayOutputStream[] stripBuf;
     synchronized (this) {
-      int bytesPerPixel = FormatTools.getBytesPerPixel(pixelType);
-      int blockSize = w * h * bytesPerPixel;
-      if (nChannels == null) {
-        nChannels = buf.length / (w * h * bytesPerPixel);
-      }
       interleaved = ifd.getPlanarConfiguration() == 1;
 
       makeValidIFD(ifd, pixelType, nChannels);
 
-      // create pixel output buffers
-
       compression = ifd.getCompression();
       tileWidth = (int) ifd.getTileWidth();
       tileHeight = (int) ifd.getTileLength();
-      int tilesPerRow = (int) ifd.getTilesPerRow();
-      int rowsPerStrip = (int) ifd.getRowsPerStrip()[0];
-      int stripSize = rowsPerStrip * tileWidth * bytesPerPixel;
-      nStrips =
-        ((w + tileWidth - 1) / tileWidth) * ((h + tileHeight - 1) / tileHeight);
-
-      if (interleaved) stripSize *= nChannels;
-      else nStrips *= nChannels;
-
-      stripBuf = new ByteArrayOutputStream[nStrips];
-      DataOutputStream[] stripOut = new DataOutputStream[nStrips];
-      for (int strip=0; strip<nStrips; strip++) {
-        stripBuf[strip] = new ByteArrayOutputStream(stripSize);
-        stripOut[strip] = new DataOutputStream(stripBuf[strip]);
-      }
-      int[] bps = ifd.getBitsPerSample();
-      boolean channelsAllSameSize = true;
-      for (int c = 0; c < nChannels; c++)
-        if (bps[c] != bytesPerPixel * 8)
-          channelsAllSameSize = false;
-
-      // write pixel strips to output buffers
-      // Check for the sane cases
-      if (ifd.getImageWidth() == w && ifd.getTileWidth() == w && channelsAllSameSize) {
-        // If the input, output, and tile widths are all the same,
-        // and the input bytesPerPixel (which is actually bytes per sample)
-        // matches the bits per channel for all channels,
-        // then the input can be directly copied to the output in appropriate size strips.
-        // Any interleaving of channels will be the same for input and output.
-        if (buf.length % stripSize == 0) {
-          for (int strip = 0; strip < nStrips; strip++) {
-            stripOut[strip].write(buf, strip * stripSize, stripSize);
-          }
-        } else {
-          for (int strip = 0; strip < nStrips - 1; strip++) {
-            stripOut[strip].write(buf, strip * stripSize, stripSize);
-          }
-          // Sigh.  Need to pad the last strip.
-          int pos = (nStrips - 1) * stripSize;
-          int len = buf.length - pos;
-          stripOut[nStrips - 1].write(buf, pos, len);
-          for (int n = len; n < stripSize; n++) {
-            stripOut[nStrips - 1].writeByte(0);
-          }
+      tilesPerRow = (int) ifd.getTilesPerRow();
+      rowsPerStrip = (int) ifd.getRowsPerStrip()[0];
+      imageWidth = ifd.getImageWidth();
+      ifdTileWidth = ifd.getTileWidth();
+      bps = ifd.getBitsPerSample();
+    }
+
+    // create pixel output buffers
+
+    int stripSize = rowsPerStrip * tileWidth * bytesPerPixel;
+    int nStrips =
+      ((w + tileWidth - 1) / tileWidth) * ((h + tileHeight - 1) / tileHeight);
+
+    if (interleaved) stripSize *= nChannels;
+    else nStrips *= nChannels;
+
+    ByteArrayOutputStream[] stripBuf = new ByteArrayOutputStream[nStrips];
+    DataOutputStream[] stripOut = new DataOutputStream[nStrips];
+    for (int strip=0; strip<nStrips; strip++) {
+      stripBuf[strip] = new ByteArrayOutputStream(stripSize);
+      stripOut[strip] = new DataOutputStream(stripBuf[strip]);
+    }
+    boolean channelsAllSameSize = true;
+    for (int c = 0; c < nChannels; c++)
+      if (bps[c] != bytesPerPixel * 8)
+        channelsAllSameSize = false;
+
+    // write pixel strips to output buffers
+    // Check for the sane cases
+    if (imageWidth == w && ifdTileWidth == w && channelsAllSameSize) {
+      // If the input, output, and tile widths are all the same,
+      // and the input bytesPerPixel (which is actually bytes per sample)
+      // matches the bits per channel for all channels,
+      // then the input can be directly copied to the output in appropriate size strips.
+      // Any interleaving of channels will be the same for input and output.
+      if (buf.length % stripSize == 0) {
+        for (int strip = 0; strip < nStrips; strip++) {
+          stripOut[strip].write(buf, strip * stripSize, stripSize);
         }
       } else {
-        int effectiveStrips = !interleaved ? nStrips / nChannels : nStrips;
-        if (effectiveStrips == 1 && copyDirectly) {
-          stripOut[0].write(buf);
+        for (int strip = 0; strip < nStrips - 1; strip++) {
+          stripOut[strip].write(buf, strip * stripSize, stripSize);
         }
-        else {
-          for (int strip = 0; strip < effectiveStrips; strip++) {
-            // This is broken; the tilesPerRow is based on output image size and tile size,
-            // but the xOffset and yOffset are used to compute offsets into the input image buffer.
-            // This is only sane if the input image width and the output image width are the same.
-            int xOffset = (strip % tilesPerRow) * tileWidth;
-            int yOffset = (strip / tilesPerRow) * tileHeight;
-            for (int row=0; row<tileHeight; row++) {
-              for (int col=0; col<tileWidth; col++) {
-                int ndx = ((row+yOffset) * w + col + xOffset) * bytesPerPixel;
-                for (int c=0; c<nChannels; c++) {
-                  for (int n=0; n<bps[c]/8; n++) {
-                    if (interleaved) {
-                      int off = ndx * nChannels + c * bytesPerPixel + n;
-                      if (row >= h || col >= w) {
-                        stripOut[strip].writeByte(0);
-                      } else if (off < buf.length) {
-                        stripOut[strip].writeByte(buf[off]);
-                      }
-                      else {
-                        stripOut[strip].writeByte(0);
-                      }
+        // Sigh.  Need to pad the last strip.
+        int pos = (nStrips - 1) * stripSize;
+        int len = buf.length - pos;
+        stripOut[nStrips - 1].write(buf, pos, len);
+        for (int n = len; n < stripSize; n++) {
+          stripOut[nStrips - 1].writeByte(0);
+        }
+      }
+    } else {
+      int effectiveStrips = !interleaved ? nStrips / nChannels : nStrips;
+      if (effectiveStrips == 1 && copyDirectly) {
+        stripOut[0].write(buf);
+      }
+      else {
+        for (int strip = 0; strip < effectiveStrips; strip++) {
+          // This is broken; the tilesPerRow is based on output image size and tile size,
+          // but the xOffset and yOffset are used to compute offsets into the input image buffer.
+          // This is only sane if the input image width and the output image width are the same.
+          int xOffset = (strip % tilesPerRow) * tileWidth;
+          int yOffset = (strip / tilesPerRow) * tileHeight;
+          for (int row=0; row<tileHeight; row++) {
+            for (int col=0; col<tileWidth; col++) {
+              int ndx = ((row+yOffset) * w + col + xOffset) * bytesPerPixel;
+              for (int c=0; c<nChannels; c++) {
+                for (int n=0; n<bps[c]/8; n++) {
+                  if (interleaved) {
+                    int off = ndx * nChannels + c * bytesPerPixel + n;
+                    if (row >= h || col >= w) {
+                      stripOut[strip].writeByte(0);
+                    } else if (off < buf.length) {
+                      stripOut[strip].writeByte(buf[off]);
                     }
                     else {
-                      int off = c * blockSize + ndx + n;
-                      int realStrip = (c * (nStrips / nChannels)) + strip;
-                      if (row >= h || col >= w) {
-                        stripOut[realStrip].writeByte(0);
-                      } else if (off < buf.length) {
-                        stripOut[realStrip].writeByte(buf[off]);
-                      }
-                      else {
-                        stripOut[realStrip].writeByte(0);
-                      }
+                      stripOut[strip].writeByte(0);
+                    }
+                  }
+                  else {
+                    int off = c * blockSize + ndx + n;
+                    int realStrip = (c * (nStrips / nChannels)) + strip;
+                    if (row >= h || col >= w) {
+                      stripOut[realStrip].writeByte(0);
+                    } else if (off < buf.length) {
+                      stripOut[realStrip].writeByte(buf[off]);
+                    }
+                    else {
+                      stripOut[realStrip].writeByte(0);
                     }
                   }
                 }
@@ -407,9 +530,9 @@ public class TiffSaver {
     }
 
     // Compress strips according to given differencing and compression schemes,
-    // this operation is NOT synchronized and is the ONLY portion of the
-    // TiffWriter.saveBytes() --> TiffSaver.writeImage() stack that is NOT
-    // synchronized.
+    // this operation and the strip reorganization above are NOT synchronized
+    // and are the ONLY portions of the TiffWriter.saveBytes() -->
+    // TiffSaver.writeImage() stack that are NOT synchronized.
     byte[][] strips = new byte[nStrips][];
     for (int strip=0; strip<nStrips; strip++) {
       strips[strip] = stripBuf[strip].toByteArray();
@@ -427,9 +550,43 @@ public class TiffSaver {
       }
     }
 
+    return strips;
+  }
+
+  /**
+   * Writes strips or tiles that were already compressed by
+   * {@link #compressImage(byte[], IFD, int, int, int, int, boolean)}.
+   * Only the bytes are placed in the file and their offsets and byte counts
+   * recorded; no pixel data is reorganized or compressed.
+   *
+   * @param strips The compressed strips or tiles to write.
+   * @param ifd The Image File Directories. Mustn't be <code>null</code>.
+   * @param no  The image index within the current file, starting from 0.
+   * @param pixelType The type of pixels.
+   * @param nChannels The number of channels in the compressed block.
+   * @param x   The X-coordinate of the top-left corner.
+   * @param y   The Y-coordinate of the top-left corner.
+   * @param last Pass <code>true</code> if it is the last image,
+   *             <code>false</code> otherwise.
+   * @throws FormatException
+   * @throws IOException
+   */
+  public void writeCompressedImage(byte[][] strips, IFD ifd, int no,
+      int pixelType, int nChannels, int x, int y, boolean last)
+  throws FormatException, IOException
+  {
+    LOGGER.debug("Attempting to write compressed image.");
+    if (strips == null) {
+      throw new FormatException("Image data cannot be null");
+    }
+    if (ifd == null) {
+      throw new FormatException("IFD cannot be null");
+    }
+
     // This operation is synchronized
     synchronized (this) {
-      writeImageIFD(ifd, no, strips, nChannels, last, x ,y);
+      makeValidIFD(ifd, pixelType, nChannels);
+      writeImageIFD(ifd, no, strips, nChannels, last, x, y);
     }
   }
 
@@ -453,38 +610,63 @@ public class TiffSaver {
     boolean isTiled = ifd.isTiled();
     long defaultByteCount = 0L;
 
+    if (!sequentialWrite) {
+      loadWrittenIFDs();
+      int ifdCount = writtenIFDs.size();
+      if (no < ifdCount) {
+        long offset = writtenIFDOffsets.get(no);
+        out.seek(offset);
+        LOGGER.debug("Using IFD at {} in non-sequential write.", offset);
+        ifd = writtenIFDs.get(no);
+        sequentialTileFilePointer = offset;
+      }
+      else if (no > 0 && no - 1 < ifdCount) {
+        ifd = new IFD(writtenIFDs.get(no - 1));
+        out.seek(writtenNextOffsets.get(no - 1));
+      }
+    }
+    else if (isTiled) {
+      defaultByteCount = strips[0].length;
+    }
+    writeIFDStrips(ifd, no, strips, nChannels, last, x, y, defaultByteCount);
+  }
+
+  /**
+   * Populates the in-memory IFD list from the output file, if it has not
+   * already been populated.  The file is only read once; subsequent
+   * non-sequential writes update the list as each IFD is written.
+   */
+  private void loadWrittenIFDs() throws FormatException, IOException {
+    if (writtenIFDs != null) {
+      return;
+    }
+    writtenIFDs = new IFDList();
+    writtenIFDOffsets = new ArrayList<Long>();
+    writtenNextOffsets = new ArrayList<Long>();
+
     RandomAccessInputStream in = null;
     try {
-      if (!sequentialWrite) {
-        if (filename != null) {
-          in = new RandomAccessInputStream(filename);
-        }
-        else if (bytes != null) {
-          in = new RandomAccessInputStream(bytes);
-        }
-        else {
-          throw new IllegalArgumentException(
-              "Filename and bytes are null, cannot create new input stream!");
-        }
-        TiffParser parser = new TiffParser(in);
-        long[] ifdOffsets = parser.getIFDOffsets();
-        LOGGER.debug("IFD offsets: {}", Arrays.toString(ifdOffsets));
-        if (no < ifdOffsets.length) {
-          out.seek(ifdOffsets[no]);
-          LOGGER.debug("Reading IFD from {} in non-sequential write.",
-              ifdOffsets[no]);
-          ifd = parser.getIFD(ifdOffsets[no]);
-        }
-        else if (no > 0 && no - 1 < ifdOffsets.length) {
-          ifd = parser.getIFD(ifdOffsets[no - 1]);
-          long next = parser.getNextOffset(ifdOffsets[no - 1]);
-          out.seek(next);
-        }
+      if (filename != null) {
+        in = new RandomAccessInputStream(filename);
       }
-      else if (isTiled) {
-        defaultByteCount = strips[0].length;
+      else if (bytes != null) {
+        in = new RandomAccessInputStream(bytes);
+      }
+      else {
+        throw new IllegalArgumentException(
+            "Filename and bytes are null, cannot create new input stream!");
+      }
+      if (in.length() == 0) {
+        return;
+      }
+      TiffParser parser = new TiffParser(in);
+      long[] ifdOffsets = parser.getIFDOffsets();
+      LOGGER.debug("IFD offsets: {}", Arrays.toString(ifdOffsets));
+      for (long offset : ifdOffsets) {
+        writtenIFDs.add(parser.getIFD(offset));
+        writtenIFDOffsets.add(offset);
+        writtenNextOffsets.add(parser.getNextOffset(offset));
       }
-      writeIFDStrips(ifd, no, strips, nChannels, last, x, y, defaultByteCount);
     }
     finally {
       if (in != null) {
@@ -493,6 +675,26 @@ public class TiffSaver {
     }
   }
 
+  /**
+   * Records the given IFD as the most recently written IFD for the
+   * given image index.
+   */
+  private void recordWrittenIFD(int no, IFD ifd, long offset, long next) {
+    if (writtenIFDs == null || no > writtenIFDs.size()) {
+      return;
+    }
+    if (no == writtenIFDs.size()) {
+      writtenIFDs.add(ifd);
+      writtenIFDOffsets.add(offset);
+      writtenNextOffsets.add(next);
+    }
+    else {
+      writtenIFDs.set(no, ifd);
+      writtenIFDOffsets.set(no, offset);
+      writtenNextOffsets.set(no, next);
+    }
+  }
+
   public void writeIFD(IFD ifd, long nextOffset)
     throws FormatException, IOException
   {
@@ -735,33 +937,51 @@ public class TiffSaver {
       throw new FormatException("Invalid TIFF header");
     }
 
+    // skip to the correct IFD
+    long[] offsets = parser.getIFDOffsets();
+    if (ifd >= offsets.length) {
+      throw new FormatException(
+        "No such IFD (" + ifd + " of " + offsets.length + ")");
+    }
+    overwriteIFDValueAtOffset(raf, offsets[ifd], tag, value);
+  }
+
+  /**
+   * Surgically overwrites an existing IFD value with the given one, as
+   * {@link #overwriteIFDValue(RandomAccessInputStream, int, int, Object)},
+   * for the IFD at the given offset.  This avoids reading the IFD chain when
+   * the offset is already known, e.g. from {@link #getFirstIFDOffset()}.
+   */
+  public void overwriteIFDValueAtOffset(RandomAccessInputStream raf,
+    long ifdOffset, int tag, Object value) throws FormatException, IOException
+  {
+    if (raf == null)
+      throw new FormatException("Output cannot be null");
+
+    raf.seek(0);
+    TiffParser parser = new TiffParser(raf);
+    Boolean valid = parser.checkHeader();
+    if (valid == null) {
+      throw new FormatException("Invalid TIFF header");
+    }
+
     boolean little = valid.booleanValue();
     boolean bigTiff = parser.isBigTiff();
 
     setLittleEndian(little);
     setBigTiff(bigTiff);
 
-    long offset = bigTiff ? 8 : 4; // offset to the IFD
-
     int bytesPerEntry = bigTiff ?
       TiffConstants.BIG_TIFF_BYTES_PER_ENTRY : TiffConstants.BYTES_PER_ENTRY;
 
-    raf.seek(offset);
-
-    // skip to the correct IFD
-    long[] offsets = parser.getIFDOffsets();
-    if (ifd >= offsets.length) {
-      throw new FormatException(
-        "No such IFD (" + ifd + " of " + offsets.length + ")");
-    }
-    raf.seek(offsets[ifd]);
+    raf.seek(ifdOffset);
 
     // get the number of directory entries
     long num = bigTiff ? raf.readLong() : raf.readUnsignedShort();
 
     // search directory entries for proper tag
     for (int i=0; i<num; i++) {
-      raf.seek(offsets[ifd] + (bigTiff ? 8 : 2) + bytesPerEntry * i);
+      raf.seek(ifdOffset + (bigTiff ? 8 : 2) + bytesPerEntry * i);
 
       TiffIFDEntry entry = parser.readTiffIFDEntry();
       if (entry.getTag() == tag) {
@@ -827,13 +1047,14 @@ public class TiffSaver {
         }
 
         // overwrite old entry
-        out.seek(offsets[ifd] + (bigTiff ? 8 : 2) + bytesPerEntry * i + 2);
+        out.seek(ifdOffset + (bigTiff ? 8 : 2) + bytesPerEntry * i + 2);
         out.writeShort(newType);
         writeIntValue(out, newCount);
         writeIntValue(out, newOffset);
         if (extraBuf.length() > 0) {
           out.seek(newOffset);
-          out.write(extraBuf.getByteBuffer());
+          // only the used part of the buffer; its capacity is much larger
+          out.write(extraBuf.getBytes(), 0, (int) extraBuf.length());
         }
         return;
       }
@@ -1074,7 +1295,22 @@ public class TiffSaver {
       LOGGER.debug("Writing tile/strip byte counts: {}",
           Arrays.toString(toPrimitiveArray(byteCounts)));
     }
-    writeIFD(ifd, last ? 0 : endFP);
+    long nextOffset = last ? 0 : endFP;
+    if (!sequentialWrite && writtenIFDOffsets != null &&
+      no + 1 < writtenIFDOffsets.size())
+    {
+      // keep the chain intact when revisiting an earlier IFD
+      nextOffset = writtenIFDOffsets.get(no + 1);
+    }
+    writeIFD(ifd, nextOffset);
+    if (!sequentialWrite) {
+      recordWrittenIFD(no, ifd, fp, nextOffset);
+    }
+    if (firstIFDOffset < 0 || fp < firstIFDOffset) {
+      firstIFDOffset = fp;
+    }
+    lastIFDOffset = Math.max(lastIFDOffset, fp);
+    recentIFDOffset = fp;
     if (LOGGER.isDebugEnabled()) {
       LOGGER.debug("Offset after IFD write: {}", out.getFilePointer());
     }
@@ -0,0 +1,201 @@
+/*
+ * #%L
+ * BSD implementations of Bio-Formats readers and writers
+ * %%
+ * Copyright (C) 2005 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.formats.utests;
+
+import static org.testng.Assert.assertEquals;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+
+import loci.formats.ChannelSeparator;
+import loci.formats.FormatTools;
+import loci.formats.IFormatReader;
+import loci.formats.ImageReader;
+import loci.formats.ImageWriter;
+import loci.formats.MetadataTools;
+import loci.formats.in.FakeReader;
+import loci.formats.in.TiffReader;
+import loci.formats.meta.IMetadata;
+import loci.formats.out.TiffWriter;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+/**
+ * Checks that reading into a {@link ByteBuffer} gives the same pixels as
+ * reading into a byte array.
+ */
+public class ByteBufferReaderTest {
+
+  private static final int WIDTH = 96;
+  private static final int HEIGHT = 80;
+
+  /** Offset at which each plane is read into the buffer. */
+  private static final int OFFSET = 7;
+
+  @DataProvider(name = "tiffs")
+  public Object[][] createTiffs() {
+    return new Object[][] {
+      {".tif", TiffWriter.COMPRESSION_UNCOMPRESSED, 0, 1},
+      {".tif", TiffWriter.COMPRESSION_UNCOMPRESSED, 0, 3},
+      {".tif", TiffWriter.COMPRESSION_LZW, 0, 1},
+      {".tif", TiffWriter.COMPRESSION_LZW, 32, 3},
+      {".tif", TiffWriter.COMPRESSION_UNCOMPRESSED, 32, 1},
+      {".ome.tif", TiffWriter.COMPRESSION_UNCOMPRESSED, 0, 1},
+      {".ome.tif", TiffWriter.COMPRESSION_LZW, 32, 3},
+    };
+  }
+
+  private File writeFile(String ext, String compression, int tileSize,
+    int channels) throws Exception
+  {
+    File file = File.createTempFile("bytebuffer", ext);
+    file.deleteOnExit();
+    file.delete();
+    IMetadata meta = MetadataTools.createOMEXMLMetadata();
+    MetadataTools.populateMetadata(meta, 0, file.getName(), false, "XYCZT",
+      "uint16", WIDTH, HEIGHT, 2, channels, 1, channels);
+    ImageWriter writer = new ImageWriter();
+    writer.setMetadataRetrieve(meta);
+    writer.setInterleaved(false);
+    writer.setId(file.getAbsolutePath());
+    writer.setCompression(compression);
+    if (tileSize > 0) {
+      writer.setTileSizeX(tileSize);
+      writer.setTileSizeY(tileSize);
+    }
+    int planeSize = WIDTH * HEIGHT * 2 * channels;
+    for (int no = 0; no < 2; no++) {
+      byte[] plane = new byte[planeSize];
+      for (int i = 0; i < plane.length; i++) {
+        plane[i] = (byte) (i * 31 + no * 7 + i / 256);
+      }
+      writer.saveBytes(no, plane);
+    }
+    writer.close();
+    return file;
+  }
+
+  private void check(IFormatReader reader, boolean direct) throws Exception {
+    int[][] regions = {
+      {0, 0, reader.getSizeX(), reader.getSizeY()},
+      {0, 11, reader.getSizeX(), 23},
+      {5, 3, 40, 50},
+      {reader.getSizeX() - 1, reader.getSizeY() - 1, 1, 1},
+    };
+    for (int no = 0; no < reader.getImageCount(); no++) {
+      for (int[] r : regions) {
+        byte[] expected = reader.openBytes(no, r[0], r[1], r[2], r[3]);
+        int size = FormatTools.getPlaneSize(reader, r[2], r[3]);
+        ByteBuffer buf = direct ? ByteBuffer.allocateDirect(size + 2 * OFFSET) :
+          ByteBuffer.allocate(size + 2 * OFFSET);
+        buf.position(OFFSET);
+        assertEquals(reader.openBytes(no, buf, r[0], r[1], r[2], r[3]), buf);
+        assertEquals(buf.position(), OFFSET + size);
+        assertEquals(buf.limit(), buf.capacity());
+        byte[] actual = new byte[size];
+        buf.position(OFFSET);
+        buf.get(actual);
+        assertEquals(actual, expected);
+      }
+    }
+  }
+
+  @Test(dataProvider = "tiffs")
+  public void testTiff(String ext, String compression, int tileSize,
+    int channels) throws Exception
+  {
+    File file = writeFile(ext, compression, tileSize, channels);
+    ImageReader reader = new ImageReader();
+    reader.setId(file.getAbsolutePath());
+    try {
+      check(reader, true);
+      check(reader, false);
+    }
+    finally {
+      reader.close();
+    }
+
+    // wrappers that change the pixels fall back to the byte array path
+    ChannelSeparator separator = new ChannelSeparator(new ImageReader());
+    separator.setId(file.getAbsolutePath());
+    try {
+      check(separator, true);
+    }
+    finally {
+      separator.close();
+    }
+  }
+
+  @Test
+  public void testNullParser() throws Exception {
+    // the parser is transient, so it is null after a memoized reader is
+    // loaded and must be initialized on the first read
+    File file = writeFile(".tif", TiffWriter.COMPRESSION_LZW, 32, 1);
+    ParserResettingReader reader = new ParserResettingReader();
+    reader.setId(file.getAbsolutePath());
+    try {
+      int size = FormatTools.getPlaneSize(reader);
+      byte[] expected = reader.openBytes(1);
+      reader.resetParser();
+      ByteBuffer buf = ByteBuffer.allocate(size);
+      reader.openBytes(1, buf, 0, 0, reader.getSizeX(), reader.getSizeY());
+      assertEquals(buf.array(), expected);
+    }
+    finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testFallback() throws Exception {
+    FakeReader reader = new FakeReader();
+    reader.setId("test&sizeX=64&sizeY=56&sizeC=3&rgb=3&pixelType=int16.fake");
+    try {
+      check(reader, true);
+      check(reader, false);
+    }
+    finally {
+      reader.close();
+    }
+  }
+
+  // -- Helper classes --
+
+  private static class ParserResettingReader extends TiffReader {
+    void resetParser() {
+      tiffParser = null;
+    }
+  }
+
+}
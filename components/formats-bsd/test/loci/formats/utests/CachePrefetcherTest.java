@@ -0,0 +1,143 @@
+/*
+ * #%L
+ * BSD implementations of Bio-Formats readers and writers
+ * %%
+ * Copyright (C) 2005 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.formats.utests;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.util.Arrays;
+
+import loci.formats.IFormatReader;
+import loci.formats.ImageReader;
+import loci.formats.cache.ByteArraySource;
+import loci.formats.cache.Cache;
+import loci.formats.cache.CachePrefetcher;
+import loci.formats.cache.CrosshairStrategy;
+import loci.formats.cache.ICacheSource;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Tests that {@link CachePrefetcher} loads the load list for the current
+ * position and follows position changes.
+ */
+public class CachePrefetcherTest {
+
+  private static final String FILE = "test&sizeT=10.fake";
+  private static final int WORKERS = 3;
+
+  private IFormatReader[] readers;
+  private Cache cache;
+  private CachePrefetcher prefetcher;
+
+  @BeforeMethod
+  public void setUp() throws Exception {
+    readers = new IFormatReader[WORKERS + 1];
+    for (int i=0; i<readers.length; i++) {
+      readers[i] = new ImageReader();
+      readers[i].setId(FILE);
+    }
+    CrosshairStrategy strategy = new CrosshairStrategy(new int[] {1, 1, 10});
+    strategy.setRange(2, 2);
+    cache = new Cache(strategy, new ByteArraySource(readers[0]), false);
+    cache.setCurrentPos(new int[] {0, 0, 5});
+
+    ICacheSource[] sources = new ICacheSource[WORKERS];
+    for (int i=0; i<WORKERS; i++) {
+      sources[i] = new ByteArraySource(readers[i + 1]);
+    }
+    prefetcher = new CachePrefetcher(cache, sources);
+  }
+
+  @AfterMethod
+  public void tearDown() throws Exception {
+    prefetcher.quit();
+    for (IFormatReader r : readers) r.close();
+  }
+
+  @Test
+  public void testLoadList() throws Exception {
+    waitForIdle();
+    for (int t=0; t<10; t++) {
+      if (t >= 3 && t <= 7) {
+        assertTrue(Arrays.equals(readers[0].openBytes(t),
+          (byte[]) cache.getObject(t)));
+      }
+      else assertNull(cache.getObject(t));
+    }
+  }
+
+  @Test
+  public void testPositionChange() throws Exception {
+    waitForIdle();
+    cache.setCurrentPos(new int[] {0, 0, 7});
+    waitForIdle();
+    for (int t=0; t<10; t++) {
+      assertEquals(t >= 5 && t <= 9, cache.getObject(t) != null);
+      assertEquals(t >= 5 && t <= 9, cache.isInCache(t));
+    }
+    assertEquals(0, prefetcher.getPendingCount());
+  }
+
+  @Test
+  public void testRequest() throws Exception {
+    waitForIdle();
+    cache.retain(new int[] {3, 4, 6, 7});
+    assertNull(cache.getObject(5));
+
+    // not on the load list, so skipped
+    prefetcher.request(new int[] {5});
+    waitForIdle();
+    assertNull(cache.getObject(5));
+    assertFalse(prefetcher.isLoading(5));
+
+    cache.retain(new int[] {3, 4, 5, 6, 7});
+    prefetcher.request(new int[] {5, 6});
+    waitForIdle();
+    assertTrue(Arrays.equals(readers[0].openBytes(5),
+      (byte[]) cache.getObject(5)));
+  }
+
+  private void waitForIdle() throws InterruptedException {
+    long end = System.currentTimeMillis() + 10000;
+    while (!prefetcher.isIdle() && System.currentTimeMillis() < end) {
+      Thread.sleep(10);
+    }
+    assertTrue(prefetcher.isIdle());
+  }
+
+}
@@ -0,0 +1,185 @@
+/*
+ * #%L
+ * BSD implementations of Bio-Formats readers and writers
+ * %%
+ * Copyright (C) 2005 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.formats.utests;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertNull;
+
+import loci.common.Location;
+import loci.formats.ImageReader;
+import loci.formats.MetadataTools;
+import loci.formats.ome.CompactOMEXMLMetadata;
+import loci.formats.ome.OMEXMLMetadata;
+import loci.formats.ome.OMEXMLMetadataImpl;
+
+import ome.units.UNITS;
+import ome.units.quantity.Length;
+import ome.units.quantity.Time;
+import ome.xml.meta.MetadataConverter;
+import ome.xml.model.primitives.NonNegativeInteger;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Tests that {@link CompactOMEXMLMetadata} stores the same Plane metadata
+ * as {@link OMEXMLMetadataImpl}.
+ */
+public class CompactOMEXMLMetadataTest {
+
+  private static final String TEST_FILE =
+    "test&sizeZ=5&sizeC=3&sizeT=7&series=2.fake";
+
+  private OMEXMLMetadata expected;
+  private CompactOMEXMLMetadata compact;
+
+  @BeforeMethod
+  public void setUp() throws Exception {
+    expected = new OMEXMLMetadataImpl();
+    compact = new CompactOMEXMLMetadata();
+    Location.mapId(TEST_FILE, TEST_FILE);
+    ImageReader reader = new ImageReader();
+    try {
+      reader.setId(TEST_FILE);
+      populate(expected, reader);
+      populate(compact, reader);
+    }
+    finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testPlanes() {
+    assertPlanesEqual(expected, compact);
+  }
+
+  @Test
+  public void testDumpXML() {
+    assertEquals(expected.dumpXML(), compact.dumpXML());
+    assertPlanesEqual(expected, compact);
+  }
+
+  @Test
+  public void testConversion() {
+    OMEXMLMetadata converted = new OMEXMLMetadataImpl();
+    MetadataConverter.convertMetadata(compact, converted);
+    assertEquals(expected.dumpXML(), converted.dumpXML());
+
+    CompactOMEXMLMetadata reconverted = new CompactOMEXMLMetadata();
+    MetadataConverter.convertMetadata(expected, reconverted);
+    assertPlanesEqual(expected, reconverted);
+    assertEquals(expected.dumpXML(), reconverted.dumpXML());
+  }
+
+  @Test
+  public void testModelAccess() {
+    // once the model has been retrieved, Planes are stored in the model
+    compact.setRoot(compact.getRoot());
+    expected.setPlaneDeltaT(new Time(1.5, UNITS.HOUR), 1, 3);
+    compact.setPlaneDeltaT(new Time(1.5, UNITS.HOUR), 1, 3);
+    assertPlanesEqual(expected, compact);
+    assertEquals(expected.dumpXML(), compact.dumpXML());
+  }
+
+  @Test
+  public void testAnnotationRef() {
+    for (OMEXMLMetadata meta : new OMEXMLMetadata[] {expected, compact}) {
+      meta.setCommentAnnotationID("Annotation:0", 0);
+      meta.setCommentAnnotationValue("plane comment", 0);
+      meta.setPlaneAnnotationRef("Annotation:0", 1, 2, 0);
+    }
+    assertPlanesEqual(expected, compact);
+    assertEquals(expected.dumpXML(), compact.dumpXML());
+    expected.resolveReferences();
+    compact.resolveReferences();
+    assertEquals(1, compact.getPlaneAnnotationRefCount(1, 2));
+    assertEquals("Annotation:0", compact.getPlaneAnnotationRef(1, 2, 0));
+    assertPlanesEqual(expected, compact);
+  }
+
+  @Test
+  public void testUnsetValues() {
+    assertNull(compact.getPlaneHashSHA1(0, 0));
+    assertNull(compact.getPlaneExposureTime(0, 1));
+    assertNull(compact.getPlanePositionZ(1, 0));
+    compact.setPlanePositionX(null, 0, 0);
+    assertNull(compact.getPlanePositionX(0, 0));
+    assertEquals(expected.getPlaneCount(0), compact.getPlaneCount(0));
+  }
+
+  /** Populates Pixels and Planes, with a mix of units and value types. */
+  private void populate(OMEXMLMetadata meta, ImageReader reader) {
+    MetadataTools.populatePixels(meta, reader, true);
+    for (int i=0; i<meta.getImageCount(); i++) {
+      for (int p=0; p<meta.getPlaneCount(i); p++) {
+        meta.setPlaneDeltaT(new Time(p * 0.25, UNITS.SECOND), i, p);
+        if (p % 2 == 0) {
+          meta.setPlaneExposureTime(new Time(10.0, UNITS.MILLISECOND), i, p);
+        }
+        meta.setPlanePositionX(new Length(i * 100.0, UNITS.MICROMETER), i, p);
+        meta.setPlanePositionY(p % 3 == 0 ?
+          new Length(p, UNITS.MICROMETER) :
+          new Length(p * 1000.0, UNITS.NANOMETER), i, p);
+        if (i == 0) {
+          meta.setPlanePositionZ(new Length(Double.NaN, UNITS.MICROMETER),
+            i, p);
+        }
+      }
+    }
+    meta.setPlaneTheZ(new NonNegativeInteger(4), 0, 2);
+  }
+
+  private void assertPlanesEqual(OMEXMLMetadata a, OMEXMLMetadata b) {
+    assertEquals(a.getImageCount(), b.getImageCount());
+    for (int i=0; i<a.getImageCount(); i++) {
+      assertEquals(a.getPlaneCount(i), b.getPlaneCount(i));
+      for (int p=0; p<a.getPlaneCount(i); p++) {
+        assertEquals(a.getPlaneTheZ(i, p), b.getPlaneTheZ(i, p));
+        assertEquals(a.getPlaneTheC(i, p), b.getPlaneTheC(i, p));
+        assertEquals(a.getPlaneTheT(i, p), b.getPlaneTheT(i, p));
+        assertEquals(a.getPlaneDeltaT(i, p), b.getPlaneDeltaT(i, p));
+        assertEquals(a.getPlaneExposureTime(i, p),
+          b.getPlaneExposureTime(i, p));
+        assertEquals(a.getPlanePositionX(i, p), b.getPlanePositionX(i, p));
+        assertEquals(a.getPlanePositionY(i, p), b.getPlanePositionY(i, p));
+        assertEquals(String.valueOf(a.getPlanePositionZ(i, p)),
+          String.valueOf(b.getPlanePositionZ(i, p)));
+        assertEquals(a.getPlaneHashSHA1(i, p), b.getPlaneHashSHA1(i, p));
+        assertEquals(a.getPlaneAnnotationRefCount(i, p),
+          b.getPlaneAnnotationRefCount(i, p));
+      }
+    }
+  }
+
+}
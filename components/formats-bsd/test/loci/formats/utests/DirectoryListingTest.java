@@ -0,0 +1,131 @@
+/*
+ * #%L
+ * BSD implementations of Bio-Formats readers and writers
+ * %%
+ * Copyright (C) 2005 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.formats.utests;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import org.testng.annotations.Test;
+
+import loci.formats.DirectoryListing;
+import loci.formats.FilePattern;
+
+
+public class DirectoryListingTest {
+
+  private static Path mkDir(String[] names) throws IOException {
+    Path dir = Files.createTempDirectory("listing");
+    dir.toFile().deleteOnExit();
+    for (String name : names) {
+      Files.createFile(dir.resolve(name)).toFile().deleteOnExit();
+    }
+    // make the listing old enough to be reused
+    dir.toFile().setLastModified(
+      System.currentTimeMillis() - 2 * DirectoryListing.MTIME_RESOLUTION);
+    return dir;
+  }
+
+  @Test
+  public void testPrefix() {
+    DirectoryListing listing = new DirectoryListing(new String[] {
+      "b10.tif", "a1.tif", "b2.tif", "b1.tif", "c.tif", "ba.tif"
+    });
+    assertEquals(listing.size(), 6);
+    assertEquals(listing.getNames(), new String[] {
+      "a1.tif", "b1.tif", "b10.tif", "b2.tif", "ba.tif", "c.tif"
+    });
+    assertEquals(listing.getNames("b"), new String[] {
+      "b1.tif", "b10.tif", "b2.tif", "ba.tif"
+    });
+    assertEquals(listing.getNames("b1"), new String[] {"b1.tif", "b10.tif"});
+    assertEquals(listing.getNames("d"), new String[0]);
+    assertEquals(listing.getNames("").length, 6);
+    assertEquals(listing.getPrefixStart("b"), 1);
+    assertEquals(listing.getPrefixEnd("b"), 5);
+    assertTrue(listing.contains("c.tif"));
+    assertFalse(listing.contains("c"));
+  }
+
+  @Test
+  public void testSnapshot() throws IOException {
+    Path dir = mkDir(new String[] {"z0.tif", "z1.tif"});
+    String path = dir.toString();
+    DirectoryListing first = DirectoryListing.getListing(path, false);
+    assertNotNull(first);
+    assertEquals(first.getNames(), new String[] {"z0.tif", "z1.tif"});
+    assertSame(DirectoryListing.getListing(path, false), first);
+
+    // adding a file changes the directory's modification time
+    Files.createFile(dir.resolve("z2.tif")).toFile().deleteOnExit();
+    DirectoryListing second = DirectoryListing.getListing(path, false);
+    assertNotSame(second, first);
+    assertEquals(second.getNames(),
+      new String[] {"z0.tif", "z1.tif", "z2.tif"});
+
+    // a listing taken right after a modification is not reused
+    assertNotSame(DirectoryListing.getListing(path, false), second);
+
+    DirectoryListing.clearCache();
+    assertEquals(DirectoryListing.getListing(
+      dir.resolve("missing").toString(), false), null);
+  }
+
+  @Test
+  public void testFindPattern() throws IOException {
+    String[] names = new String[300];
+    for (int i = 0; i < 100; i++) {
+      names[i] = String.format("a_z%03d.tif", i);
+      names[i + 100] = String.format("b_t%d_z%d.tif", i / 10, i % 10);
+      names[i + 200] = String.format("c%d.tif", i);
+    }
+    Path dir = mkDir(names);
+    String sep = File.separator;
+    assertEquals(FilePattern.findPattern(names[5], dir.toString()),
+      dir + sep + "a_z0<00-99>.tif");
+    assertEquals(FilePattern.findPattern(names[150], dir.toString()),
+      dir + sep + "b_t<0-9>_z<0-9>.tif");
+    assertEquals(FilePattern.findPattern(names[250], dir.toString()),
+      dir + sep + "c<0-99>.tif");
+    assertEquals(FilePattern.findPattern(names[250], dir.toString(), names),
+      dir + sep + "c<0-99>.tif");
+  }
+
+}
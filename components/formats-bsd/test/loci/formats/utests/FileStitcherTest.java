@@ -32,7 +32,12 @@
 
 package loci.formats.utests;
 
+import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -44,16 +49,22 @@ import loci.formats.FormatTools;
 import loci.formats.FileStitcher;
 import loci.formats.FormatException;
 import loci.formats.IFormatReader;
+import loci.formats.MetadataTools;
 import loci.formats.in.FakeReader;
+import loci.formats.in.TiffReader;
 import loci.formats.in.MetadataLevel;
 import loci.formats.in.MetadataOptions;
 import loci.formats.in.DynamicMetadataOptions;
+import loci.formats.meta.IMetadata;
+import loci.formats.out.TiffWriter;
+import loci.formats.tiff.IFD;
 
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
 import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertEqualsNoOrder;
 import static org.testng.Assert.assertNotNull;
 import static loci.formats.FilePatternBlock.BLOCK_START;
@@ -264,4 +275,115 @@ public class FileStitcherTest {
     fs.close();
   }
 
+  @Test
+  public void testHomogeneous() throws Exception {
+    Path dir = Files.createTempDirectory("homogeneous");
+    dir.toFile().deleteOnExit();
+    int files = 5;
+    for (int i = 0; i < files; i++) {
+      // the last file is compressed, so it cannot use the template
+      writeTiff(new File(dir.toFile(), "img_t" + i + ".tif"), i,
+        i == files - 1 ? TiffWriter.COMPRESSION_LZW : null);
+    }
+
+    FileStitcher fs = new FileStitcher();
+    assertFalse(fs.isHomogeneous());
+    fs.setHomogeneous(true);
+    fs.setId(new File(dir.toFile(), "img_t<0-" + (files - 1) + ">.tif")
+      .getAbsolutePath());
+    assertEquals(fs.getImageCount(), files);
+    assertEquals(fs.getUnderlyingReaders().length, 2);
+    // read twice and out of order, to repoint the template between files
+    for (int pass = 0; pass < 2; pass++) {
+      for (int i = files - 1; i >= 0; i--) {
+        byte[] plane = fs.openBytes(i);
+        assertEquals(plane.length, SIZE_X * SIZE_Y);
+        for (int p = 0; p < plane.length; p++) {
+          assertEquals(plane[p], (byte) (i + p));
+        }
+      }
+    }
+    fs.close();
+    for (File f : dir.toFile().listFiles()) {
+      f.delete();
+    }
+  }
+
+  @Test
+  public void testHomogeneousLayoutMismatch() throws Exception {
+    Path dir = Files.createTempDirectory("homogeneous");
+    dir.toFile().deleteOnExit();
+    File[] files = new File[3];
+    for (int i = 0; i < files.length; i++) {
+      files[i] = new File(dir.toFile(), "img_t" + i + ".tif");
+      writeTiff(files[i], i, null);
+    }
+    // same length as the template, but the pixels start elsewhere
+    shiftFirstStrip(files[1]);
+    byte[] expected;
+    TiffReader reader = new TiffReader();
+    try {
+      reader.setId(files[1].getAbsolutePath());
+      expected = reader.openBytes(0);
+    }
+    finally {
+      reader.close();
+    }
+
+    FileStitcher fs = new FileStitcher();
+    fs.setHomogeneous(true);
+    fs.setId(new File(dir.toFile(), "img_t<0-2>.tif").getAbsolutePath());
+    try {
+      assertEquals(fs.openBytes(1), expected);
+      assertEquals(fs.openBytes(0)[0], (byte) 0);
+      assertEquals(fs.openBytes(2)[0], (byte) 2);
+    }
+    finally {
+      fs.close();
+    }
+    for (File f : dir.toFile().listFiles()) {
+      f.delete();
+    }
+  }
+
+  /** Moves the first strip of the given TIFF back by one byte, in place. */
+  private static void shiftFirstStrip(File file) throws Exception {
+    byte[] bytes = Files.readAllBytes(file.toPath());
+    ByteBuffer buf = ByteBuffer.wrap(bytes);
+    buf.order(bytes[0] == 'I' ?
+      ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+    int ifd = buf.getInt(4);
+    int entries = buf.getShort(ifd) & 0xffff;
+    for (int e = 0; e < entries; e++) {
+      int entry = ifd + 2 + e * 12;
+      if ((buf.getShort(entry) & 0xffff) == IFD.STRIP_OFFSETS) {
+        assertEquals(buf.getShort(entry + 2), 4);
+        int count = buf.getInt(entry + 4);
+        int pos = count == 1 ? entry + 8 : buf.getInt(entry + 8);
+        buf.putInt(pos, buf.getInt(pos) - 1);
+      }
+    }
+    Files.write(file.toPath(), bytes);
+  }
+
+  private static void writeTiff(File file, int offset, String compression)
+      throws Exception {
+    file.deleteOnExit();
+    IMetadata meta = MetadataTools.createOMEXMLMetadata();
+    MetadataTools.populateMetadata(meta, 0, file.getName(), false, "XYZCT",
+      FormatTools.getPixelTypeString(PIXEL_TYPE), SIZE_X, SIZE_Y, 1, 1, 1, 1);
+    byte[] plane = new byte[SIZE_X * SIZE_Y];
+    for (int p = 0; p < plane.length; p++) {
+      plane[p] = (byte) (offset + p);
+    }
+    TiffWriter writer = new TiffWriter();
+    writer.setMetadataRetrieve(meta);
+    if (compression != null) {
+      writer.setCompression(compression);
+    }
+    writer.setId(file.getAbsolutePath());
+    writer.saveBytes(0, plane);
+    writer.close();
+  }
+
 }
@@ -0,0 +1,205 @@
+/*
+ * #%L
+ * BSD implementations of Bio-Formats readers and writers
+ * %%
+ * Copyright (C) 2005 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.formats.utests;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import loci.formats.ImageWriter;
+import loci.formats.InstrumentedReader;
+import loci.formats.MetadataTools;
+import loci.formats.ReaderMetrics;
+import loci.formats.ReaderMetricsListener;
+import loci.formats.TileCache;
+import loci.formats.in.TiffDelegateReader;
+import loci.formats.meta.IMetadata;
+import loci.formats.out.TiffWriter;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for {@link InstrumentedReader}.
+ */
+public class InstrumentedReaderTest {
+
+  private static final String READER = TiffDelegateReader.class.getName();
+
+  private File file;
+
+  @BeforeMethod
+  public void setUp() throws Exception {
+    file = File.createTempFile("instrumented", ".tif");
+    file.deleteOnExit();
+    file.delete();
+    IMetadata meta = MetadataTools.createOMEXMLMetadata();
+    MetadataTools.populateMetadata(meta, 0, file.getName(), false, "XYCZT",
+      "uint8", 64, 48, 2, 1, 1, 1);
+    ImageWriter writer = new ImageWriter();
+    writer.setMetadataRetrieve(meta);
+    writer.setId(file.getAbsolutePath());
+    writer.setCompression(TiffWriter.COMPRESSION_LZW);
+    writer.setTileSizeX(16);
+    writer.setTileSizeY(16);
+    for (int no = 0; no < 2; no++) {
+      byte[] plane = new byte[64 * 48];
+      for (int i = 0; i < plane.length; i++) {
+        plane[i] = (byte) (i * 7 + no);
+      }
+      writer.saveBytes(no, plane);
+    }
+    writer.close();
+    ReaderMetrics.resetAll();
+  }
+
+  @AfterMethod
+  public void tearDown() {
+    ReaderMetrics.setJMXEnabled(false);
+    file.delete();
+  }
+
+  @Test
+  public void testCounters() throws Exception {
+    InstrumentedReader reader = new InstrumentedReader();
+    try {
+      reader.setId(file.getAbsolutePath());
+      reader.openBytes(0);
+      reader.openBytes(1, 0, 0, 16, 16);
+      ReaderMetrics metrics = reader.getMetrics();
+      assertEquals(metrics.getName(), READER);
+      assertEquals(metrics, ReaderMetrics.get(READER));
+      assertEquals(metrics.getSetIdCalls(), 1);
+      assertTrue(metrics.getSetIdNanos() > 0);
+      assertEquals(metrics.getOpenBytesCalls(), 2);
+      assertEquals(metrics.getBytesReturned(), 64 * 48 + 16 * 16);
+      assertTrue(metrics.getBytesRead() > 0);
+      assertTrue(metrics.getSeeks() >= 13);
+      assertEquals(metrics.getDecodeCalls().get("LZW"), Long.valueOf(13));
+      assertTrue(metrics.getDecodeBytesOut().get("LZW") >= 13 * 16 * 16);
+      assertTrue(metrics.getDecodeBytesIn().get("LZW") > 0);
+    }
+    finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testUninstrumentedReadsAreNotCounted() throws Exception {
+    TiffDelegateReader reader = new TiffDelegateReader();
+    try {
+      reader.setId(file.getAbsolutePath());
+      reader.openBytes(0);
+    }
+    finally {
+      reader.close();
+    }
+    ReaderMetrics metrics = ReaderMetrics.get(READER);
+    assertEquals(metrics.getOpenBytesCalls(), 0);
+    assertEquals(metrics.getBytesRead(), 0);
+    assertTrue(metrics.getDecodeCalls().isEmpty());
+  }
+
+  @Test
+  public void testCacheHits() throws Exception {
+    InstrumentedReader reader =
+      new InstrumentedReader(new TileCache(new TiffDelegateReader()));
+    try {
+      reader.setId(file.getAbsolutePath());
+      reader.openBytes(0, 0, 0, 16, 16);
+      reader.openBytes(0, 0, 0, 16, 16);
+      ReaderMetrics metrics = reader.getMetrics();
+      assertEquals(metrics.getCacheMisses(), 1);
+      assertEquals(metrics.getCacheHits(), 1);
+      assertEquals(metrics.getDecodeCalls().get("LZW"), Long.valueOf(1));
+    }
+    finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testListener() throws Exception {
+    final List<String> calls = new ArrayList<String>();
+    ReaderMetricsListener listener = new ReaderMetricsListener() {
+      @Override
+      public void callCompleted(String readerClass, String method,
+        ReaderMetrics call)
+      {
+        calls.add(readerClass + " " + method + " " + call.getOpenBytesCalls());
+      }
+    };
+    ReaderMetrics.addListener(listener);
+    InstrumentedReader reader = new InstrumentedReader();
+    try {
+      reader.setId(file.getAbsolutePath());
+      reader.openBytes(0);
+    }
+    finally {
+      ReaderMetrics.removeListener(listener);
+      reader.close();
+    }
+    assertEquals(calls.size(), 2);
+    assertEquals(calls.get(0), READER + " setId 0");
+    assertEquals(calls.get(1), READER + " openBytes 1");
+  }
+
+  @Test
+  public void testJMX() throws Exception {
+    InstrumentedReader reader = new InstrumentedReader();
+    try {
+      reader.setId(file.getAbsolutePath());
+      reader.openBytes(0);
+    }
+    finally {
+      reader.close();
+    }
+    ReaderMetrics.setJMXEnabled(true);
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName name = new ObjectName(ReaderMetrics.JMX_DOMAIN +
+      ":type=ReaderMetrics,name=" + ObjectName.quote(READER));
+    assertTrue(server.isRegistered(name));
+    assertEquals(server.getAttribute(name, "OpenBytesCalls"), 1L);
+    ReaderMetrics.setJMXEnabled(false);
+    assertTrue(!server.isRegistered(name));
+  }
+
+}
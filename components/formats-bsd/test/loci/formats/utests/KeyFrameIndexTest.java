@@ -0,0 +1,273 @@
+/*
+ * #%L
+ * BSD implementations of Bio-Formats readers and writers
+ * %%
+ * Copyright (C) 2005 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.formats.utests;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+import loci.common.Constants;
+import loci.formats.in.AVIReader;
+import loci.formats.in.KeyFrameIndex;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ * Checks key frame lookup and checkpoints in {@link KeyFrameIndex}, and
+ * random access to the frames of an MSRLE-compressed AVI file.
+ */
+public class KeyFrameIndexTest {
+
+  private static final int WIDTH = 8;
+  private static final int HEIGHT = 6;
+  private static final int FRAMES = 40;
+  private static final int KEY_FRAME_INTERVAL = 10;
+
+  private File aviFile;
+  private byte[][] frames;
+
+  @BeforeClass
+  public void setUp() throws Exception {
+    aviFile = File.createTempFile("keyframeindex", ".avi");
+    aviFile.deleteOnExit();
+    FileOutputStream out = new FileOutputStream(aviFile);
+    try {
+      out.write(createMSRLEMovie());
+    }
+    finally {
+      out.close();
+    }
+  }
+
+  @AfterClass
+  public void tearDown() {
+    aviFile.delete();
+  }
+
+  @Test
+  public void testKeyFrames() {
+    KeyFrameIndex index = new KeyFrameIndex();
+    assertEquals(index.getKeyFrame(5), 0);
+    index.addKeyFrame(20);
+    index.addKeyFrame(10);
+    index.addKeyFrame(10);
+    assertEquals(index.getKeyFrameCount(), 2);
+    assertTrue(index.isKeyFrame(10));
+    assertFalse(index.isKeyFrame(11));
+    assertEquals(index.getKeyFrame(9), 0);
+    assertEquals(index.getKeyFrame(10), 10);
+    assertEquals(index.getKeyFrame(19), 10);
+    assertEquals(index.getKeyFrame(100), 20);
+  }
+
+  @Test
+  public void testCheckpoints() {
+    KeyFrameIndex index = new KeyFrameIndex(4, 2);
+    index.addKeyFrame(12);
+    byte[] frame = {1, 2, 3};
+    index.addCheckpoint(3, frame);
+    index.addCheckpoint(4, frame);
+    index.addCheckpoint(12, frame);
+    frame[0] = 5;
+    index.addCheckpoint(8, frame);
+    assertNull(index.getCheckpointFrame(3));
+    assertNull(index.getCheckpointFrame(12));
+    assertEquals(index.getCheckpointFrame(4)[0], 1);
+    assertEquals(index.getCheckpointFrame(8)[0], 5);
+    assertEquals(index.getCheckpoint(7), 4);
+    assertEquals(index.getCheckpoint(3), -1);
+
+    // the least recently used checkpoint is discarded
+    index.getCheckpointFrame(4);
+    index.addCheckpoint(16, frame);
+    assertEquals(index.getCheckpoint(15), 4);
+    assertNull(index.getCheckpointFrame(8));
+
+    index.clearCheckpoints();
+    assertEquals(index.getCheckpoint(20), -1);
+  }
+
+  @Test
+  public void testDecodeStart() {
+    KeyFrameIndex index = new KeyFrameIndex(4, 8);
+    index.addKeyFrame(10);
+    index.addCheckpoint(4, new byte[1]);
+    assertEquals(index.getDecodeStart(10, -1), 10);
+    assertEquals(index.getDecodeStart(3, -1), 0);
+    assertEquals(index.getDecodeStart(3, 1), 2);
+    assertEquals(index.getDecodeStart(7, 1), 5);
+    assertEquals(index.getDecodeStart(7, 5), 6);
+    assertEquals(index.getDecodeStart(7, 8), 5);
+    assertEquals(index.getDecodeStart(13, 2), 10);
+    assertEquals(index.getDecodeStart(13, 11), 12);
+  }
+
+  @Test
+  public void testRandomAccess() throws Exception {
+    int[] order = {0, 1, 2, 37, 5, 23, 23, 39, 0, 19, 11, 30, 29, 3, 38};
+    AVIReader reader = new AVIReader();
+    try {
+      reader.setId(aviFile.getAbsolutePath());
+      assertEquals(reader.getImageCount(), FRAMES);
+      for (int no : order) {
+        assertEquals(reader.openBytes(no), frames[no], "frame " + no);
+      }
+    }
+    finally {
+      reader.close();
+    }
+  }
+
+  /**
+   * Creates an 8-bit MSRLE movie.  Every tenth frame is a key frame; the
+   * other frames only replace a single row of the previous frame.
+   */
+  private byte[] createMSRLEMovie() throws IOException {
+    frames = new byte[FRAMES][];
+    byte[] current = new byte[WIDTH * HEIGHT];
+    List<byte[]> chunks = new ArrayList<byte[]>();
+    for (int f=0; f<FRAMES; f++) {
+      ByteArrayOutputStream rle = new ByteArrayOutputStream();
+      int firstRow = 0;
+      int lastRow = HEIGHT - 1;
+      if (f % KEY_FRAME_INTERVAL != 0) {
+        firstRow = lastRow = f % HEIGHT;
+        if (firstRow > 0) {
+          // skip to the first changed row
+          rle.write(new byte[] {0, 2, 0, (byte) firstRow});
+        }
+      }
+      for (int row=firstRow; row<=lastRow; row++) {
+        for (int col=0; col<WIDTH; col++) {
+          byte value = (byte) (f % KEY_FRAME_INTERVAL == 0 ?
+            f + row * WIDTH + col : 100 + f);
+          // rows are stored from the bottom of the image
+          current[(HEIGHT - row - 1) * WIDTH + col] = value;
+          rle.write(1);
+          rle.write(value);
+        }
+        if (row < lastRow) {
+          rle.write(new byte[] {0, 0});
+        }
+      }
+      rle.write(new byte[] {0, 1});
+      chunks.add(rle.toByteArray());
+      frames[f] = current.clone();
+    }
+
+    ByteArrayOutputStream avih = new ByteArrayOutputStream();
+    for (int v : new int[] {33333, 0, 0, 0x10, FRAMES, 0, 1, 0,
+      WIDTH, HEIGHT, 0, 0, 0, 0})
+    {
+      avih.write(toBytes(v));
+    }
+    ByteArrayOutputStream strh = new ByteArrayOutputStream();
+    strh.write(getBytes("vidsmrle"));
+    for (int v : new int[] {0, 0, 1, 30, 0, FRAMES, 0, 0, 0, 0, 0, 0}) {
+      strh.write(toBytes(v));
+    }
+    ByteArrayOutputStream strf = new ByteArrayOutputStream();
+    for (int v : new int[] {40, WIDTH, HEIGHT, 0x80001, 1, 0, 0, 0, 256, 0}) {
+      strf.write(toBytes(v));
+    }
+    for (int i=0; i<256; i++) {
+      strf.write(new byte[] {(byte) i, (byte) i, (byte) i, 0});
+    }
+
+    ByteArrayOutputStream movi = new ByteArrayOutputStream();
+    ByteArrayOutputStream idx1 = new ByteArrayOutputStream();
+    movi.write(getBytes("movi"));
+    for (int f=0; f<FRAMES; f++) {
+      byte[] data = chunks.get(f);
+      idx1.write(getBytes("00dc"));
+      idx1.write(toBytes(f % KEY_FRAME_INTERVAL == 0 ? 0x10 : 0));
+      idx1.write(toBytes(movi.size()));
+      idx1.write(toBytes(data.length));
+      movi.write(chunk("00dc", data));
+    }
+
+    byte[] strl = list("strl",
+      chunk("strh", strh.toByteArray()), chunk("strf", strf.toByteArray()));
+    byte[] hdrl = list("hdrl", chunk("avih", avih.toByteArray()), strl);
+    ByteArrayOutputStream avi = new ByteArrayOutputStream();
+    avi.write(getBytes("AVI "));
+    avi.write(hdrl);
+    avi.write(getBytes("LIST"));
+    avi.write(toBytes(movi.size()));
+    avi.write(movi.toByteArray());
+    avi.write(chunk("idx1", idx1.toByteArray()));
+    return chunk("RIFF", avi.toByteArray());
+  }
+
+  private byte[] chunk(String type, byte[] data) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    out.write(getBytes(type));
+    out.write(toBytes(data.length));
+    out.write(data);
+    if (data.length % 2 == 1) {
+      out.write(0);
+    }
+    return out.toByteArray();
+  }
+
+  private byte[] list(String type, byte[]... children) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    out.write(getBytes(type));
+    for (byte[] child : children) {
+      out.write(child);
+    }
+    return chunk("LIST", out.toByteArray());
+  }
+
+  private byte[] getBytes(String s) throws IOException {
+    return s.getBytes(Constants.ENCODING);
+  }
+
+  private byte[] toBytes(int v) {
+    return ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN)
+      .putInt(v).array();
+  }
+
+}
@@ -0,0 +1,138 @@
+/*
+ * #%L
+ * BSD implementations of Bio-Formats readers and writers
+ * %%
+ * Copyright (C) 2005 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.formats.utests;
+
+import static org.testng.AssertJUnit.assertEquals;
+
+import loci.common.Location;
+import loci.formats.ImageReader;
+import loci.formats.MetadataTools;
+import loci.formats.meta.MetadataConverter;
+import loci.formats.ome.CompactOMEXMLMetadata;
+import loci.formats.ome.OMEXMLMetadata;
+import loci.formats.ome.OMEXMLMetadataImpl;
+
+import ome.units.UNITS;
+import ome.units.quantity.Length;
+import ome.units.quantity.Time;
+import ome.xml.model.primitives.NonNegativeInteger;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Tests that {@link MetadataConverter} produces the same OME-XML as
+ * {@link ome.xml.meta.MetadataConverter}.
+ */
+public class MetadataConverterTest {
+
+  private static final String TEST_FILE =
+    "test&sizeZ=3&sizeC=2&sizeT=5&series=3.fake";
+
+  private OMEXMLMetadata src;
+
+  @BeforeMethod
+  public void setUp() throws Exception {
+    src = new OMEXMLMetadataImpl();
+    Location.mapId(TEST_FILE, TEST_FILE);
+    ImageReader reader = new ImageReader();
+    try {
+      reader.setId(TEST_FILE);
+      MetadataTools.populatePixels(src, reader, true);
+    }
+    finally {
+      reader.close();
+    }
+    for (int i=0; i<src.getImageCount(); i++) {
+      for (int p=0; p<src.getPlaneCount(i); p++) {
+        src.setPlaneDeltaT(new Time(p * 0.5, UNITS.SECOND), i, p);
+        src.setPlanePositionX(new Length(i, UNITS.MILLIMETER), i, p);
+        if (p % 2 == 0) {
+          src.setPlaneHashSHA1("0123456789abcdef" + p, i, p);
+        }
+      }
+    }
+    src.setCommentAnnotationID("Annotation:0", 0);
+    src.setCommentAnnotationValue("plane comment", 0);
+    src.setPlaneAnnotationRef("Annotation:0", 1, 4, 0);
+    src.setImageAnnotationRef("Annotation:0", 2, 0);
+    src.resolveReferences();
+  }
+
+  @Test
+  public void testOMEXMLToOMEXML() {
+    assertConversion(new OMEXMLMetadataImpl(), new OMEXMLMetadataImpl());
+  }
+
+  @Test
+  public void testOMEXMLToCompact() {
+    assertConversion(new OMEXMLMetadataImpl(), new CompactOMEXMLMetadata());
+  }
+
+  @Test
+  public void testCompactToOMEXML() {
+    CompactOMEXMLMetadata compact = new CompactOMEXMLMetadata();
+    MetadataConverter.convertMetadata(src, compact);
+    compact.resolveReferences();
+    src = compact;
+    assertConversion(new OMEXMLMetadataImpl(), new OMEXMLMetadataImpl());
+  }
+
+  @Test
+  public void testExistingPlanes() {
+    // Planes already in the destination are updated rather than duplicated
+    OMEXMLMetadata expected = new OMEXMLMetadataImpl();
+    OMEXMLMetadata actual = new OMEXMLMetadataImpl();
+    for (OMEXMLMetadata meta : new OMEXMLMetadata[] {expected, actual}) {
+      meta.setImageID("Image:0", 0);
+      meta.setPixelsID("Pixels:0", 0);
+      meta.setPlaneTheZ(new NonNegativeInteger(0), 0, 0);
+      meta.setPlaneTheZ(new NonNegativeInteger(1), 0, 1);
+    }
+    assertConversion(expected, actual);
+    assertEquals(src.getPlaneCount(0), actual.getPlaneCount(0));
+  }
+
+  private void assertConversion(OMEXMLMetadata expected,
+    OMEXMLMetadata actual)
+  {
+    ome.xml.meta.MetadataConverter.convertMetadata(src, expected);
+    MetadataConverter.convertMetadata(src, actual);
+    expected.resolveReferences();
+    actual.resolveReferences();
+    assertEquals(expected.dumpXML(), actual.dumpXML());
+    assertEquals(1, actual.getPlaneAnnotationRefCount(1, 4));
+    assertEquals("Annotation:0", actual.getPlaneAnnotationRef(1, 4, 0));
+  }
+
+}
@@ -33,6 +33,7 @@
 package loci.formats.utests;
 
 import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertNull;
 import static org.testng.AssertJUnit.assertTrue;
 
 import java.util.Hashtable;
@@ -139,4 +140,54 @@ public class OMEXMLServiceTest {
 
     assertTrue(xml.contains(expectedText));
   }
+
+  @Test
+  public void testGetOMEXMLVersion() throws ServiceException {
+    OMEXMLMetadata metadata = service.createOMEXMLMetadata();
+    metadata.setImageID("Image:0", 0);
+    String xml = service.getOMEXML(metadata);
+    assertEquals(service.getLatestVersion(), service.getOMEXMLVersion(xml));
+    assertEquals("2015-01", service.getOMEXMLVersion(
+      "<OME xmlns=\"http://www.openmicroscopy.org/Schemas/OME/2015-01\"/>"));
+    assertEquals("2003-FC", service.getOMEXMLVersion(
+      "<OME:OME xmlns:OME=\"http://www.openmicroscopy.org/XMLschemas/" +
+      "OME/FC/ome.xsd\"/>"));
+    assertNull(service.getOMEXMLVersion("not XML"));
+  }
+
+  @Test
+  public void testRoundTrip() throws ServiceException {
+    OMEXMLMetadata metadata = service.createOMEXMLMetadata();
+    metadata.setImageID("Image:0", 0);
+    metadata.setImageName("test & <image>", 0);
+    metadata.setPixelsID("Pixels:0", 0);
+    service.populateOriginalMetadata(metadata, "testKey", "testValue");
+    String xml = service.getOMEXML(metadata);
+
+    OMEXMLMetadata parsed = service.createOMEXMLMetadata(xml);
+    assertEquals("test & <image>", parsed.getImageName(0));
+    assertEquals("testValue", service.getOriginalMetadata(parsed).get("testKey"));
+    assertTrue(service.isEqual(metadata, parsed));
+  }
+
+  @Test
+  public void testSkipAnnotations() throws ServiceException {
+    OMEXMLMetadata metadata = service.createOMEXMLMetadata();
+    metadata.setImageID("Image:0", 0);
+    metadata.setPixelsID("Pixels:0", 0);
+    metadata.setXMLAnnotationID("Annotation:0", 0);
+    metadata.setXMLAnnotationValue("<Value>test</Value>", 0);
+    metadata.setImageAnnotationRef("Annotation:0", 0, 0);
+    String xml = service.getOMEXML(metadata);
+
+    OMEXMLMetadata full = service.createOMEXMLMetadata(xml, false);
+    assertEquals(1, full.getXMLAnnotationCount());
+    assertEquals(1, full.getImageAnnotationRefCount(0));
+
+    OMEXMLMetadata skipped = service.createOMEXMLMetadata(xml, true);
+    assertEquals(1, skipped.getImageCount());
+    assertEquals("Pixels:0", skipped.getPixelsID(0));
+    assertNull(((OME) skipped.getRoot()).getStructuredAnnotations());
+    assertEquals(0, skipped.getImageAnnotationRefCount(0));
+  }
 }
@@ -0,0 +1,189 @@
+/*
+ * #%L
+ * BSD implementations of Bio-Formats readers and writers
+ * %%
+ * Copyright (C) 2005 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.formats.utests;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import loci.formats.ChannelSeparator;
+import loci.formats.FormatException;
+import loci.formats.IFormatReader;
+import loci.formats.ImageReader;
+import loci.formats.ImageWriter;
+import loci.formats.MetadataTools;
+import loci.formats.TileRequest;
+import loci.formats.in.FakeReader;
+import loci.formats.meta.IMetadata;
+import loci.formats.out.TiffWriter;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+/**
+ * Checks that {@link IFormatReader#openTiles(List)} gives the same pixels as
+ * reading each tile with openBytes.
+ */
+public class OpenTilesTest {
+
+  private static final int WIDTH = 96;
+  private static final int HEIGHT = 80;
+
+  @DataProvider(name = "tiffs")
+  public Object[][] createTiffs() {
+    return new Object[][] {
+      {".tif", TiffWriter.COMPRESSION_UNCOMPRESSED, 0, 1},
+      {".tif", TiffWriter.COMPRESSION_LZW, 0, 3},
+      {".tif", TiffWriter.COMPRESSION_LZW, 16, 1},
+      {".tif", TiffWriter.COMPRESSION_LZW, 32, 3},
+      {".tif", TiffWriter.COMPRESSION_UNCOMPRESSED, 32, 1},
+      {".ome.tif", TiffWriter.COMPRESSION_UNCOMPRESSED, 0, 1},
+      {".ome.tif", TiffWriter.COMPRESSION_LZW, 16, 3},
+    };
+  }
+
+  private File writeFile(String ext, String compression, int tileSize,
+    int channels) throws Exception
+  {
+    File file = File.createTempFile("opentiles", ext);
+    file.deleteOnExit();
+    file.delete();
+    IMetadata meta = MetadataTools.createOMEXMLMetadata();
+    MetadataTools.populateMetadata(meta, 0, file.getName(), false, "XYCZT",
+      "uint16", WIDTH, HEIGHT, 2, channels, 1, channels);
+    ImageWriter writer = new ImageWriter();
+    writer.setMetadataRetrieve(meta);
+    writer.setInterleaved(false);
+    writer.setId(file.getAbsolutePath());
+    writer.setCompression(compression);
+    if (tileSize > 0) {
+      writer.setTileSizeX(tileSize);
+      writer.setTileSizeY(tileSize);
+    }
+    int planeSize = WIDTH * HEIGHT * 2 * channels;
+    for (int no = 0; no < 2; no++) {
+      byte[] plane = new byte[planeSize];
+      for (int i = 0; i < plane.length; i++) {
+        plane[i] = (byte) (i * 31 + no * 7 + i / 256);
+      }
+      writer.saveBytes(no, plane);
+    }
+    writer.close();
+    return file;
+  }
+
+  private void check(IFormatReader reader) throws Exception {
+    int sizeX = reader.getSizeX();
+    int sizeY = reader.getSizeY();
+    int[][] regions = {
+      {0, 0, sizeX, sizeY},
+      {0, 11, sizeX, 23},
+      {5, 3, 40, 50},
+      {5, 3, 40, 50},
+      {17, 40, 33, 2},
+      {sizeX - 1, sizeY - 1, 1, 1},
+    };
+    List<TileRequest> tiles = new ArrayList<TileRequest>();
+    for (int no = reader.getImageCount() - 1; no >= 0; no--) {
+      for (int i = 0; i < regions.length; i++) {
+        int[] r = regions[i];
+        byte[] buf = i % 2 == 0 ? null : new byte[r[2] * r[3] *
+          reader.getRGBChannelCount() * 2];
+        tiles.add(new TileRequest(no, r[0], r[1], r[2], r[3], buf));
+      }
+    }
+    reader.openTiles(tiles);
+    for (TileRequest t : tiles) {
+      assertNotNull(t.buf, t.toString());
+      assertEquals(t.buf, reader.openBytes(t.no, t.x, t.y, t.w, t.h),
+        t.toString());
+    }
+  }
+
+  @Test(dataProvider = "tiffs")
+  public void testTiff(String ext, String compression, int tileSize,
+    int channels) throws Exception
+  {
+    File file = writeFile(ext, compression, tileSize, channels);
+    ImageReader reader = new ImageReader();
+    reader.setId(file.getAbsolutePath());
+    try {
+      check(reader);
+    }
+    finally {
+      reader.close();
+    }
+
+    // wrappers that change the pixels read each tile in turn
+    ChannelSeparator separator = new ChannelSeparator(new ImageReader());
+    separator.setId(file.getAbsolutePath());
+    try {
+      check(separator);
+    }
+    finally {
+      separator.close();
+    }
+  }
+
+  @Test
+  public void testFallback() throws Exception {
+    FakeReader reader = new FakeReader();
+    reader.setId("test&sizeX=96&sizeY=80&sizeC=3&rgb=3&pixelType=int16.fake");
+    try {
+      check(reader);
+    }
+    finally {
+      reader.close();
+    }
+  }
+
+  @Test(expectedExceptions = FormatException.class)
+  public void testInvalidRequest() throws Exception {
+    File file = writeFile(".tif", TiffWriter.COMPRESSION_LZW, 16, 1);
+    ImageReader reader = new ImageReader();
+    reader.setId(file.getAbsolutePath());
+    try {
+      List<TileRequest> tiles = new ArrayList<TileRequest>();
+      tiles.add(new TileRequest(0, 0, 0, 16, 16));
+      tiles.add(new TileRequest(0, WIDTH - 8, 0, 16, 16));
+      reader.openTiles(tiles);
+    }
+    finally {
+      reader.close();
+    }
+  }
+
+}
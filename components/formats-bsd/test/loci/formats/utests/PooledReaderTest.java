@@ -0,0 +1,243 @@
+/*
+ * #%L
+ * BSD implementations of Bio-Formats readers and writers
+ * %%
+ * Copyright (C) 2005 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.formats.utests;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import loci.formats.FormatException;
+import loci.formats.IFormatReader;
+import loci.formats.ImageReader;
+import loci.formats.PooledReader;
+import loci.formats.ReaderWrapper;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Tests that {@link PooledReader} returns the same pixels as a normally
+ * initialized reader when used from several threads.
+ */
+public class PooledReaderTest {
+
+  private static final String FILE =
+    "test&pixelType=uint16&sizeX=128&sizeY=96&sizeZ=3&series=3.fake";
+  private static final int POOL_SIZE = 3;
+
+  private IFormatReader reference;
+  private PooledReader pool;
+
+  @BeforeMethod
+  public void setUp() throws Exception {
+    reference = new ImageReader();
+    reference.setId(FILE);
+    pool = new PooledReader(new ImageReader(), POOL_SIZE);
+    pool.setId(FILE);
+  }
+
+  @AfterMethod
+  public void tearDown() throws Exception {
+    reference.close();
+    pool.close();
+  }
+
+  @Test
+  public void testConcurrentReads() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(POOL_SIZE * 2);
+    List<Future<byte[]>> results = new ArrayList<Future<byte[]>>();
+    try {
+      for (int i=0; i<30; i++) {
+        final int series = i % 3;
+        final int no = (i / 3) % 3;
+        final int x = i;
+        results.add(executor.submit(new Callable<byte[]>() {
+          @Override
+          public byte[] call() throws Exception {
+            return pool.openBytes(series, 0, no, x, 5, 64, 48);
+          }
+        }));
+      }
+      for (int i=0; i<results.size(); i++) {
+        reference.setSeries(i % 3);
+        byte[] expected = reference.openBytes((i / 3) % 3, i, 5, 64, 48);
+        assertTrue(Arrays.equals(expected, results.get(i).get()));
+      }
+    }
+    finally {
+      executor.shutdown();
+    }
+    assertTrue(pool.getCloneCount() >= 1);
+    assertTrue(pool.getCloneCount() <= POOL_SIZE);
+    assertEquals(0, pool.getSeries());
+  }
+
+  @Test
+  public void testReopen() throws Exception {
+    pool.openBytes(1, 0, 0);
+    assertEquals(1, pool.getCloneCount());
+    pool.close();
+    assertEquals(0, pool.getCloneCount());
+    pool.setId(FILE);
+    reference.setSeries(2);
+    assertTrue(Arrays.equals(reference.openBytes(2), pool.openBytes(2, 0, 2)));
+  }
+
+  @Test
+  public void testReopenWhileReading() throws Exception {
+    pool.close();
+    pool = new PooledReader(new GatedReader(new ImageReader()), 1);
+    pool.setId(FILE);
+    GatedReader.gate = new CountDownLatch(1);
+    GatedReader.active.set(0);
+    GatedReader.maxActive.set(0);
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      Future<byte[]> first = executor.submit(new PlaneRead(1));
+      while (GatedReader.active.get() == 0) {
+        Thread.sleep(10);
+      }
+
+      // the clone still in use counts towards the pool of the new file
+      pool.setId(FILE);
+      Future<byte[]> second = executor.submit(new PlaneRead(2));
+      Thread.sleep(200);
+      assertEquals(1, GatedReader.active.get());
+
+      GatedReader.gate.countDown();
+      reference.setSeries(1);
+      assertTrue(Arrays.equals(reference.openBytes(1), first.get()));
+      reference.setSeries(2);
+      assertTrue(Arrays.equals(reference.openBytes(1), second.get()));
+    }
+    finally {
+      GatedReader.gate.countDown();
+      GatedReader.gate = null;
+      executor.shutdown();
+    }
+    assertEquals(1, GatedReader.maxActive.get());
+    assertEquals(1, pool.getCloneCount());
+  }
+
+  @Test
+  public void testOpenCopy() throws Exception {
+    // copies only need the snapshot, not the wrapped reader's open file
+    pool.getReader().close(true);
+    IFormatReader copy = pool.openCopy();
+    try {
+      assertEquals(0, pool.getCloneCount());
+      assertEquals(pool.getCurrentFile(), copy.getCurrentFile());
+      assertEquals(pool.getSeriesCount(), copy.getSeriesCount());
+
+      // initializing the copy on the same file keeps its state
+      copy.setSeries(2);
+      copy.setId(FILE);
+      assertEquals(2, copy.getSeries());
+
+      // the copy stays usable once the pool is closed
+      pool.close();
+      reference.setSeries(2);
+      assertTrue(Arrays.equals(reference.openBytes(1), copy.openBytes(1)));
+    }
+    finally {
+      copy.close();
+    }
+  }
+
+  /** Reads plane 1 of the given series from the pool. */
+  private class PlaneRead implements Callable<byte[]> {
+
+    private final int series;
+
+    PlaneRead(int series) {
+      this.series = series;
+    }
+
+    @Override
+    public byte[] call() throws Exception {
+      return pool.openBytes(series, 0, 1);
+    }
+
+  }
+
+  /**
+   * Reader whose planes are not returned until the gate is opened, and that
+   * counts how many of its copies are reading at once.
+   */
+  public static class GatedReader extends ReaderWrapper {
+
+    static volatile CountDownLatch gate;
+    static final AtomicInteger active = new AtomicInteger();
+    static final AtomicInteger maxActive = new AtomicInteger();
+
+    public GatedReader() {
+      super();
+    }
+
+    public GatedReader(IFormatReader r) {
+      super(r);
+    }
+
+    @Override
+    public byte[] openBytes(int no) throws FormatException, IOException {
+      int count = active.incrementAndGet();
+      while (maxActive.get() < count) {
+        maxActive.compareAndSet(maxActive.get(), count);
+      }
+      try {
+        CountDownLatch latch = gate;
+        if (latch != null) latch.await();
+        return super.openBytes(no);
+      }
+      catch (InterruptedException e) {
+        throw new FormatException(e);
+      }
+      finally {
+        active.decrementAndGet();
+      }
+    }
+
+  }
+
+}
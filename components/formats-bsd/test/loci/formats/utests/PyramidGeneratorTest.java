@@ -0,0 +1,266 @@
+/*
+ * #%L
+ * BSD implementations of Bio-Formats readers and writers
+ * %%
+ * Copyright (C) 2005 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.formats.utests;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Random;
+
+import loci.common.DataTools;
+import loci.common.Location;
+import loci.formats.FormatTools;
+import loci.formats.IFormatReader;
+import loci.formats.ImageReader;
+import loci.formats.ImageTools;
+import loci.formats.PyramidGenerator;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+/**
+ * Tests that {@link PyramidGenerator} adds correctly averaged resolutions,
+ * and that it reuses stored tiles.
+ */
+public class PyramidGeneratorTest {
+
+  private IFormatReader reference;
+  private PyramidGenerator pyramid;
+
+  @DataProvider(name = "files")
+  public Object[][] createFiles() {
+    return new Object[][] {
+      {"test&pixelType=uint8&sizeX=1000&sizeY=600&sizeZ=2.fake"},
+      {"test&pixelType=int16&sizeX=601&sizeY=333.fake"},
+      {"test&pixelType=uint16&sizeX=777&sizeY=515&little=false.fake"},
+      {"test&pixelType=int32&sizeX=530&sizeY=530.fake"},
+      {"test&pixelType=float&sizeX=513&sizeY=300.fake"},
+      {"test&pixelType=double&sizeX=300&sizeY=513.fake"},
+      {"test&pixelType=uint8&sizeX=700&sizeY=300&sizeC=3&rgb=3&" +
+        "interleaved=true.fake"},
+      {"test&pixelType=uint16&sizeX=300&sizeY=700&sizeC=3&rgb=3&" +
+        "interleaved=false.fake"},
+    };
+  }
+
+  @AfterMethod
+  public void tearDown() throws Exception {
+    if (reference != null) reference.close();
+    if (pyramid != null) pyramid.close();
+  }
+
+  @Test
+  public void testResolutionCount() throws Exception {
+    setUp("test&sizeX=1000&sizeY=600.fake", null);
+    assertEquals(3, pyramid.getResolutionCount());
+    int[][] sizes = {{1000, 600}, {500, 300}, {250, 150}};
+    for (int r=0; r<sizes.length; r++) {
+      pyramid.setResolution(r);
+      assertEquals(r, pyramid.getResolution());
+      assertEquals(sizes[r][0], pyramid.getSizeX());
+      assertEquals(sizes[r][1], pyramid.getSizeY());
+    }
+    pyramid.setSeries(0);
+    assertEquals(0, pyramid.getResolution());
+    assertEquals(1000, pyramid.getSizeX());
+  }
+
+  @Test
+  public void testFlattenedResolutions() throws Exception {
+    String file = "test&sizeX=1000&sizeY=600.fake";
+    Location.mapId(file, file);
+    pyramid = new PyramidGenerator(new ImageReader());
+    pyramid.setId(file);
+    assertTrue(pyramid.hasFlattenedResolutions());
+    assertEquals(1, pyramid.getResolutionCount());
+  }
+
+  @Test(dataProvider = "files")
+  public void testAveraging(String file) throws Exception {
+    setUp(file, null);
+    int pixelType = pyramid.getPixelType();
+    for (int no=0; no<pyramid.getImageCount(); no++) {
+      double[] expected = getSamples(reference.openBytes(no), pixelType);
+      int width = reference.getSizeX();
+      int height = reference.getSizeY();
+      for (int r=1; r<pyramid.getResolutionCount(); r++) {
+        expected = downsample(expected, width, height);
+        width = (width + 1) / 2;
+        height = (height + 1) / 2;
+
+        pyramid.setResolution(r);
+        assertEquals(width, pyramid.getSizeX());
+        assertEquals(height, pyramid.getSizeY());
+        double[] actual = getSamples(pyramid.openBytes(no), pixelType);
+        assertEquals(expected.length, actual.length);
+        for (int i=0; i<expected.length; i++) {
+          // integer samples are rounded at each resolution
+          double tolerance = FormatTools.isFloatingPoint(pixelType) ?
+            1e-3 * Math.max(1, Math.abs(expected[i])) : 0.5;
+          assertTrue(file + " resolution " + r + " sample " + i,
+            Math.abs(expected[i] - actual[i]) <= tolerance);
+        }
+        expected = actual;
+      }
+      pyramid.setResolution(0);
+    }
+  }
+
+  @Test(dataProvider = "files")
+  public void testRegions(String file) throws Exception {
+    setUp(file, null);
+    Random random = new Random(file.hashCode());
+    for (int r=1; r<pyramid.getResolutionCount(); r++) {
+      pyramid.setResolution(r);
+      int sizeX = pyramid.getSizeX();
+      int sizeY = pyramid.getSizeY();
+      byte[] plane = pyramid.openBytes(0);
+      for (int i=0; i<20; i++) {
+        int x = random.nextInt(sizeX);
+        int y = random.nextInt(sizeY);
+        int w = 1 + random.nextInt(sizeX - x);
+        int h = 1 + random.nextInt(sizeY - y);
+        byte[] expected = new byte[FormatTools.getPlaneSize(pyramid, w, h)];
+        ImageTools.copyRegion(plane, sizeX, sizeY, x, y,
+          expected, w, h, 0, 0, w, h,
+          FormatTools.getBytesPerPixel(pyramid.getPixelType()),
+          pyramid.getRGBChannelCount(), pyramid.isInterleaved());
+        assertTrue(Arrays.equals(expected, pyramid.openBytes(0, x, y, w, h)));
+      }
+    }
+  }
+
+  @Test
+  public void testTileStore() throws Exception {
+    File dir = File.createTempFile("pyramid", "");
+    dir.delete();
+    dir.mkdir();
+    try {
+      String file = "test&pixelType=uint16&sizeX=1024&sizeY=1024.fake";
+      setUp(file, dir);
+      pyramid.setResolution(2);
+      byte[] plane = pyramid.openBytes(0);
+      File store = pyramid.getTileStore(file);
+      assertTrue(store.isDirectory());
+      // the 256x256 tile at resolution 2, and the 4 tiles it is built from
+      File tile = new File(store, "s0_r2_p0_0_0.tile");
+      assertTrue(tile.exists());
+      assertEquals(6, store.listFiles().length);
+      pyramid.close();
+
+      // stored tiles are used instead of being built again
+      RandomAccessFile raf = new RandomAccessFile(tile, "rw");
+      raf.write(new byte[] {-1, -1});
+      raf.close();
+      setUp(file, dir);
+      pyramid.setResolution(2);
+      byte[] stored = pyramid.openBytes(0);
+      assertFalse(Arrays.equals(plane, stored));
+      assertTrue(Arrays.equals(Arrays.copyOfRange(plane, 2, plane.length),
+        Arrays.copyOfRange(stored, 2, stored.length)));
+      pyramid.close();
+    }
+    finally {
+      delete(dir);
+    }
+  }
+
+  private void setUp(String file, File directory) throws Exception {
+    Location.mapId(file, file);
+    reference = new ImageReader();
+    reference.setId(file);
+    pyramid = new PyramidGenerator(new ImageReader(), directory);
+    pyramid.setFlattenedResolutions(false);
+    pyramid.setId(file);
+  }
+
+  private void delete(File f) {
+    File[] files = f.listFiles();
+    if (files != null) {
+      for (File child : files) delete(child);
+    }
+    f.delete();
+  }
+
+  /** Converts the given plane to one double per sample. */
+  private double[] getSamples(byte[] plane, int pixelType) {
+    int bpp = FormatTools.getBytesPerPixel(pixelType);
+    boolean little = pyramid.isLittleEndian();
+    boolean signed = FormatTools.isSigned(pixelType);
+    double[] samples = new double[plane.length / bpp];
+    for (int i=0; i<samples.length; i++) {
+      if (pixelType == FormatTools.FLOAT) {
+        samples[i] = DataTools.bytesToFloat(plane, i * bpp, little);
+      }
+      else if (pixelType == FormatTools.DOUBLE) {
+        samples[i] = DataTools.bytesToDouble(plane, i * bpp, little);
+      }
+      else {
+        long value = DataTools.bytesToLong(plane, i * bpp, bpp, little);
+        if (signed && value >= 1L << (8 * bpp - 1)) value -= 1L << (8 * bpp);
+        samples[i] = value;
+      }
+    }
+    return samples;
+  }
+
+  /** Averages each 2x2 block of the given samples. */
+  private double[] downsample(double[] samples, int width, int height) {
+    int channels = pyramid.getRGBChannelCount();
+    boolean interleaved = pyramid.isInterleaved();
+    int w = (width + 1) / 2;
+    int h = (height + 1) / 2;
+    double[] result = new double[w * h * channels];
+    int[] counts = new int[result.length];
+    for (int c=0; c<channels; c++) {
+      for (int y=0; y<height; y++) {
+        for (int x=0; x<width; x++) {
+          int src = interleaved ? (y * width + x) * channels + c :
+            (c * height + y) * width + x;
+          int dest = interleaved ? ((y / 2) * w + x / 2) * channels + c :
+            (c * h + y / 2) * w + x / 2;
+          result[dest] += samples[src];
+          counts[dest]++;
+        }
+      }
+    }
+    for (int i=0; i<result.length; i++) result[i] /= counts[i];
+    return result;
+  }
+
+}
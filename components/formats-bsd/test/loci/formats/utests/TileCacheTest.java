@@ -0,0 +1,183 @@
+/*
+ * #%L
+ * BSD implementations of Bio-Formats readers and writers
+ * %%
+ * Copyright (C) 2005 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.formats.utests;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import loci.common.Location;
+import loci.formats.IFormatReader;
+import loci.formats.ImageReader;
+import loci.formats.TileCache;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+/**
+ * Tests that {@link TileCache} returns the same pixels as the wrapped
+ * reader, and that tiles are reused and evicted as expected.
+ */
+public class TileCacheTest {
+
+  private IFormatReader reference;
+  private TileCache cache;
+
+  @DataProvider(name = "files")
+  public Object[][] createFiles() {
+    return new Object[][] {
+      {"test&pixelType=uint16&sizeX=512&sizeY=1024&sizeT=2.fake"},
+      {"test&pixelType=uint8&sizeX=300&sizeY=700&sizeC=3&rgb=3&" +
+        "interleaved=true.fake"},
+      {"test&pixelType=int16&sizeX=300&sizeY=700&sizeC=3&rgb=3&" +
+        "interleaved=false.fake"},
+    };
+  }
+
+  @AfterMethod
+  public void tearDown() throws Exception {
+    if (reference != null) reference.close();
+    if (cache != null) cache.close();
+  }
+
+  @Test(dataProvider = "files")
+  public void testRegions(String file) throws Exception {
+    setUp(file, TileCache.DEFAULT_MAX_BYTES);
+    Random random = new Random(file.hashCode());
+    for (int i=0; i<50; i++) {
+      int no = random.nextInt(cache.getImageCount());
+      int x = random.nextInt(cache.getSizeX());
+      int y = random.nextInt(cache.getSizeY());
+      int w = 1 + random.nextInt(cache.getSizeX() - x);
+      int h = 1 + random.nextInt(cache.getSizeY() - y);
+      assertTrue(Arrays.equals(reference.openBytes(no, x, y, w, h),
+        cache.openBytes(no, x, y, w, h)));
+    }
+    assertTrue(Arrays.equals(reference.openBytes(0), cache.openBytes(0)));
+    assertTrue(cache.getHitCount() > 0);
+  }
+
+  @Test
+  public void testHitsAndMisses() throws Exception {
+    setUp("test&pixelType=uint8&sizeX=256&sizeY=256.fake",
+      TileCache.DEFAULT_MAX_BYTES);
+    cache.openBytes(0, 10, 10, 20, 20);
+    assertEquals(0, cache.getHitCount());
+    assertEquals(1, cache.getMissCount());
+    cache.openBytes(0, 12, 15, 20, 20);
+    assertEquals(1, cache.getHitCount());
+    assertEquals(1, cache.getMissCount());
+    assertEquals(256 * 256, cache.getCachedBytes());
+
+    cache.close(true);
+    assertEquals(0, cache.getCachedBytes());
+    assertEquals(0, cache.getCachedTileCount());
+  }
+
+  @Test
+  public void testEviction() throws Exception {
+    String file = "test&pixelType=uint8&sizeX=256&sizeY=256&sizeZ=4.fake";
+    setUp(file, 2 * 256 * 256);
+    for (int no=0; no<4; no++) {
+      cache.openBytes(no);
+    }
+    assertEquals(2, cache.getCachedTileCount());
+    assertEquals(2, cache.getEvictionCount());
+    assertEquals(2 * 256 * 256, cache.getCachedBytes());
+
+    // the most recently used planes are retained
+    cache.openBytes(3);
+    assertEquals(1, cache.getHitCount());
+    cache.openBytes(0);
+    assertEquals(1, cache.getHitCount());
+    assertEquals(3, cache.getEvictionCount());
+
+    cache.setMaximumBytes(0);
+    assertEquals(0, cache.getCachedTileCount());
+    assertTrue(Arrays.equals(reference.openBytes(1), cache.openBytes(1)));
+    assertEquals(0, cache.getCachedTileCount());
+  }
+
+  @Test
+  public void testConcurrentSeries() throws Exception {
+    setUp("test&pixelType=uint8&sizeX=256&sizeY=256&series=2.fake",
+      TileCache.DEFAULT_MAX_BYTES);
+    final byte[][] result = new byte[1][];
+    final Exception[] failure = new Exception[1];
+    Thread reader = new Thread() {
+      @Override
+      public void run() {
+        try {
+          result[0] = cache.openBytes(0);
+        }
+        catch (Exception e) {
+          failure[0] = e;
+        }
+      }
+    };
+
+    // switch series while the request for series 0 waits to be decoded
+    synchronized (cache.getReader()) {
+      reader.start();
+      while (reader.getState() != Thread.State.BLOCKED) {
+        if (!reader.isAlive()) break;
+        Thread.yield();
+      }
+      cache.setSeries(1);
+    }
+    reader.join();
+    if (failure[0] != null) throw failure[0];
+    assertEquals(1, cache.getSeries());
+    assertTrue(Arrays.equals(reference.openBytes(0), result[0]));
+
+    reference.setSeries(1);
+    assertTrue(Arrays.equals(reference.openBytes(0), cache.openBytes(0)));
+    assertEquals(0, cache.getHitCount());
+    cache.setSeries(0);
+    reference.setSeries(0);
+    assertTrue(Arrays.equals(reference.openBytes(0), cache.openBytes(0)));
+    assertEquals(1, cache.getHitCount());
+  }
+
+  private void setUp(String file, long maxBytes) throws Exception {
+    Location.mapId(file, file);
+    reference = new ImageReader();
+    reference.setId(file);
+    cache = new TileCache(new ImageReader(), maxBytes);
+    cache.setId(file);
+  }
+
+}
@@ -0,0 +1,180 @@
+/*
+ * #%L
+ * BSD implementations of Bio-Formats readers and writers
+ * %%
+ * Copyright (C) 2005 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.formats.utests;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+
+import loci.common.RandomAccessInputStream;
+import loci.formats.codec.JPEG2000Codec;
+import loci.formats.codec.JPEG2000CodecOptions;
+import loci.formats.in.JPEG2000MetadataParser;
+import loci.formats.in.JPEG2000Reader;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+/**
+ * Checks that region reads from tiled JPEG 2000 codestreams, which decode
+ * only the intersecting tiles, match the original pixels.
+ */
+public class TiledJPEG2000Test {
+
+  private static final int WIDTH = 300;
+  private static final int HEIGHT = 200;
+
+  @DataProvider(name = "codestreams")
+  public Object[][] createCodestreams() {
+    return new Object[][] {
+      {1, 1, 64, false},
+      {3, 1, 64, true},
+      {1, 2, 128, true},
+      {1, 1, 0, false},
+    };
+  }
+
+  private byte[] createPixels(int channels, int bytes) {
+    byte[] pixels = new byte[WIDTH * HEIGHT * channels * bytes];
+    for (int i=0; i<pixels.length; i++) {
+      pixels[i] = (byte) ((i / 3) * 7 + (i / (WIDTH * channels * bytes)));
+    }
+    return pixels;
+  }
+
+  private File writeFile(byte[] pixels, int channels, int bytes, int tileSize,
+    boolean box) throws Exception
+  {
+    JPEG2000CodecOptions options = JPEG2000CodecOptions.getDefaultOptions();
+    options.width = WIDTH;
+    options.height = HEIGHT;
+    options.channels = channels;
+    options.bitsPerSample = bytes * 8;
+    options.interleaved = true;
+    options.littleEndian = false;
+    options.lossless = true;
+    options.writeBox = box;
+    options.tileWidth = tileSize;
+    options.tileHeight = tileSize;
+    byte[] data = new JPEG2000Codec().compress(pixels, options);
+
+    File file = File.createTempFile("tiledj2k", box ? ".jp2" : ".j2k");
+    file.deleteOnExit();
+    FileOutputStream out = new FileOutputStream(file);
+    out.write(data);
+    out.close();
+    return file;
+  }
+
+  @Test(dataProvider = "codestreams")
+  public void testRegions(int channels, int bytes, int tileSize, boolean box)
+    throws Exception
+  {
+    byte[] pixels = createPixels(channels, bytes);
+    File file = writeFile(pixels, channels, bytes, tileSize, box);
+    RandomAccessInputStream in =
+      new RandomAccessInputStream(file.getAbsolutePath());
+    try {
+      JPEG2000MetadataParser parser = new JPEG2000MetadataParser(in);
+      if (tileSize > 0) {
+        assertNotNull(parser.getTileIndex());
+        assertEquals(parser.getTileIndex().getTileCount(),
+          ((WIDTH + tileSize - 1) / tileSize) *
+          ((HEIGHT + tileSize - 1) / tileSize));
+      }
+      else if (parser.getTileIndex() != null) {
+        assertEquals(parser.getTileIndex().getTileCount(), 1);
+      }
+    }
+    finally {
+      in.close();
+    }
+
+    int[][] regions = {
+      {0, 0, WIDTH, HEIGHT},
+      {70, 10, 100, 60},
+      {0, 127, 20, 3},
+      {WIDTH - 1, HEIGHT - 1, 1, 1},
+      {63, 63, 2, 2},
+    };
+    int pixel = channels * bytes;
+    JPEG2000Reader reader = new JPEG2000Reader();
+    try {
+      reader.setId(file.getAbsolutePath());
+      assertEquals(reader.getSizeX(), WIDTH);
+      assertEquals(reader.getSizeY(), HEIGHT);
+      for (int[] r : regions) {
+        byte[] region = reader.openBytes(0, r[0], r[1], r[2], r[3]);
+        assertEquals(region.length, r[2] * r[3] * pixel);
+        for (int row=0; row<r[3]; row++) {
+          for (int i=0; i<r[2] * pixel; i++) {
+            int expected = ((r[1] + row) * WIDTH + r[0]) * pixel + i;
+            if (region[row * r[2] * pixel + i] != pixels[expected]) {
+              assertEquals(region[row * r[2] * pixel + i], pixels[expected],
+                "region " + r[0] + "," + r[1] + " row " + row + " byte " + i);
+            }
+          }
+        }
+      }
+    }
+    finally {
+      reader.close();
+      file.delete();
+    }
+  }
+
+  @Test
+  public void testUntiled() throws Exception {
+    byte[] pixels = createPixels(1, 1);
+    File file = writeFile(pixels, 1, 1, 0, false);
+    RandomAccessInputStream in =
+      new RandomAccessInputStream(file.getAbsolutePath());
+    try {
+      JPEG2000MetadataParser parser = new JPEG2000MetadataParser(in);
+      if (parser.getTileIndex() != null) {
+        assertEquals(parser.getTileIndex().getTileCount(), 1);
+      }
+      else {
+        assertNull(parser.getTileIndex());
+      }
+    }
+    finally {
+      in.close();
+      file.delete();
+    }
+  }
+
+}
@@ -0,0 +1,217 @@
+/*
+ * #%L
+ * BSD implementations of Bio-Formats readers and writers
+ * %%
+ * Copyright (C) 2005 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.formats.utests;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import loci.common.RandomAccessInputStream;
+import loci.common.services.ServiceFactory;
+import loci.formats.FormatException;
+import loci.formats.MetadataTools;
+import loci.formats.codec.JPEG2000Codec;
+import loci.formats.codec.JPEG2000CodecOptions;
+import loci.formats.in.JPEG2000MetadataParser;
+import loci.formats.in.JPEG2000Reader;
+import loci.formats.in.JPEG2000TileIndex;
+import loci.formats.meta.IMetadata;
+import loci.formats.out.JPEG2000Writer;
+import loci.formats.services.OMEXMLService;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+/**
+ * Checks that tiled JPEG 2000 files written tile by tile decode to the
+ * original pixels, and that at every resolution the tiles decode to the
+ * same samples one at a time as they do in the whole codestream.
+ */
+public class TiledJPEG2000WriterTest {
+
+  private static final int WIDTH = 300;
+  private static final int HEIGHT = 200;
+
+  @DataProvider(name = "tilings")
+  public Object[][] createTilings() {
+    return new Object[][] {
+      {1, 1, 64, true},
+      {3, 1, 64, false},
+      {1, 2, 128, true},
+      {1, 1, 16, true},
+    };
+  }
+
+  private byte[] createPixels(int channels, int bytes) {
+    Random random = new Random(WIDTH);
+    byte[] pixels = new byte[WIDTH * HEIGHT * channels * bytes];
+    for (int i=0; i<pixels.length; i++) {
+      pixels[i] = (byte) ((i / 5) * 3 + random.nextInt(8));
+    }
+    return pixels;
+  }
+
+  private JPEG2000Writer createWriter(File file, int channels, int bytes)
+    throws Exception
+  {
+    ServiceFactory factory = new ServiceFactory();
+    OMEXMLService service = factory.getInstance(OMEXMLService.class);
+    IMetadata metadata = service.createOMEXMLMetadata();
+    MetadataTools.populateMetadata(metadata, 0, "tiled", false, "XYCZT",
+      bytes == 1 ? "uint8" : "uint16", WIDTH, HEIGHT, 1, channels, 1,
+      channels);
+    JPEG2000Writer writer = new JPEG2000Writer();
+    writer.setMetadataRetrieve(metadata);
+    writer.setInterleaved(true);
+    writer.setId(file.getAbsolutePath());
+    return writer;
+  }
+
+  private byte[] getRegion(byte[] pixels, int pixel, int x, int y, int w,
+    int h)
+  {
+    byte[] region = new byte[w * h * pixel];
+    for (int row=0; row<h; row++) {
+      System.arraycopy(pixels, ((y + row) * WIDTH + x) * pixel, region,
+        row * w * pixel, w * pixel);
+    }
+    return region;
+  }
+
+  @Test(dataProvider = "tilings")
+  public void testTiles(int channels, int bytes, int tileSize,
+    boolean shuffle) throws Exception
+  {
+    byte[] pixels = createPixels(channels, bytes);
+    int pixel = channels * bytes;
+    File file = File.createTempFile("tiledj2kwriter", ".jp2");
+    file.deleteOnExit();
+
+    JPEG2000Writer writer = createWriter(file, channels, bytes);
+    assertEquals(writer.setTileSizeX(tileSize + 1), tileSize);
+    assertEquals(writer.setTileSizeY(tileSize), tileSize);
+    List<int[]> tiles = new ArrayList<int[]>();
+    for (int y=0; y<HEIGHT; y+=tileSize) {
+      for (int x=0; x<WIDTH; x+=tileSize) {
+        tiles.add(new int[] {x, y, Math.min(tileSize, WIDTH - x),
+          Math.min(tileSize, HEIGHT - y)});
+      }
+    }
+    if (shuffle) {
+      Collections.shuffle(tiles, new Random(tileSize));
+    }
+    for (int[] tile : tiles) {
+      writer.saveBytes(0, getRegion(pixels, pixel, tile[0], tile[1],
+        tile[2], tile[3]), tile[0], tile[1], tile[2], tile[3]);
+    }
+    writer.close();
+
+    JPEG2000Reader reader = new JPEG2000Reader();
+    try {
+      reader.setId(file.getAbsolutePath());
+      assertEquals(reader.getSizeX(), WIDTH);
+      assertEquals(reader.getSizeY(), HEIGHT);
+      assertEquals(reader.getRGBChannelCount(), channels);
+      assertEquals(reader.openBytes(0), pixels);
+      assertEquals(reader.openBytes(0, 50, 70, 100, 60),
+        getRegion(pixels, pixel, 50, 70, 100, 60));
+    }
+    finally {
+      reader.close();
+    }
+
+    // at every resolution, the assembled codestream decodes as a whole to
+    // the same samples as its tiles decoded one at a time
+    byte[] data = Files.readAllBytes(file.toPath());
+    int levels = Math.min(5, Integer.numberOfTrailingZeros(tileSize));
+    RandomAccessInputStream in = new RandomAccessInputStream(data);
+    try {
+      JPEG2000TileIndex index = new JPEG2000MetadataParser(in).getTileIndex();
+      assertNotNull(index);
+      assertEquals(index.getTileCount(), tiles.size());
+      for (int resolution=0; resolution<=levels; resolution++) {
+        int scale = 1 << (levels - resolution);
+        int width = (WIDTH + scale - 1) / scale;
+        JPEG2000CodecOptions options =
+          JPEG2000CodecOptions.getDefaultOptions();
+        options.interleaved = true;
+        options.resolution = resolution;
+        byte[] whole = new JPEG2000Codec().decompress(data, options);
+        assertEquals(whole.length,
+          width * ((HEIGHT + scale - 1) / scale) * pixel);
+
+        byte[] assembled = new byte[whole.length];
+        for (int tile=0; tile<index.getTileCount(); tile++) {
+          int[] bounds = index.getTileBounds(tile);
+          int x = bounds[0] / scale;
+          int y = bounds[1] / scale;
+          int w = (bounds[2] + scale - 1) / scale - x;
+          int h = (bounds[3] + scale - 1) / scale - y;
+          byte[] decoded = new JPEG2000Codec().decompress(
+            index.getTileCodestream(in, tile), options);
+          assertEquals(decoded.length, w * h * pixel);
+          for (int row=0; row<h; row++) {
+            System.arraycopy(decoded, row * w * pixel, assembled,
+              ((y + row) * width + x) * pixel, w * pixel);
+          }
+        }
+        assertEquals(assembled, whole, "resolution " + resolution);
+      }
+    }
+    finally {
+      in.close();
+    }
+  }
+
+  @Test(expectedExceptions = FormatException.class)
+  public void testMisalignedRegion() throws Exception {
+    File file = File.createTempFile("tiledj2kwriter", ".jp2");
+    file.deleteOnExit();
+    JPEG2000Writer writer = createWriter(file, 1, 1);
+    try {
+      writer.setTileSizeX(64);
+      writer.setTileSizeY(64);
+      writer.saveBytes(0, new byte[64 * 64], 32, 0, 64, 64);
+    }
+    finally {
+      writer.close();
+    }
+  }
+
+}
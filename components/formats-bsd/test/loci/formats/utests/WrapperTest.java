@@ -48,8 +48,11 @@ import loci.formats.FileStitcher;
 import loci.formats.FormatException;
 import loci.formats.IFormatReader;
 import loci.formats.ImageReader;
+import loci.formats.InstrumentedReader;
 import loci.formats.Memoizer;
 import loci.formats.MinMaxCalculator;
+import loci.formats.PyramidGenerator;
+import loci.formats.TileCache;
 
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
@@ -71,8 +74,11 @@ public class WrapperTest {
       {new DimensionSwapper()},
       {new FileStitcher()},
       {new ImageReader()},
+      {new InstrumentedReader()},
       {new MinMaxCalculator()},
-      {new Memoizer()}
+      {new Memoizer()},
+      {new PyramidGenerator()},
+      {new TileCache()}
     };
     for (int i=0; i<wrappers.length; i++) {
       IFormatReader reader = (IFormatReader) wrappers[i][0];
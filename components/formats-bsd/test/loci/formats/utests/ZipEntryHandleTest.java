@@ -0,0 +1,249 @@
+/*
+ * #%L
+ * BSD implementations of Bio-Formats readers and writers
+ * %%
+ * Copyright (C) 2005 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.formats.utests;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import loci.common.Location;
+import loci.common.RandomAccessInputStream;
+import loci.formats.IFormatReader;
+import loci.formats.ImageWriter;
+import loci.formats.MetadataTools;
+import loci.formats.in.TiffReader;
+import loci.formats.in.ZipEntryHandle;
+import loci.formats.in.ZipReader;
+import loci.formats.meta.IMetadata;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ * Checks random access reads from STORED and DEFLATED ZIP entries.
+ */
+public class ZipEntryHandleTest {
+
+  private static final String[] NAMES = {
+    "stored.bin", "deflated.bin", "level0.bin", "small.txt"
+  };
+
+  private File zipFile;
+  private byte[][] contents;
+
+  @BeforeClass
+  public void setUp() throws Exception {
+    Random random = new Random(4);
+    byte[] large = new byte[3 * 1024 * 1024 + 12345];
+    for (int i=0; i<large.length; i++) {
+      // mix of literals and repeats so that dynamic blocks have matches
+      large[i] = (byte) (i % 1000 < 300 ? random.nextInt(256) : i / 7);
+    }
+    byte[] small = "small entry, small entry, small entry".getBytes("UTF-8");
+    contents = new byte[][] {large, large, large, small};
+
+    zipFile = File.createTempFile("zipentryhandle", ".zip");
+    zipFile.deleteOnExit();
+    ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(zipFile));
+    for (int i=0; i<NAMES.length; i++) {
+      ZipEntry entry = new ZipEntry(NAMES[i]);
+      if (i == 0) {
+        CRC32 crc = new CRC32();
+        crc.update(contents[i]);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(contents[i].length);
+        entry.setCrc(crc.getValue());
+      }
+      zip.setLevel(i == 2 ? Deflater.NO_COMPRESSION :
+        Deflater.DEFAULT_COMPRESSION);
+      zip.putNextEntry(entry);
+      zip.write(contents[i]);
+      zip.closeEntry();
+    }
+    zip.close();
+  }
+
+  @AfterClass
+  public void tearDown() {
+    zipFile.delete();
+  }
+
+  private List<ZipEntryHandle> getEntries() throws Exception {
+    // NB: RandomAccessInputStream(String) would open the first entry
+    String id = zipFile.getAbsolutePath();
+    RandomAccessInputStream in =
+      new RandomAccessInputStream(Location.getHandle(id, false, false), id);
+    try {
+      return ZipEntryHandle.getEntries(in, id);
+    }
+    finally {
+      in.close();
+    }
+  }
+
+  @Test
+  public void testEntries() throws Exception {
+    List<ZipEntryHandle> entries = getEntries();
+    assertEquals(entries.size(), NAMES.length);
+    for (int i=0; i<NAMES.length; i++) {
+      ZipEntryHandle entry = entries.get(i);
+      assertEquals(entry.getEntryName(), NAMES[i]);
+      assertEquals(entry.length(), contents[i].length);
+      assertEquals(entry.getMethod(),
+        i == 0 ? ZipEntry.STORED : ZipEntry.DEFLATED);
+      assertTrue(entry.isSupported());
+    }
+  }
+
+  @Test
+  public void testSequentialRead() throws Exception {
+    List<ZipEntryHandle> entries = getEntries();
+    for (int i=0; i<NAMES.length; i++) {
+      ZipEntryHandle entry = entries.get(i);
+      byte[] b = new byte[contents[i].length];
+      entry.readFully(b);
+      assertEquals(b, contents[i], NAMES[i]);
+      assertEquals(entry.read(new byte[1]), 0, NAMES[i]);
+      entry.close();
+    }
+  }
+
+  @Test
+  public void testRandomRead() throws Exception {
+    List<ZipEntryHandle> entries = getEntries();
+    Random random = new Random(19);
+    for (int i=0; i<3; i++) {
+      ZipEntryHandle entry = entries.get(i);
+      byte[] expected = contents[i];
+      for (int n=0; n<60; n++) {
+        int len = random.nextInt(70000) + 1;
+        int pos = random.nextInt(expected.length - len);
+        byte[] b = new byte[len];
+        entry.seek(pos);
+        entry.readFully(b);
+        assertEquals(entry.getFilePointer(), pos + len);
+        for (int j=0; j<len; j++) {
+          if (b[j] != expected[pos + j]) {
+            assertEquals(b[j], expected[pos + j],
+              NAMES[i] + " at offset " + (pos + j));
+          }
+        }
+      }
+
+      int pos = expected.length - 8;
+      entry.seek(pos);
+      int value = entry.readInt();
+      assertEquals(value, ((expected[pos] & 0xff) << 24) |
+        ((expected[pos + 1] & 0xff) << 16) |
+        ((expected[pos + 2] & 0xff) << 8) | (expected[pos + 3] & 0xff));
+      entry.close();
+    }
+  }
+
+  @Test
+  public void testReadAfterClose() throws Exception {
+    ZipEntryHandle entry = getEntries().get(1);
+    byte[] b = new byte[100];
+    entry.seek(contents[1].length - 100);
+    entry.readFully(b);
+    entry.close();
+    entry.seek(2 * 1024 * 1024);
+    entry.readFully(b);
+    for (int j=0; j<b.length; j++) {
+      assertEquals(b[j], contents[1][2 * 1024 * 1024 + j]);
+    }
+    entry.close();
+  }
+
+  @Test
+  public void testZipReader() throws Exception {
+    File tiff = File.createTempFile("zipentryhandle", ".tif");
+    tiff.deleteOnExit();
+    tiff.delete();
+    IMetadata meta = MetadataTools.createOMEXMLMetadata();
+    MetadataTools.populateMetadata(meta, 0, tiff.getName(), false, "XYZCT",
+      "uint8", 64, 48, 3, 1, 1, 1);
+    ImageWriter writer = new ImageWriter();
+    writer.setMetadataRetrieve(meta);
+    writer.setId(tiff.getAbsolutePath());
+    for (int no=0; no<3; no++) {
+      byte[] plane = new byte[64 * 48];
+      for (int i=0; i<plane.length; i++) {
+        plane[i] = (byte) (i * 3 + no);
+      }
+      writer.saveBytes(no, plane);
+    }
+    writer.close();
+
+    File zip = new File(tiff.getAbsolutePath() + ".zip");
+    zip.deleteOnExit();
+    ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zip));
+    out.putNextEntry(new ZipEntry(tiff.getName()));
+    RandomAccessInputStream in =
+      new RandomAccessInputStream(tiff.getAbsolutePath());
+    byte[] data = new byte[(int) in.length()];
+    in.readFully(data);
+    in.close();
+    out.write(data);
+    out.closeEntry();
+    out.close();
+
+    IFormatReader expected = new TiffReader();
+    IFormatReader actual = new ZipReader();
+    try {
+      expected.setId(tiff.getAbsolutePath());
+      actual.setId(zip.getAbsolutePath());
+      assertEquals(actual.getImageCount(), expected.getImageCount());
+      for (int no=actual.getImageCount()-1; no>=0; no--) {
+        assertEquals(actual.openBytes(no), expected.openBytes(no));
+      }
+    }
+    finally {
+      expected.close();
+      actual.close();
+      tiff.delete();
+      zip.delete();
+    }
+    assertEquals(Location.getMappedFile(tiff.getName()), null);
+  }
+
+}
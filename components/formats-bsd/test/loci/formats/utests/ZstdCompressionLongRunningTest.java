@@ -0,0 +1,127 @@
+/*
+ * #%L
+ * BSD implementations of Bio-Formats readers and writers
+ * %%
+ * Copyright (C) 2016 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.formats.utests;
+
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.util.Arrays;
+
+import loci.formats.codec.CodecOptions;
+import loci.formats.codec.ZstdCodec;
+import loci.formats.in.FakeReader;
+import loci.formats.tiff.IFD;
+import loci.formats.tiff.TiffCompression;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.SkipException;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+/**
+ * Benchmarks Zstandard against Deflate on FakeReader-generated planes,
+ * with and without horizontal differencing.  Compression ratios and
+ * throughput are logged; each plane must survive a round trip.
+ */
+public class ZstdCompressionLongRunningTest {
+
+  private static final Logger LOGGER =
+    LoggerFactory.getLogger(ZstdCompressionLongRunningTest.class);
+
+  private static final String FAKE_FILE =
+    "benchmark&pixelType=uint16&sizeX=2048&sizeY=2048&sizeZ=16.fake";
+
+  @DataProvider(name = "codecs")
+  public Object[][] createCodecs() {
+    return new Object[][] {
+      {TiffCompression.DEFLATE, false},
+      {TiffCompression.DEFLATE, true},
+      {TiffCompression.ZSTD, false},
+      {TiffCompression.ZSTD, true}
+    };
+  }
+
+  @Test(dataProvider = "codecs")
+  public void testCompression(TiffCompression compression, boolean predictor)
+    throws Exception
+  {
+    if (compression == TiffCompression.ZSTD && !ZstdCodec.isAvailable()) {
+      throw new SkipException(ZstdCodec.NO_ZSTD_MSG);
+    }
+    FakeReader reader = new FakeReader();
+    try {
+      reader.setId(FAKE_FILE);
+      IFD ifd = new IFD();
+      ifd.put(IFD.IMAGE_WIDTH, reader.getSizeX());
+      ifd.put(IFD.IMAGE_LENGTH, reader.getSizeY());
+      ifd.put(IFD.BITS_PER_SAMPLE, new int[] {reader.getBitsPerPixel()});
+      ifd.put(IFD.SAMPLES_PER_PIXEL, 1);
+      ifd.put(IFD.LITTLE_ENDIAN, reader.isLittleEndian());
+      ifd.put(IFD.PREDICTOR, predictor ? 2 : 1);
+      CodecOptions options = compression.getCompressionCodecOptions(ifd);
+
+      long rawBytes = 0, compressedBytes = 0;
+      long compressTime = 0, decompressTime = 0;
+      for (int i=0; i<reader.getImageCount(); i++) {
+        byte[] plane = reader.openBytes(i);
+        byte[] buf = plane.clone();
+
+        long start = System.nanoTime();
+        TiffCompression.difference(buf, ifd);
+        byte[] compressed = compression.compress(buf, options);
+        compressTime += System.nanoTime() - start;
+
+        options.maxBytes = plane.length;
+        start = System.nanoTime();
+        byte[] decompressed = compression.decompress(compressed, options);
+        TiffCompression.undifference(decompressed, ifd);
+        decompressTime += System.nanoTime() - start;
+
+        assertTrue(Arrays.equals(plane, decompressed));
+        rawBytes += plane.length;
+        compressedBytes += compressed.length;
+      }
+
+      double mb = rawBytes / (1024.0 * 1024.0);
+      LOGGER.info(String.format(
+        "%s (predictor=%b): ratio %.2f, compress %.1f MB/s, " +
+        "decompress %.1f MB/s", compression.getCodecName(), predictor,
+        (double) rawBytes / compressedBytes, mb / (compressTime / 1e9),
+        mb / (decompressTime / 1e9)));
+    }
+    finally {
+      reader.close();
+    }
+  }
+
+}
@@ -38,6 +38,7 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import loci.common.RandomAccessInputStream;
 import loci.formats.FormatException;
 import loci.formats.in.TiffReader;
 import loci.formats.in.OMETiffReader;
@@ -45,6 +46,8 @@ import loci.formats.in.DynamicMetadataOptions;
 import loci.formats.meta.IMetadata;
 import loci.formats.out.OMETiffWriter;
 import loci.formats.tiff.IFD;
+import loci.formats.tiff.TiffIFDEntry;
+import loci.formats.tiff.TiffParser;
 import ome.xml.model.enums.PixelType;
 import ome.xml.model.primitives.PositiveInteger;
 import org.testng.annotations.AfterMethod;
@@ -107,6 +110,11 @@ public class OMETiffWriterTest {
     return WriterUtilities.getData(tileSizes, channelCounts, seriesCounts, timeCounts, compressions, percentageOfSaveBytesTests);
   }
 
+  @DataProvider(name = "reservations")
+  public Object[][] createReservations() {
+    return new Object[][] {{0, false}, {16, false}, {65536, true}};
+  }
+
   @BeforeClass
   public void readProperty() throws Exception {
     percentageOfTilingTests = WriterUtilities.getPropValue("testng.runWriterTilingTests");
@@ -222,4 +230,43 @@ public class OMETiffWriterTest {
     cFile.deleteOnExit();
     wd.toFile().deleteOnExit();
   }
+
+  @Test(dataProvider = "reservations")
+  public void testReservedComment(int reserve, boolean inPlace)
+    throws Exception
+  {
+    File tmp = File.createTempFile("OMETiffWriterTest_Reserve", ".ome.tiff");
+    tmp.deleteOnExit();
+    DynamicMetadataOptions options = new DynamicMetadataOptions();
+    options.setInteger(OMETiffWriter.RESERVE_COMMENT_KEY, reserve);
+    int planeCount =
+      WriterUtilities.SIZE_Z * WriterUtilities.SIZE_C * WriterUtilities.SIZE_T;
+
+    OMETiffWriter rwriter = new OMETiffWriter();
+    rwriter.setMetadataOptions(options);
+    rwriter.setMetadataRetrieve(metadata);
+    rwriter.setId(tmp.getAbsolutePath());
+    byte[] img = new byte[WriterUtilities.SIZE_X * WriterUtilities.SIZE_Y];
+    for (int i = 0; i < planeCount; i++) {
+      rwriter.saveBytes(i, img);
+    }
+    rwriter.close();
+
+    try (RandomAccessInputStream in =
+      new RandomAccessInputStream(tmp.getAbsolutePath()))
+    {
+      TiffParser parser = new TiffParser(in);
+      long[] offsets = parser.getIFDOffsets();
+      assertEquals(offsets.length, planeCount);
+      TiffIFDEntry comment = parser.getFirstIFDEntry(IFD.IMAGE_DESCRIPTION);
+      assertEquals(comment.getValueOffset() < offsets[1], inPlace);
+    }
+
+    OMETiffReader reader = new OMETiffReader();
+    reader.setId(tmp.getAbsolutePath());
+    assertEquals(reader.getSizeX(), WriterUtilities.SIZE_X);
+    assertEquals(reader.getImageCount(), planeCount);
+    reader.close();
+    tmp.delete();
+  }
 }
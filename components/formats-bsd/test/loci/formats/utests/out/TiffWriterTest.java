@@ -36,11 +36,20 @@ import static org.testng.Assert.assertEquals;
 import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.junit.Assert;
 import loci.common.ByteArrayHandle;
 import loci.common.Location;
 import loci.common.services.ServiceFactory;
 import loci.formats.FormatException;
+import loci.formats.FormatTools;
+import loci.formats.in.DynamicMetadataOptions;
 import loci.formats.in.TiffReader;
 import loci.formats.meta.IMetadata;
 import loci.formats.out.TiffWriter;
@@ -469,4 +478,160 @@ public class TiffWriterTest {
     Location.mapFile(id, null);
   }
 
+  @Test
+  public void testPredictor() throws Exception {
+    File tmp = File.createTempFile("tiffWriterTest_Predictor", ".tiff");
+    tmp.deleteOnExit();
+    String pixelType = FormatTools.getPixelTypeString(FormatTools.UINT16);
+
+    DynamicMetadataOptions options = new DynamicMetadataOptions();
+    options.set(TiffWriter.PREDICTOR_KEY, "true");
+    TiffWriter tiffWriter = new TiffWriter();
+    tiffWriter.setMetadataOptions(options);
+    tiffWriter.setMetadataRetrieve(
+      WriterUtilities.createMetadata(pixelType, 1, 1, true, 1));
+    tiffWriter.setCompression(TiffWriter.COMPRESSION_ZLIB);
+    tiffWriter.setId(tmp.getAbsolutePath());
+    byte[] plane = WriterUtilities.getPlane(
+      WriterUtilities.PLANE_WIDTH, WriterUtilities.PLANE_HEIGHT, 2);
+    tiffWriter.saveBytes(0, plane);
+    tiffWriter.close();
+
+    TiffReader reader = new TiffReader();
+    reader.setId(tmp.getAbsolutePath());
+    IFD firstIFD = reader.getIFDs().get(0);
+    assertEquals(firstIFD.getIFDIntValue(IFD.PREDICTOR), 2);
+    assertEquals(reader.openBytes(0), plane);
+    reader.close();
+    tmp.delete();
+  }
+
+  @DataProvider(name = "compressedTiles")
+  public Object[][] createCompressedTiles() {
+    return new Object[][] {
+      {TiffWriter.COMPRESSION_UNCOMPRESSED, 1},
+      {TiffWriter.COMPRESSION_LZW, 1},
+      {TiffWriter.COMPRESSION_ZLIB, 3},
+    };
+  }
+
+  @Test(dataProvider = "compressedTiles")
+  public void testSaveCompressedBytes(String compression, int channels)
+    throws Exception
+  {
+    int tileSize = 64;
+    int bytes = 2;
+    byte[] plane = WriterUtilities.getPlane(
+      WriterUtilities.PLANE_WIDTH, WriterUtilities.PLANE_HEIGHT,
+      bytes * channels);
+
+    // write each tile through saveBytes, then compress the same tiles on
+    // several threads and write the compressed bytes in the same order
+    File expected = File.createTempFile("tiffWriterTest_Tiles", ".tiff");
+    expected.deleteOnExit();
+    TiffWriter tiffWriter = createTiledWriter(expected, compression,
+      channels, tileSize);
+    IFD tileIFD = new IFD();
+    for (int y=0; y<WriterUtilities.PLANE_HEIGHT; y+=tileSize) {
+      for (int x=0; x<WriterUtilities.PLANE_WIDTH; x+=tileSize) {
+        int w = Math.min(tileSize, WriterUtilities.PLANE_WIDTH - x);
+        int h = Math.min(tileSize, WriterUtilities.PLANE_HEIGHT - y);
+        tiffWriter.saveBytes(0, getTile(plane, channels, bytes, x, y, w, h),
+          tileIFD, x, y, w, h);
+      }
+    }
+    tiffWriter.close();
+
+    File actual = File.createTempFile("tiffWriterTest_Compressed", ".tiff");
+    actual.deleteOnExit();
+    final TiffWriter compressedWriter = createTiledWriter(actual, compression,
+      channels, tileSize);
+    final IFD layoutIFD = new IFD();
+    IFD compressedIFD = new IFD();
+    ExecutorService pool = Executors.newFixedThreadPool(4);
+    List<Future<byte[][]>> tiles = new ArrayList<Future<byte[][]>>();
+    List<int[]> regions = new ArrayList<int[]>();
+    for (int y=0; y<WriterUtilities.PLANE_HEIGHT; y+=tileSize) {
+      for (int x=0; x<WriterUtilities.PLANE_WIDTH; x+=tileSize) {
+        final int[] region = {x, y,
+          Math.min(tileSize, WriterUtilities.PLANE_WIDTH - x),
+          Math.min(tileSize, WriterUtilities.PLANE_HEIGHT - y)};
+        final byte[] tile = getTile(plane, channels, bytes,
+          region[0], region[1], region[2], region[3]);
+        regions.add(region);
+        tiles.add(pool.submit(new Callable<byte[][]>() {
+          @Override
+          public byte[][] call() throws Exception {
+            return compressedWriter.compressBytes(0, tile, layoutIFD,
+              region[0], region[1], region[2], region[3]);
+          }
+        }));
+      }
+    }
+    for (int i=0; i<regions.size(); i++) {
+      int[] region = regions.get(i);
+      compressedWriter.saveCompressedBytes(0, tiles.get(i).get(),
+        compressedIFD, region[0], region[1], region[2], region[3]);
+    }
+    pool.shutdown();
+    compressedWriter.close();
+
+    assertEquals(Files.readAllBytes(actual.toPath()),
+      Files.readAllBytes(expected.toPath()));
+
+    TiffReader reader = new TiffReader();
+    reader.setId(actual.getAbsolutePath());
+    assertEquals(reader.openBytes(0), plane);
+    reader.close();
+    expected.delete();
+    actual.delete();
+  }
+
+  @Test(expectedExceptions = FormatException.class)
+  public void testCompressBytesUnalignedTile() throws Exception {
+    File tmp = File.createTempFile("tiffWriterTest_Unaligned", ".tiff");
+    tmp.deleteOnExit();
+    TiffWriter tiffWriter = createTiledWriter(tmp,
+      TiffWriter.COMPRESSION_UNCOMPRESSED, 1, 64);
+    try {
+      tiffWriter.compressBytes(0, new byte[64 * 64 * 2], null, 16, 0, 64, 64);
+    }
+    finally {
+      tiffWriter.close();
+      tmp.delete();
+    }
+  }
+
+  private TiffWriter createTiledWriter(File file, String compression,
+    int channels, int tileSize)
+    throws Exception
+  {
+    TiffWriter tiffWriter = new TiffWriter();
+    tiffWriter.setMetadataRetrieve(WriterUtilities.createMetadata(
+      FormatTools.getPixelTypeString(FormatTools.UINT16), channels, 1,
+      true, 1));
+    tiffWriter.setCompression(compression);
+    tiffWriter.setInterleaved(false);
+    tiffWriter.setTileSizeX(tileSize);
+    tiffWriter.setTileSizeY(tileSize);
+    tiffWriter.setId(file.getAbsolutePath());
+    return tiffWriter;
+  }
+
+  /** Copies a region of a non-interleaved plane. */
+  private byte[] getTile(byte[] plane, int channels, int bytes,
+    int x, int y, int w, int h)
+  {
+    int planeSize = WriterUtilities.PLANE_WIDTH * WriterUtilities.PLANE_HEIGHT;
+    byte[] tile = new byte[w * h * channels * bytes];
+    for (int c=0; c<channels; c++) {
+      for (int row=0; row<h; row++) {
+        System.arraycopy(plane,
+          (c * planeSize + (y + row) * WriterUtilities.PLANE_WIDTH + x) * bytes,
+          tile, ((c * h + row) * w) * bytes, w * bytes);
+      }
+    }
+    return tile;
+  }
+
 }
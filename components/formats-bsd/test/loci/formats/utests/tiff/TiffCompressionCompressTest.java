@@ -41,9 +41,12 @@ import java.io.IOException;
 import loci.formats.FormatException;
 import loci.formats.codec.CodecOptions;
 import loci.formats.codec.JPEG2000CodecOptions;
+import loci.formats.codec.ZstdCodec;
+import loci.formats.codec.ZstdCodecOptions;
 import loci.formats.tiff.IFD;
 import loci.formats.tiff.TiffCompression;
 
+import org.testng.SkipException;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
@@ -188,6 +191,24 @@ public class TiffCompressionCompressTest {
     compression.compress(data, options);
   }
 
+  @Test
+  public void testZSTD() throws FormatException, IOException {
+    TiffCompression compression = TiffCompression.ZSTD;
+    ZstdCodecOptions opt = ZstdCodecOptions.getDefaultOptions();
+    opt.level = 9;
+    CodecOptions options = compression.getCompressionCodecOptions(ifd, opt);
+    assertTrue(options instanceof ZstdCodecOptions);
+    assertEquals(((ZstdCodecOptions) options).level, opt.level);
+    if (!ZstdCodec.isAvailable()) {
+      throw new SkipException(ZstdCodec.NO_ZSTD_MSG);
+    }
+    byte[] compressed = compression.compress(data, options);
+    assertNotNull(compressed);
+    options.maxBytes = data.length;
+    assertEquals(compression.decompress(compressed, options).length,
+      data.length);
+  }
+
   @Test(enabled=true)
   public void testJPEG_2000_ResetQuality() throws FormatException, IOException {
     TiffCompression compression = TiffCompression.JPEG_2000;
@@ -37,11 +37,13 @@ import static org.testng.AssertJUnit.assertFalse;
 import static org.testng.AssertJUnit.assertTrue;
 
 import java.io.IOException;
+import java.util.Arrays;
 
 import loci.common.ByteArrayHandle;
 import loci.common.RandomAccessInputStream;
 import loci.common.RandomAccessOutputStream;
 import loci.formats.FormatException;
+import loci.formats.FormatTools;
 import loci.formats.tiff.IFD;
 import loci.formats.tiff.TiffParser;
 import loci.formats.tiff.TiffSaver;
@@ -170,4 +172,81 @@ public class TiffSaverTest {
     assertTrue("new comment".equals(tiffParser.getComment()));
   }
 
+  @Test
+  public void testOverwriteIFDValueLength() throws FormatException, IOException {
+    out.seek(0);
+    tiffSaver.writeHeader();
+    tiffSaver.writeIFD(ifd, 0);
+    long length = out.length();
+
+    String comment = "a somewhat longer replacement comment";
+    tiffSaver.overwriteIFDValue(in, 0, IFD.IMAGE_DESCRIPTION, comment);
+    assertEquals(comment, tiffParser.getComment());
+    assertTrue(out.length() <= length + comment.length() + 1);
+  }
+
+
+  @Test
+  public void testNonSequentialTiledWrite() throws FormatException, IOException {
+    int size = 64;
+    int tileSize = 32;
+    int planes = 2;
+    // the IFD chain is only valid when the handle has no trailing capacity
+    ByteArrayHandle handle = new ByteArrayHandle();
+    out = new RandomAccessOutputStream(handle);
+    in = new RandomAccessInputStream(handle);
+    tiffSaver = new TiffSaver(out, handle);
+    tiffParser = new TiffParser(in);
+    tiffSaver.setLittleEndian(true);
+    tiffSaver.writeHeader();
+
+    byte[][] expected = new byte[planes][size * size];
+    for (int p=0; p<planes; p++) {
+      for (int i=0; i<expected[p].length; i++) {
+        expected[p][i] = (byte) (i * (p + 1));
+      }
+    }
+
+    // the first tile of each plane is written before any other tiles,
+    // then the remaining tiles of each plane are written in reverse order
+    for (int p=0; p<planes; p++) {
+      writeTile(expected[p], p, 0, 0, size, tileSize, p == planes - 1);
+    }
+    for (int p=0; p<planes; p++) {
+      for (int y=size-tileSize; y>=0; y-=tileSize) {
+        for (int x=size-tileSize; x>=0; x-=tileSize) {
+          if (x == 0 && y == 0) continue;
+          writeTile(expected[p], p, x, y, size, tileSize, p == planes - 1);
+        }
+      }
+    }
+
+    long[] offsets = tiffParser.getIFDOffsets();
+    assertTrue(Arrays.equals(offsets, tiffSaver.getWrittenIFDOffsets()));
+    assertEquals(planes, offsets.length);
+    for (int p=0; p<planes; p++) {
+      byte[] plane = new byte[size * size];
+      tiffParser.getSamples(tiffParser.getIFD(offsets[p]), plane);
+      assertTrue(Arrays.equals(expected[p], plane));
+    }
+  }
+
+  private void writeTile(byte[] plane, int no, int x, int y, int size,
+    int tileSize, boolean last)
+    throws FormatException, IOException
+  {
+    byte[] tile = new byte[tileSize * tileSize];
+    for (int row=0; row<tileSize; row++) {
+      System.arraycopy(plane, (y + row) * size + x, tile, row * tileSize,
+        tileSize);
+    }
+    IFD tileIFD = new IFD();
+    tileIFD.put(IFD.LITTLE_ENDIAN, Boolean.TRUE);
+    tileIFD.put(IFD.IMAGE_WIDTH, (long) size);
+    tileIFD.put(IFD.IMAGE_LENGTH, (long) size);
+    tileIFD.put(IFD.TILE_WIDTH, (long) tileSize);
+    tileIFD.put(IFD.TILE_LENGTH, (long) tileSize);
+    tiffSaver.writeImage(tile, tileIFD, no, FormatTools.UINT8, x, y,
+      tileSize, tileSize, last);
+  }
 }
@@ -24,12 +24,10 @@
  */
 package loci.formats.in;
 
-import ch.systemsx.cisd.base.mdarray.MDIntArray;
 import ch.systemsx.cisd.hdf5.HDF5CompoundDataMap;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
-import loci.common.DataTools;
 import loci.common.RandomAccessInputStream;
 import loci.common.services.DependencyException;
 import loci.common.services.ServiceFactory;
@@ -219,51 +217,14 @@ public class CellH5Reader extends FormatReader {
     throws FormatException, IOException
   {
     FormatTools.checkPlaneParameters(this, no, buf.length, x, y, w, h);
-    lastChannel = getZCTCoords(no)[1];
-
-    // pixel data is stored in XYZ blocks
-    Object image = getImageData(no, y, h);
-
-    boolean little = isLittleEndian();
-
-    // images is of type byte[][]. Left these checks and unpacking
-    // in the code for feature data types
-    int bpp = FormatTools.getBytesPerPixel(getPixelType());
-    for (int row = 0; row < h; row++) {
-      int base = row * w * bpp;
-      if (image instanceof byte[][]) {
-        byte[][] data = (byte[][]) image;
-        byte[] rowData = data[row];
-        System.arraycopy(rowData, x, buf, row * w, w);
-      } else if (image instanceof short[][]) {
-        short[][] data = (short[][]) image;
-        short[] rowData = data[row];
-        for (int i = 0; i < w; i++) {
-          DataTools.unpackBytes(rowData[i + x], buf, base + 2 * i, 2, little);
-        }
-      } else if (image instanceof int[][]) {
-        int[][] data = (int[][]) image;
-        int[] rowData = data[row];
-        for (int i = 0; i < w; i++) {
-          DataTools.unpackBytes(rowData[i + x], buf, base + i * 4, 4, little);
-        }
-      } else if (image instanceof float[][]) {
-        float[][] data = (float[][]) image;
-        float[] rowData = data[row];
-        for (int i = 0; i < w; i++) {
-          int v = Float.floatToIntBits(rowData[i + x]);
-          DataTools.unpackBytes(v, buf, base + i * 4, 4, little);
-        }
-      } else if (image instanceof double[][]) {
-        double[][] data = (double[][]) image;
-        double[] rowData = data[row];
-        for (int i = 0; i < w; i++) {
-          long v = Double.doubleToLongBits(rowData[i + x]);
-          DataTools.unpackBytes(v, buf, base + i * 8, 8, little);
-        }
-      }
-    }
-    return buf;
+    int[] zct = getZCTCoords(no);
+    lastChannel = zct[1];
+
+    // pixel data is stored in CTZYX blocks
+    int[] arrayOrigin = new int[] {zct[1], zct[2], zct[0], y, x};
+    int[] arrayDimension = new int[] {1, 1, 1, h, w};
+    return jhdf.readBlock(CellH5PathsToImageData.get(series), arrayOrigin,
+      arrayDimension, buf, isLittleEndian());
   }
 
   /* @see loci.formats.IFormatReader#close(boolean) */
@@ -327,57 +288,6 @@ public class CellH5Reader extends FormatReader {
     }
   }
 
-  private Object getImageData(int no, int y, int height) throws FormatException
-  {
-    int[] zct = getZCTCoords(no);
-    int zslice = zct[0];
-    int channel = zct[1];
-    int time = zct[2];
-    int width = getSizeX();
-
-    int elementSize = jhdf.getElementSize(CellH5PathsToImageData.get(series));
-
-    int[] arrayOrigin = new int[] {channel, time, zslice, y, 0};
-    int[] arrayDimension = new int[] {1, 1, 1, height, width};
-
-    MDIntArray test = jhdf.readIntBlockArray(CellH5PathsToImageData.get(series),
-      arrayOrigin, arrayDimension);
-
-    if (elementSize == 1) {
-      byte[][] image = new byte[height][width];
-
-      // Slice x, y dimension
-      for (int yy = 0; yy < height; yy++) {
-        for (int xx = 0; xx < width; xx++) {
-          image[yy][xx] = (byte) test.get(0, 0, 0, yy, xx);
-        }
-      }
-      return image;
-    }
-    else if (elementSize == 2) {
-      short[][] image = new short[height][width];
-
-      // Slice x, y dimension
-      for (int yy = 0; yy < height; yy++) {
-        for (int xx = 0; xx < width; xx++) {
-          image[yy][xx] = (short) test.get(0, 0, 0, yy, xx);
-        }
-      }
-      return image;
-    }
-    else {
-      int[][] image = new int[height][width];
-
-      // Slice x, y dimension
-      for (int yy = 0; yy < height; yy++) {
-        for (int xx = 0; xx < width; xx++) {
-          image[yy][xx] = (int) test.get(0, 0, 0, yy, xx);
-        }
-      }
-      return image;
-    }
-  }
-
   private void parseStructure() throws FormatException {
     seriesCount = 0;
     core.clear();
@@ -29,6 +29,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -37,10 +38,12 @@ import loci.common.Constants;
 import loci.common.DataTools;
 import loci.common.DateTools;
 import loci.common.RandomAccessInputStream;
+import loci.common.Region;
 import loci.formats.CoreMetadata;
 import loci.formats.FormatException;
 import loci.formats.FormatTools;
 import loci.formats.MetadataTools;
+import loci.formats.TileRequest;
 import loci.formats.meta.MetadataStore;
 import loci.formats.tiff.IFD;
 import loci.formats.tiff.PhotoInterp;
@@ -174,6 +177,38 @@ public class SVSReader extends BaseTiffReader {
     return buf;
   }
 
+  /* @see loci.formats.IFormatReader#openTiles(List) */
+  @Override
+  public void openTiles(List<TileRequest> tiles)
+    throws FormatException, IOException
+  {
+    if (core.size() == 1 || tiles.size() < 2 ||
+      FormatTools.overridesOpenBytes(this, SVSReader.class))
+    {
+      super.openTiles(tiles);
+      return;
+    }
+    IFD[] tileIFDs = new IFD[tiles.size()];
+    Region[] regions = new Region[tiles.size()];
+    byte[][] bufs = new byte[tiles.size()][];
+    int bpp = FormatTools.getBytesPerPixel(getPixelType());
+    for (int i=0; i<tiles.size(); i++) {
+      TileRequest t = tiles.get(i);
+      FormatTools.checkPlaneParameters(this, t.no,
+        t.buf == null ? -1 : t.buf.length, t.x, t.y, t.w, t.h);
+      if (t.buf == null) {
+        t.buf = DataTools.allocate(t.w, t.h, getRGBChannelCount(), bpp);
+      }
+      tileIFDs[i] = ifds.get(((SVSCoreMetadata) getCurrentCore()).ifdIndex[t.no]);
+      regions[i] = new Region(t.x, t.y, t.w, t.h);
+      bufs[i] = t.buf;
+    }
+    if (tiffParser == null) {
+      initTiffParser();
+    }
+    tiffParser.getSamples(tileIFDs, regions, bufs);
+  }
+
   /* @see loci.formats.IFormatReader#openThumbBytes(int) */
   @Override
   public byte[] openThumbBytes(int no) throws FormatException, IOException {
@@ -134,6 +134,42 @@ public interface JHDFService extends Service {
      */
     public MDShortArray readShortBlockArray(String path, int[] offset, int[] size);
 
+    /**
+     * Retrieves the chunk dimensions of a dataset.
+     *
+     * @param path HDF path to the dataset.
+     * @return int[] of chunk dimensions, or <code>null</code> if the dataset
+     * is not stored in chunks.
+     */
+    public int[] getChunkSize(String path);
+
+    /**
+     * Reads a multi-dimensional sub-block of a numeric dataset into a byte
+     * array. Chunked datasets are read one whole chunk at a time, and
+     * decoded chunks are cached so that neighbouring blocks do not decode
+     * the same chunk again.
+     *
+     * @param path HDF path to the dataset.
+     * @param offset Offset of the block to read.
+     * @param size Size of the block to read.
+     * @param buf Array to fill with the elements of the block in row-major
+     * order; must hold at least the number of elements times the element
+     * size.
+     * @param little true if the elements should be stored little-endian.
+     * @return buf
+     * @throws IOException If the dataset has an unsupported element type.
+     */
+    public byte[] readBlock(String path, int[] offset, int[] size, byte[] buf,
+        boolean little) throws IOException;
+
+    /**
+     * Sets the maximum number of bytes of decoded chunks kept by
+     * {@link #readBlock(String, int[], int[], byte[], boolean)}.
+     *
+     * @param bytes Cache size in bytes; 0 disables the cache.
+     */
+    public void setChunkCacheSize(long bytes);
+
     /**
      * Reads String array array from path.
      *
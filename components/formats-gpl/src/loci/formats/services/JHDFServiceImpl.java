@@ -25,7 +25,15 @@
 package loci.formats.services;
 
 import java.io.IOException;
+import java.lang.reflect.Array;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import loci.common.services.AbstractService;
 import loci.formats.FormatTools;
@@ -34,6 +42,8 @@ import ch.systemsx.cisd.base.mdarray.MDByteArray;
 import ch.systemsx.cisd.base.mdarray.MDIntArray;
 import ch.systemsx.cisd.base.mdarray.MDShortArray;
 import ch.systemsx.cisd.hdf5.HDF5CompoundDataMap;
+import ch.systemsx.cisd.hdf5.HDF5DataClass;
+import ch.systemsx.cisd.hdf5.HDF5DataSetInformation;
 import ch.systemsx.cisd.hdf5.HDF5Factory;
 import ch.systemsx.cisd.hdf5.HDF5IntStorageFeatures;
 import ch.systemsx.cisd.hdf5.IHDF5Reader;
@@ -54,6 +64,9 @@ public class JHDFServiceImpl extends AbstractService
             + FormatTools.VERSION + "/developers/java-library.html.\n"
             + "Required JAR files is cisd-jhdf5-batteries_included_lin_win_mac.jar.";
 
+    /** Default maximum number of bytes of decoded chunks to cache. */
+    public static final long DEFAULT_CHUNK_CACHE_SIZE = 64 * 1024 * 1024;
+
     // -- Fields --
     private String currentFile;
 
@@ -67,6 +80,21 @@ public class JHDFServiceImpl extends AbstractService
      */
     private IHDF5Writer hdfWriter;
 
+    /**
+     * Layout of each dataset read with readBlock.
+     */
+    private Map<String, DatasetLayout> layouts =
+            new HashMap<String, DatasetLayout>();
+
+    /**
+     * Decoded chunks, least recently used first.
+     */
+    private LinkedHashMap<String, Object> chunks =
+            new LinkedHashMap<String, Object>(16, 0.75f, true);
+
+    private long chunkCacheSize = DEFAULT_CHUNK_CACHE_SIZE;
+    private long cachedBytes;
+
     // -- NetCDFService API methods ---
     /**
      * Default constructor.
@@ -83,6 +111,9 @@ public class JHDFServiceImpl extends AbstractService
     public void setFile(String file) throws IOException {
         this.currentFile = file;
         this.hdfReader = HDF5Factory.openForReading(file);
+        layouts.clear();
+        chunks.clear();
+        cachedBytes = 0;
     }
     
     /* (non-Javadoc)
@@ -168,6 +199,66 @@ public class JHDFServiceImpl extends AbstractService
         return this.hdfReader.int16().readMDArrayBlockWithOffset(path, size, longOffset);
     }
 
+    /* (non-Javadoc)
+     * @see loci.formats.JHDFService#getChunkSize()
+     */
+    public int[] getChunkSize(String path) {
+        return hdfReader.getDataSetInformation(path).tryGetChunkSizes();
+    }
+
+    /* (non-Javadoc)
+     * @see loci.formats.JHDFService#readBlock()
+     */
+    public byte[] readBlock(String path, int[] offset, int[] size, byte[] buf,
+            boolean little) throws IOException {
+        DatasetLayout layout = getLayout(path);
+        ByteBuffer out = ByteBuffer.wrap(buf);
+        out.order(little ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+        int rank = size.length;
+        if (layout.chunk == null) {
+            long[] longOffset = new long[rank];
+            for (int k = 0; k < rank; k++) {
+                longOffset[k] = offset[k];
+            }
+            Object data = readFlatBlock(path, layout, size, longOffset);
+            copy(data, 0, out, 0, getLength(data));
+            return buf;
+        }
+
+        // Visit every chunk that intersects the block, in row-major order
+        int[] first = new int[rank];
+        int[] last = new int[rank];
+        for (int k = 0; k < rank; k++) {
+            if (size[k] <= 0) {
+                return buf;
+            }
+            first[k] = offset[k] / layout.chunk[k];
+            last[k] = (offset[k] + size[k] - 1) / layout.chunk[k];
+        }
+        int[] index = first.clone();
+        while (true) {
+            copyChunk(path, layout, index, offset, size, out);
+            int k = rank - 1;
+            while (k >= 0 && index[k] == last[k]) {
+                index[k] = first[k];
+                k--;
+            }
+            if (k < 0) {
+                break;
+            }
+            index[k]++;
+        }
+        return buf;
+    }
+
+    /* (non-Javadoc)
+     * @see loci.formats.JHDFService#setChunkCacheSize()
+     */
+    public void setChunkCacheSize(long bytes) {
+        chunkCacheSize = bytes;
+        trimChunkCache();
+    }
+
     /* (non-Javadoc)
      * @see loci.formats.JHDFService#readStringArray()
      */
@@ -265,5 +356,180 @@ public class JHDFServiceImpl extends AbstractService
         }
         currentFile = null;
         hdfReader = null;
+        layouts.clear();
+        chunks.clear();
+        cachedBytes = 0;
+    }
+
+    // -- Helper methods --
+
+    private DatasetLayout getLayout(String path) throws IOException {
+        DatasetLayout layout = layouts.get(path);
+        if (layout == null) {
+            HDF5DataSetInformation info = hdfReader.getDataSetInformation(path);
+            layout = new DatasetLayout();
+            layout.dimensions = info.getDimensions();
+            layout.chunk = info.tryGetChunkSizes();
+            layout.elementSize = info.getTypeInformation().getElementSize();
+            HDF5DataClass dataClass = info.getTypeInformation().getDataClass();
+            layout.floating = dataClass == HDF5DataClass.FLOAT;
+            if (dataClass != HDF5DataClass.INTEGER && !layout.floating) {
+                throw new IOException("JHDFService: Unsupported data class " +
+                        dataClass + " for " + path);
+            }
+            if (layout.floating ? layout.elementSize != 4 &&
+                    layout.elementSize != 8 : layout.elementSize != 1 &&
+                    layout.elementSize != 2 && layout.elementSize != 4 &&
+                    layout.elementSize != 8) {
+                throw new IOException("JHDFService: Unsupported element size " +
+                        layout.elementSize + " for " + path);
+            }
+            layouts.put(path, layout);
+        }
+        return layout;
+    }
+
+    /**
+     * Copies the part of a chunk that lies within the block being read,
+     * one contiguous run along the last dimension at a time.
+     */
+    private void copyChunk(String path, DatasetLayout layout, int[] index,
+            int[] offset, int[] size, ByteBuffer out) {
+        int rank = index.length;
+        long[] chunkOffset = new long[rank];
+        int[] chunkSize = new int[rank];
+        int[] lo = new int[rank];
+        int[] hi = new int[rank];
+        for (int k = 0; k < rank; k++) {
+            chunkOffset[k] = (long) index[k] * layout.chunk[k];
+            chunkSize[k] = (int) Math.min(layout.chunk[k],
+                    layout.dimensions[k] - chunkOffset[k]);
+            lo[k] = Math.max(offset[k], (int) chunkOffset[k]);
+            hi[k] = Math.min(offset[k] + size[k],
+                    (int) chunkOffset[k] + chunkSize[k]);
+        }
+        Object data = getChunk(path, layout, index, chunkOffset, chunkSize);
+
+        int run = hi[rank - 1] - lo[rank - 1];
+        int[] position = lo.clone();
+        while (true) {
+            int src = 0;
+            int dest = 0;
+            for (int k = 0; k < rank; k++) {
+                src = src * chunkSize[k] + position[k] - (int) chunkOffset[k];
+                dest = dest * size[k] + position[k] - offset[k];
+            }
+            copy(data, src, out, dest, run);
+            int k = rank - 2;
+            while (k >= 0 && position[k] == hi[k] - 1) {
+                position[k] = lo[k];
+                k--;
+            }
+            if (k < 0) {
+                break;
+            }
+            position[k]++;
+        }
+    }
+
+    private Object getChunk(String path, DatasetLayout layout, int[] index,
+            long[] chunkOffset, int[] chunkSize) {
+        StringBuilder key = new StringBuilder(path);
+        for (int i : index) {
+            key.append(',').append(i);
+        }
+        String chunkKey = key.toString();
+        Object data = chunks.get(chunkKey);
+        if (data == null) {
+            data = readFlatBlock(path, layout, chunkSize, chunkOffset);
+            if (chunkCacheSize > 0) {
+                chunks.put(chunkKey, data);
+                cachedBytes += getByteCount(data);
+                trimChunkCache();
+            }
+        }
+        return data;
+    }
+
+    private void trimChunkCache() {
+        Iterator<Object> iter = chunks.values().iterator();
+        while (cachedBytes > chunkCacheSize && iter.hasNext()) {
+            cachedBytes -= getByteCount(iter.next());
+            iter.remove();
+        }
+    }
+
+    private Object readFlatBlock(String path, DatasetLayout layout, int[] size,
+            long[] offset) {
+        if (layout.floating) {
+            if (layout.elementSize == 4) {
+                return hdfReader.float32().readMDArrayBlockWithOffset(path,
+                        size, offset).getAsFlatArray();
+            }
+            return hdfReader.float64().readMDArrayBlockWithOffset(path,
+                    size, offset).getAsFlatArray();
+        }
+        switch (layout.elementSize) {
+            case 1:
+                return hdfReader.int8().readMDArrayBlockWithOffset(path,
+                        size, offset).getAsFlatArray();
+            case 2:
+                return hdfReader.int16().readMDArrayBlockWithOffset(path,
+                        size, offset).getAsFlatArray();
+            case 4:
+                return hdfReader.int32().readMDArrayBlockWithOffset(path,
+                        size, offset).getAsFlatArray();
+            default:
+                return hdfReader.int64().readMDArrayBlockWithOffset(path,
+                        size, offset).getAsFlatArray();
+        }
+    }
+
+    private static int getLength(Object data) {
+        return Array.getLength(data);
+    }
+
+    private static long getByteCount(Object data) {
+        int bytes = data instanceof byte[] ? 1 : data instanceof short[] ? 2 :
+                data instanceof long[] || data instanceof double[] ? 8 : 4;
+        return (long) getLength(data) * bytes;
+    }
+
+    /**
+     * Copies elements from a flat primitive array into the output buffer,
+     * converting them to the buffer's byte order.
+     */
+    private static void copy(Object data, int src, ByteBuffer out, int dest,
+            int length) {
+        if (data instanceof byte[]) {
+            System.arraycopy(data, src, out.array(), dest, length);
+        } else if (data instanceof short[]) {
+            ((Buffer) out).position(dest * 2);
+            out.asShortBuffer().put((short[]) data, src, length);
+        } else if (data instanceof int[]) {
+            ((Buffer) out).position(dest * 4);
+            out.asIntBuffer().put((int[]) data, src, length);
+        } else if (data instanceof long[]) {
+            ((Buffer) out).position(dest * 8);
+            out.asLongBuffer().put((long[]) data, src, length);
+        } else if (data instanceof float[]) {
+            ((Buffer) out).position(dest * 4);
+            out.asFloatBuffer().put((float[]) data, src, length);
+        } else if (data instanceof double[]) {
+            ((Buffer) out).position(dest * 8);
+            out.asDoubleBuffer().put((double[]) data, src, length);
+        }
+    }
+
+    // -- Helper classes --
+
+    /**
+     * Shape, chunking and element type of a dataset.
+     */
+    private static class DatasetLayout {
+        long[] dimensions;
+        int[] chunk;
+        int elementSize;
+        boolean floating;
     }
 }
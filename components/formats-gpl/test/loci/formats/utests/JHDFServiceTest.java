@@ -30,6 +30,7 @@ import java.net.URL;
 import java.util.List;
 import ch.systemsx.cisd.base.mdarray.MDIntArray;
 
+import loci.common.DataTools;
 import loci.common.services.DependencyException;
 import loci.common.services.ServiceFactory;
 import loci.formats.services.JHDFService;
@@ -100,4 +101,34 @@ public class JHDFServiceTest {
         assertEquals(matrix.get(6, 0, 4), 178);
     }
 
+    @Test
+    public void testReadBlock() throws IOException {
+        String path = "/member_1/member_3/int_matrix";
+        int[] offset = new int[] {1, 2, 3};
+        int[] size = new int[] {8, 6, 5};
+        MDIntArray expected = service.readIntBlockArray(path, offset, size);
+        int bpp = service.getElementSize(path);
+        int mask = bpp < 4 ? (1 << (8 * bpp)) - 1 : -1;
+
+        for (long cacheSize : new long[] {0, 1024 * 1024}) {
+            service.setChunkCacheSize(cacheSize);
+            // read twice so that the second read can use cached chunks
+            for (int pass = 0; pass < 2; pass++) {
+                byte[] buf = new byte[8 * 6 * 5 * bpp];
+                service.readBlock(path, offset, size, buf, true);
+                for (int i = 0; i < 8; i++) {
+                    for (int j = 0; j < 6; j++) {
+                        for (int k = 0; k < 5; k++) {
+                            int index = ((i * 6) + j) * 5 + k;
+                            int value = DataTools.bytesToInt(buf, index * bpp,
+                                    bpp, true);
+                            assertEquals(expected.get(i, j, k) & mask,
+                                    value & mask);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
 }